@@ -27,7 +27,9 @@ import org.apache.lucene.facet.taxonomy.TaxonomyReader;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -65,11 +67,21 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     protected double bufferSize = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
 
+    /**
+     * Interval in milliseconds at which searchers and readers are refreshed
+     * by a background thread (near-real-time mode). If 0, they are refreshed
+     * before each use, so every search sees all changes written before.
+     */
+    protected long refreshInterval = 0;
+
     protected IndexWriter cachedWriter = null;
 
     protected SearcherManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    private ControlledRealTimeReopenThread<IndexSearcher> searcherRefresher = null;
+    private ControlledRealTimeReopenThread<DirectoryReader> readerRefresher = null;
+
     //Taxonomy staff
     protected Directory taxonomyDirectory;
 
@@ -101,6 +113,14 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: " + bufferSize);
+
+        String refreshParam = config.getAttribute("refreshInterval");
+        if (refreshParam != null && refreshParam.length() > 0)
+            try {
+                refreshInterval = Math.max(0, Long.parseLong(refreshParam));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid refresh interval for lucene index: " + refreshParam, e);
+            }
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -139,6 +159,11 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             searcherManager = new SearcherManager(cachedWriter, true, null);
             readerManager = new ReaderManager(cachedWriter, true);
+            if (refreshInterval > 0) {
+                final TrackingIndexWriter trackingWriter = new TrackingIndexWriter(cachedWriter);
+                searcherRefresher = startRefresher(trackingWriter, searcherManager, "searcher");
+                readerRefresher = startRefresher(trackingWriter, readerManager, "reader");
+            }
 
             cachedTaxonomyWriter = new DirectoryTaxonomyWriter(taxonomyDirectory);
         } catch (IOException e) {
@@ -149,9 +174,27 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    private <T> ControlledRealTimeReopenThread<T> startRefresher(TrackingIndexWriter writer, ReferenceManager<T> manager, String name) {
+        final double interval = refreshInterval / 1000.0;
+        final ControlledRealTimeReopenThread<T> refresher =
+                new ControlledRealTimeReopenThread<>(writer, manager, interval, interval);
+        refresher.setName("lucene-index-" + name + "-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+        return refresher;
+    }
+
     @Override
     public synchronized void close() throws DBException {
         try {
+            if (searcherRefresher != null) {
+                searcherRefresher.close();
+                searcherRefresher = null;
+            }
+            if (readerRefresher != null) {
+                readerRefresher.close();
+                readerRefresher = null;
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -208,6 +251,15 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected Analyzer getDefaultAnalyzer() {
         return defaultAnalyzer;
     }
+
+    /**
+     * Returns true if searchers are refreshed in the background. Changes only
+     * become visible to searches after the next refresh and are committed
+     * by {@link #sync()} at the next checkpoint.
+     */
+    public boolean isNearRealTime() {
+        return refreshInterval > 0;
+    }
     
     protected boolean needsCommit = false;
 
@@ -247,7 +299,9 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        if (refreshInterval == 0) {
+            readerManager.maybeRefreshBlocking();
+        }
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -257,7 +311,9 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(Function2E<IndexSearcher, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        if (refreshInterval == 0) {
+            searcherManager.maybeRefreshBlocking();
+        }
         final IndexSearcher searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -67,6 +67,7 @@ import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.Occurrences;
 import org.exist.util.pool.NodePool;
 import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.modules.lucene.LuceneQueryRewriter;
 import org.exist.xquery.*;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.NodeValue;
@@ -91,6 +92,9 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public static final String OPTION_PHRASE_SLOP = "phrase-slop";
     public static final String OPTION_LEADING_WILDCARD = "leading-wildcard";
     public static final String OPTION_FILTER_REWRITE = "filter-rewrite";
+    public static final String OPTION_SORT = "sort";
+    public static final String OPTION_ORDER = "order";
+    public static final String OPTION_MAX = "max";
     public static final String DEFAULT_OPERATOR_OR = "or";
 
     public static final org.apache.lucene.document.FieldType TYPE_NODE_ID = new org.apache.lucene.document.FieldType();
@@ -120,6 +124,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private Set<NodeId> nodesToRemove = null;
     private List<PendingDoc> nodesToWrite = null;
     private Document pendingDoc = null;
+    private Set<String> partialValues = null;
     
     private int cachedNodesSize = 0;
 
@@ -129,6 +134,18 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public static final String FIELD_DOC_ID = "docId";
     public static final String FIELD_DOC_URI = "docUri";
+    /**
+     * doc values listing the sortable fields of a document whose doc value does not hold the
+     * complete value: the field has more than one value, or its value was truncated
+     */
+    public static final String FIELD_PARTIAL_VALUES = "partialValues";
+    /**
+     * maximum length in bytes of a sort key. Lucene rejects doc values longer than 32766 bytes,
+     * longer values are truncated.
+     */
+    public static final int MAX_SORT_KEY_LENGTH = 1024;
+    /** number of top hits collected first if a search is sorted but has no maximum */
+    public static final int SORT_HITS = 1000;
 
     private final byte[] buf = new byte[1024];
     private boolean isReindexing;
@@ -148,7 +165,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public QueryRewriter getQueryRewriter(XQueryContext context) {
-        return null;
+        return new LuceneQueryRewriter(context);
     }
 
     public Object configure(IndexController controller, NodeList configNodes, Map<String, String> namespaces) throws DatabaseConfigurationException {
@@ -352,7 +369,8 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.error("Error while removing lucene index: " + e.getMessage(), e);
         } finally {
             index.releaseWriter(writer);
-            if (reindex) {
+            // in near-real-time mode, the deletions are committed at the next checkpoint
+            if (reindex && !index.isNearRealTime()) {
                 try {
                     index.sync();
                 } catch (DBException e) {
@@ -432,10 +450,24 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
         List<QName> qnames, String queryStr, int axis, Properties options)
             throws IOException, ParseException, XPathException {
+        return query(context, contextId, docs, contextSet, qnames, queryStr, axis, options, 0);
+    }
+
+    /**
+     * Query the index, returning only the nodes with the highest scores.
+     *
+     * @param limit the maximum number of nodes to return, or 0 to return all matching nodes.
+     *  Among nodes with equal scores, those coming first in document order are returned.
+     * @see #query(XQueryContext, int, DocumentSet, NodeSet, List, String, int, Properties)
+     */
+    public NodeSet query(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
+        List<QName> qnames, String queryStr, int axis, Properties options, int limit)
+            throws IOException, ParseException, XPathException {
         return index.withSearcher(searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
+            final TopHits topHits = limit > 0 ? new TopHits(limit) : null;
             for (QName qname : definedIndexes) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 Analyzer analyzer = getAnalyzer(null, qname, context.getBroker(), docs);
@@ -444,11 +476,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     setOptions(options, parser.getConfiguration());
                     Query query = parser.parse(queryStr);
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, context.getWatchDog());
+                            returnAncestor, searcher, query, context.getWatchDog(), topHits);
                 } catch(ParseException e) {
                     throw new XPathException("Lucene query syntax error: " + e.getMessage());
                 }
             }
+            if (topHits != null) {
+                topHits.addResults(queryStr);
+            }
             return resultSet;
         });
     }
@@ -505,19 +540,36 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, Element queryRoot, int axis, Properties options)
             throws IOException, ParseException, XPathException {
+        return query(context, contextId, docs, contextSet, qnames, queryRoot, axis, options, 0);
+    }
+
+    /**
+     * Query the index, returning only the nodes with the highest scores.
+     *
+     * @param limit the maximum number of nodes to return, or 0 to return all matching nodes.
+     *  Among nodes with equal scores, those coming first in document order are returned.
+     * @see #query(XQueryContext, int, DocumentSet, NodeSet, List, Element, int, Properties)
+     */
+    public NodeSet query(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
+                         List<QName> qnames, Element queryRoot, int axis, Properties options, int limit)
+            throws IOException, ParseException, XPathException {
         return index.withSearcher(searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
+            final TopHits topHits = limit > 0 ? new TopHits(limit) : null;
             for (QName qname : definedIndexes) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 analyzer = getAnalyzer(null, qname, context.getBroker(), docs);
                 Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
                 if (query != null) {
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, context.getWatchDog());
+                            returnAncestor, searcher, query, context.getWatchDog(), topHits);
                 }
             }
+            if (topHits != null) {
+                topHits.addResults(queryRoot.getLocalName());
+            }
             return resultSet;
         });
     }
@@ -541,7 +593,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
             NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
             IndexSearcher searcher, Query query, XQueryWatchDog watchDog) throws IOException, TerminatedException {
+        searchAndProcess(contextId, qname, docs, contextSet, resultSet, returnAncestor, searcher, query, watchDog, null);
+    }
+
+    private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
+            NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
+            IndexSearcher searcher, Query query, XQueryWatchDog watchDog, TopHits topHits) throws IOException, TerminatedException {
         LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, watchDog);
+        collector.topHits = topHits;
         searcher.search(query, collector);
     }
 
@@ -609,6 +668,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
             Field fDocUri = new Field(FIELD_DOC_URI, uri, Field.Store.YES, Field.Index.NOT_ANALYZED);
             pendingDoc.add(fDocUri);
+            // allows search to get the path without loading the stored fields. A path which does
+            // not fit into a sort key is only stored: a truncated path would be wrong.
+            final BytesRef uriKey = new BytesRef(uri);
+            if (!truncateSortKey(uriKey)) {
+                pendingDoc.add(new SortedDocValuesField(FIELD_DOC_URI, uriKey));
+            }
         }
         
         // Iterate over all found fields and write the data.
@@ -637,14 +702,117 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             }
 
             pendingDoc.add(contentField);
+
+            // sortable fields are also added as doc values. Only the first value
+            // of a field is kept: a document can have one doc value per field. The
+            // document is sorted by that value, but its other values must be read from
+            // the stored fields. The same applies to values longer than a sort key.
+            if (field.isSortable() || (fieldType != null && fieldType.isSortable())) {
+                boolean partial = true;
+                if (!hasDocValues(pendingDoc, contentFieldName)) {
+                    final BytesRef key = new BytesRef(field.getData().toString());
+                    partial = truncateSortKey(key);
+                    pendingDoc.add(new SortedDocValuesField(contentFieldName, key));
+                }
+                if (partial) {
+                    if (partialValues == null) {
+                        partialValues = new TreeSet<>();
+                    }
+                    partialValues.add(contentFieldName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncates a UTF-8 encoded value to {@link #MAX_SORT_KEY_LENGTH} bytes
+     * without splitting a character.
+     *
+     * @return true if the value was truncated
+     */
+    private static boolean truncateSortKey(BytesRef key) {
+        if (key.length <= MAX_SORT_KEY_LENGTH) {
+            return false;
+        }
+        int length = MAX_SORT_KEY_LENGTH;
+        // do not cut before a continuation byte
+        while (length > 0 && (key.bytes[key.offset + length] & 0xC0) == 0x80) {
+            length--;
+        }
+        key.length = length;
+        return true;
+    }
+
+    private static boolean hasDocValues(Document doc, String name) {
+        for (IndexableField field : doc.getFields(name)) {
+            if (field.fieldType().docValueType() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value of a sorted doc values field or null if the
+     * document has no value for it in this segment.
+     */
+    private static String getDocValue(AtomicReader reader, String field, int docNum, BytesRef spare) throws IOException {
+        return getDocValue(reader, field, docNum, spare, null);
+    }
+
+    /**
+     * Returns the value of a sorted doc values field or null if the
+     * document has no value for it in this segment, or its doc value is partial.
+     *
+     * @param partialValues the value of {@link #FIELD_PARTIAL_VALUES} for the document or null
+     */
+    private static String getDocValue(AtomicReader reader, String field, int docNum, BytesRef spare,
+            String partialValues) throws IOException {
+        if (partialValues != null && Arrays.asList(partialValues.split("\n")).contains(field)) {
+            return null;
         }
+        final SortedDocValues values = reader.getSortedDocValues(field);
+        if (values == null) {
+            return null;
+        }
+        final int ord = values.getOrd(docNum);
+        if (ord < 0) {
+            return null;
+        }
+        values.lookupOrd(ord, spare);
+        // documents without a value get an empty one
+        return spare.length == 0 ? null : spare.utf8ToString();
+    }
+
+    /**
+     * Returns the names of the sortable fields with partial doc values, separated by
+     * newlines, or null if there are none.
+     */
+    private static String getPartialValues(AtomicReader reader, int docNum) throws IOException {
+        final BinaryDocValues values = reader.getBinaryDocValues(FIELD_PARTIAL_VALUES);
+        if (values == null) {
+            return null;
+        }
+        final BytesRef names = new BytesRef();
+        values.get(docNum, names);
+        return names.length == 0 ? null : names.utf8ToString();
     }
     
     public void writeNonXML() {
     	IndexWriter writer = null;
         try {
             writer = index.getWriter();
-            
+
+            if (partialValues != null) {
+                final StringBuilder names = new StringBuilder();
+                for (String name : partialValues) {
+                    if (names.length() > 0) {
+                        names.append('\n');
+                    }
+                    names.append(name);
+                }
+                pendingDoc.add(new BinaryDocValuesField(FIELD_PARTIAL_VALUES, new BytesRef(names.toString())));
+            }
             writer.addDocument(pendingDoc);
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: " + e.getMessage(), e);
@@ -652,6 +820,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } finally {
             index.releaseWriter(writer);
             pendingDoc = null;
+            partialValues = null;
             cachedNodesSize = 0;
         }
     }
@@ -664,6 +833,26 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      * @return search report
      */
     public NodeImpl search(final XQueryContext context, final List<String> toBeMatchedURIs, String queryText, String[] fieldsToGet) throws XPathException, IOException {
+        return search(context, toBeMatchedURIs, queryText, fieldsToGet, null);
+    }
+
+    /**
+     *  SOLR
+     * @param context
+     * @param toBeMatchedURIs
+     * @param queryText
+     * @param options if an option {@link #OPTION_SORT} (a field name or "score") or {@link #OPTION_MAX}
+     *                is given, only the top hits are requested from Lucene, in the order given by
+     *                {@link #OPTION_ORDER} ("ascending" or "descending"). Sorting by a field reads
+     *                the doc values of fields indexed with sort="yes"; a field with several values
+     *                sorts by its first one. The options only apply to the plain text documents
+     *                searched here: ft:query searches the index of XML nodes, which has no sortable
+     *                fields, and gets its top hits by score from an order by clause instead, see
+     *                {@link #query(XQueryContext, int, DocumentSet, NodeSet, List, String, int, Properties, int)}.
+     * @return search report
+     */
+    public NodeImpl search(final XQueryContext context, final List<String> toBeMatchedURIs, String queryText, String[] fieldsToGet,
+            Properties options) throws XPathException, IOException {
 
         return index.withSearcher(searcher -> {
             // Get analyzer : to be retrieved from configuration
@@ -689,84 +878,63 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             // start root element
             final int nodeNr = builder.startElement("", "results", "results", null);
 
-            // Perform actual search
-            searcher.search(query, new Collector() {
-                private Scorer scorer;
-                private AtomicReader reader;
-
-                @Override
-                public void setScorer(Scorer scorer) throws IOException {
-                    this.scorer = scorer;
+            final SearchReport report = new SearchReport(context, toBeMatchedURIs, fields, highlighter, searchAnalyzer, builder);
+
+            final String sortField = options == null ? null : options.getProperty(OPTION_SORT);
+            final String max = options == null ? null : options.getProperty(OPTION_MAX);
+            if (sortField != null || max != null) {
+                // top hits, computed by lucene
+                final int maxDoc = searcher.getIndexReader().maxDoc();
+                int n;
+                if (max != null) {
+                    try {
+                        n = Math.min(maxDoc, Integer.parseInt(max));
+                    } catch (NumberFormatException e) {
+                        throw new XPathException("value for option " + OPTION_MAX + " needs to be a number");
+                    }
+                } else {
+                    // all hits are requested: try with a small queue first
+                    n = Math.min(maxDoc, SORT_HITS);
                 }
-
-                @Override
-                public void collect(int docNum) throws IOException {
-                    Document doc = reader.document(docNum);
-
-                    // Get URI field of document
-                    String fDocUri = doc.get(FIELD_DOC_URI);
-
-                    // Get score
-                    float score = scorer.score();
-
-                    // Check if document URI has a full match or if a
-                    // document is in a collection
-                    if (isDocumentMatch(fDocUri, toBeMatchedURIs)) {
-
-                        DocumentImpl storedDoc = null;
-                        try {
-                            // try to read document to check if user is allowed to access it
-                            storedDoc = context.getBroker().getXMLResource(XmldbURI.createInternal(fDocUri), Lock.READ_LOCK);
-                            if (storedDoc == null) {
-                                return;
-                            }
-
-                            // setup attributes
-                            AttributesImpl attribs = new AttributesImpl();
-                            attribs.addAttribute("", "uri", "uri", "CDATA", fDocUri);
-                            attribs.addAttribute("", "score", "score", "CDATA", "" + score);
-
-                            // write element and attributes
-                            builder.startElement("", "search", "search", attribs);
-                            for (String field : fields) {
-                                String[] fieldContent = doc.getValues(field);
-                                attribs.clear();
-                                attribs.addAttribute("", "name", "name", "CDATA", field);
-                                for (String content : fieldContent) {
-                                    List<Offset> offsets = highlighter.getOffsets(content, searchAnalyzer);
-                                    builder.startElement("", "field", "field", attribs);
-                                    if (offsets != null) {
-                                        highlighter.highlight(content, offsets, builder);
-                                    } else {
-                                        builder.characters(content);
-                                    }
-                                    builder.endElement();
-                                }
-                            }
-                            builder.endElement();
-
-                            // clean attributes
-                            attribs.clear();
-                        } catch (PermissionDeniedException e) {
-                            // not allowed to read the document: ignore the match.
-                        } finally {
-                            if (storedDoc != null) {
-                                storedDoc.getUpdateLock().release(Lock.READ_LOCK);
-                            }
-                        }
+                final Filter filter = createDocumentFilter(toBeMatchedURIs);
+                TopDocs topDocs = n <= 0 ? null : topHits(searcher, query, filter, n, sortField, options.getProperty(OPTION_ORDER));
+                if (max == null && topDocs != null && topDocs.totalHits > n) {
+                    topDocs = topHits(searcher, query, filter, topDocs.totalHits, sortField, options.getProperty(OPTION_ORDER));
+                }
+                if (topDocs != null) {
+                    final List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+                    for (ScoreDoc hit : topDocs.scoreDocs) {
+                        final AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+                        report.hit(leaf.reader(), hit.doc - leaf.docBase, hit.score);
                     }
                 }
+            } else {
+                // Perform actual search
+                searcher.search(query, new Collector() {
+                    private Scorer scorer;
+                    private AtomicReader reader;
+
+                    @Override
+                    public void setScorer(Scorer scorer) throws IOException {
+                        this.scorer = scorer;
+                    }
 
-                @Override
-                public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
-                    this.reader = atomicReaderContext.reader();
-                }
+                    @Override
+                    public void collect(int docNum) throws IOException {
+                        report.hit(reader, docNum, scorer.score());
+                    }
 
-                @Override
-                public boolean acceptsDocsOutOfOrder() {
-                    return true;
-                }
-            });
+                    @Override
+                    public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+                        this.reader = atomicReaderContext.reader();
+                    }
+
+                    @Override
+                    public boolean acceptsDocsOutOfOrder() {
+                        return true;
+                    }
+                });
+            }
 
             // finish root element
             builder.endElement();
@@ -778,6 +946,142 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
         });
     }
+
+    /**
+     * Returns the top n hits by score or by the doc values of the sort field.
+     *
+     * @param order "ascending", "descending" or null for the default order (descending by
+     *              score, ascending by field value)
+     */
+    private static TopDocs topHits(IndexSearcher searcher, Query query, Filter filter, int n, String sortField,
+            String order) throws IOException {
+        final boolean descending = "descending".equalsIgnoreCase(order);
+        if (sortField == null || "score".equals(sortField)) {
+            if (descending || order == null) {
+                return searcher.search(query, filter, n);
+            }
+            // the hits with the lowest scores
+            return searcher.search(query, filter, n,
+                    new Sort(new SortField(null, SortField.Type.SCORE, true)), true, false);
+        }
+        return searcher.search(query, filter, n,
+                new Sort(new SortField(sortField, SortField.Type.STRING, descending)), true, false);
+    }
+
+    /**
+     * Restrict the hits to the given documents and collections, so the
+     * top hits do not include documents which would be filtered out later.
+     */
+    private static Filter createDocumentFilter(List<String> toBeMatchedURIs) {
+        final BooleanQuery uriQuery = new BooleanQuery();
+        for (String uri : toBeMatchedURIs) {
+            uriQuery.add(new TermQuery(new Term(FIELD_DOC_URI, uri)), BooleanClause.Occur.SHOULD);
+            uriQuery.add(new PrefixQuery(new Term(FIELD_DOC_URI, collectionPrefix(uri))), BooleanClause.Occur.SHOULD);
+        }
+        return new QueryWrapperFilter(uriQuery);
+    }
+
+    /**
+     * Returns the prefix of the URIs of all resources below the given collection,
+     * so documents in sibling collections sharing a name prefix do not match.
+     */
+    private static String collectionPrefix(String uri) {
+        return uri.endsWith("/") ? uri : uri + "/";
+    }
+
+    /**
+     * Writes the search hits of a plain text search. The document path and the
+     * fields indexed with sort="yes" are read from doc values; the stored fields
+     * are only loaded for other fields.
+     */
+    private class SearchReport {
+
+        private final XQueryContext context;
+        private final List<String> toBeMatchedURIs;
+        private final String[] fields;
+        private final PlainTextHighlighter highlighter;
+        private final Analyzer searchAnalyzer;
+        private final MemTreeBuilder builder;
+        private final BytesRef spare = new BytesRef();
+
+        private SearchReport(XQueryContext context, List<String> toBeMatchedURIs, String[] fields,
+                             PlainTextHighlighter highlighter, Analyzer searchAnalyzer, MemTreeBuilder builder) {
+            this.context = context;
+            this.toBeMatchedURIs = toBeMatchedURIs;
+            this.fields = fields;
+            this.highlighter = highlighter;
+            this.searchAnalyzer = searchAnalyzer;
+            this.builder = builder;
+        }
+
+        private void hit(AtomicReader reader, int docNum, float score) throws IOException {
+            Document doc = null;
+
+            // Get URI field of document
+            String fDocUri = getDocValue(reader, FIELD_DOC_URI, docNum, spare);
+            if (fDocUri == null) {
+                doc = reader.document(docNum);
+                fDocUri = doc.get(FIELD_DOC_URI);
+            }
+
+            // Check if document URI has a full match or if a
+            // document is in a collection
+            if (isDocumentMatch(fDocUri, toBeMatchedURIs)) {
+
+                DocumentImpl storedDoc = null;
+                try {
+                    // try to read document to check if user is allowed to access it
+                    storedDoc = context.getBroker().getXMLResource(XmldbURI.createInternal(fDocUri), Lock.READ_LOCK);
+                    if (storedDoc == null) {
+                        return;
+                    }
+
+                    // setup attributes
+                    AttributesImpl attribs = new AttributesImpl();
+                    attribs.addAttribute("", "uri", "uri", "CDATA", fDocUri);
+                    attribs.addAttribute("", "score", "score", "CDATA", "" + score);
+
+                    // write element and attributes
+                    builder.startElement("", "search", "search", attribs);
+                    final String partialValues = getPartialValues(reader, docNum);
+                    for (String field : fields) {
+                        String[] fieldContent;
+                        final String docValue = getDocValue(reader, field, docNum, spare, partialValues);
+                        if (docValue != null) {
+                            fieldContent = new String[] { docValue };
+                        } else {
+                            if (doc == null) {
+                                doc = reader.document(docNum);
+                            }
+                            fieldContent = doc.getValues(field);
+                        }
+                        attribs.clear();
+                        attribs.addAttribute("", "name", "name", "CDATA", field);
+                        for (String content : fieldContent) {
+                            List<Offset> offsets = highlighter.getOffsets(content, searchAnalyzer);
+                            builder.startElement("", "field", "field", attribs);
+                            if (offsets != null) {
+                                highlighter.highlight(content, offsets, builder);
+                            } else {
+                                builder.characters(content);
+                            }
+                            builder.endElement();
+                        }
+                    }
+                    builder.endElement();
+
+                    // clean attributes
+                    attribs.clear();
+                } catch (PermissionDeniedException e) {
+                    // not allowed to read the document: ignore the match.
+                } finally {
+                    if (storedDoc != null) {
+                        storedDoc.getUpdateLock().release(Lock.READ_LOCK);
+                    }
+                }
+            }
+        }
+    }
     
     public String getFieldContent(int docId, String field) throws IOException {
         BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
@@ -790,8 +1094,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 AtomicReader atomicReader = context.reader();
                 DocsEnum docs = atomicReader.termDocsEnum(dt);
                 if (docs != null && docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
-                    Document doc = atomicReader.document(docs.docID());
-                    String value = doc.get(field);
+                    String value = getDocValue(atomicReader, field, docs.docID(), new BytesRef(),
+                            getPartialValues(atomicReader, docs.docID()));
+                    if (value == null) {
+                        Document doc = atomicReader.document(docs.docID());
+                        value = doc.get(field);
+                    }
                     if (value != null) {
                         return value;
                     }
@@ -841,7 +1149,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
         
         for(String doc : toBeMatchedUris){
-            if( docUri.startsWith(doc) ){
+            if( docUri.equals(doc) || docUri.startsWith(collectionPrefix(doc)) ){
                 return true;
             }       
         }
@@ -864,6 +1172,8 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final int contextId;
         private final Query query;
         private final XQueryWatchDog watchdog;
+        // if set, hits are only added to the result set if they rank among the best
+        private TopHits topHits = null;
 
         private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
                                    int contextId, XQueryWatchDog watchDog) {
@@ -914,37 +1224,120 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 // if a context set is specified, we can directly check if the
                 // matching node is a descendant of one of the nodes
                 // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = new LuceneMatch(contextId, nodeId, query);
-                            match.setScore(score);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                        }
-                    } else {
-                        LuceneMatch match = new LuceneMatch(contextId, nodeId, query);
-                        match.setScore(score);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
-                    }
-                } else {
-                    LuceneMatch match = new LuceneMatch(contextId, nodeId, query);
-                    match.setScore(score);
-                    storedNode.addMatch(match);
-                    resultSet.add(storedNode);
+                NodeProxy parentNode = null;
+                if (contextSet != null && returnAncestor) {
+                    parentNode = contextSet.get(storedNode);
+                    // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
+                    if (parentNode == null)
+                        return;
                 }
+                if (topHits != null)
+                    topHits.offer(new Hit(this, storedNode, parentNode, score, rankScore(parentNode, score)));
+                else
+                    addHit(storedNode, parentNode, score);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
+
+        /**
+         * Returns the score ft:score will report for the result node: the context node
+         * may already have matches of other full text queries.
+         */
+        private float rankScore(NodeProxy parentNode, float score) {
+            if (parentNode != null) {
+                for (Match match = parentNode.getMatches(); match != null; match = match.getNextMatch()) {
+                    if (match.getIndexId() == LuceneIndex.ID)
+                        score += ((LuceneMatch) match).getScore();
+                }
+            }
+            return score;
+        }
+
+        private void addHit(NodeProxy storedNode, NodeProxy parentNode, float score) {
+            final NodeId nodeId = storedNode.getNodeId();
+            LuceneMatch match = new LuceneMatch(contextId, nodeId, query);
+            match.setScore(score);
+            if (contextSet != null) {
+                int sizeHint = contextSet.getSizeHint(storedNode.getOwnerDocument());
+                if (returnAncestor) {
+                    parentNode.addMatch(match);
+                    resultSet.add(parentNode, sizeHint);
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        parentNode.deepCopyContext(storedNode, contextId);
+                    } else
+                        parentNode.copyContext(storedNode);
+                } else {
+                    storedNode.addMatch(match);
+                    resultSet.add(storedNode, sizeHint);
+                }
+            } else {
+                storedNode.addMatch(match);
+                resultSet.add(storedNode);
+            }
+        }
+    }
+
+    /**
+     * A hit found by a {@link LuceneHitCollector}, waiting to be added to the result set.
+     */
+    private static class Hit {
+
+        private final LuceneHitCollector collector;
+        private final NodeProxy storedNode;
+        private final NodeProxy parentNode;
+        private final float score;
+        private final float rankScore;
+
+        private Hit(LuceneHitCollector collector, NodeProxy storedNode, NodeProxy parentNode, float score, float rankScore) {
+            this.collector = collector;
+            this.storedNode = storedNode;
+            this.parentNode = parentNode;
+            this.score = score;
+            this.rankScore = rankScore;
+        }
+
+        private NodeProxy getResultNode() {
+            return parentNode == null ? storedNode : parentNode;
+        }
+    }
+
+    /**
+     * Keeps the hits with the highest scores while collecting, so only those have to be
+     * turned into result nodes. Ties are resolved in favour of the node coming first in
+     * document order, which is what ordering the full result by score would return.
+     * Counts all hits passed in.
+     */
+    private static class TopHits extends org.apache.lucene.util.PriorityQueue<Hit> {
+
+        private int totalHits = 0;
+
+        private TopHits(int limit) {
+            super(limit);
+        }
+
+        @Override
+        protected boolean lessThan(Hit a, Hit b) {
+            if (a.rankScore != b.rankScore) {
+                return a.rankScore < b.rankScore;
+            }
+            return a.getResultNode().compareTo(b.getResultNode()) > 0;
+        }
+
+        private void offer(Hit hit) {
+            totalHits++;
+            insertWithOverflow(hit);
+        }
+
+        private void addResults(String query) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Returning " + size() + " of " + totalHits + " hits for query " + query);
+            }
+            Hit hit;
+            while ((hit = pop()) != null) {
+                hit.collector.addHit(hit.storedNode, hit.parentNode, hit.score);
+            }
+        }
     }
 
     /**
@@ -129,6 +129,13 @@ public class PlainTextIndexConfig {
                         field.setStore(store);
                     }
 
+                    // Get value of optional sort attribute
+                    attributeNode = nnm.getNamedItem("sort");
+                    if (attributeNode != null) {
+                        String val = attributeNode.getNodeValue();
+                        field.setSortable(val != null && val.equalsIgnoreCase("yes"));
+                    }
+
                     // Collect data
                     CharSequence content = child.getNodeValue();
                     field.setContent(content);
@@ -161,6 +168,7 @@ public class PlainTextIndexConfig {
     public static class PlainTextField {
 
         private Field.Store store = Field.Store.NO;
+        private boolean sortable = false;
         private String name;
         private float boost = 1.0f;
         private CharSequence data;
@@ -169,6 +177,10 @@ public class PlainTextIndexConfig {
            store = setStore ? Field.Store.YES : Field.Store.NO;
         }
 
+        void setSortable(boolean sortable) {
+            this.sortable = sortable;
+        }
+
         void setName(String name) {
             this.name=name;
         }
@@ -196,6 +208,10 @@ public class PlainTextIndexConfig {
         public Field.Store getStore(){
             return store;
         }
+
+        public boolean isSortable() {
+            return sortable;
+        }
     }
     
     /**
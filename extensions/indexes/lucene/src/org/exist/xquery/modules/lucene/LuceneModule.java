@@ -61,6 +61,7 @@ public class LuceneModule extends AbstractInternalModule {
         new FunctionDef(Search.signatures[0], Search.class),
         new FunctionDef(Search.signatures[1], Search.class),
         new FunctionDef(Search.signatures[2], Search.class),
+        new FunctionDef(Search.signatures[3], Search.class),
         new FunctionDef(GetField.signatures[0], GetField.class)
     };
 
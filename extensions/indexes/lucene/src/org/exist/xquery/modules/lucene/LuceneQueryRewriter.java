@@ -0,0 +1,136 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.lucene;
+
+import org.exist.xquery.*;
+import org.exist.xquery.functions.fn.ExtCollection;
+import org.exist.xquery.functions.fn.FunDoc;
+
+import java.util.List;
+
+/**
+ * Query rewriter for the Lucene index. Detects FLWOR expressions returning the best
+ * matches of a full text query, e.g.
+ *
+ * <pre>
+ * subsequence(
+ *     for $hit in collection("/db/articles")//p[ft:query(., "xml")]
+ *     order by ft:score($hit) descending
+ *     return $hit,
+ *     1, 10
+ * )
+ * </pre>
+ *
+ * The order by clause will pass the number of items needed by the caller to ft:query,
+ * which then asks Lucene for the matches with the highest scores only.
+ *
+ * The optimization is only applied if every match of the query becomes an item of the
+ * for clause: either ft:query is the input of the for clause or it is the single predicate
+ * of the last step, which selects the descendants of the documents returned by fn:collection
+ * or fn:doc or of the root node.
+ */
+public class LuceneQueryRewriter extends QueryRewriter {
+
+    public LuceneQueryRewriter(XQueryContext context) {
+        super(context);
+    }
+
+    @Override
+    public RankedExpression rewriteOrderBy(ForExpr forExpr, OrderByClause orderBy) throws XPathException {
+        if (forExpr.getPositionalVariable() != null) {
+            return null;
+        }
+        final OrderSpec[] specs = orderBy.getOrderSpecs();
+        if (specs.length != 1 || (specs[0].getModifiers() & OrderSpec.DESCENDING_ORDER) == 0 ||
+                !isScore(specs[0].getSortExpression(), forExpr.getVariable())) {
+            return null;
+        }
+        return getRankedQuery(forExpr.getInputSequence());
+    }
+
+    /**
+     * Check if the expression is a call to ft:score on the given variable.
+     */
+    private boolean isScore(Expression expr, String variable) {
+        expr = unwrap(expr);
+        if (!(expr instanceof Score)) {
+            return false;
+        }
+        final Expression arg = unwrap(((Score) expr).getArgument(0));
+        return arg instanceof VariableReference && ((VariableReference) arg).getName().equals(variable);
+    }
+
+    private Query getRankedQuery(Expression input) {
+        input = unwrap(input);
+        if (input instanceof Query) {
+            // for $hit in ft:query(...)
+            return (Query) input;
+        }
+        if (!(input instanceof PathExpr) || ((PathExpr) input).getLength() != 2) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) input;
+        final Expression first = unwrap(path.getExpression(0));
+        if (!(first instanceof RootNode || first instanceof ExtCollection || first instanceof FunDoc)) {
+            return null;
+        }
+        Expression last = path.getExpression(1);
+        if (last instanceof ExtensionExpression) {
+            // wrapped into an optimize pragma
+            last = ((ExtensionExpression) last).getExpression();
+        }
+        if (!(last instanceof LocationStep)) {
+            return null;
+        }
+        final LocationStep step = (LocationStep) last;
+        if (step.getAxis() != Constants.DESCENDANT_AXIS && step.getAxis() != Constants.DESCENDANT_SELF_AXIS) {
+            return null;
+        }
+        final List<Predicate> predicates = step.getPredicates();
+        if (predicates.size() != 1 || predicates.get(0).getLength() != 1) {
+            return null;
+        }
+        final Expression predicate = unwrap(predicates.get(0).getExpression(0));
+        if (predicate instanceof Query && ((Query) predicate).optimizeOnSelf()) {
+            return (Query) predicate;
+        }
+        return null;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof InternalFunctionCall) {
+                expr = ((InternalFunctionCall) expr).getFunction();
+            } else if (expr instanceof Function) {
+                // a function is a path expression over its arguments
+                return expr;
+            } else if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DebuggableExpression) {
+                expr = ((DebuggableExpression) expr).getExpression();
+            } else if (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck) {
+                // checks wrapped around function arguments do not change the items
+                expr = expr.getSubExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+}
@@ -46,7 +46,7 @@ import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
 import org.w3c.dom.Element;
 
-public class Query extends Function implements Optimizable {
+public class Query extends Function implements Optimizable, RankedExpression {
 	
 	protected static final Logger logger = LogManager.getLogger(Query.class);
 
@@ -110,6 +110,7 @@ public class Query extends Function implements Optimizable {
     private NodeSet preselectResult = null;
     protected boolean optimizeSelf = false;
     protected boolean optimizeChild = false;
+    private int rankLimit = 0;
 
     public Query(XQueryContext context, FunctionSignature signature) {
         super(context, signature);
@@ -204,6 +205,15 @@ public class Query extends Function implements Optimizable {
         return axis;
     }
 
+    /**
+     * Set by the order by clause if the query results are ordered by descending score
+     * and only the best matches are needed. See {@link LuceneQueryRewriter}.
+     */
+    @Override
+    public void setRankLimit(int limit) {
+        this.rankLimit = limit;
+    }
+
     public NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException {
     	if (contextSequence != null && !contextSequence.isPersistentSet())
     		// in-memory docs won't have an index
@@ -220,13 +230,14 @@ public class Query extends Function implements Optimizable {
         List<QName> qnames = new ArrayList<>(1);
         qnames.add(contextQName);
         Properties options = parseOptions(contextSequence, null);
+        final int limit = nextRankLimit();
         try {
             if (Type.subTypeOf(key.getType(), Type.ELEMENT))
                 preselectResult = index.query(context, getExpressionId(), docs, useContext ? contextSequence.toNodeSet() : null,
-                    qnames, (Element) ((NodeValue)key).getNode(), NodeSet.DESCENDANT, options);
+                    qnames, (Element) ((NodeValue)key).getNode(), NodeSet.DESCENDANT, options, limit);
             else
                 preselectResult = index.query(context, getExpressionId(), docs, useContext ? contextSequence.toNodeSet() : null,
-                    qnames, key.getStringValue(), NodeSet.DESCENDANT, options);
+                    qnames, key.getStringValue(), NodeSet.DESCENDANT, options, limit);
         } catch (IOException | org.apache.lucene.queryparser.classic.ParseException e) {
             throw new XPathException(this, "Error while querying full text index: " + e.getMessage(), e);
         }
@@ -264,13 +275,14 @@ public class Query extends Function implements Optimizable {
                     qnames.add(contextQName);
                 }
                 Properties options = parseOptions(contextSequence, contextItem);
+                final int limit = nextRankLimit();
                 try {
                     if (Type.subTypeOf(key.getType(), Type.ELEMENT))
                         result = index.query(context, getExpressionId(), docs, inNodes, qnames,
-                                (Element)((NodeValue)key).getNode(), NodeSet.ANCESTOR, options);
+                                (Element)((NodeValue)key).getNode(), NodeSet.ANCESTOR, options, limit);
                     else
                         result = index.query(context, getExpressionId(), docs, inNodes, qnames,
-                                key.getStringValue(), NodeSet.ANCESTOR, options);
+                                key.getStringValue(), NodeSet.ANCESTOR, options, limit);
                 } catch (IOException | org.apache.lucene.queryparser.classic.ParseException e) {
                     throw new XPathException(this, e.getMessage());
                 }
@@ -286,6 +298,20 @@ public class Query extends Function implements Optimizable {
         return result;
     }
 
+    /**
+     * Returns the rank limit for the current evaluation. The limit only applies once: if the
+     * query is evaluated again within the same iteration, all matches are returned.
+     */
+    private int nextRankLimit() {
+        final int limit = rankLimit;
+        rankLimit = 0;
+        if (limit > 0 && context.getProfiler().isEnabled()) {
+            context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                "Returning the " + limit + " matches with the highest scores");
+        }
+        return limit;
+    }
+
     protected Item getKey(Sequence contextSequence, Item contextItem) throws XPathException {
         Sequence keySeq = getArgument(1).eval(contextSequence, contextItem);
         Item key = keySeq.itemAt(0);
@@ -337,6 +363,7 @@ public class Query extends Function implements Optimizable {
         if (!postOptimization) {
             preselectResult = null;
         }
+        rankLimit = 0;
     }
 }
 
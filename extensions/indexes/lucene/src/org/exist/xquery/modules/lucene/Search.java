@@ -22,6 +22,9 @@ package org.exist.xquery.modules.lucene;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -60,6 +63,23 @@ public class Search extends BasicFunction {
      * Function signatures
      */
     public final static FunctionSignature signatures[] = {
+        new FunctionSignature(
+                new QName("search", LuceneModule.NAMESPACE_URI, LuceneModule.PREFIX),
+                "Search for (non-XML) data with lucene. The options parameter can request the top hits only, " +
+                "sorted by score or by a field indexed with sort=\"yes\": " +
+                "<options><sort>field name or score</sort><order>ascending|descending</order><max>10</max></options>",
+                new SequenceType[]{
+                        new FunctionParameterSequenceType("path", Type.STRING, Cardinality.ZERO_OR_MORE,
+                                "URI paths of documents or collections in database. Collection URIs should end on a '/'."),
+                        new FunctionParameterSequenceType("query", Type.STRING, Cardinality.EXACTLY_ONE,
+                                "query string"),
+                        new FunctionParameterSequenceType("fields", Type.STRING, Cardinality.ZERO_OR_MORE,
+                                "Fields to return in search results"),
+                        new FunctionParameterSequenceType("options", Type.NODE, Cardinality.ZERO_OR_ONE,
+                                "Sort and limit options")
+                },
+                new FunctionReturnSequenceType(Type.NODE, Cardinality.EXACTLY_ONE,
+                        "All documents that are match by the query")),
         new FunctionSignature(
                 new QName("search", LuceneModule.NAMESPACE_URI, LuceneModule.PREFIX),
                 "Search for (non-XML) data with lucene",
@@ -138,7 +158,7 @@ public class Search extends BasicFunction {
                 query = args[1].itemAt(0).getStringValue();
 
             String[] fields = null;
-            if (getArgumentCount() == 3) {
+            if (getArgumentCount() >= 3) {
                 fields = new String[args[2].getItemCount()];
                 int j = 0;
                 for (SequenceIterator i = args[2].iterate(); i.hasNext(); ) {
@@ -150,8 +170,13 @@ public class Search extends BasicFunction {
             LuceneIndexWorker index = (LuceneIndexWorker) context.getBroker()
                     .getIndexController().getWorkerByIndexId(LuceneIndex.ID);
 
+            Properties options = null;
+            if (getArgumentCount() == 4 && !args[3].isEmpty()) {
+                options = parseOptions((NodeValue) args[3].itemAt(0));
+            }
+
             // Perform search
-            report = index.search(context, toBeMatchedURIs, query, fields);
+            report = index.search(context, toBeMatchedURIs, query, fields, options);
         } catch (IOException e) {
             throw new XPathException(this, e.getMessage(), e);
 
@@ -165,6 +190,24 @@ public class Search extends BasicFunction {
         return report;
     }
     
+    private Properties parseOptions(NodeValue optRoot) throws XPathException {
+        Properties options = new Properties();
+        try {
+            XMLStreamReader reader = context.getXMLStreamReader(optRoot);
+            reader.next();
+            reader.next();
+            while (reader.hasNext()) {
+                int status = reader.next();
+                if (status == XMLStreamReader.START_ELEMENT) {
+                    options.put(reader.getLocalName(), reader.getElementText());
+                }
+            }
+            return options;
+        } catch (XMLStreamException | IOException e) {
+            throw new XPathException(this, "Error while parsing options to ft:search: " + e.getMessage(), e);
+        }
+    }
+
     public int getDependencies() {
     	return Dependency.CONTEXT_SET;
     }
@@ -0,0 +1,113 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.exist.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the near-real-time mode of the {@link LuceneIndex}: searchers are refreshed
+ * in the background and changes are committed on sync only.
+ */
+public class NearRealTimeTest {
+
+    private Path dataDir;
+    private LuceneIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("lucene-nrt");
+        final Element config = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("module");
+        config.setAttribute("id", "lucene-index");
+        config.setAttribute("refreshInterval", "50");
+        index = new LuceneIndex();
+        index.configure(null, dataDir, config);
+        index.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        FileUtils.deleteQuietly(dataDir);
+    }
+
+    @Test
+    public void refreshInBackground() throws Exception {
+        assertTrue(index.isNearRealTime());
+        add("a");
+        add("b");
+
+        final long timeout = System.currentTimeMillis() + 10000;
+        while (count("a") == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, count("a"));
+        assertEquals(1, count("b"));
+        assertEquals(1, (int) index.withReader(reader -> reader.docFreq(new Term("id", "b"))));
+
+        // not committed before the next sync
+        assertEquals(0, committedDocs());
+        index.sync();
+        assertEquals(2, committedDocs());
+    }
+
+    private void add(final String id) throws Exception {
+        final IndexWriter writer = index.getWriter();
+        try {
+            final Document doc = new Document();
+            doc.add(new StringField("id", id, Field.Store.NO));
+            writer.addDocument(doc);
+        } finally {
+            index.releaseWriter(writer);
+        }
+    }
+
+    private int count(final String id) throws Exception {
+        return index.withSearcher(searcher -> searcher.search(new TermQuery(new Term("id", id)), 10).totalHits);
+    }
+
+    private int committedDocs() throws Exception {
+        if (!DirectoryReader.indexExists(index.directory)) {
+            return 0;
+        }
+        try (final DirectoryReader reader = DirectoryReader.open(index.directory)) {
+            return reader.numDocs();
+        }
+    }
+}
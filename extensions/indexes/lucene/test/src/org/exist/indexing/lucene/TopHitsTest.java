@@ -0,0 +1,181 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.util.ConfigurationHelper;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that ft:query returns only the best matches if its results are ordered by
+ * score and just the first items are needed. The results must be the same as
+ * ordering all matches.
+ */
+public class TopHitsTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("top-hits-test");
+
+    private final static String XCONF =
+            "<collection xmlns='http://exist-db.org/collection-config/1.0'>" +
+            "   <index><lucene><text qname='p'/></lucene></index>" +
+            "</collection>";
+
+    private final static String DOCS = "collection('" + COLLECTION + "')";
+
+    private final static String REPORT = "string-join(for $p in $hits return $p/@id || ':' || ft:score($p), ' ')";
+
+    private static BrokerPool pool;
+
+    @Test
+    public void subsequence() throws Exception {
+        assertSameResult("for $h in " + DOCS + "//p[ft:query(., 'apple')] order by ft:score($h) descending return $h", 10);
+        assertSameResult("for $h in " + DOCS + "//p[ft:query(., 'apple pear')] order by ft:score($h) descending return $h", 1);
+        // function form
+        assertSameResult("for $h in ft:query(" + DOCS + "//p, 'apple') order by ft:score($h) descending return $h", 7);
+        // not optimized: the query does not select all matches
+        assertSameResult("for $h in " + DOCS + "//div/p[ft:query(., 'apple')] order by ft:score($h) descending return $h", 5);
+        assertSameResult("for $h in " + DOCS + "//p[ft:query(., 'apple')][@id ne 'd3p2'] order by ft:score($h) descending return $h", 5);
+    }
+
+    @Test
+    public void positionalPredicate() throws Exception {
+        final String flwor = "for $h in " + DOCS + "//p[ft:query(., 'apple')] order by ft:score($h) descending return $h";
+        final String expected = query("let $hits := (" + flwor + ") let $hits := subsequence($hits, 1, 4) return " + REPORT);
+        assertEquals(expected, query("let $hits := (" + flwor + ")[position() le 4] return " + REPORT));
+    }
+
+    @Test
+    public void queryWithLimit() throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final LuceneIndexWorker worker = (LuceneIndexWorker) broker.getIndexController().getWorkerByIndexId(LuceneIndex.ID);
+            final XQueryContext context = new XQueryContext(pool, AccessContext.TEST);
+            final DocumentSet docs = broker.getCollection(COLLECTION).allDocs(broker, new org.exist.dom.persistent.DefaultDocumentSet(), true);
+            final List<QName> qnames = Collections.singletonList(new QName("p"));
+
+            final NodeSet all = worker.query(context, -1, docs, null, qnames, "apple", NodeSet.DESCENDANT, null);
+            final NodeSet top = worker.query(context, -1, docs, null, qnames, "apple", NodeSet.DESCENDANT, null, 5);
+            assertEquals(5, top.getLength());
+            assertTrue(all.getLength() > 5);
+
+            final List<NodeProxy> sorted = new ArrayList<>();
+            for (final NodeProxy p : all) {
+                sorted.add(p);
+            }
+            // stable: nodes with equal scores stay in document order
+            sorted.sort((a, b) -> Float.compare(score(b), score(a)));
+            for (int i = 0; i < 5; i++) {
+                assertTrue(top.contains(sorted.get(i)));
+            }
+        }
+    }
+
+    private static float score(final NodeProxy p) {
+        return ((LuceneIndexWorker.LuceneMatch) p.getMatches()).getScore();
+    }
+
+    /**
+     * Compare a subsequence of the given FLWOR expression with the first items of its
+     * complete result. The optimizer does not look at FLWOR expressions bound to a variable.
+     */
+    private void assertSameResult(final String flwor, final int length) throws Exception {
+        final String expected = query("let $hits := (" + flwor + ") let $hits := subsequence($hits, 1, " + length + ") return " + REPORT);
+        final String actual = query("let $hits := subsequence(" + flwor + ", 1, " + length + ") return " + REPORT);
+        assertEquals(length, expected.split(" ").length);
+        assertEquals(expected, actual);
+    }
+
+    private String query(final String query) throws Exception {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+            return result.getStringValue();
+        }
+    }
+
+    @BeforeClass
+    public static void startDB() throws Exception {
+        final Path confFile = ConfigurationHelper.lookup("conf.xml");
+        final Configuration config = new Configuration(confFile.toAbsolutePath().toString());
+        BrokerPool.configure(1, 5, config);
+        pool = BrokerPool.getInstance();
+
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION);
+            broker.saveCollection(transaction, collection);
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, collection, XCONF);
+            for (int d = 0; d < 10; d++) {
+                final StringBuilder xml = new StringBuilder("<doc><div>");
+                for (int i = 0; i < 4; i++) {
+                    if (i == 2) {
+                        xml.append("</div>");
+                    }
+                    xml.append("<p id='d").append(d).append('p').append(i).append("'>");
+                    // scores repeat, so there are many ties
+                    for (int n = 0; n < (d + i) % 4; n++) {
+                        xml.append("apple ");
+                    }
+                    xml.append(d % 3 == 0 ? "pear " : "plum ").append("fruit</p>");
+                }
+                xml.append("</doc>");
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc" + d + ".xml"), xml.toString());
+                collection.store(transaction, broker, info, xml.toString(), false);
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    @AfterClass
+    public static void stopDB() {
+        TestUtils.cleanupDB();
+        BrokerPool.stopAll(false);
+        pool = null;
+    }
+}
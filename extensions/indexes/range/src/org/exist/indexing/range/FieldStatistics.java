@@ -0,0 +1,210 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics on the terms indexed in a single field of the range index: number of documents,
+ * number of distinct terms and an equi-depth histogram on the terms. Used by the query optimizer
+ * to estimate how many nodes a range lookup will select.
+ *
+ * For numeric fields, only the full precision terms are taken into account.
+ */
+public class FieldStatistics {
+
+    public final static int BUCKETS = 32;
+
+    private final long version;
+    private final long created = System.currentTimeMillis();
+
+    private final int docCount;
+    private long distinctTerms = 0;
+    private long totalFreq = 0;
+
+    /** upper bound (inclusive) of each bucket */
+    private final BytesRef[] bounds;
+    /** number of term occurrences up to and including each bucket */
+    private final long[] cumulated;
+
+    private FieldStatistics(final IndexReader reader, final long version, final String field, final boolean numeric) throws IOException {
+        this.version = version;
+        this.docCount = reader.getDocCount(field);
+
+        final List<BytesRef> boundList = new ArrayList<>(BUCKETS * 2);
+        final List<Long> cumulatedList = new ArrayList<>(BUCKETS * 2);
+        final Terms terms = MultiFields.getTerms(reader, field);
+        if (terms != null) {
+            final TermsEnum termsEnum = terms.iterator(null);
+            long step = 1;
+            long lastBound = 0;
+            final BytesRef lastTerm = new BytesRef();
+            boolean pending = false;
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                if (numeric && !isFullPrecision(term)) {
+                    // lower precision terms are sorted after the full precision ones
+                    break;
+                }
+                distinctTerms++;
+                totalFreq += termsEnum.docFreq();
+                if (totalFreq - lastBound >= step) {
+                    boundList.add(BytesRef.deepCopyOf(term));
+                    cumulatedList.add(totalFreq);
+                    lastBound = totalFreq;
+                    pending = false;
+                    if (boundList.size() == BUCKETS * 2) {
+                        // merge adjacent buckets and double the bucket size
+                        for (int i = 0; i < BUCKETS; i++) {
+                            boundList.set(i, boundList.get(i * 2 + 1));
+                            cumulatedList.set(i, cumulatedList.get(i * 2 + 1));
+                        }
+                        boundList.subList(BUCKETS, boundList.size()).clear();
+                        cumulatedList.subList(BUCKETS, cumulatedList.size()).clear();
+                        step *= 2;
+                    }
+                } else {
+                    lastTerm.copyBytes(term);
+                    pending = true;
+                }
+            }
+            if (pending) {
+                boundList.add(BytesRef.deepCopyOf(lastTerm));
+                cumulatedList.add(totalFreq);
+            }
+        }
+        this.bounds = boundList.toArray(new BytesRef[boundList.size()]);
+        this.cumulated = new long[cumulatedList.size()];
+        for (int i = 0; i < cumulated.length; i++) {
+            cumulated[i] = cumulatedList.get(i);
+        }
+    }
+
+    /**
+     * Compute the statistics for the given field by scanning its terms.
+     *
+     * @param reader the index reader to use
+     * @param version version of the index the reader points to
+     * @param field name of the field
+     * @param numeric true if the field is a numeric field
+     * @return the statistics of the field
+     * @throws IOException if the terms cannot be read
+     */
+    public static FieldStatistics build(final IndexReader reader, final long version, final String field, final boolean numeric) throws IOException {
+        return new FieldStatistics(reader, version, field, numeric);
+    }
+
+    private static boolean isFullPrecision(final BytesRef term) {
+        if (term.length == 0) {
+            return false;
+        }
+        final byte shift = term.bytes[term.offset];
+        return shift == NumericUtils.SHIFT_START_LONG || shift == NumericUtils.SHIFT_START_INT;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getAge() {
+        return System.currentTimeMillis() - created;
+    }
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public long getDistinctTerms() {
+        return distinctTerms;
+    }
+
+    public long getTotalFreq() {
+        return totalFreq;
+    }
+
+    /**
+     * Estimate the number of term occurrences lower than (or equal to) the given key.
+     * Within a bucket, the terms are assumed to be distributed evenly.
+     *
+     * @param key the key to compare to
+     * @param inclusive true if occurrences of key itself should be counted
+     * @return the estimated number of occurrences
+     */
+    public long estimateLessThan(final BytesRef key, final boolean inclusive) {
+        int low = 0;
+        int high = bounds.length - 1;
+        // find the first bucket whose upper bound is >= key
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (bounds[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low == bounds.length) {
+            return totalFreq;
+        }
+        final long before = low == 0 ? 0 : cumulated[low - 1];
+        if (inclusive && bounds[low].equals(key)) {
+            return cumulated[low];
+        }
+        return before + (cumulated[low] - before) / 2;
+    }
+
+    /**
+     * Estimate the number of term occurrences greater than (or equal to) the given key.
+     *
+     * @param key the key to compare to
+     * @param inclusive true if occurrences of key itself should be counted
+     * @return the estimated number of occurrences
+     */
+    public long estimateGreaterThan(final BytesRef key, final boolean inclusive) {
+        return totalFreq - estimateLessThan(key, !inclusive);
+    }
+
+    /**
+     * Estimate the number of term occurrences starting with the given prefix.
+     *
+     * @param prefix the prefix
+     * @return the estimated number of occurrences
+     */
+    public long estimatePrefix(final BytesRef prefix) {
+        final BytesRef upper = BytesRef.deepCopyOf(prefix);
+        upper.append(new BytesRef(new byte[] { (byte) 0xFF }));
+        return Math.max(0, estimateLessThan(upper, true) - estimateLessThan(prefix, false));
+    }
+
+    @Override
+    public String toString() {
+        return "docs: " + docCount + "; distinct terms: " + distinctTerms + "; occurrences: " + totalFreq +
+                "; histogram: " + Arrays.toString(cumulated);
+    }
+}
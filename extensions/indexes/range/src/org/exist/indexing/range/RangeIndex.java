@@ -25,9 +25,29 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.lucene.LuceneIndex;
+import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.util.DatabaseConfigurationException;
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main implementation class for the new range index. This extends the existing LuceneIndex.
@@ -69,13 +89,61 @@ public class RangeIndex extends LuceneIndex {
 
     private static final String DIR_NAME = "range";
 
+    /**
+     * Minimum age in milliseconds of the statistics on a field before they are recomputed
+     * after the index has changed.
+     */
+    private static final long STATISTICS_MAX_AGE = 10000;
+
+    /**
+     * Maximum number of term occurrences of a field whose statistics are computed by the
+     * query asking for them. The statistics of larger fields are computed in the background.
+     */
+    private static final long STATISTICS_SYNC_LIMIT = 100000;
+
     private Analyzer defaultAnalyzer = new KeywordAnalyzer();
 
+    private final Map<StatisticsKey, FieldStatistics> statistics = new ConcurrentHashMap<>();
+
+    /** fields whose statistics are being computed in the background */
+    private final Set<StatisticsKey> pendingStatistics = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService statisticsExecutor = null;
+
+    /**
+     * Maximum number of lookups whose matches are cached per index segment.
+     * 0 disables the cache.
+     */
+    private int filterCacheSize = 0;
+
+    private Map<Query, Filter> filterCache = null;
+
     @Override
     public String getDirName() {
         return DIR_NAME;
     }
 
+    @Override
+    public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
+        super.configure(pool, dataDir, config);
+        String cacheParam = config.getAttribute("filterCache");
+        if (cacheParam != null && cacheParam.length() > 0) {
+            try {
+                filterCacheSize = Math.max(0, Integer.parseInt(cacheParam));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid filter cache size for range index: " + cacheParam, e);
+            }
+        }
+        if (filterCacheSize > 0) {
+            filterCache = new LinkedHashMap<Query, Filter>(filterCacheSize, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Query, Filter> eldest) {
+                    return size() > filterCacheSize;
+                }
+            };
+        }
+    }
+
     @Override
     public IndexWorker getWorker(DBBroker broker) {
         return new RangeIndexWorker(this, broker);
@@ -89,4 +157,147 @@ public class RangeIndex extends LuceneIndex {
     public Analyzer getDefaultAnalyzer() {
         return defaultAnalyzer;
     }
+
+    /**
+     * Get the statistics on the given field. The statistics are computed on first access
+     * and recomputed if the index has changed and they are older than {@link #STATISTICS_MAX_AGE}.
+     * They are thus not exact, but sufficient to estimate the cost of a lookup.
+     *
+     * Only fields with up to {@link #STATISTICS_SYNC_LIMIT} term occurrences are scanned
+     * right away. For larger fields, and to refresh outdated statistics, the terms are
+     * scanned in the background while the caller gets no or the outdated statistics.
+     *
+     * @param reader the reader to compute the statistics from
+     * @param field the field name
+     * @param numeric true if the field is a numeric field
+     * @return the statistics on the field or null if they are not available yet
+     * @throws IOException if the index cannot be read
+     */
+    public FieldStatistics getStatistics(IndexReader reader, String field, boolean numeric) throws IOException {
+        final long version = getVersion(reader);
+        final StatisticsKey key = new StatisticsKey(field, numeric);
+        FieldStatistics stats = statistics.get(key);
+        if (stats == null) {
+            final long occurrences = reader.getSumDocFreq(field);
+            if (occurrences < 0 || occurrences > STATISTICS_SYNC_LIMIT) {
+                computeStatistics(key);
+                return null;
+            }
+            stats = buildStatistics(reader, version, key);
+        } else if (stats.getVersion() != version && stats.getAge() > STATISTICS_MAX_AGE) {
+            computeStatistics(key);
+        }
+        return stats;
+    }
+
+    private static long getVersion(IndexReader reader) {
+        return reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : 0;
+    }
+
+    private FieldStatistics buildStatistics(IndexReader reader, long version, StatisticsKey key) throws IOException {
+        final FieldStatistics stats = FieldStatistics.build(reader, version, key.field, key.numeric);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Statistics for field " + key.field + ": " + stats);
+        }
+        statistics.put(key, stats);
+        return stats;
+    }
+
+    /**
+     * Compute the statistics on a field in the background, unless this is already being done.
+     */
+    private synchronized void computeStatistics(final StatisticsKey key) {
+        if (!pendingStatistics.add(key)) {
+            return;
+        }
+        if (statisticsExecutor == null) {
+            statisticsExecutor = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "exist-range-statistics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        statisticsExecutor.submit(() -> {
+            try {
+                withReader(reader -> buildStatistics(reader, getVersion(reader), key));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Failed to compute statistics for field " + key.field + ": " + e.getMessage(), e);
+            } finally {
+                pendingStatistics.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Wrap the given lookup query into a filter which caches its matches for every segment
+     * of the index, so repeated lookups with the same keys do not need to evaluate the query
+     * again. Segments written after the filter was created are evaluated on first access.
+     * Returns the query unchanged if the filter cache is disabled.
+     *
+     * @param query the lookup query
+     * @return a query using the cached filter
+     */
+    public Query cacheFilter(Query query) {
+        if (filterCache == null) {
+            return query;
+        }
+        Filter filter;
+        synchronized (filterCache) {
+            filter = filterCache.get(query);
+            if (filter == null) {
+                filter = new CachingWrapperFilter(new QueryWrapperFilter(query));
+                filterCache.put(query, filter);
+            }
+        }
+        return new ConstantScoreQuery(filter);
+    }
+
+    @Override
+    public synchronized void close() throws DBException {
+        if (statisticsExecutor != null) {
+            statisticsExecutor.shutdownNow();
+            statisticsExecutor = null;
+        }
+        super.close();
+    }
+
+    @Override
+    public void remove() throws DBException {
+        statistics.clear();
+        if (filterCache != null) {
+            synchronized (filterCache) {
+                filterCache.clear();
+            }
+        }
+        super.remove();
+    }
+
+    /**
+     * Statistics depend on the type of the keys: the terms of numeric fields are
+     * encoded with several precisions, of which only the full precision counts.
+     */
+    private static final class StatisticsKey {
+
+        private final String field;
+        private final boolean numeric;
+
+        private StatisticsKey(String field, boolean numeric) {
+            this.field = field;
+            this.numeric = numeric;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StatisticsKey)) {
+                return false;
+            }
+            final StatisticsKey other = (StatisticsKey) obj;
+            return numeric == other.numeric && field.equals(other.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return field.hashCode() * 31 + (numeric ? 1 : 0);
+        }
+    }
 }
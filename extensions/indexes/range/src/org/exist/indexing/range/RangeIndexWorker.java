@@ -525,6 +525,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 } else {
                     query = toQuery(field, qname, keys[0], operator, docs);
                 }
+                query = index.cacheFilter(query);
 
                 if (contextSet != null && contextSet.hasOne() && contextSet.getItemType() != Type.DOCUMENT) {
                     NodesFilter filter = new NodesFilter(contextSet);
@@ -564,6 +565,8 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             if (clauses.length == 1) {
                 qu = clauses[0].getQuery();
             }
+            // all field conditions are evaluated in one query: cache its matches as a whole
+            qu = index.cacheFilter(qu);
             NodeSet resultSet = NodeSet.EMPTY_SET;
             if (contextSet != null && contextSet.hasOne() && contextSet.getItemType() != Type.DOCUMENT) {
                 NodesFilter filter = new NodesFilter(contextSet);
@@ -577,6 +580,123 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         });
     }
 
+    /**
+     * Estimate the number of nodes a call to {@link #query(int, DocumentSet, NodeSet, List, AtomicValue[], RangeIndex.Operator, int)}
+     * will return, based on the term statistics of the queried fields. The estimate does not take the
+     * document set into account, so it is an upper bound if the index contains other collections.
+     * Range and prefix lookups on fields whose statistics are not available yet are assumed to
+     * select all nodes.
+     */
+    public long estimate(DocumentSet docs, List<QName> qnames, AtomicValue[] keys, RangeIndex.Operator operator) throws IOException, XPathException {
+        final List<QName> definedIndexes = getDefinedIndexes(qnames);
+        return index.withSearcher(searcher -> {
+            long count = 0;
+            for (QName qname : definedIndexes) {
+                String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
+                count += estimate(searcher.getIndexReader(), field, qname, keys, operator, docs);
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Estimate the number of nodes a call to {@link #queryField(int, DocumentSet, NodeSet, Sequence, Sequence[], RangeIndex.Operator[], int)}
+     * will return. All fields have to match, so the estimate for the most selective field is returned.
+     */
+    public long estimateField(DocumentSet docs, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators) throws IOException, XPathException {
+        return index.withSearcher(searcher -> {
+            long count = -1;
+            int j = 0;
+            for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
+                String field = i.nextItem().getStringValue();
+                AtomicValue[] fieldKeys = new AtomicValue[keys[j].getItemCount()];
+                for (int k = 0; k < fieldKeys.length; k++) {
+                    fieldKeys[k] = keys[j].itemAt(k).atomize();
+                }
+                long fieldCount = estimate(searcher.getIndexReader(), field, null, fieldKeys, operators[j], docs);
+                count = count < 0 ? fieldCount : Math.min(count, fieldCount);
+            }
+            return count;
+        });
+    }
+
+    private long estimate(IndexReader reader, String field, QName qname, AtomicValue[] keys, RangeIndex.Operator operator, DocumentSet docs) throws IOException, XPathException {
+        int docCount = reader.getDocCount(field);
+        if (docCount < 0) {
+            docCount = reader.maxDoc();
+        }
+        long count = 0;
+        for (AtomicValue key : keys) {
+            final boolean isString = Type.subTypeOf(key.getType(), Type.STRING);
+            BytesRef bytes;
+            switch (operator) {
+                case EQ:
+                    bytes = isString ? analyzeContent(field, qname, key.getStringValue(), docs) : RangeIndexConfigElement.convertToBytes(key);
+                    count += reader.docFreq(new Term(field, bytes));
+                    break;
+                case NE:
+                    bytes = isString ? analyzeContent(field, qname, key.getStringValue(), docs) : RangeIndexConfigElement.convertToBytes(key);
+                    count += docCount - reader.docFreq(new Term(field, bytes));
+                    break;
+                case STARTS_WITH:
+                    if (!isString) {
+                        count += docCount;
+                        break;
+                    }
+                    final FieldStatistics prefixStats = index.getStatistics(reader, field, false);
+                    if (prefixStats == null) {
+                        count += docCount;
+                        break;
+                    }
+                    bytes = analyzeContent(field, qname, key.getStringValue(), docs);
+                    count += prefixStats.estimatePrefix(bytes);
+                    break;
+                case LT:
+                case LE:
+                case GT:
+                case GE:
+                    final FieldStatistics stats = index.getStatistics(reader, field, isNumeric(key.getType()));
+                    if (stats == null) {
+                        // not computed yet: assume every node may match
+                        count += docCount;
+                        break;
+                    }
+                    bytes = RangeIndexConfigElement.convertToBytes(key);
+                    if (operator == RangeIndex.Operator.LT || operator == RangeIndex.Operator.LE) {
+                        count += stats.estimateLessThan(bytes, operator == RangeIndex.Operator.LE);
+                    } else {
+                        count += stats.estimateGreaterThan(bytes, operator == RangeIndex.Operator.GE);
+                    }
+                    break;
+                default:
+                    // no statistics for substring or regex matches: assume every node may match
+                    count += docCount;
+                    break;
+            }
+        }
+        return Math.min(count, docCount);
+    }
+
+    private static boolean isNumeric(int type) {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+            case Type.DECIMAL:
+            case Type.DOUBLE:
+            case Type.FLOAT:
+            case Type.DATE:
+            case Type.TIME:
+                return true;
+            default:
+                return false;
+        }
+    }
+
 //    private OpenBitSet getDocs(DocumentSet docs, IndexSearcher searcher) throws IOException {
 //        OpenBitSet bits = new OpenBitSet(searcher.getIndexReader().maxDoc());
 //        for (Iterator i = docs.getDocumentIterator(); i.hasNext(); ) {
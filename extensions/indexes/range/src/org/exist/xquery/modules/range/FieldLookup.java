@@ -199,28 +199,8 @@ public class FieldLookup extends Function implements Optimizable {
         preselectResult = null;
 
         Sequence fieldSeq = getArgument(0).eval(contextSequence);
-        RangeIndex.Operator[] operators = null;
-        int j = 1;
-        if (isCalledAs("field")) {
-            Sequence operatorSeq = getArgument(1).eval(contextSequence);
-            operators = new RangeIndex.Operator[operatorSeq.getItemCount()];
-            int i = 0;
-            for (SequenceIterator si = operatorSeq.iterate(); si.hasNext(); i++) {
-                operators[i] = RangeIndexModule.OPERATOR_MAP.get(si.nextItem().getStringValue());
-            }
-            j++;
-        } else {
-            RangeIndex.Operator operator = getOperator();
-            operators = new RangeIndex.Operator[fieldSeq.getItemCount()];
-            for (int i = 0; i < operators.length; i++) {
-                operators[i] = operator;
-            }
-        }
-
-        Sequence[] keys = new Sequence[getArgumentCount() - j];
-        for (int i = j; i < getArgumentCount(); i++) {
-            keys[i - j] = Atomize.atomize(getArgument(i).eval(contextSequence));
-        }
+        RangeIndex.Operator[] operators = getOperators(contextSequence, fieldSeq);
+        Sequence[] keys = getKeys(contextSequence);
         DocumentSet docs = contextSequence.getDocumentSet();
 
         RangeIndexWorker index = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
@@ -265,23 +245,8 @@ public class FieldLookup extends Function implements Optimizable {
                 contextSet = contextSequence.toNodeSet();
 
             Sequence fields = getArgument(0).eval(contextSequence);
-            RangeIndex.Operator[] operators = null;
-            int j = 1;
-            if (isCalledAs("field")) {
-                Sequence operatorSeq = getArgument(1).eval(contextSequence);
-                operators = new RangeIndex.Operator[operatorSeq.getItemCount()];
-                int i = 0;
-                for (SequenceIterator si = operatorSeq.iterate(); si.hasNext(); i++) {
-                    operators[i] = RangeIndexModule.OPERATOR_MAP.get(si.nextItem().getStringValue());
-                }
-                j++;
-            } else {
-                RangeIndex.Operator operator = getOperator();
-                operators = new RangeIndex.Operator[fields.getItemCount()];
-                for (int i = 0; i < operators.length; i++) {
-                    operators[i] = operator;
-                }
-            }
+            RangeIndex.Operator[] operators = getOperators(contextSequence, fields);
+            int j = isCalledAs("field") ? 2 : 1;
             if (operators.length != fields.getItemCount()) {
                 throw new XPathException(this, "Number of operators specified must correspond to number of fields queried");
             }
@@ -327,6 +292,53 @@ public class FieldLookup extends Function implements Optimizable {
         return result;
     }
 
+    @Override
+    public long estimateCount(Sequence contextSequence) throws XPathException {
+        if (contextSequence != null && !contextSequence.isPersistentSet()) {
+            return 0;
+        }
+        Sequence fieldSeq = getArgument(0).eval(contextSequence);
+        RangeIndex.Operator[] operators = getOperators(contextSequence, fieldSeq);
+        Sequence[] keys = getKeys(contextSequence);
+        if (operators.length != fieldSeq.getItemCount() || keys.length < fieldSeq.getItemCount()) {
+            return -1;
+        }
+        RangeIndexWorker index = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+        try {
+            return index.estimateField(contextSequence.getDocumentSet(), fieldSeq, keys, operators);
+        } catch (IOException e) {
+            throw new XPathException(this, "Error while reading range index statistics: " + e.getMessage(), e);
+        }
+    }
+
+    private RangeIndex.Operator[] getOperators(Sequence contextSequence, Sequence fieldSeq) throws XPathException {
+        RangeIndex.Operator[] operators;
+        if (isCalledAs("field")) {
+            Sequence operatorSeq = getArgument(1).eval(contextSequence);
+            operators = new RangeIndex.Operator[operatorSeq.getItemCount()];
+            int i = 0;
+            for (SequenceIterator si = operatorSeq.iterate(); si.hasNext(); i++) {
+                operators[i] = RangeIndexModule.OPERATOR_MAP.get(si.nextItem().getStringValue());
+            }
+        } else {
+            RangeIndex.Operator operator = getOperator();
+            operators = new RangeIndex.Operator[fieldSeq.getItemCount()];
+            for (int i = 0; i < operators.length; i++) {
+                operators[i] = operator;
+            }
+        }
+        return operators;
+    }
+
+    private Sequence[] getKeys(Sequence contextSequence) throws XPathException {
+        int j = isCalledAs("field") ? 2 : 1;
+        Sequence[] keys = new Sequence[getArgumentCount() - j];
+        for (int i = j; i < getArgumentCount(); i++) {
+            keys[i - j] = Atomize.atomize(getArgument(i).eval(contextSequence));
+        }
+        return keys;
+    }
+
     private RangeIndex.Operator getOperator() {
         final String calledAs = getSignature().getName().getLocalPart();
         return RangeIndexModule.OPERATOR_MAP.get(calledAs.substring("field-".length()));
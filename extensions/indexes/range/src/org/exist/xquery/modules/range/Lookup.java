@@ -285,6 +285,31 @@ public class Lookup extends Function implements Optimizable {
         return preselectResult;
     }
 
+    @Override
+    public long estimateCount(Sequence contextSequence) throws XPathException {
+        if (!canOptimize) {
+            return fallback instanceof Optimizable ? ((Optimizable)fallback).estimateCount(contextSequence) : -1;
+        }
+        if (contextSequence != null && !contextSequence.isPersistentSet()) {
+            return 0;
+        }
+        AtomicValue[] keys = getKeys(contextSequence);
+        if (keys.length == 0) {
+            return 0;
+        }
+        List<QName> qnames = null;
+        if (contextQName != null) {
+            qnames = new ArrayList<QName>(1);
+            qnames.add(contextQName);
+        }
+        RangeIndexWorker index = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+        try {
+            return index.estimate(contextSequence.getDocumentSet(), qnames, keys, getOperator());
+        } catch (IOException e) {
+            throw new XPathException(this, "Error while reading range index statistics: " + e.getMessage(), e);
+        }
+    }
+
     private RangeIndex.Operator getOperator() {
         final String calledAs = getSignature().getName().getLocalPart();
         return RangeIndexModule.OPERATOR_MAP.get(calledAs);
@@ -105,7 +105,16 @@ public class OptimizeFieldPragma extends Pragma {
             List<RangeIndexConfig> configs = getConfigurations(contextSequence);
             // walk through the predicates attached to the current location step
             // check if expression can be optimized
+            boolean positional = false;
             for (final Predicate pred : preds) {
+                // predicates following a positional predicate depend on its result and cannot be
+                // merged into the field lookup
+                if (positional || pred.getExecutionMode() == Predicate.POSITIONAL ||
+                        Dependency.dependsOn(pred, Dependency.CONTEXT_POSITION)) {
+                    positional = true;
+                    notOptimizable.add(pred);
+                    continue;
+                }
                 if (pred.getLength() != 1) {
                     // can only optimize predicates with one expression
                     notOptimizable.add(pred);
@@ -1,75 +1,412 @@
 package org.exist.xquery.modules.cache;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.management.AgentFactory;
+import org.exist.util.DatabaseConfigurationException;
 import org.exist.xquery.value.*;
 
 /**
  * Static Global cache model
- * 
+ *
+ * A cache may be bounded by the number of entries and by its weight, which
+ * is the total number of items of the cached sequences. Entries can expire a
+ * given time after they were put into the cache or after they were last read.
+ * The least recently used entries are evicted first.
+ *
+ * The entries are spread over several segments, each with its own lock and
+ * an equal share of the bounds, so the bounds and the LRU order are only
+ * approximate for large caches. Expired entries are removed when they are
+ * read, or when the segment is written to.
+ *
+ * Statistics of every cache are available through JMX, see
+ * {@link CacheStatisticsMBean}.
+ *
  * @author Evgeny Gazdovsky <gazdovsky@gmail.com>
  * @version 1.0
  */
-public class Cache extends HashMap<String, Sequence> {
-	
-	private static final long serialVersionUID = 2560835928124595024L;
-
-	private static HashMap<String, Cache> globalCache = new HashMap<>();
-	
-    public Cache(String name) {
-    	super();
-    	globalCache.put(name, this);
-    }
-    
-	public static Cache getInstance(String name){
-		Cache cache = globalCache.get(name);
-		if (cache == null){
-			cache = new Cache(name);
+public class Cache {
+
+	private final static Logger LOG = LogManager.getLogger(Cache.class);
+
+	private static final ConcurrentHashMap<String, Cache> globalCache = new ConcurrentHashMap<>();
+
+	/** Options used for caches which are created without options */
+	private static volatile Options defaultOptions = new Options();
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/** Minimum number of entries per segment of a bounded cache */
+	private static final int MIN_SEGMENT_SIZE = 8;
+
+	private final String name;
+	private final Options options;
+	private final Segment[] segments;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * Bounds and expiry of a cache. A value of 0 means unbounded or
+	 * never expiring.
+	 */
+	public static class Options {
+		public long maximumSize = 0;
+		public long maximumWeight = 0;
+		/** in milliseconds */
+		public long expireAfterWrite = 0;
+		/** in milliseconds */
+		public long expireAfterAccess = 0;
+	}
+
+	private static class CacheEntry {
+		private final Sequence value;
+		private final int weight;
+		private final long created;
+		private long accessed;
+
+		private CacheEntry(Sequence value, long now) {
+			this.value = value;
+			this.weight = Math.max(1, value.getItemCount());
+			this.created = now;
+			this.accessed = now;
+		}
+	}
+
+	/**
+	 * A part of the cache, ordered from the least to the most recently used
+	 * entry. All access has to be synchronized on the segment.
+	 */
+	private final class Segment extends LinkedHashMap<String, CacheEntry> {
+
+		private static final long serialVersionUID = -3410728163580342095L;
+
+		private final long maximumSize;
+		private final long maximumWeight;
+		private long weight = 0;
+		private long lastSweep = System.currentTimeMillis();
+
+		private Segment(long maximumSize, long maximumWeight) {
+			super(16, 0.75f, true);
+			this.maximumSize = maximumSize;
+			this.maximumWeight = maximumWeight;
+		}
+
+		private Sequence get(String key, long now) {
+			final CacheEntry entry = super.get(key);
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			if (isExpired(entry, now)) {
+				remove(key);
+				expirations.increment();
+				misses.increment();
+				return null;
+			}
+			entry.accessed = now;
+			hits.increment();
+			return entry.value;
+		}
+
+		private Sequence put(String key, Sequence value, long now) {
+			final CacheEntry entry = new CacheEntry(value, now);
+			final CacheEntry old = super.put(key, entry);
+			weight += entry.weight;
+			if (old != null) {
+				weight -= old.weight;
+			}
+			evict(now);
+			return old == null || isExpired(old, now) ? null : old.value;
+		}
+
+		private Sequence remove(String key) {
+			final CacheEntry old = super.remove(key);
+			if (old == null) {
+				return null;
+			}
+			weight -= old.weight;
+			return old.value;
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			weight = 0;
+		}
+
+		private void evict(long now) {
+			if (options.expireAfterWrite > 0 && now - lastSweep >= options.expireAfterWrite) {
+				// entries expire in the order they were written, not in the
+				// order of the segment: check all of them from time to time
+				lastSweep = now;
+				final Iterator<CacheEntry> i = values().iterator();
+				while (i.hasNext()) {
+					final CacheEntry entry = i.next();
+					if (isExpired(entry, now)) {
+						i.remove();
+						weight -= entry.weight;
+						expirations.increment();
+					}
+				}
+			}
+			final Iterator<CacheEntry> i = values().iterator();
+			while (i.hasNext()) {
+				final CacheEntry entry = i.next();
+				if (isExpired(entry, now)) {
+					expirations.increment();
+				} else if ((maximumSize > 0 && size() > maximumSize) || (maximumWeight > 0 && weight > maximumWeight)) {
+					evictions.increment();
+				} else {
+					// the remaining entries were used more recently
+					break;
+				}
+				i.remove();
+				weight -= entry.weight;
+			}
+		}
+	}
+
+	private Cache(String name, Options options) {
+		this.name = name;
+		this.options = options;
+		int count = MAX_SEGMENTS;
+		while (count > 1 && ((options.maximumSize > 0 && options.maximumSize / count < MIN_SEGMENT_SIZE) ||
+				(options.maximumWeight > 0 && options.maximumWeight / count < MIN_SEGMENT_SIZE))) {
+			count >>= 1;
+		}
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(share(options.maximumSize, count), share(options.maximumWeight, count));
+		}
+	}
+
+	private static long share(long maximum, int count) {
+		return (maximum + count - 1) / count;
+	}
+
+	private static Cache newCache(String name, Options options) {
+		final Cache cache = new Cache(name, options);
+		try {
+			AgentFactory.getInstance().addMBean(null, mbeanName(name), new CacheStatistics(name));
+		} catch (final DatabaseConfigurationException e) {
+			LOG.warn("Exception while registering cache mbean.", e);
 		}
 		return cache;
 	}
-	
+
+	private static String mbeanName(String name) {
+		return "org.exist.management:type=Cache,name=" + ObjectName.quote(name);
+	}
+
+	/**
+	 * Drops the cache with the given name and unregisters its statistics
+	 * MBean. The cache is created again when it is next used.
+	 */
+	public static void destroy(String name) {
+		// unregister within the map operation, so a cache created again
+		// concurrently does not lose its new MBean
+		globalCache.computeIfPresent(name, (n, cache) -> {
+			try {
+				AgentFactory.getInstance().removeMBean(mbeanName(n));
+			} catch (final DatabaseConfigurationException e) {
+				LOG.warn("Exception while unregistering cache mbean.", e);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Sets the options for caches which are created without options.
+	 */
+	public static void setDefaultOptions(Options options) {
+		defaultOptions = options;
+	}
+
+	public static Cache getInstance(String name){
+		return globalCache.computeIfAbsent(name, n -> newCache(n, defaultOptions));
+	}
+
+	/**
+	 * Creates a cache with the given options.
+	 *
+	 * @return false if a cache with the given name already existed. Its
+	 * options are not changed.
+	 */
+	public static boolean create(String name, Options options) {
+		final boolean[] created = { false };
+		globalCache.computeIfAbsent(name, n -> {
+			created[0] = true;
+			return newCache(n, options);
+		});
+		return created[0];
+	}
+
+	/**
+	 * @return the cache with the given name or null if there is none
+	 */
+	public static Cache getExisting(String name) {
+		return globalCache.get(name);
+	}
+
+	private Segment segmentFor(String key) {
+		final int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+	}
+
+	private boolean isExpired(CacheEntry entry, long now) {
+		return (options.expireAfterWrite > 0 && now - entry.created >= options.expireAfterWrite) ||
+				(options.expireAfterAccess > 0 && now - entry.accessed >= options.expireAfterAccess);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Options getOptions() {
+		return options;
+	}
+
 	public Sequence put(String key, Sequence value){
-		Sequence v = super.put(key, value); 
+		final Segment segment = segmentFor(key);
+		final Sequence v;
+		synchronized (segment) {
+			v = segment.put(key, value, System.currentTimeMillis());
+		}
 		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
 	}
-	
+
 	public static Sequence put(String name, String key, Sequence value){
 		return getInstance(name).put(key, value);
 	}
-	
+
 	public Sequence get(String key){
-		Sequence v = super.get(key); 
+		final Segment segment = segmentFor(key);
+		final Sequence v;
+		synchronized (segment) {
+			v = segment.get(key, System.currentTimeMillis());
+		}
 		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
 	}
-	
+
 	public static Sequence get(String name, String key){
 		return getInstance(name).get(key);
 	}
 
+	/**
+	 * @return the keys of all entries which have not expired
+	 */
+	public List<String> keys() {
+		final long now = System.currentTimeMillis();
+		final List<String> keys = new ArrayList<>();
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				for (final Map.Entry<String, CacheEntry> entry : segment.entrySet()) {
+					if (!isExpired(entry.getValue(), now)) {
+						keys.add(entry.getKey());
+					}
+				}
+			}
+		}
+		return keys;
+	}
+
     public static Sequence keys(String name) {
         ValueSequence keys = new ValueSequence();
-        for (String key : getInstance(name).keySet()) {
+        for (String key : getInstance(name).keys()) {
             keys.add(new StringValue(key));
         }
         return keys;
     }
 
 	public Sequence remove(String key){
-		Sequence v = super.remove(key); 
+		final Segment segment = segmentFor(key);
+		final Sequence v;
+		synchronized (segment) {
+			v = segment.remove(key);
+		}
 		return (v==null) ? Sequence.EMPTY_SEQUENCE : v;
 	}
-	
+
 	public static Sequence remove(String name, String key){
 		return getInstance(name).remove(key);
 	}
-	
+
+	public void clear() {
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
 	public static void clear(String name){
 		getInstance(name).clear();
 	}
-	
+
 	public static void clearGlobal(){
-		globalCache.clear();
+		for (final String name : globalCache.keySet()) {
+			destroy(name);
+		}
+	}
+
+	/**
+	 * @return the number of entries, including expired ones which were not
+	 * removed yet
+	 */
+	public long size() {
+		long size = 0;
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the total number of items of all cached sequences
+	 */
+	public long weight() {
+		long weight = 0;
+		for (final Segment segment : segments) {
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getExpirationCount() {
+		return expirations.sum();
+	}
+
+	@Override
+	public String toString() {
+		return name;
 	}
-	
 }
@@ -23,11 +23,19 @@ package org.exist.xquery.modules.cache;
 
 import java.util.List;
 import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.xquery.AbstractInternalModule;
 import org.exist.xquery.FunctionDef;
 
 /**
  * XQuery Extension module for store data in global cache
+ *
+ * The bounds and expiry of caches which are not created with
+ * <code>cache:create</code> can be set with the module parameters
+ * {@link #MAXIMUM_SIZE}, {@link #MAXIMUM_WEIGHT}, {@link #EXPIRE_AFTER_WRITE}
+ * and {@link #EXPIRE_AFTER_ACCESS}. By default, caches are unbounded.
  * 
  * @author Evgeny Gazdovsky <gazdovsky@gmail.com>
  * @author ljo
@@ -35,16 +43,31 @@ import org.exist.xquery.FunctionDef;
  */
 public class CacheModule extends AbstractInternalModule {
 
+    private final static Logger LOG = LogManager.getLogger(CacheModule.class);
+
     public final static String NAMESPACE_URI = "http://exist-db.org/xquery/cache";
 
     public final static String PREFIX = "cache";
     public final static String INCLUSION_DATE = "2009-03-04";
     public final static String RELEASED_IN_VERSION = "eXist-1.4";
+
+    /** Maximum number of entries of a cache */
+    public final static String MAXIMUM_SIZE = "maximumSize";
+
+    /** Maximum number of items of all sequences stored in a cache */
+    public final static String MAXIMUM_WEIGHT = "maximumWeight";
+
+    /** Milliseconds after which an entry expires once it was put into a cache */
+    public final static String EXPIRE_AFTER_WRITE = "expireAfterWrite";
+
+    /** Milliseconds after which an entry expires once it was last read or written */
+    public final static String EXPIRE_AFTER_ACCESS = "expireAfterAccess";
         
     private final static FunctionDef[] functions = {
         new FunctionDef(PutFunction.signatures[0], PutFunction.class),
         new FunctionDef(GetFunction.signatures[0], GetFunction.class),
         new FunctionDef(CacheFunction.signatures[0], CacheFunction.class),
+        new FunctionDef(CreateFunction.signature, CreateFunction.class),
         new FunctionDef(ClearFunction.signatures[0], ClearFunction.class),
         new FunctionDef(ClearFunction.signatures[1], ClearFunction.class),
         new FunctionDef(RemoveFunction.signatures[0], RemoveFunction.class),
@@ -53,6 +76,29 @@ public class CacheModule extends AbstractInternalModule {
 
     public CacheModule(Map<String, List<? extends Object>> parameters) {
         super(functions, parameters);
+
+        // parameters are null if the module is not configured in conf.xml
+        final Cache.Options options = new Cache.Options();
+        if (parameters != null) {
+            options.maximumSize = getLongParameter(MAXIMUM_SIZE);
+            options.maximumWeight = getLongParameter(MAXIMUM_WEIGHT);
+            options.expireAfterWrite = getLongParameter(EXPIRE_AFTER_WRITE);
+            options.expireAfterAccess = getLongParameter(EXPIRE_AFTER_ACCESS);
+        }
+        Cache.setDefaultOptions(options);
+    }
+
+    private long getLongParameter(final String name) {
+        final List<? extends Object> values = getParameter(name);
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(values.get(0).toString());
+        } catch (final NumberFormatException e) {
+            LOG.warn("Parameter " + name + " of the cache module has to be an integer: " + values.get(0));
+            return 0;
+        }
     }
 
     @Override
@@ -0,0 +1,118 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.cache;
+
+/**
+ * Reports the statistics of the cache with the given name. The cache is
+ * looked up on every call, as it may be dropped by
+ * {@link Cache#clearGlobal()} and created again.
+ */
+public class CacheStatistics implements CacheStatisticsMBean {
+
+    private final String name;
+
+    public CacheStatistics(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getSize() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public long getWeight() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.weight();
+    }
+
+    @Override
+    public long getMaximumSize() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getOptions().maximumSize;
+    }
+
+    @Override
+    public long getMaximumWeight() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getOptions().maximumWeight;
+    }
+
+    @Override
+    public long getExpireAfterWrite() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getOptions().expireAfterWrite;
+    }
+
+    @Override
+    public long getExpireAfterAccess() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getOptions().expireAfterAccess;
+    }
+
+    @Override
+    public long getHitCount() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        final Cache cache = Cache.getExisting(name);
+        if (cache == null) {
+            return 0.0;
+        }
+        final long hits = cache.getHitCount();
+        final long requests = hits + cache.getMissCount();
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getEvictionCount();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        final Cache cache = Cache.getExisting(name);
+        return cache == null ? 0 : cache.getExpirationCount();
+    }
+
+    @Override
+    public void clear() {
+        final Cache cache = Cache.getExisting(name);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.CollectionTrigger;
+import org.exist.collections.triggers.FilteringTrigger;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.xmldb.XmldbURI;
+
+/**
+ * Clears caches of the cache module whenever a document or collection is
+ * created, changed, copied, moved or removed in the collection the trigger
+ * is configured for, so cached results computed from these documents are not
+ * served after they changed. The caches to clear are given by one or more
+ * parameters '<code>cache</code>':
+ *
+ * <pre>
+ *   &lt;collection xmlns='http://exist-db.org/collection-config/1.0'>
+ *     &lt;triggers>
+ *       &lt;trigger class='org.exist.xquery.modules.cache.CacheTrigger'>
+ *         &lt;parameter name='cache' value='my-cache'/>
+ *       &lt;/trigger>
+ *     &lt;/triggers>
+ *   &lt;/collection>
+ * </pre>
+ */
+public class CacheTrigger extends FilteringTrigger implements CollectionTrigger {
+
+    public final static String CACHE_PARAM = "cache";
+
+    private final List<String> caches = new ArrayList<>();
+
+    @Override
+    public void configure(DBBroker broker, Collection parent, Map<String, List<?>> parameters) throws TriggerException {
+        super.configure(broker, parent, parameters);
+        final List<?> names = parameters.get(CACHE_PARAM);
+        if (names == null || names.isEmpty()) {
+            throw new TriggerException("Parameter '" + CACHE_PARAM + "' is required by " + getClass().getName());
+        }
+        for (final Object name : names) {
+            caches.add(name.toString());
+        }
+    }
+
+    private void invalidate() {
+        for (final String name : caches) {
+            final Cache cache = Cache.getExisting(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    @Override
+    public void beforeCreateDocument(DBBroker broker, Txn txn, XmldbURI uri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterCreateDocument(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeUpdateDocument(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterUpdateDocument(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeUpdateDocumentMetadata(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterUpdateDocumentMetadata(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void beforeCopyDocument(DBBroker broker, Txn txn, DocumentImpl document, XmldbURI newUri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterCopyDocument(DBBroker broker, Txn txn, DocumentImpl document, XmldbURI oldUri) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeMoveDocument(DBBroker broker, Txn txn, DocumentImpl document, XmldbURI newUri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterMoveDocument(DBBroker broker, Txn txn, DocumentImpl document, XmldbURI oldUri) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeDeleteDocument(DBBroker broker, Txn txn, DocumentImpl document) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterDeleteDocument(DBBroker broker, Txn txn, XmldbURI uri) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeCreateCollection(DBBroker broker, Txn txn, XmldbURI uri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterCreateCollection(DBBroker broker, Txn txn, Collection collection) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeCopyCollection(DBBroker broker, Txn txn, Collection collection, XmldbURI newUri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterCopyCollection(DBBroker broker, Txn txn, Collection collection, XmldbURI oldUri) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeMoveCollection(DBBroker broker, Txn txn, Collection collection, XmldbURI newUri) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterMoveCollection(DBBroker broker, Txn txn, Collection collection, XmldbURI oldUri) throws TriggerException {
+        invalidate();
+    }
+
+    @Override
+    public void beforeDeleteCollection(DBBroker broker, Txn txn, Collection collection) throws TriggerException {
+        //Nothing to do
+    }
+
+    @Override
+    public void afterDeleteCollection(DBBroker broker, Txn txn, XmldbURI uri) throws TriggerException {
+        invalidate();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.cache;
+
+import org.exist.dom.QName;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.functions.map.AbstractMapType;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.Type;
+
+/**
+ * Global cache module. Create function
+ */
+public class CreateFunction extends BasicFunction {
+
+    public final static FunctionSignature signature =
+        new FunctionSignature(
+                new QName("create", CacheModule.NAMESPACE_URI, CacheModule.PREFIX),
+                "Create a cache using the specified name and options. The options map may contain the keys '" +
+                CacheModule.MAXIMUM_SIZE + "' (the maximum number of entries), '" +
+                CacheModule.MAXIMUM_WEIGHT + "' (the maximum number of items of all cached sequences), '" +
+                CacheModule.EXPIRE_AFTER_WRITE + "' (milliseconds after which an entry expires once it was put) and '" +
+                CacheModule.EXPIRE_AFTER_ACCESS + "' (milliseconds after which an entry expires once it was last used). " +
+                "Missing keys mean unbounded or never expiring. The least recently used entries are evicted first.",
+                new SequenceType[] {
+                    new FunctionParameterSequenceType("name", Type.STRING, Cardinality.ONE, "The name of the cache to create"),
+                    new FunctionParameterSequenceType("options", Type.MAP, Cardinality.ONE, "The options of the cache")
+                },
+                new FunctionReturnSequenceType(Type.BOOLEAN, Cardinality.ONE, "true if the cache was created, false if a cache with this name already exists. Its options are not changed.")
+        );
+
+    public CreateFunction(XQueryContext context) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(Sequence[] args, Sequence contextSequence) throws XPathException {
+        final String name = args[0].getStringValue();
+        final AbstractMapType map = (AbstractMapType) args[1].itemAt(0);
+
+        final Cache.Options options = new Cache.Options();
+        options.maximumSize = getOption(map, CacheModule.MAXIMUM_SIZE);
+        options.maximumWeight = getOption(map, CacheModule.MAXIMUM_WEIGHT);
+        options.expireAfterWrite = getOption(map, CacheModule.EXPIRE_AFTER_WRITE);
+        options.expireAfterAccess = getOption(map, CacheModule.EXPIRE_AFTER_ACCESS);
+
+        return BooleanValue.valueOf(Cache.create(name, options));
+    }
+
+    private long getOption(final AbstractMapType map, final String key) throws XPathException {
+        final Sequence value = map.get(new StringValue(key));
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        final long l = ((IntegerValue) value.itemAt(0).convertTo(Type.INTEGER)).getLong();
+        if (l < 0) {
+            throw new XPathException(this, "Option " + key + " must not be negative: " + l);
+        }
+        return l;
+    }
+}
@@ -34,10 +34,12 @@ public class ErrorReport
     public final static int      RESOURCE_ACCESS_FAILED = 5;
     public final static int      DOM_INDEX              = 6;
     public final static int      CONFIGURATION_FAILD    = 7;
+    public final static int      PAGE_CORRUPTED         = 8;
 
     public final static String[] ERRCODES               = {
         "ERR_NODE_ID", "ERR_NODE_TYPE", "ERR_NODE_HIERARCHY", "ERR_ACCESS",
-        "ERR_CHILD_COLLECTION", "RESOURCE_ACCESS_FAILED", "ERR_DOM_INDEX"
+        "ERR_CHILD_COLLECTION", "RESOURCE_ACCESS_FAILED", "ERR_DOM_INDEX",
+        "ERR_CONFIGURATION", "ERR_PAGE"
     };
 
     private int                  code;
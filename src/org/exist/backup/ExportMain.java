@@ -54,6 +54,7 @@ public class ExportMain
     private final static int                  ZIP_OPT           = 'z';
     private final static int                  CHECK_DOCS_OPT    = 's';
     private final static int                  VERBOSE_OPT       = 'v';
+    private final static int                  THREADS_OPT       = 't';
 
     private final static CLOptionDescriptor[] OPTIONS           = new CLOptionDescriptor[] {
         new CLOptionDescriptor( "help", CLOptionDescriptor.ARGUMENT_DISALLOWED, HELP_OPT, "print help on command line options and exit." ),
@@ -67,7 +68,9 @@ public class ExportMain
                 "the nodes stored (costs time)" ),
         new CLOptionDescriptor( "zip", CLOptionDescriptor.ARGUMENT_DISALLOWED, ZIP_OPT, "write output to a ZIP instead of a file system directory" ),
         new CLOptionDescriptor( "verbose", CLOptionDescriptor.ARGUMENT_DISALLOWED, VERBOSE_OPT, "print processed resources " +
-                "to stdout" )
+                "to stdout" ),
+        new CLOptionDescriptor( "threads", CLOptionDescriptor.ARGUMENT_REQUIRED, THREADS_OPT, "the number of threads used to serialize " +
+                "documents (use with --export|-x)" )
     };
 
     protected static BrokerPool startDB( String configFile )
@@ -110,6 +113,7 @@ public class ExportMain
         boolean        nocheck      = false;
         boolean        verbose      = false;
         boolean        checkDocs    = false;
+        int            threads      = 1;
         String         exportTarget = "export/";
         String         dbConfig     = null;
 
@@ -170,6 +174,17 @@ public class ExportMain
                     verbose = true;
                     break;
                 }
+
+                case THREADS_OPT: {
+                    try {
+                        threads = Integer.parseInt( option.getArgument() );
+                    }
+                    catch( final NumberFormatException e ) {
+                        System.err.println( "ERROR: threads has to be an integer: " + option.getArgument() );
+                        return;
+                    }
+                    break;
+                }
             }
         }
 
@@ -202,6 +217,7 @@ public class ExportMain
                     dir.mkdirs();
                 }
                 final SystemExport sysexport = new SystemExport( broker, new Callback(verbose), null, direct );
+                sysexport.setThreads( threads );
                 sysexport.export( exportTarget, incremental, zip, errors );
             }
         }
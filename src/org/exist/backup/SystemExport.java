@@ -38,7 +38,9 @@ import org.exist.management.AgentFactory;
 import org.exist.security.ACLPermission;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
 import org.exist.security.internal.AccountImpl;
+import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.DataBackup;
 import org.exist.storage.NativeBroker;
@@ -73,9 +75,16 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -104,6 +113,9 @@ public class SystemExport
 
     private static final int        currVersion             = 1;
 
+    /** documents with more pages are serialized to a temporary file instead of memory by worker threads */
+    private static final int        MAX_BUFFERED_PAGES      = 256;
+
     private final SimpleDateFormat creationDateFormat = new SimpleDateFormat(DataBackup.DATE_FORMAT_PICTURE);
 
     private int                     collectionCount         = -1;
@@ -117,6 +129,8 @@ public class SystemExport
     private boolean                 directAccess            = false;
     private ProcessMonitor.Monitor  monitor                 = null;
     private BackupHandler bh = null;
+    private int                     threads                 = 1;
+    private ExecutorService         executor                = null;
 
     {
         defaultOutputProperties.setProperty( OutputKeys.INDENT, "no" );
@@ -140,6 +154,18 @@ public class SystemExport
     	bh = broker.getDatabase().getPluginsManager().getBackupHandler(LOG);
     }
 
+    /**
+     * Set the number of threads used to serialize XML documents. With more than one thread,
+     * documents are serialized by worker threads, each using a broker of its own, while the
+     * calling thread writes them to the backup in their original order.
+     *
+     * @param  threads  the number of threads, 1 to serialize all documents in the calling thread
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+    }
+
     public Path export( String targetDir, boolean incremental, boolean zip, List<ErrorReport> errorList )
     {
         return( export( targetDir, incremental, -1, zip, errorList ) );
@@ -219,6 +245,13 @@ public class SystemExport
                 fWriter = p -> new FileSystemWriter(p);
             }
 
+            // do not wait for brokers in use by others
+            final BrokerPool pool = broker.getBrokerPool();
+            final int workers = Math.min( threads, pool.getMax() - pool.countActiveBrokers() );
+            if( workers > 1 ) {
+                executor = Executors.newFixedThreadPool( workers, new ExportThreadFactory() );
+            }
+
             try(final BackupWriter output = fWriter.apply(backupFile)) {
                 output.setProperties(properties);
 
@@ -231,6 +264,11 @@ public class SystemExport
                 broker.getCollectionsFailsafe(cb);
 
                 exportOrphans(output, cb.getDocs(), errorList);
+            } finally {
+                if( executor != null ) {
+                    executor.shutdownNow();
+                    executor = null;
+                }
             }
 
             return backupFile;
@@ -418,19 +456,36 @@ public class SystemExport
             final int docsCount = current.getDocumentCountNoLock(broker);
             int count     = 0;
 
-            for( final Iterator<DocumentImpl> i = current.iteratorNoLock( broker ); i.hasNext(); count++ ) {
-                final DocumentImpl doc = i.next();
+            // documents being serialized by worker threads, in the order they are written
+            final Deque<PendingDocument> pending = new ArrayDeque<PendingDocument>();
+            try {
+                for( final Iterator<DocumentImpl> i = current.iteratorNoLock( broker ); i.hasNext(); count++ ) {
+                    final DocumentImpl doc = i.next();
 
-                if( isDamaged( doc, errorList ) ) {
-                    reportError( "Skipping damaged document " + doc.getFileURI(), null );
-                    continue;
-                }
+                    if( isDamaged( doc, errorList ) ) {
+                        reportError( "Skipping damaged document " + doc.getFileURI(), null );
+                        continue;
+                    }
 
-                if( doc.getFileURI().equalsInternal( CONTENTS_URI ) || doc.getFileURI().equalsInternal( LOST_URI ) ) {
-                    continue; // skip __contents__.xml documents
+                    if( doc.getFileURI().equalsInternal( CONTENTS_URI ) || doc.getFileURI().equalsInternal( LOST_URI ) ) {
+                        continue; // skip __contents__.xml documents
+                    }
+                    pending.add( new PendingDocument( doc, count, serializeAsync( doc, date, prevBackup ) ) );
+                    if( pending.size() > threads * 2 ) {
+                        final PendingDocument next = pending.poll();
+                        exportDocument( bh, output, date, prevBackup, serializer, docsCount, next.count, next.doc, next.serialized );
+                    }
+                    docs.add( doc, false );
+                }
+                while( !pending.isEmpty() ) {
+                    final PendingDocument next = pending.poll();
+                    exportDocument( bh, output, date, prevBackup, serializer, docsCount, next.count, next.doc, next.serialized );
+                }
+            } finally {
+                // export was aborted: drop the remaining documents
+                for( final PendingDocument next : pending ) {
+                    next.discard();
                 }
-                exportDocument( bh, output, date, prevBackup, serializer, docsCount, count, doc );
-                docs.add( doc, false );
             }
 
             for( final Iterator<XmldbURI> i = current.collectionIteratorNoLock(broker); i.hasNext(); ) {
@@ -481,7 +536,57 @@ public class SystemExport
     }
 
 
-    private void exportDocument( BackupHandler bh, BackupWriter output, Date date, BackupDescriptor prevBackup, SAXSerializer serializer, int docsCount, int count, DocumentImpl doc ) throws IOException, SAXException, TerminatedException
+    /**
+     * Check if the document has to be written to the backup: always for a full backup, and
+     * if it was modified after the previous backup for an incremental one.
+     */
+    private static boolean needsBackup( DocumentImpl doc, Date date, BackupDescriptor prevBackup )
+    {
+        return( ( prevBackup == null ) || ( date.getTime() < doc.getMetadata().getLastModified() ) );
+    }
+
+    /**
+     * Start serializing an XML document on a worker thread.
+     *
+     * @return  the pending serialization, or null if the document has to be written by the calling thread
+     */
+    private Future<SerializedDocument> serializeAsync( final DocumentImpl doc, Date date, BackupDescriptor prevBackup )
+    {
+        if( ( executor == null ) || ( doc.getResourceType() == DocumentImpl.BINARY_FILE ) || !needsBackup( doc, date, prevBackup ) ) {
+            return( null );
+        }
+        // the collection store stays locked by the calling thread during the export: load
+        // the document metadata here, so worker threads only need to read the dom store
+        final boolean    large   = doc.getMetadata().getPageCount() > MAX_BUFFERED_PAGES;
+        final BrokerPool pool    = broker.getBrokerPool();
+        final Subject    subject = broker.getCurrentSubject();
+        return( executor.submit( () -> {
+            final SerializedDocument serialized = new SerializedDocument( large );
+            try( final DBBroker workerBroker = pool.get( Optional.of( subject ) );
+                 final OutputStream os = serialized.getOutputStream() ) {
+                serializeXML( workerBroker, doc, os );
+            }
+            catch( final Exception e ) {
+                serialized.discard();
+                throw( e );
+            }
+            return( serialized );
+        } ) );
+    }
+
+    private void serializeXML( DBBroker broker, DocumentImpl doc, OutputStream os ) throws IOException
+    {
+        final BufferedWriter writer            = new BufferedWriter( new OutputStreamWriter( os, "UTF-8" ) );
+
+        // write resource to contentSerializer
+        final SAXSerializer  contentSerializer = (SAXSerializer)SerializerPool.getInstance().borrowObject( SAXSerializer.class );
+        contentSerializer.setOutput( writer, defaultOutputProperties );
+        writeXML( broker, doc, contentSerializer );
+        SerializerPool.getInstance().returnObject( contentSerializer );
+        writer.flush();
+    }
+
+    private void exportDocument( BackupHandler bh, BackupWriter output, Date date, BackupDescriptor prevBackup, SAXSerializer serializer, int docsCount, int count, DocumentImpl doc, Future<SerializedDocument> serialized ) throws IOException, SAXException, TerminatedException
     {
         if( callback != null ) {
             callback.startDocument( doc.getFileURI().toString(), count, docsCount );
@@ -490,26 +595,35 @@ public class SystemExport
         if( ( monitor != null ) && !monitor.proceed() ) {
             throw( new TerminatedException( "system export terminated by db" ) );
         }
-        final boolean needsBackup = ( prevBackup == null ) || ( date.getTime() < doc.getMetadata().getLastModified() );
+        final boolean needsBackup = needsBackup( doc, date, prevBackup );
 
         if( needsBackup ) {
             final OutputStream os = output.newEntry( Backup.encode( URIUtils.urlDecodeUtf8( doc.getFileURI() ) ) );
 
             try {
 
-                if( doc.getResourceType() == DocumentImpl.BINARY_FILE ) {
+                if( serialized != null ) {
+                    final SerializedDocument content;
+                    try {
+                        content = serialized.get();
+                    }
+                    catch( final ExecutionException e ) {
+                        throw( new IOException( e.getCause().getMessage(), e.getCause() ) );
+                    }
+                    catch( final InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                        throw( new TerminatedException( "system export interrupted" ) );
+                    }
+                    content.writeTo( os );
+                } else if( doc.getResourceType() == DocumentImpl.BINARY_FILE ) {
                     broker.readBinaryResource( (BinaryDocument)doc, os );
                 } else {
-                    final BufferedWriter writer            = new BufferedWriter( new OutputStreamWriter( os, "UTF-8" ) );
-
-                    // write resource to contentSerializer
-                    final SAXSerializer  contentSerializer = (SAXSerializer)SerializerPool.getInstance().borrowObject( SAXSerializer.class );
-                    contentSerializer.setOutput( writer, defaultOutputProperties );
-                    writeXML( doc, contentSerializer );
-                    SerializerPool.getInstance().returnObject( contentSerializer );
-                    writer.flush();
+                    serializeXML( broker, doc, os );
                 }
             }
+            catch( final TerminatedException e ) {
+                throw( e );
+            }
             catch( final Exception e ) {
                 reportError( "A write error occurred while exporting document: '" + doc.getFileURI() + "'. Continuing with next document.", e );
                 return;
@@ -599,10 +713,11 @@ public class SystemExport
     /**
      * Serialize a document to XML, based on {@link XMLStreamReader}.
      *
+     * @param  broker    the broker to read the document with
      * @param  doc       the document to serialize
      * @param  receiver  the output handler
      */
-    private void writeXML( DocumentImpl doc, Receiver receiver )
+    private void writeXML( DBBroker broker, DocumentImpl doc, Receiver receiver )
     {
         try {
             XMLStreamReader   reader;
@@ -725,6 +840,96 @@ public class SystemExport
         return( collectionCount );
     }
 
+    /**
+     * A document scheduled for export. If serialized is not null, the document content is
+     * being serialized by a worker thread.
+     */
+    private static class PendingDocument
+    {
+        private final DocumentImpl               doc;
+        private final int                        count;
+        private final Future<SerializedDocument> serialized;
+
+        private PendingDocument( DocumentImpl doc, int count, Future<SerializedDocument> serialized )
+        {
+            this.doc        = doc;
+            this.count      = count;
+            this.serialized = serialized;
+        }
+
+        private void discard()
+        {
+            if( ( serialized != null ) && !serialized.cancel( true ) ) {
+                try {
+                    serialized.get().discard();
+                }
+                catch( final Exception e ) {
+                    // serialization failed or was cancelled: nothing to clean up
+                }
+            }
+        }
+    }
+
+    /**
+     * The serialized content of a document, kept in memory or in a temporary file
+     * for large documents.
+     */
+    private static class SerializedDocument
+    {
+        private ByteArrayOutputStream buffer = null;
+        private Path                  file   = null;
+
+        private SerializedDocument( boolean large ) throws IOException
+        {
+            if( large ) {
+                file = Files.createTempFile( "exist-export", ".xml" );
+            } else {
+                buffer = new ByteArrayOutputStream();
+            }
+        }
+
+        private OutputStream getOutputStream() throws IOException
+        {
+            return( ( file == null ) ? buffer : Files.newOutputStream( file ) );
+        }
+
+        private void writeTo( OutputStream os ) throws IOException
+        {
+            try {
+                if( file == null ) {
+                    buffer.writeTo( os );
+                } else {
+                    Files.copy( file, os );
+                }
+            }
+            finally {
+                discard();
+            }
+        }
+
+        private void discard()
+        {
+            buffer = null;
+            if( file != null ) {
+                FileUtils.deleteQuietly( file );
+                file = null;
+            }
+        }
+    }
+
+    private static class ExportThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger id = new AtomicInteger();
+
+        @Override
+        public Thread newThread( final Runnable r )
+        {
+            final Thread thread = new Thread( r, "exist-export-" + id.getAndIncrement() );
+            thread.setDaemon( true );
+            return( thread );
+        }
+    }
+
     public static interface StatusCallback
     {
         void startCollection( String path ) throws TerminatedException;
@@ -865,7 +1070,7 @@ public class SystemExport
                         doc.setFileURI( XmldbURI.createInternal( fileURI ) );
                         writtenDocs.add( fileURI );
                     }
-                    exportDocument( bh, output, date, prevBackup, serializer, 0, 0, doc );
+                    exportDocument( bh, output, date, prevBackup, serializer, 0, 0, doc, null );
                 }
                 catch( final Exception e ) {
                     reportError( "Caught an exception while scanning documents: " + e.getMessage(), e );
@@ -247,11 +247,29 @@ public class ExtArrayNodeSet extends AbstractArrayNodeSet implements DocumentSet
             final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
         sort();
         final NodeSet result = new ExtArrayNodeSet();
-        Part part;
+        // merge join: the ancestors are sorted, so the position of the previous
+        // ancestor within the part is a lower bound for the next one
+        Part part = null;
+        int lastDocId = DocumentImpl.UNKNOWN_DOCUMENT_ID;
+        int cursor = 0;
+        NodeId lastId = null;
         for(final NodeProxy node : al) {
-            part = getPart(node.getOwnerDocument(), false, 0);
+            final int docId = node.getOwnerDocument().getDocId();
+            if(docId != lastDocId) {
+                part = getPart(node.getOwnerDocument(), false, 0);
+                lastDocId = docId;
+                lastId = null;
+                cursor = 0;
+            }
             if(part != null) {
-                part.getDescendantsInSet(result, node, childOnly, includeSelf, mode, contextId, copyMatches);
+                final NodeId parentId = node.getNodeId();
+                if(parentId != NodeId.DOCUMENT_NODE) {
+                    if(lastId != null && parentId.compareTo(lastId) < 0) {
+                        cursor = 0;
+                    }
+                    lastId = parentId;
+                }
+                cursor = part.getDescendantsInSet(cursor, result, node, childOnly, includeSelf, mode, contextId, copyMatches);
             }
         }
         return result;
@@ -733,34 +751,38 @@ public class ExtArrayNodeSet extends AbstractArrayNodeSet implements DocumentSet
             return null;
         }
 
-        NodeProxy hasDescendantsInSet(final NodeId ancestorId, final int contextId, final boolean includeSelf) {
-            // do a binary search to pick some node in the range
-            // of valid child ids
-            int low = 0;
-            int high = length - 1;
-            int mid = 0;
-            int cmp;
-            NodeId id;
-            while(low <= high) {
-                mid = (low + high) / 2;
-                id = array[mid].getNodeId();
-                if(id.isDescendantOrSelfOf(ancestorId)) {
-                    break; // found a child node, break out.
-                }
-                cmp = id.compareTo(ancestorId);
-                if(cmp > 0) {
-                    high = mid - 1;
+        /**
+         * Returns the position of the first node at or after <code>from</code> which
+         * does not precede the given node id in document order, or the length of the
+         * part if there is none. Gallops from <code>from</code> before switching to a
+         * binary search.
+         */
+        int lowerBound(int from, final NodeId nodeId) {
+            int step = 1;
+            int high = from;
+            while(high < length && array[high].getNodeId().compareTo(nodeId) < 0) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, length);
+            while(from < high) {
+                final int mid = (from + high) >>> 1;
+                if(array[mid].getNodeId().compareTo(nodeId) < 0) {
+                    from = mid + 1;
                 } else {
-                    low = mid + 1;
+                    high = mid;
                 }
             }
-            if(low > high) {
+            return from;
+        }
+
+        NodeProxy hasDescendantsInSet(final NodeId ancestorId, final int contextId, final boolean includeSelf) {
+            final int mid = lowerBound(0, ancestorId);
+            if(mid == length || !array[mid].getNodeId().isDescendantOrSelfOf(ancestorId)) {
                 return null; // no node found
             }
-            // find the first child node in the range
-            while(mid > 0 && array[mid - 1].getNodeId().compareTo(ancestorId) >= 0) {
-                --mid;
-            }
+            int cmp;
             final NodeProxy ancestor = new NodeProxy(getOwnerDocument(), ancestorId, Node.ELEMENT_NODE);
             // we need to check if self should be included
             boolean foundOne = false;
@@ -791,14 +813,18 @@ public class ExtArrayNodeSet extends AbstractArrayNodeSet implements DocumentSet
          * Find all nodes in the current set being children or descendants of
          * the given parent node.
          *
+         * @param from        position to start the search at. All nodes before it
+         *                    precede the parent node.
          * @param result      the node set to which matching nodes will be appended.
          * @param parent      the parent node to search for.
          * @param childOnly   only include child nodes, not descendant nodes
          * @param includeSelf include the self:: axis
          * @param mode
          * @param contextId
+         * @return the position of the first node which does not precede the
+         *         parent node, to be used as start position for the next parent
          */
-        NodeSet getDescendantsInSet(final NodeSet result, final NodeProxy parent, final boolean childOnly,
+        int getDescendantsInSet(final int from, final NodeSet result, final NodeProxy parent, final boolean childOnly,
                 final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
 
             final NodeId parentId = parent.getNodeId();
@@ -842,33 +868,10 @@ public class ExtArrayNodeSet extends AbstractArrayNodeSet implements DocumentSet
                         }
                     }
                 }
+                return from;
             } else {
-                // do a binary search to pick some node in the range of valid
-                // child ids
-                int low = 0;
-                int high = length - 1;
-                int mid = 0;
+                final int mid = lowerBound(from, parentId);
                 int cmp;
-                while(low <= high) {
-                    mid = (low + high) / 2;
-                    final NodeProxy p = array[mid];
-                    if(p.getNodeId().isDescendantOrSelfOf(parentId)) {
-                        break;    // found a child node, break out.
-                    }
-                    cmp = p.getNodeId().compareTo(parentId);
-                    if(cmp > 0) {
-                        high = mid - 1;
-                    } else {
-                        low = mid + 1;
-                    }
-                }
-                if(low > high) {
-                    return result; // no node found
-                }
-                // find the first child node in the range
-                while(mid > 0 && array[mid - 1].getNodeId().compareTo(parentId) > -1) {
-                    --mid;
-                }
                 // walk through the range of child nodes we found
                 for(int i = mid; i < length; i++) {
                     cmp = array[i].getNodeId().computeRelation(parentId);
@@ -908,8 +911,8 @@ public class ExtArrayNodeSet extends AbstractArrayNodeSet implements DocumentSet
                         break;
                     }
                 }
+                return mid;
             }
-            return result;
         }
 
         /**
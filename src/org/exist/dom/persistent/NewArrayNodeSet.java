@@ -238,26 +238,108 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
         return null;
     }
 
+    /**
+     * Structural join of this set (the descendants) with the given set of
+     * ancestors. Both sets are sorted in document order, so the join is done
+     * as a merge: for each document, a cursor into this set is advanced from
+     * one ancestor to the next instead of searching the whole document range
+     * again. The cursor is only reset if an ancestor precedes the previous one,
+     * i.e. if the ancestor set is not sorted.
+     */
     @Override
     protected final NodeSet getDescendantsInSet(final NodeSet al, final boolean childOnly,
             final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
         sort();
         final NodeSet result = new NewArrayNodeSet();
-        int docIdx;
+        int lastDocId = DocumentImpl.UNKNOWN_DOCUMENT_ID;
+        int docIdx = -1;
+        int cursor = 0;
+        NodeId lastId = null;
         for(final NodeProxy node : al) {
-            docIdx = findDoc(node.getOwnerDocument());
-            if(docIdx > -1) {
-                getDescendantsInSet(docIdx, result, node, childOnly, includeSelf,
+            final int docId = node.getOwnerDocument().getDocId();
+            if(docId != lastDocId) {
+                docIdx = findDoc(docId);
+                lastDocId = docId;
+                lastId = null;
+                if(docIdx > -1) {
+                    cursor = documentOffsets[docIdx];
+                }
+            }
+            if(docIdx < 0) {
+                continue;
+            }
+            final NodeId parentId = node.getNodeId();
+            if(parentId == NodeId.DOCUMENT_NODE) {
+                getDocumentDescendantsInSet(docIdx, result, node, childOnly, includeSelf,
                     mode, contextId, copyMatches);
+                continue;
             }
+            if(lastId != null && parentId.compareTo(lastId) < 0) {
+                cursor = documentOffsets[docIdx];
+            }
+            final int end = documentOffsets[docIdx] + documentLengths[docIdx];
+            cursor = lowerBound(cursor, end, parentId);
+            getDescendantsInSet(cursor, end, result, node, childOnly, includeSelf,
+                mode, contextId, copyMatches);
+            lastId = parentId;
         }
         return result;
     }
 
+    /**
+     * Returns the position of the first node in the range [from, end) which does not
+     * precede the given node id in document order, or end if there is none. The
+     * search gallops from <code>from</code> before switching to a binary search,
+     * so the cost depends on the distance to the result, not on the size of the range.
+     */
+    private int lowerBound(int from, final int end, final NodeId nodeId) {
+        int step = 1;
+        int high = from;
+        while(high < end && nodes[high].getNodeId().compareTo(nodeId) < 0) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, end);
+        while(from < high) {
+            final int mid = (from + high) >>> 1;
+            if(nodes[mid].getNodeId().compareTo(nodeId) < 0) {
+                from = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Find all nodes in the given document which are children or descendants
+     * of the document node <code>parent</code>.
+     */
+    private void getDocumentDescendantsInSet(final int docIdx, final NodeSet result, final NodeProxy parent,
+            final boolean childOnly, final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
+        final int end = documentOffsets[docIdx] + documentLengths[docIdx];
+        for(int i = documentOffsets[docIdx]; i < end; i++) {
+            boolean add;
+            if(childOnly) {
+                add = nodes[i].getNodeId().getTreeLevel() == 1;
+            } else if(includeSelf) {
+                add = true;
+            } else {
+                add = nodes[i].getNodeId() != NodeId.DOCUMENT_NODE;
+            }
+            if(add) {
+                addDescendant(result, parent, nodes[i], mode, contextId, copyMatches);
+            }
+        }
+    }
+
     /**
      * Find all nodes in the current set being children or descendants of
      * the given parent node.
      *
+     * @param start       position of the first node which does not precede the parent node.
+     * @param end         end of the range of nodes belonging to the parent's document.
      * @param result      the node set to which matching nodes will be appended.
      * @param parent      the parent node to search for.
      * @param childOnly   only include child nodes, not descendant nodes
@@ -265,119 +347,53 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
      * @param mode
      * @param contextId
      */
-    private NodeSet getDescendantsInSet(final int docIdx, final NodeSet result, final NodeProxy parent,
+    private void getDescendantsInSet(final int start, final int end, final NodeSet result, final NodeProxy parent,
             final boolean childOnly, final boolean includeSelf, final int mode, final int contextId, final boolean copyMatches) {
-        NodeProxy p;
         final NodeId parentId = parent.getNodeId();
-        // document nodes are treated specially
-        if(parentId == NodeId.DOCUMENT_NODE) {
-            final int end = documentOffsets[docIdx] + documentLengths[docIdx];
-            for(int i = documentOffsets[docIdx]; i < end; i++) {
-                boolean add;
-                if(childOnly) {
-                    add = nodes[i].getNodeId().getTreeLevel() == 1;
-                } else if(includeSelf) {
-                    add = true;
+        // walk through the range of descendant nodes
+        for(int i = start; i < end; i++) {
+            final int cmp = nodes[i].getNodeId().computeRelation(parentId);
+            if(cmp < 0) {
+                break;
+            }
+            boolean add = true;
+            if(childOnly) {
+                add = cmp == NodeId.IS_CHILD;
+            } else if(cmp == NodeId.IS_SELF) {
+                add = includeSelf;
+            }
+            if(add) {
+                addDescendant(result, parent, nodes[i], mode, contextId, copyMatches);
+            }
+        }
+    }
+
+    private static void addDescendant(final NodeSet result, final NodeProxy parent, final NodeProxy node,
+            final int mode, final int contextId, final boolean copyMatches) {
+        switch(mode) {
+            case NodeSet.DESCENDANT:
+                if(Expression.NO_CONTEXT_ID != contextId) {
+                    node.deepCopyContext(parent, contextId);
                 } else {
-                    add = nodes[i].getNodeId() != NodeId.DOCUMENT_NODE;
+                    node.copyContext(parent);
                 }
-                if(add) {
-                    switch(mode) {
-                        case NodeSet.DESCENDANT:
-                            if(Expression.NO_CONTEXT_ID != contextId) {
-                                nodes[i].deepCopyContext(parent, contextId);
-                            } else {
-                                nodes[i].copyContext(parent);
-                            }
-                            if(copyMatches) {
-                                nodes[i].addMatches(parent);
-                            }
-                            result.add(nodes[i]);
-                            break;
-                        case NodeSet.ANCESTOR:
-                            if(Expression.NO_CONTEXT_ID != contextId) {
-                                parent.deepCopyContext(nodes[i], contextId);
-                            } else {
-                                parent.copyContext(nodes[i]);
-                            }
-                            if(copyMatches) {
-                                parent.addMatches(nodes[i]);
-                            }
-                            result.add(parent, 1);
-                            break;
-                    }
+                if(copyMatches) {
+                    node.addMatches(parent);
                 }
-            }
-        } else {
-            // do a binary search to pick some node in the range of valid
-            // child ids
-            int low = documentOffsets[docIdx];
-            int high = low + (documentLengths[docIdx] - 1);
-            final int end = low + documentLengths[docIdx];
-            int mid = low;
-            int cmp;
-            while(low <= high) {
-                mid = (low + high) / 2;
-                p = nodes[mid];
-                if(p.getNodeId().isDescendantOrSelfOf(parentId)) {
-                    break;    // found a child node, break out.
-                }
-                cmp = p.getNodeId().compareTo(parentId);
-                if(cmp > 0) {
-                    high = mid - 1;
+                result.add(node);
+                break;
+            case NodeSet.ANCESTOR:
+                if(Expression.NO_CONTEXT_ID != contextId) {
+                    parent.deepCopyContext(node, contextId);
                 } else {
-                    low = mid + 1;
+                    parent.copyContext(node);
                 }
-            }
-            if(low > high) {
-                return result; // no node found
-            }
-            // find the first child node in the range
-            while(mid > documentOffsets[docIdx] && nodes[mid - 1].getNodeId().compareTo(parentId) > -1) {
-                --mid;
-            }
-            // walk through the range of child nodes we found
-            for(int i = mid; i < end; i++) {
-                cmp = nodes[i].getNodeId().computeRelation(parentId);
-                if(cmp > -1) {
-                    boolean add = true;
-                    if(childOnly) {
-                        add = cmp == NodeId.IS_CHILD;
-                    } else if(cmp == NodeId.IS_SELF) {
-                        add = includeSelf;
-                    }
-                    if(add) {
-                        switch(mode) {
-                            case NodeSet.DESCENDANT:
-                                if(Expression.NO_CONTEXT_ID != contextId) {
-                                    nodes[i].deepCopyContext(parent, contextId);
-                                } else {
-                                    nodes[i].copyContext(parent);
-                                }
-                                if(copyMatches) {
-                                    nodes[i].addMatches(parent);
-                                }
-                                result.add(nodes[i]);
-                                break;
-                            case NodeSet.ANCESTOR:
-                                if(Expression.NO_CONTEXT_ID != contextId) {
-                                    parent.deepCopyContext(nodes[i], contextId);
-                                } else {
-                                    parent.copyContext(nodes[i]);
-                                }
-                                if(copyMatches) {
-                                    parent.addMatches(nodes[i]);
-                                }
-                                result.add(parent, 1);
-                                break;
-                        }
-                    }
-                } else {
-                    break;
+                if(copyMatches) {
+                    parent.addMatches(node);
                 }
-            }
+                result.add(parent, 1);
+                break;
         }
-        return result;
     }
 
     @Override
@@ -401,39 +417,17 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
      */
     private NodeProxy hasDescendantsInSet(final int docIdx, final NodeId ancestorId,
             final int contextId, final boolean includeSelf, final boolean copyMatches) {
-        // do a binary search to pick some node in the range of valid child ids
-        int low = documentOffsets[docIdx];
-        int high = low + (documentLengths[docIdx] - 1);
-        final int end = low + documentLengths[docIdx];
-        int mid = 0;
-        int cmp;
-        NodeId id;
-        while(low <= high) {
-            mid = (low + high) / 2;
-            id = nodes[mid].getNodeId();
-            if(id.isDescendantOrSelfOf(ancestorId)) {
-                break; // found a child node, break out.
-            }
-            cmp = id.compareTo(ancestorId);
-            if(cmp > 0) {
-                high = mid - 1;
-            } else {
-                low = mid + 1;
-            }
-        }
-        if(low > high) {
+        final int end = documentOffsets[docIdx] + documentLengths[docIdx];
+        final int start = lowerBound(documentOffsets[docIdx], end, ancestorId);
+        if(start == end || !nodes[start].getNodeId().isDescendantOrSelfOf(ancestorId)) {
             return null; // no node found
         }
-        // find the first child node in the range
-        while(mid > documentOffsets[docIdx] && nodes[mid - 1].getNodeId().compareTo(ancestorId) >= 0) {
-            --mid;
-        }
         final NodeProxy ancestor = new NodeProxy(nodes[documentOffsets[docIdx]].getOwnerDocument(),
             ancestorId, Node.ELEMENT_NODE);
         // we need to check if self should be included
         boolean foundOne = false;
-        for(int i = mid; i < end; i++) {
-            cmp = nodes[i].getNodeId().computeRelation(ancestorId);
+        for(int i = start; i < end; i++) {
+            final int cmp = nodes[i].getNodeId().computeRelation(ancestorId);
             if(cmp > -1) {
                 boolean add = true;
                 if(cmp == NodeId.IS_SELF) {
@@ -21,6 +21,7 @@
  */
 package org.exist.http;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -101,6 +102,9 @@ import org.exist.xmldb.XmldbURI;
 import org.exist.xqj.Marshaller;
 import org.exist.xquery.CompiledXQuery;
 import org.exist.xquery.Constants;
+import org.exist.xquery.ErrorCodes;
+import org.exist.xquery.Expression;
+import org.exist.xquery.ForExpr;
 import org.exist.xquery.NameTest;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQuery;
@@ -247,6 +251,10 @@ public class RESTServer {
      * <li>_xsl: an URI pointing to an XSL stylesheet that will be applied to
      * the returned XML.</li>
      *
+     * <li>_stream: if set to "yes" and the results are not wrapped, the items
+     * returned by a top-level "for" expression are written to the response as
+     * soon as they are available.</li>
+     *
      * @param broker
      * @param request
      * @param response
@@ -338,6 +346,9 @@ public class RESTServer {
         if ((option = getParameter(request, Cache)) != null) {
             cache = "yes".equals(option);
         }
+        if ((option = getParameter(request, Stream)) != null) {
+            outputProperties.setProperty("_stream", option);
+        }
         if ((option = getParameter(request, Indent)) != null) {
             outputProperties.setProperty(OutputKeys.INDENT, option);
         }
@@ -746,6 +757,11 @@ public class RESTServer {
                             }
                         }
 
+                        option = root.getAttribute(Stream.xmlKey());
+                        if (option != null) {
+                            outputProperties.setProperty("_stream", option);
+                        }
+
                         option = root.getAttribute(Enclose.xmlKey());
                         if (option != null) {
                             if ("no".equals(option)) {
@@ -1300,6 +1316,11 @@ public class RESTServer {
             }
 
             try {
+                if (!cache && !wrap && "yes".equals(outputProperties.getProperty("_stream"))
+                        && executeStreaming(broker, xquery, compiled, response, outputProperties, start, howmany)) {
+                    return;
+                }
+
                 final long startTime = System.currentTimeMillis();
                 final Sequence resultSequence = xquery.execute(broker, compiled, null, outputProperties);
                 final long queryTime = System.currentTimeMillis() - startTime;
@@ -1497,7 +1518,14 @@ public class RESTServer {
         boolean wrap = outputProperties.getProperty("_wrap") != null
                 && "yes".equals(outputProperties.getProperty("_wrap"));
 
+        final boolean stream = "yes".equals(outputProperties.getProperty("_stream"))
+                || "yes".equals(getParameter(request, Stream));
+
         try {
+            if (!wrap && stream && executeStreaming(broker, xquery, compiled, response, outputProperties, 1, -1)) {
+                return;
+            }
+
             final Sequence result = xquery.execute(broker, compiled, null, outputProperties);
             writeResults(response, broker, result, -1, 1, false, outputProperties, wrap);
 
@@ -1507,6 +1535,228 @@ public class RESTServer {
         }
     }
 
+    /**
+     * Execute a query whose body is a single "for" expression and write the items
+     * returned by each iteration to the response while the query is still running.
+     * No content length is set, so the servlet container uses chunked transfer
+     * encoding. If the client closes the connection, the query is killed through
+     * its watchdog. The query is stopped as well once the number of items requested
+     * by _howmany has been written.
+     *
+     * As the output starts before the query has finished, only serialization
+     * options declared in the query prolog are applied. An error raised after the
+     * response has been committed cannot be reported to the client anymore: it is
+     * logged and the output ends where it stopped.
+     *
+     * @return false if the query cannot be streamed and has not been executed
+     */
+    private boolean executeStreaming(final DBBroker broker, final XQuery xquery,
+            final CompiledXQuery compiled, final HttpServletResponse response,
+            final Properties outputProperties, final int start, final int howmany)
+            throws XPathException, BadRequestException, PermissionDeniedException {
+
+        if (!(compiled instanceof Expression)) {
+            return false;
+        }
+        final ForExpr forExpr = ForExpr.getStreamableFor((Expression) compiled);
+        if (forExpr == null) {
+            return false;
+        }
+        final XQueryContext context = compiled.getContext();
+        context.checkOptions(outputProperties);
+        if ("json".equals(outputProperties.getProperty(SERIALIZATION_METHOD_PROPERTY, "xml"))) {
+            return false;
+        }
+
+        outputProperties.setProperty(Serializer.GENERATE_DOC_EVENTS, "false");
+        setResultContentType(response, outputProperties, false);
+        final ResponseOutputStream os;
+        final StreamingResultReceiver receiver;
+        try {
+            os = new ResponseOutputStream(response.getOutputStream());
+            final Writer writer = new OutputStreamWriter(os, outputProperties.getProperty(OutputKeys.ENCODING));
+            receiver = new StreamingResultReceiver(context, forExpr,
+                    new XQuerySerializer(broker, outputProperties, writer), writer, os, start, howmany);
+        } catch (final IOException e) {
+            throw new BadRequestException("Error while serializing xml: " + e.toString(), e);
+        }
+
+        forExpr.setResultReceiver(receiver);
+        try {
+            receiver.start();
+            xquery.execute(broker, compiled, null, outputProperties);
+            receiver.finish();
+        } catch (final XPathException e) {
+            if (os.hasFailed()) {
+                LOG.debug("Client closed the connection. Query has been killed.");
+            } else if (response.isCommitted()) {
+                LOG.error("Query failed after part of its result has been sent: " + e.getMessage(), e);
+                receiver.terminate();
+            } else {
+                response.resetBuffer();
+                throw e;
+            }
+        } catch (final SAXException | IOException e) {
+            if (os.hasFailed()) {
+                LOG.debug("Client closed the connection: " + e.getMessage());
+            } else if (response.isCommitted()) {
+                LOG.error("Error while serializing xml after part of the result has been sent: " + e.getMessage(), e);
+                receiver.terminate();
+            } else {
+                LOG.warn(e.getMessage(), e);
+                response.resetBuffer();
+                throw new BadRequestException("Error while serializing xml: " + e.toString(), e);
+            }
+        } finally {
+            forExpr.setResultReceiver(null);
+            receiver.close();
+        }
+        return true;
+    }
+
+    /**
+     * Remembers if writing to the response failed, which happens if the client
+     * has closed the connection.
+     */
+    private static class ResponseOutputStream extends FilterOutputStream {
+
+        private IOException writeError = null;
+
+        ResponseOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (final IOException e) {
+                writeError = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (final IOException e) {
+                writeError = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (final IOException e) {
+                writeError = e;
+                throw e;
+            }
+        }
+
+        boolean hasFailed() {
+            return writeError != null;
+        }
+    }
+
+    /**
+     * Writes the results of the iterations of a "for" expression to the response.
+     */
+    private static class StreamingResultReceiver implements ForExpr.ResultReceiver {
+
+        /** Minimum interval between two flushes of the output in milliseconds */
+        private final static long FLUSH_INTERVAL = 200;
+
+        private final XQueryContext context;
+        private final Expression expr;
+        private final XQuerySerializer serializer;
+        private final Writer writer;
+        private final ResponseOutputStream os;
+        private int skip;
+        private int remaining;
+        private long lastFlush = System.currentTimeMillis();
+
+        StreamingResultReceiver(final XQueryContext context, final Expression expr,
+                final XQuerySerializer serializer, final Writer writer, final ResponseOutputStream os,
+                final int start, final int howmany) {
+            this.context = context;
+            this.expr = expr;
+            this.serializer = serializer;
+            this.writer = writer;
+            this.os = os;
+            this.skip = start > 1 ? start - 1 : 0;
+            this.remaining = howmany > 0 ? howmany : -1;
+        }
+
+        void start() throws SAXException {
+            serializer.startStream();
+        }
+
+        @Override
+        public boolean receive(final Sequence result) throws XPathException {
+            Sequence items = result;
+            if (skip > 0 || remaining > -1) {
+                // only items within the requested range are written
+                items = new ValueSequence();
+                for (final SequenceIterator i = result.iterate(); i.hasNext() && remaining != 0; ) {
+                    final Item item = i.nextItem();
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        items.add(item);
+                        if (remaining > 0) {
+                            remaining--;
+                        }
+                    }
+                }
+            }
+            try {
+                serializer.serializeItems(items);
+                final long now = System.currentTimeMillis();
+                if (now - lastFlush >= FLUSH_INTERVAL) {
+                    writer.flush();
+                    lastFlush = now;
+                }
+            } catch (final SAXException | IOException e) {
+                if (os.hasFailed()) {
+                    context.getWatchDog().kill(0);
+                    context.getWatchDog().proceed(expr);
+                }
+                throw new XPathException(expr, ErrorCodes.ERROR, "Error while serializing xml: " + e.getMessage(), null, e);
+            }
+            // stop the query once all requested items have been written
+            return remaining != 0;
+        }
+
+        void finish() throws SAXException, IOException {
+            serializer.endStream(true);
+            writer.flush();
+            writer.close();
+        }
+
+        /**
+         * End the output after an error, without terminating the sequence.
+         */
+        void terminate() {
+            try {
+                serializer.endStream(false);
+                writer.close();
+            } catch (final SAXException | IOException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+
+        void close() {
+            try {
+                serializer.endStream(false);
+            } catch (final SAXException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Directly execute an XProc stored as a XML document in the database.
      *
@@ -2038,19 +2288,7 @@ public class RESTServer {
 
             // set output headers
             final String encoding = outputProperties.getProperty(OutputKeys.ENCODING);
-            if (!response.containsHeader("Content-Type")) {
-                String mimeType = outputProperties.getProperty(OutputKeys.MEDIA_TYPE);
-                if (mimeType != null) {
-                    final int semicolon = mimeType.indexOf(';');
-                    if (semicolon != Constants.STRING_NOT_FOUND) {
-                        mimeType = mimeType.substring(0, semicolon);
-                    }
-                    if (wrap) {
-                        mimeType = "application/xml";
-                    }
-                    response.setContentType(mimeType + "; charset=" + encoding);
-                }
-            }
+            setResultContentType(response, outputProperties, wrap);
             if (wrap) {
                 outputProperties.setProperty("method", "xml");
             }
@@ -2074,6 +2312,23 @@ public class RESTServer {
         }
     }
 
+    private void setResultContentType(final HttpServletResponse response,
+            final Properties outputProperties, final boolean wrap) {
+        if (!response.containsHeader("Content-Type")) {
+            String mimeType = outputProperties.getProperty(OutputKeys.MEDIA_TYPE);
+            if (mimeType != null) {
+                final int semicolon = mimeType.indexOf(';');
+                if (semicolon != Constants.STRING_NOT_FOUND) {
+                    mimeType = mimeType.substring(0, semicolon);
+                }
+                if (wrap) {
+                    mimeType = "application/xml";
+                }
+                response.setContentType(mimeType + "; charset=" + outputProperties.getProperty(OutputKeys.ENCODING));
+            }
+        }
+    }
+
     private void writeResultJSON(final HttpServletResponse response,
         final DBBroker broker, final Sequence results, int howmany,
         int start, final Properties outputProperties, final boolean wrap)
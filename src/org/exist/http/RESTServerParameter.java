@@ -346,7 +346,17 @@ enum RESTServerParameter {
      * <exist:property name = string
      *  value = string/>
      */
-    Property;
+    Property,
+
+    /**
+     * If set to "yes", the results of a query whose body is a single "for"
+     * expression are written to the response while the query is still running,
+     * using chunked transfer encoding. Ignored if the results are wrapped, cached
+     * or serialized to JSON.
+     *
+     * Contexts: GET, POST
+     */
+    Stream;
 
     /**
      * Get the parameter key that is
@@ -203,6 +203,20 @@ public class IndexManager {
         }
     }
 
+    /**
+     * Write the data of the registered indexes to disk, one index
+     * after the other.
+     *
+     * @param throttle called after every index
+     * @throws DBException
+     */
+    public void sync(final Runnable throttle) throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            i.next().sync();
+            throttle.run();
+        }
+    }
+
     /** 
      * Physically destroy the registered indexes by calling {@link org.exist.indexing.Index#remove()}
      * on them.
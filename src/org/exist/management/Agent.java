@@ -36,6 +36,12 @@ public interface Agent {
 
     void addMBean(String dbInstance, String name, Object mbean) throws DatabaseConfigurationException;
 
+    /**
+     * Unregisters an MBean added by {@link #addMBean(String, String, Object)} without
+     * a database instance. Beans of a database instance are removed when it is closed.
+     */
+    void removeMBean(String name) throws DatabaseConfigurationException;
+
     void changeStatus(BrokerPool instance, TaskStatus actualStatus);
 
     void updateStatus(BrokerPool instance, int percentage);
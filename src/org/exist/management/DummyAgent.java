@@ -45,6 +45,11 @@ public class DummyAgent implements Agent {
         // just do nothing
     }
 
+    @Override
+    public void removeMBean(String name) throws DatabaseConfigurationException {
+        // just do nothing
+    }
+
     @Override
     public void changeStatus(BrokerPool instance, TaskStatus actualStatus) {
         // nothing to do
@@ -0,0 +1,71 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.journal.GroupCommitFlusher;
+
+public class GroupCommit implements GroupCommitMBean {
+
+    private final GroupCommitFlusher flusher;
+
+    public GroupCommit(final GroupCommitFlusher flusher) {
+        this.flusher = flusher;
+    }
+
+    @Override
+    public long getMaxWait() {
+        return flusher.getMaxWait();
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return flusher.getMaxBatchSize();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return flusher.getBatchCount();
+    }
+
+    @Override
+    public long getCommitCount() {
+        return flusher.getCommitCount();
+    }
+
+    @Override
+    public int getLastBatchSize() {
+        return flusher.getLastBatchSize();
+    }
+
+    @Override
+    public int getLargestBatchSize() {
+        return flusher.getLargestBatchSize();
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        return flusher.getAverageBatchSize();
+    }
+
+    @Override
+    public double getAverageSyncTime() {
+        return flusher.getAverageSyncTime();
+    }
+}
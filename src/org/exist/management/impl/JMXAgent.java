@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.management.Agent;
 import org.exist.management.TaskStatus;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.journal.GroupCommitFlusher;
 import org.exist.util.DatabaseConfigurationException;
 
 import javax.management.InstanceAlreadyExistsException;
@@ -109,6 +110,15 @@ public class JMXAgent implements Agent {
 
             addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=ProcessReport",
                     new ProcessReport(instance));
+
+            addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=QueryPool",
+                    new QueryPool(instance.getXQueryPool()));
+
+            final GroupCommitFlusher groupCommitFlusher = instance.getTransactionManager().getGroupCommitFlusher();
+            if (groupCommitFlusher != null) {
+                addMBean(instance.getId(), "org.exist.management." + instance.getId() + ":type=GroupCommit",
+                        new GroupCommit(groupCommitFlusher));
+            }
                         
         } catch (final DatabaseConfigurationException e) {
             LOG.warn("Exception while registering database mbean.", e);
@@ -150,6 +160,22 @@ public class JMXAgent implements Agent {
         }
     }
 
+    @Override
+    public synchronized void removeMBean(String name) throws DatabaseConfigurationException {
+        try {
+            final ObjectName on = new ObjectName(name);
+            beanInstances.remove(on);
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+        } catch (final MalformedObjectNameException e) {
+            LOG.warn("Problem unregistering mbean: " + e.getMessage(), e);
+            throw new DatabaseConfigurationException("Exception while unregistering JMX mbean: " + e.getMessage());
+        } catch (final InstanceNotFoundException | MBeanRegistrationException e) {
+            LOG.warn("Problem unregistering mbean: " + e.getMessage(), e);
+        }
+    }
+
     private void addMBean(ObjectName name, Object mbean) throws DatabaseConfigurationException {
         try {
             if (!server.isRegistered(name)) {
@@ -23,6 +23,7 @@ package org.exist.management.impl;
 
 import org.exist.storage.lock.DeadlockDetection;
 import org.exist.storage.lock.LockInfo;
+import org.exist.storage.lock.MultiReadReentrantLock;
 
 import javax.management.openmbean.*;
 import java.util.Map;
@@ -47,6 +48,21 @@ public class LockManager implements LockManagerMBean {
         }
     }
 
+    @Override
+    public long getUncontendedReadLocks() {
+        return MultiReadReentrantLock.getUncontendedReadLocks();
+    }
+
+    @Override
+    public long getContendedLocks() {
+        return MultiReadReentrantLock.getContendedLocks();
+    }
+
+    @Override
+    public long getLockWaitTime() {
+        return MultiReadReentrantLock.getWaitTime();
+    }
+
     private static final String[] itemNames = {"waitingThread", "lockType", "lockMode", "id", "owner", "waitingForRead", "waitingForWrite"};
     private static final String[] itemDescriptions = {            "Name of the thread waiting for the lock",
             "Type of the lock (COLLECTION or RESOURCE)",
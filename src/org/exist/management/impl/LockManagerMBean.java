@@ -29,4 +29,19 @@ import javax.management.openmbean.TabularData;
 public interface LockManagerMBean {
 
     public TabularData getWaitingThreads();
+
+    /**
+     * Number of resource read locks acquired without contention.
+     */
+    public long getUncontendedReadLocks();
+
+    /**
+     * Number of resource lock requests which had to wait for another thread.
+     */
+    public long getContendedLocks();
+
+    /**
+     * Total time in milliseconds spent waiting for resource locks.
+     */
+    public long getLockWaitTime();
 }
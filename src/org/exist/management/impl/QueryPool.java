@@ -0,0 +1,94 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.storage.XQueryPool;
+
+public class QueryPool implements QueryPoolMBean {
+
+    private final XQueryPool pool;
+
+    public QueryPool(final XQueryPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public int getMaxPoolSize() {
+        return pool.getMaxPoolSize();
+    }
+
+    @Override
+    public int getMaxStackSize() {
+        return pool.getMaxStackSize();
+    }
+
+    @Override
+    public long getTimeout() {
+        return pool.getTimeout();
+    }
+
+    @Override
+    public int getSize() {
+        return pool.getSize();
+    }
+
+    @Override
+    public int getCompiledCount() {
+        return pool.getCompiledCount();
+    }
+
+    @Override
+    public long getHits() {
+        return pool.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return pool.getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hits = pool.getHits();
+        final long total = hits + pool.getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return pool.getEvictions();
+    }
+
+    @Override
+    public long getCompilations() {
+        return pool.getCompilations();
+    }
+
+    @Override
+    public double getAverageCompileTime() {
+        final long compilations = pool.getCompilations();
+        return compilations == 0 ? 0.0 : (double) pool.getCompileTime() / compilations;
+    }
+
+    @Override
+    public void clear() {
+        pool.clear();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.backup.ErrorReport;
+import org.exist.storage.ScrubberTask;
+
+public class Scrubber implements ScrubberMBean {
+
+    private final static Logger LOG = LogManager.getLogger(Scrubber.class);
+
+    private static String[] itemNames = { "id", "errcode", "description" };
+    private static String[] itemDescriptions = { "Position in the list", "Error code", "Description of the error" };
+    private static String[] indexNames = { "id" };
+
+    private final ScrubberTask task;
+
+    public Scrubber(final ScrubberTask task) {
+        this.task = task;
+    }
+
+    @Override
+    public int getMaxPages() {
+        return task.getMaxPages();
+    }
+
+    @Override
+    public int getMaxDocuments() {
+        return task.getMaxDocuments();
+    }
+
+    @Override
+    public int getMaxDocumentPages() {
+        return task.getMaxDocumentPages();
+    }
+
+    @Override
+    public long getCheckedPages() {
+        return task.getCheckedPages();
+    }
+
+    @Override
+    public long getCheckedDocuments() {
+        return task.getCheckedDocuments();
+    }
+
+    @Override
+    public long getSkippedDocuments() {
+        return task.getSkippedDocuments();
+    }
+
+    @Override
+    public long getPageRounds() {
+        return task.getPageRounds();
+    }
+
+    @Override
+    public long getDocumentRounds() {
+        return task.getDocumentRounds();
+    }
+
+    @Override
+    public long getChecksumErrors() {
+        return task.getChecksumErrors();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return task.getErrorCount();
+    }
+
+    @Override
+    public Date getLastRun() {
+        return task.getLastRun();
+    }
+
+    @Override
+    public TabularData getErrors() {
+        final OpenType<?>[] itemTypes = { SimpleType.INTEGER, SimpleType.STRING, SimpleType.STRING };
+        try {
+            final CompositeType infoType = new CompositeType("errorInfo", "Provides information on a problem found by the scrubber",
+                    itemNames, itemDescriptions, itemTypes);
+            final TabularType tabularType = new TabularType("errorList", "List of problems found by the scrubber", infoType, indexNames);
+            final TabularDataSupport data = new TabularDataSupport(tabularType);
+            final List<ErrorReport> errors = task.getErrors();
+            for (int i = 0; i < errors.size(); i++) {
+                final ErrorReport error = errors.get(i);
+                final Object[] itemValues = { i, error.getErrcodeString(), error.getMessage() };
+                data.put(new CompositeDataSupport(infoType, itemNames, itemValues));
+            }
+            return data;
+        } catch (final OpenDataException e) {
+            LOG.warn(e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -97,6 +97,10 @@ public class DLNBase {
     // for appending new bits
     protected int bitIndex = -1;
 
+    // the number of levels, computed on demand. Reset whenever
+    // the id is modified.
+    private int levelCount = -1;
+
     public DLNBase() {
         bits = new byte[1];
     }
@@ -105,6 +109,7 @@ public class DLNBase {
         this.bits = new byte[dln.bits.length];
         System.arraycopy(dln.bits, 0, this.bits, 0, dln.bits.length);
         this.bitIndex = dln.bitIndex;
+        this.levelCount = dln.levelCount;
     }
 
     public DLNBase(final int units, final byte[] data, final int startOffset) {
@@ -308,9 +313,28 @@ public class DLNBase {
      * @return the number of levels in this id
      */
     public int getLevelCount(final int startOffset) {
+        if (startOffset == 0) {
+            int count = levelCount;
+            if (count < 0) {
+                count = getLevelCount(0, Integer.MAX_VALUE);
+                levelCount = count;
+            }
+            return count;
+        }
+        return getLevelCount(startOffset, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts the levels like {@link #getLevelCount(int)}, but stops as soon
+     * as more than maxCount levels have been found. Use this to check for a
+     * given number of levels without decoding the remainder of the id.
+     *
+     * @return the number of levels, or maxCount + 1 if there are more
+     */
+    protected int getLevelCount(final int startOffset, final int maxCount) {
         int bit = startOffset;
         int count = 0;
-        while (bit > -1 && bit <= bitIndex) {
+        while (bit > -1 && bit <= bitIndex && count <= maxCount) {
             final int units = unitsUsed(bit, bits);
             bit += units;
             bit += bitWidth(units);
@@ -413,6 +437,7 @@ public class DLNBase {
      * @param value the value of the bit to set, i.e. 1 (true) or 0 (false)
      */
     private void setNextBit(final boolean value) {
+        levelCount = -1;
         ++bitIndex;
         if ((bitIndex >> UNIT_SHIFT) >= bits.length) {
             final byte[] new_bits = new byte[bits.length + 1];
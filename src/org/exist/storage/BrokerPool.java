@@ -57,6 +57,7 @@ import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.ReentrantReadWriteLock;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.sync.SyncTask;
+import org.exist.storage.txn.CheckpointWriter;
 import org.exist.storage.txn.TransactionException;
 import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
@@ -617,6 +618,10 @@ public class BrokerPool implements Database {
 
     private Subject serviceModeUser = null;
     private boolean inServiceMode = false;
+    /** the thread which switched to service mode */
+    private Thread serviceModeThread = null;
+    /** if true, only {@link #serviceModeThread} may get a broker while in service mode */
+    private boolean serviceModeExclusive = false;
 
     //the time that the database was started
     private final Calendar startupTime = Calendar.getInstance();
@@ -1536,6 +1541,30 @@ public class BrokerPool implements Database {
      */
     //TODO : rename as getBroker ? getInstance (when refactored) ?
     public DBBroker get(final Optional<Subject> subject) throws EXistException {
+        return get(subject, -1);
+    }
+
+    /**
+     * Returns an active broker for the database instance if one becomes available
+     * within the given time. Unlike {@link #get(Optional)}, this does not wait for
+     * brokers held by other threads, e.g. threads which are waiting for the caller.
+     *
+     * @param subject Optionally a subject to set on the broker, if a user is not provided then the
+     *                current user assigned to the broker will be re-used
+     * @param timeout The maximum time to wait in milliseconds, 0 to return immediately
+     * @return The broker or null if no broker was available in time, or the instance is in
+     *         service mode for another user or thread
+     * @throws EXistException If the instance is not available (stopped or not configured)
+     */
+    public DBBroker tryGet(final Optional<Subject> subject, final long timeout) throws EXistException {
+        return get(subject, Math.max(timeout, 0));
+    }
+
+    /**
+     * @param timeout The maximum time to wait in milliseconds, or a negative value to wait
+     *                until a broker is available
+     */
+    private DBBroker get(final Optional<Subject> subject, final long timeout) throws EXistException {
         Objects.requireNonNull(subject, "Subject cannot be null, use BrokerPool#getBroker() instead");
 
         if(!isInstanceConfigured()) {
@@ -1562,15 +1591,21 @@ public class BrokerPool implements Database {
 
         //No active broker : get one ASAP
 
-        while(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
-            try {
+        synchronized(this) {
+            final long deadline = System.currentTimeMillis() + timeout;
+            while(serviceModeUser != null && !mayUseServiceMode(subject)) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if(timeout >= 0 && remaining <= 0) {
+                    return null;
+                }
                 LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
-                wait();
-            } catch(final InterruptedException e) {
+                try {
+                    this.wait(timeout < 0 ? 0 : remaining);
+                } catch(final InterruptedException e) {
+                    //nothing to be done!
+                }
             }
-        }
 
-        synchronized(this) {
             //Are there any available brokers ?
             if(inactiveBrokers.isEmpty()) {
                 //There are no available brokers. If allowed...
@@ -1578,16 +1613,21 @@ public class BrokerPool implements Database {
                 //... create one
                 {
                     createBroker();
-                } else
+                } else {
                     //... or wait until there is one available
                     while(inactiveBrokers.isEmpty()) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if(timeout >= 0 && remaining <= 0) {
+                            return null;
+                        }
                         LOG.debug("waiting for a broker to become available");
                         try {
-                            this.wait();
+                            this.wait(timeout < 0 ? 0 : remaining);
                         } catch(final InterruptedException e) {
                             //nothing to be done!
                         }
                     }
+                }
             }
             broker = inactiveBrokers.pop();
             //activate the broker
@@ -1721,26 +1761,73 @@ public class BrokerPool implements Database {
         }
     }
 
+    /**
+     * Checks if the calling thread may get a broker while the instance is in service mode:
+     * the thread which switched to service mode always may, other threads only if the
+     * service mode is not exclusive and they explicitly ask for the service mode user.
+     */
+    private boolean mayUseServiceMode(final Optional<Subject> subject) {
+        if(serviceModeThread == Thread.currentThread()) {
+            return true;
+        }
+        return !serviceModeExclusive && subject.isPresent() && subject.get().equals(serviceModeUser);
+    }
+
+    /**
+     * Switches the database to service mode: waits until all other threads have released
+     * their brokers and writes a checkpoint. Until {@link #exitServiceMode(Subject)} is called,
+     * only the given user may get a broker, from any thread.
+     *
+     * @param user a user with the DBA role
+     * @return a broker that can be used to perform system tasks
+     */
     public DBBroker enterServiceMode(final Subject user) throws PermissionDeniedException {
+        return enterServiceMode(user, false);
+    }
+
+    /**
+     * Switches the database to service mode like {@link #enterServiceMode(Subject)}.
+     *
+     * @param user a user with the DBA role
+     * @param exclusive if true, only the calling thread may get a broker until
+     *                  {@link #exitServiceMode(Subject)} is called. All other threads wait,
+     *                  including those of the same user.
+     * @return a broker that can be used to perform system tasks
+     */
+    public DBBroker enterServiceMode(final Subject user, final boolean exclusive) throws PermissionDeniedException {
         if(!user.hasDbaRole()) {
             throw new PermissionDeniedException("Only users of group dba can switch the db to service mode");
         }
 
-        serviceModeUser = user;
+        final DBBroker broker;
         synchronized(this) {
-            if(activeBrokers.size() != 0) {
-                while(!inServiceMode) {
-                    try {
-                        wait();
-                    } catch(final InterruptedException e) {
-                        //nothing to be done
-                    }
+            //wait until another service mode has ended. The user of a shared service
+            //mode may enter it again.
+            while(serviceModeUser != null && (exclusive || serviceModeExclusive || !serviceModeUser.equals(user))) {
+                try {
+                    wait();
+                } catch(final InterruptedException e) {
+                    //nothing to be done
+                }
+            }
+            serviceModeUser = user;
+            serviceModeThread = Thread.currentThread();
+            serviceModeExclusive = exclusive;
+            //wait until all other threads have released their brokers. A
+            //broker held by the calling thread does not count.
+            final Thread thread = Thread.currentThread();
+            while(!(activeBrokers.isEmpty() || (activeBrokers.size() == 1 && activeBrokers.containsKey(thread)))) {
+                try {
+                    wait();
+                } catch(final InterruptedException e) {
+                    //nothing to be done
                 }
             }
+            inServiceMode = true;
+            broker = activeBrokers.containsKey(thread) ? activeBrokers.get(thread) : inactiveBrokers.peek();
         }
 
-        inServiceMode = true;
-        final DBBroker broker = inactiveBrokers.peek();
+
         checkpoint = true;
         sync(broker, Sync.MAJOR_SYNC);
         checkpoint = false;
@@ -1752,9 +1839,11 @@ public class BrokerPool implements Database {
         if(!user.equals(serviceModeUser)) {
             throw new PermissionDeniedException("The db has been locked by a different user");
         }
-        serviceModeUser = null;
-        inServiceMode = false;
         synchronized(this) {
+            serviceModeUser = null;
+            serviceModeThread = null;
+            serviceModeExclusive = false;
+            inServiceMode = false;
             this.notifyAll();
         }
     }
@@ -1801,16 +1890,7 @@ public class BrokerPool implements Database {
                 } catch (final TransactionException e) {
                     LOG.warn(e.getMessage(), e);
                 }
-                cacheManager.checkCaches();
-
-                if (pluginManager != null) {
-                    pluginManager.sync(broker);
-                }
-
-                lastMajorSync = System.currentTimeMillis();
-                if (LOG.isDebugEnabled()) {
-                    notificationService.debug();
-                }
+                runMajorSyncTasks(broker);
             } else {
                 cacheManager.checkDistribution();
 //            LOG.debug("Minor sync");
@@ -1821,6 +1901,35 @@ public class BrokerPool implements Database {
         }
     }
 
+    /**
+     * Run the tasks of a major sync besides flushing the data files and the checkpoint:
+     * check the caches, sync the plugins and report statistics. Used by the periodic
+     * {@link SyncTask} when a fuzzy checkpoint flushes the data files in the background.
+     *
+     * @param broker the broker to use
+     */
+    public void majorSyncTasks(final DBBroker broker) {
+        try {
+            broker.pushSubject(securityManager.getSystemSubject());
+            runMajorSyncTasks(broker);
+        } finally {
+            broker.popSubject();
+        }
+    }
+
+    private void runMajorSyncTasks(final DBBroker broker) {
+        cacheManager.checkCaches();
+
+        if (pluginManager != null) {
+            pluginManager.sync(broker);
+        }
+
+        lastMajorSync = System.currentTimeMillis();
+        if (LOG.isDebugEnabled()) {
+            notificationService.debug();
+        }
+    }
+
     /**
      * Schedules a cache synchronization for the database instance. If the database instance is idle,
      * the cache synchronization will be run immediately. Otherwise, the task will be deferred
@@ -1906,6 +2015,9 @@ public class BrokerPool implements Database {
         //Shutdown the scheduler
         scheduler.shutdown(true);
 
+        // stop writing fuzzy checkpoints before waiting for the brokers
+        transactionManager.shutdownCheckpointWriter();
+
         final java.util.concurrent.locks.Lock lock = transactionManager.getLock();
         try {
             // wait for currently running system tasks before we shutdown
@@ -2119,6 +2231,22 @@ public class BrokerPool implements Database {
         return watchdog;
     }
 
+    /**
+     * Start a fuzzy checkpoint in the background. Used instead of a major sync by
+     * the periodic {@link SyncTask} if fuzzy checkpoints are enabled.
+     *
+     * @return false if fuzzy checkpoints are disabled
+     */
+    public boolean triggerFuzzyCheckpoint() {
+        final CheckpointWriter writer = isTransactional() ? transactionManager.getCheckpointWriter() : null;
+        if(writer == null) {
+            return false;
+        }
+        writer.trigger();
+        lastMajorSync = System.currentTimeMillis();
+        return true;
+    }
+
     //TODO : move this elsewhere
     public void triggerCheckpoint() {
         if(syncRequired) {
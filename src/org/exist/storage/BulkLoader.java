@@ -0,0 +1,200 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stores a large number of resources into a collection without writing the
+ * changes to the journal. Documents are stored in batches, each within a
+ * transaction started with journaling disabled. When the loader is closed,
+ * all changes are flushed to disk once and a checkpoint is written.
+ *
+ * Unjournaled changes must not share pages with journaled ones, or recovery
+ * would redo changes on top of pages it cannot reconstruct. The loader thus
+ * switches the database to exclusive service mode while it is open: all other
+ * threads wait until it is closed, including those of the same user, and the
+ * pages are synced by a checkpoint on both ends.
+ *
+ * Storing a document still updates all indexes, but the journal I/O and the
+ * fsync on every commit are avoided. The price is that a crash during a bulk
+ * load cannot be recovered: the documents stored by the running batch may be
+ * incomplete and the collection should be reloaded. Only users with the DBA
+ * role may use the loader, and the calling thread must not hold other
+ * brokers, as the loader waits for all other brokers to be released.
+ *
+ * <pre>
+ * try (final BulkLoader loader = new BulkLoader(broker, collectionUri)) {
+ *     for (...) {
+ *         loader.storeXML(name, new InputSource(...));
+ *     }
+ * }
+ * </pre>
+ */
+public class BulkLoader implements AutoCloseable {
+
+    private final static Logger LOG = LogManager.getLogger(BulkLoader.class);
+
+    public final static int DEFAULT_BATCH_SIZE = 500;
+
+    private final DBBroker broker;
+    private final BrokerPool pool;
+    private final Subject subject;
+    private final TransactionManager transact;
+    private final XmldbURI collectionUri;
+    private final int batchSize;
+
+    private Txn transaction = null;
+    private Collection collection = null;
+    private int inBatch = 0;
+    private int stored = 0;
+
+    public BulkLoader(final DBBroker broker, final XmldbURI collectionUri) throws PermissionDeniedException {
+        this(broker, collectionUri, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param broker the broker to use
+     * @param collectionUri the collection to store the resources into. Will be created if it does not exist.
+     * @param batchSize the number of resources stored within one transaction
+     */
+    public BulkLoader(final DBBroker broker, final XmldbURI collectionUri, final int batchSize) throws PermissionDeniedException {
+        if (!broker.getCurrentSubject().hasDbaRole()) {
+            throw new PermissionDeniedException("Only DBA users may bulk load resources");
+        }
+        this.broker = broker;
+        this.pool = broker.getBrokerPool();
+        this.transact = broker.getBrokerPool().getTransactionManager();
+        this.collectionUri = collectionUri;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.subject = broker.getCurrentSubject();
+        pool.enterServiceMode(subject, true);
+    }
+
+    /**
+     * Parse and store an XML document.
+     *
+     * @param docName the name of the document within the collection
+     * @param source the document
+     * @throws SAXException if the document is not well-formed. Other documents are not affected.
+     */
+    public void storeXML(final XmldbURI docName, final InputSource source)
+            throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException {
+        final Collection col = nextCollection();
+        final IndexInfo info = col.validateXMLResource(transaction, broker, docName, source);
+        col.store(transaction, broker, info, source, false);
+        stored();
+    }
+
+    /**
+     * Store a binary resource.
+     *
+     * @param docName the name of the resource within the collection
+     * @param is the content
+     * @param mimeType the mime type of the resource
+     * @param size the length of the content
+     */
+    public void storeBinary(final XmldbURI docName, final InputStream is, final String mimeType, final long size)
+            throws EXistException, PermissionDeniedException, TriggerException, LockException, IOException {
+        final Collection col = nextCollection();
+        col.addBinaryResource(transaction, broker, docName, is, mimeType, size);
+        stored();
+    }
+
+    /**
+     * Returns the number of resources stored so far.
+     */
+    public int getStored() {
+        return stored;
+    }
+
+    private Collection nextCollection() throws PermissionDeniedException, IOException, TriggerException {
+        if (transaction == null) {
+            transaction = transact.beginTransaction(false);
+            collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.saveCollection(transaction, collection);
+        }
+        return collection;
+    }
+
+    private void stored() throws TransactionException {
+        stored++;
+        if (++inBatch == batchSize) {
+            commitBatch();
+        }
+    }
+
+    private void commitBatch() throws TransactionException {
+        if (transaction == null) {
+            return;
+        }
+        try {
+            transaction.commit();
+        } finally {
+            transaction.close();
+            transaction = null;
+            collection = null;
+            inBatch = 0;
+        }
+    }
+
+    /**
+     * Commit the last batch, write all changes to disk and leave service
+     * mode. Resources stored before are not durable until this method returns.
+     */
+    @Override
+    public void close() throws TransactionException {
+        try {
+            commitBatch();
+        } finally {
+            try {
+                broker.flush();
+                pool.sync(broker, Sync.MAJOR_SYNC);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Bulk loaded " + stored + " resources into " + collectionUri);
+                }
+            } finally {
+                try {
+                    pool.exitServiceMode(subject);
+                } catch (final PermissionDeniedException e) {
+                    LOG.error("Failed to leave service mode: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
@@ -51,6 +51,7 @@ public class ConsistencyCheckTask implements SystemTask {
     private boolean incrementalCheck = false;
     private boolean checkDocs = false;
     private int maxInc = -1;
+    private int threads = 1;
 
     private Path lastExportedBackup = null;
 
@@ -63,6 +64,7 @@ public class ConsistencyCheckTask implements SystemTask {
     public final static String INCREMENTAL_CHECK_PROP_NAME = "incremental-check";
     public final static String MAX_PROP_NAME = "max";
     public final static String CHECK_DOCS_PROP_NAME = "check-documents";
+    public final static String THREADS_PROP_NAME = "threads";
 
     private final static LoggingCallback logCallback = new LoggingCallback();
     
@@ -112,6 +114,13 @@ public class ConsistencyCheckTask implements SystemTask {
 
         final String check = properties.getProperty(CHECK_DOCS_PROP_NAME, "no");
         checkDocs = check.equalsIgnoreCase("YES");
+
+        final String threadsProp = properties.getProperty(THREADS_PROP_NAME, "1");
+        try {
+            threads = Integer.parseInt(threadsProp);
+        } catch (final NumberFormatException e) {
+            throw new EXistException("Parameter 'threads' has to be an integer");
+        }
     }
 
     @Override
@@ -167,6 +176,7 @@ public class ConsistencyCheckTask implements SystemTask {
                 LOG.info("Starting backup...");
 
                 final SystemExport sysexport = new SystemExport(broker, logCallback, monitor, false);
+                sysexport.setThreads(threads);
                 lastExportedBackup = sysexport.export(exportDir, incremental, maxInc, createZip, errors);
                 agentInstance.changeStatus(brokerPool, new TaskStatus(TaskStatus.Status.RUNNING_BACKUP));
 
@@ -664,6 +664,15 @@ public abstract class DBBroker extends Observable implements AutoCloseable {
 	 */
 	public abstract void sync(int syncEvent);
 
+	/**
+	 * Sync all data files to disk like a {@link org.exist.storage.sync.Sync#MAJOR_SYNC},
+	 * but flush the files one after the other, each under its own lock, so other
+	 * brokers can continue to work meanwhile. Used for fuzzy checkpoints.
+	 *
+	 * @param throttle called after every file to limit the I/O load
+	 */
+	public abstract void syncFiles(Runnable throttle);
+
 	/**
 	 * Update a node's data. To keep nodes in a correct sequential order, it is
 	 * sometimes necessary to update a previous written node. Warning: don't use
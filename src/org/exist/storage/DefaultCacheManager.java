@@ -26,7 +26,11 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeConcurrentCache;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.ConcurrentClockCache;
+import org.exist.storage.cache.LRUCache;
 import org.exist.util.DatabaseConfigurationException;
 
 import java.text.NumberFormat;
@@ -75,6 +79,12 @@ public class DefaultCacheManager implements CacheManager
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    public static final String  CACHE_TYPE_ATTRIBUTE            			= "cacheType";
+    public static final String  PROPERTY_CACHE_TYPE             			= "db-connection.cache-type";
+    public static final String  CACHE_TYPE_LRU                  			= "lru";
+    public static final String  CACHE_TYPE_CONCURRENT           			= "concurrent";
+    public static final String  DEFAULT_CACHE_TYPE              			= CACHE_TYPE_LRU;
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<Cache>();
 
@@ -106,6 +116,9 @@ public class DefaultCacheManager implements CacheManager
 
     private String              instanceName;
 
+    /** Create thread-safe, sharded page caches instead of the default LRU caches. */
+    private boolean             concurrentCaches                = false;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -123,6 +136,9 @@ public class DefaultCacheManager implements CacheManager
 
         shrinkThreshold = pool.getConfiguration().getInteger( SHRINK_THRESHOLD_PROPERTY );
 
+        final String cacheType = (String)pool.getConfiguration().getProperty( PROPERTY_CACHE_TYPE );
+        concurrentCaches = CACHE_TYPE_CONCURRENT.equals( cacheType );
+
         totalMem        = cacheSize * 1024L * 1024L;
         
         final Boolean checkMaxCache = (Boolean)pool.getConfiguration().getProperty( PROPERTY_CACHE_CHECK_MAX_SIZE );
@@ -151,12 +167,41 @@ public class DefaultCacheManager implements CacheManager
         
         LOG.info( "Cache settings: " + nf.format( totalMem / 1024L ) + "k; totalPages: " + nf.format( totalPageCount ) + 
         	      "; maxCacheSize: " + nf.format( maxCacheSize ) + 
-        	      "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) 
+        	      "; cacheShrinkThreshold: " + nf.format( shrinkThreshold ) +
+        	      "; cacheType: " + ( concurrentCaches ? CACHE_TYPE_CONCURRENT : CACHE_TYPE_LRU )
         );
         
         registerMBean();
     }
 
+    /**
+     * Create a page cache for a data file. Depending on the configured cache type, this is
+     * either a {@link LRUCache} or a thread-safe {@link ConcurrentClockCache}. The cache is not
+     * registered with the manager.
+     */
+    public Cache createCache( int size, double growthFactor, double growthThreshold, String type )
+    {
+        if( concurrentCaches ) {
+            return( new ConcurrentClockCache( size, growthFactor, growthThreshold, type ) );
+        }
+        return( new LRUCache( size, growthFactor, growthThreshold, type ) );
+    }
+
+
+    /**
+     * Create a page cache for a B+-tree file, which keeps inner pages in preference to leaf pages.
+     * Depending on the configured cache type, this is either a {@link BTreeCache} or a
+     * thread-safe {@link BTreeConcurrentCache}. The cache is not registered with the manager.
+     */
+    public Cache createBTreeCache( int size, double growthFactor, double growthThreshold, String type )
+    {
+        if( concurrentCaches ) {
+            return( new BTreeConcurrentCache( size, growthFactor, growthThreshold, type ) );
+        }
+        return( new BTreeCache( size, growthFactor, growthThreshold, type ) );
+    }
+
+
     @Override
     public void registerCache( Cache cache )
     {
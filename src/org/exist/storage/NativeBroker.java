@@ -89,6 +89,13 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -144,6 +151,10 @@ public class NativeBroker extends DBBroker {
     public static final String INDEX_DEPTH_ATTRIBUTE = "index-depth";
 
     public static final String PROPERTY_INDEX_DEPTH = "indexer.index-depth";
+    public static final String REINDEX_THREADS_ATTRIBUTE = "reindex-threads";
+    public static final String PROPERTY_REINDEX_THREADS = "indexer.reindex-threads";
+    public static final String ONLINE_REINDEX_ATTRIBUTE = "online-reindex";
+    public static final String PROPERTY_ONLINE_REINDEX = "indexer.online-reindex";
     private static final byte[] ALL_STORAGE_FILES = {
         COLLECTIONS_DBX_ID, VALUES_DBX_ID, DOM_DBX_ID
     };
@@ -155,6 +166,7 @@ public class NativeBroker extends DBBroker {
 
     public static final String DEFAULT_DATA_DIR = "data";
     public static final int DEFAULT_INDEX_DEPTH = 1;
+    public static final int DEFAULT_REINDEX_THREADS = 1;
     public static final int DEFAULT_MIN_MEMORY = 5000000;
     public static final long TEMP_FRAGMENT_TIMEOUT = 60000;
     /** default buffer size setting */
@@ -181,6 +193,12 @@ public class NativeBroker extends DBBroker {
 
     protected int defaultIndexDepth;
 
+    /** number of threads used to reindex the documents of a collection */
+    protected int reindexThreads;
+
+    /** reindex document by document without dropping the indexes of the collection first */
+    protected boolean onlineReindex;
+
     protected Serializer xmlSerializer;
 
     /** used to count the nodes inserted after the last memory check */
@@ -249,6 +267,10 @@ public class NativeBroker extends DBBroker {
             defaultIndexDepth = DEFAULT_INDEX_DEPTH;
         }
 
+        final Integer threads = (Integer) config.getProperty(PROPERTY_REINDEX_THREADS);
+        reindexThreads = threads == null || threads < 1 ? DEFAULT_REINDEX_THREADS : threads;
+        onlineReindex = (Boolean) config.getProperty(PROPERTY_ONLINE_REINDEX, Boolean.FALSE);
+
         final String docIdProp = (String) config.getProperty(BrokerPool.DOC_ID_MODE_PROPERTY);
         if(docIdProp != null) {
             incrementalDocIds = docIdProp.equalsIgnoreCase("incremental");
@@ -1734,11 +1756,21 @@ public class NativeBroker extends DBBroker {
 
         final long start = System.currentTimeMillis();
 
-        try(final Txn transaction = transact.beginTransaction()) {
-            LOG.info(String.format("Start indexing collection %s", collection.getURI().toString()));
-            pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, collection.getURI());
-            reindexCollection(transaction, collection, mode);
-            transact.commit(transaction);
+        final boolean online = mode == NodeProcessor.MODE_STORE && onlineReindex;
+        final boolean deferred = online || (mode == NodeProcessor.MODE_STORE && reindexThreads > 1);
+        final ReindexProgress progress = new ReindexProgress(collection.getURI());
+        try {
+            LOG.info(String.format("Start %sindexing collection %s", online ? "online " : "", collection.getURI().toString()));
+            pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION,
+                deferred ? progress : collection.getURI());
+            final List<DocumentImpl> documents = deferred ? new ArrayList<>() : null;
+            try(final Txn transaction = transact.beginTransaction()) {
+                reindexCollection(transaction, collection, mode, documents, online);
+                transact.commit(transaction);
+            }
+            if(deferred) {
+                reindexDocuments(documents, mode, online, progress);
+            }
 
         } catch(final Exception e) {
             LOG.warn("An error occurred during reindex: " + e.getMessage(), e);
@@ -1751,18 +1783,35 @@ public class NativeBroker extends DBBroker {
     }
 
     public void reindexCollection(final Txn transaction, final Collection collection, final int mode) throws PermissionDeniedException {
+        reindexCollection(transaction, collection, mode, null, false);
+    }
+
+    /**
+     * Drop the indexes of the collection and its descendants and reindex their documents.
+     *
+     * @param documents if not null, the documents are not reindexed but added to the list,
+     *                  so they can be reindexed later on without blocking the collections cache.
+     * @param online if true, the indexes are not dropped. Each document will drop its own
+     *               index entries when it is reindexed.
+     */
+    private void reindexCollection(final Txn transaction, final Collection collection, final int mode,
+            final List<DocumentImpl> documents, final boolean online) throws PermissionDeniedException {
         final CollectionCache collectionsCache = pool.getCollectionsCache();
         synchronized(collectionsCache) {
             if(!collection.getPermissionsNoLock().validate(getCurrentSubject(), Permission.WRITE)) {
                 throw new PermissionDeniedException("Account " + getCurrentSubject().getName() + " have insufficient privileges on collection " + collection.getURI());
             }
             LOG.debug("Reindexing collection " + collection.getURI());
-            if(mode == NodeProcessor.MODE_STORE) {
+            if(mode == NodeProcessor.MODE_STORE && !online) {
                 dropCollectionIndex(transaction, collection, true);
             }
             for(final Iterator<DocumentImpl> i = collection.iterator(this); i.hasNext(); ) {
                 final DocumentImpl next = i.next();
-                reindexXMLResource(transaction, next, mode);
+                if(documents == null) {
+                    reindexXMLResource(transaction, next, mode);
+                } else {
+                    documents.add(next);
+                }
             }
             for(final Iterator<XmldbURI> i = collection.collectionIterator(this); i.hasNext(); ) {
                 final XmldbURI next = i.next();
@@ -1771,12 +1820,170 @@ public class NativeBroker extends DBBroker {
                 if(child == null) {
                     LOG.warn("Collection '" + next + "' not found");
                 } else {
-                    reindexCollection(transaction, child, mode);
+                    reindexCollection(transaction, child, mode, documents, online);
                 }
             }
         }
     }
 
+    /**
+     * Reindex the given documents using up to {@link #reindexThreads} threads. Every
+     * thread takes documents from a shared queue and indexes them with a broker and
+     * transaction of its own, so the index workers of each broker buffer and flush
+     * their changes independently. The current thread takes part in the work.
+     *
+     * In online mode, the old index entries of a document are removed right before
+     * it is indexed again, while the document is write locked. Queries keep using the
+     * complete indexes of all other documents, and updates to the document wait until
+     * its index has been rebuilt.
+     *
+     * The documents have been collected before, so each one is looked up again in its
+     * collection when it is locked. Documents which have been removed or replaced in
+     * the meantime are skipped.
+     */
+    private void reindexDocuments(final List<DocumentImpl> documents, final int mode, final boolean online,
+            final ReindexProgress progress) throws EXistException, TransactionException, ReadOnlyException {
+        progress.setTotal(documents.size());
+        final Queue<DocumentImpl> queue = new ConcurrentLinkedQueue<>();
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final Txn transaction = transact.beginTransaction()) {
+            for(final DocumentImpl doc : documents) {
+                // disables the configuration of its collection while being indexed:
+                // must not run concurrently to other documents of the collection
+                if(doc.isCollectionConfig()) {
+                    reindexQueuedDocument(transaction, doc, mode, online);
+                    progress.documentDone();
+                } else {
+                    queue.add(doc);
+                }
+            }
+            transact.commit(transaction);
+        }
+
+        final int workers = Math.min(reindexThreads, queue.size()) - 1;
+        if(workers < 1) {
+            reindexDocuments(queue, mode, online, progress);
+            return;
+        }
+        final Subject subject = getCurrentSubject();
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, new ReindexThreadFactory());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(workers);
+            for(int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    // do not wait for brokers in use by others, the remaining
+                    // threads will take over the work
+                    final DBBroker broker = pool.tryGet(Optional.of(subject), 0);
+                    if(broker == null) {
+                        return null;
+                    }
+                    try {
+                        ((NativeBroker) broker).reindexDocuments(queue, mode, online, progress);
+                    } finally {
+                        broker.close();
+                    }
+                    return null;
+                }));
+            }
+            reindexDocuments(queue, mode, online, progress);
+            for(final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch(final ExecutionException e) {
+            throw new EXistException("Reindexing failed: " + e.getCause().getMessage(), e.getCause());
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EXistException("Interrupted while reindexing", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void reindexDocuments(final Queue<DocumentImpl> queue, final int mode, final boolean online,
+            final ReindexProgress progress) throws TransactionException {
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final Txn transaction = transact.beginTransaction()) {
+            DocumentImpl doc;
+            while((doc = queue.poll()) != null) {
+                try {
+                    reindexQueuedDocument(transaction, doc, mode, online);
+                } catch(final ReadOnlyException e) {
+                    LOG.warn("Failed to drop the index of document " + doc.getURI() + ": " + DATABASE_IS_READ_ONLY, e);
+                }
+                progress.documentDone();
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    /**
+     * Reindex a document collected by {@link #reindexCollection(Txn, Collection, int, List, boolean)}.
+     * The document is looked up again and locked, for writing in online mode. It is skipped
+     * if it has been removed or replaced by another document in the meantime.
+     */
+    private void reindexQueuedDocument(final Txn transaction, final DocumentImpl queued, final int mode,
+            final boolean online) throws ReadOnlyException {
+        final int lockMode = online ? Lock.WRITE_LOCK : Lock.READ_LOCK;
+        final DocumentImpl doc;
+        try {
+            final Collection collection = getCollection(queued.getCollection().getURI());
+            doc = collection == null ? null : collection.getDocumentWithLock(this, queued.getFileURI(), lockMode);
+        } catch(final LockException | PermissionDeniedException e) {
+            LOG.warn("Failed to acquire lock on document " + queued.getURI() + ", not reindexed", e);
+            return;
+        }
+        if(doc == null) {
+            LOG.debug("Document " + queued.getURI() + " has been removed, not reindexed");
+            return;
+        }
+        try {
+            if(doc.getDocId() != queued.getDocId()) {
+                LOG.debug("Document " + queued.getURI() + " has been replaced, not reindexed");
+                return;
+            }
+            reindexXMLResource(transaction, doc, mode, online);
+        } finally {
+            doc.getUpdateLock().release(lockMode);
+        }
+    }
+
+    /**
+     * Progress of a parallel reindex, shown as additional information
+     * of the running job, e.g. by the ProcessReport MBean.
+     */
+    private static class ReindexProgress {
+
+        private final XmldbURI collectionUri;
+        private final AtomicInteger done = new AtomicInteger();
+        private volatile int total = 0;
+
+        ReindexProgress(final XmldbURI collectionUri) {
+            this.collectionUri = collectionUri;
+        }
+
+        void setTotal(final int total) {
+            this.total = total;
+        }
+
+        void documentDone() {
+            done.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return collectionUri + " (" + done.get() + "/" + total + " documents)";
+        }
+    }
+
+    private static class ReindexThreadFactory implements ThreadFactory {
+        private final AtomicInteger id = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(r, "exist-reindex-" + id.getAndIncrement());
+        }
+    }
+
     public void dropCollectionIndex(final Txn transaction, final Collection collection) throws PermissionDeniedException {
         dropCollectionIndex(transaction, collection, false);
     }
@@ -2804,6 +3011,18 @@ public class NativeBroker extends DBBroker {
         return nextDocId;
     }
 
+    /**
+     * Reindex the document. If online is true, the existing index entries
+     * of the document are removed first.
+     */
+    private void reindexXMLResource(final Txn transaction, final DocumentImpl doc, final int mode, final boolean online)
+            throws ReadOnlyException {
+        if(online) {
+            dropIndex(transaction, doc);
+        }
+        reindexXMLResource(transaction, doc, mode);
+    }
+
     /**
      * Reindex the nodes in the document. This method will either reindex all
      * descendant nodes of the passed node, or all nodes below some level of
@@ -3609,6 +3828,44 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    @Override
+    public void syncFiles(final Runnable throttle) {
+        if(isReadOnly()) {
+            return;
+        }
+        try {
+            new DOMTransaction(this, domDb, Lock.WRITE_LOCK) {
+                @Override
+                public Object start() {
+                    try {
+                        domDb.flush();
+                    } catch(final DBException e) {
+                        LOG.warn("error while flushing dom.dbx", e);
+                    }
+                    return null;
+                }
+            }.run();
+            throttle.run();
+            final Lock lock = collectionsDb.getLock();
+            try {
+                lock.acquire(Lock.WRITE_LOCK);
+                collectionsDb.flush();
+            } catch(final LockException e) {
+                LOG.warn("Failed to acquire lock on " + FileUtils.fileName(collectionsDb.getFile()), e);
+            } finally {
+                lock.release(Lock.WRITE_LOCK);
+            }
+            throttle.run();
+            for(final ContentLoadingObserver observer : contentLoadingObservers) {
+                observer.sync();
+                throttle.run();
+            }
+            pool.getIndexManager().sync(throttle);
+        } catch(final DBException dbe) {
+            LOG.warn(dbe);
+        }
+    }
+
     @Override
     public void shutdown() {
         try {
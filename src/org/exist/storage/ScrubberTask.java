@@ -0,0 +1,438 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.backup.ConsistencyCheck;
+import org.exist.backup.ErrorReport;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.management.AgentFactory;
+import org.exist.management.impl.Scrubber;
+import org.exist.storage.btree.BTree;
+import org.exist.storage.btree.BTreeCallback;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
+import org.exist.storage.index.CollectionStore;
+import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.lock.Lock;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.exist.xquery.TerminatedException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Incrementally checks the database files in the background. Every run
+ * checks at most <code>pages</code> pages of the core .dbx files, reading them
+ * directly from disk and verifying their checksum (if
+ * {@link org.exist.storage.btree.PageStore#CHECKSUMS_ATTRIBUTE} is enabled) and
+ * header, and the persistent DOM and permissions of at most
+ * <code>documents</code> documents. The next run continues where the last one
+ * stopped, so frequent runs with small limits check the whole database over
+ * time without stopping it for long.
+ *
+ * The tree of a document is checked while holding the lock on dom.dbx, which
+ * is exclusive: it blocks all other access to the persistent DOM, whichever
+ * mode is requested. The tree of documents with more than
+ * <code>document-pages</code> DOM pages is thus not checked, so a run holds
+ * the lock for at most <code>documents</code> times that many pages, and for
+ * one document at a time.
+ *
+ * Besides the node hierarchy, the tree check verifies the dom.dbx B+-tree,
+ * which maps node ids to storage addresses, for the nodes within the
+ * default index depth. Secondary indexes, like the structural, range and
+ * full text indexes, are not cross-checked: checking them would need a
+ * lookup per node on files held under other locks, and they can be rebuilt
+ * from the DOM by reindexing the collection.
+ *
+ * Problems are logged and reported through the Scrubber MBean.
+ */
+public class ScrubberTask implements SystemTask {
+
+    public final static String PAGES_PROP_NAME = "pages";
+    public final static String DOCUMENTS_PROP_NAME = "documents";
+    public final static String DOCUMENT_PAGES_PROP_NAME = "document-pages";
+
+    /** Pages checked while holding the lock on a file */
+    private final static int PAGES_PER_LOCK = 64;
+
+    /** Number of error reports kept for the MBean */
+    public final static int MAX_ERRORS = 100;
+
+    private int maxPages = 1024;
+    private int maxDocuments = 50;
+    private int maxDocumentPages = 256;
+
+    // position of the next run
+    private int fileIdx = 0;
+    private long nextPage = 0;
+    private Value nextDocument = null;
+
+    private long checkedPages = 0;
+    private long checkedDocuments = 0;
+    private long skippedDocuments = 0;
+    private long pageRounds = 0;
+    private long documentRounds = 0;
+    private long errorCount = 0;
+    private Date lastRun = null;
+    private final ArrayDeque<ErrorReport> errors = new ArrayDeque<>();
+
+    private BrokerPool pool = null;
+    private final List<BTree> files = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void configure(final Configuration config, final Properties properties) throws EXistException {
+        maxPages = getInt(properties, PAGES_PROP_NAME, maxPages);
+        maxDocuments = getInt(properties, DOCUMENTS_PROP_NAME, maxDocuments);
+        maxDocumentPages = getInt(properties, DOCUMENT_PAGES_PROP_NAME, maxDocumentPages);
+    }
+
+    private static int getInt(final Properties properties, final String name, final int defaultValue) throws EXistException {
+        final String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new EXistException("Parameter '" + name + "' has to be an integer");
+        }
+    }
+
+    @Override
+    public boolean afterCheckpoint() {
+        return false;
+    }
+
+    @Override
+    public void execute(final DBBroker broker) throws EXistException {
+        final NativeBroker nativeBroker = (NativeBroker) broker;
+        if (pool == null) {
+            pool = broker.getBrokerPool();
+            for (final byte id : nativeBroker.getStorageFileIds()) {
+                final BTree file = nativeBroker.getStorage(id);
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+            try {
+                AgentFactory.getInstance().addMBean(pool.getId(),
+                        "org.exist.management." + pool.getId() + ".tasks:type=Scrubber", new Scrubber(this));
+            } catch (final DatabaseConfigurationException e) {
+                LOG.warn("Exception while registering scrubber mbean.", e);
+            }
+        }
+
+        final Thread thread = Thread.currentThread();
+        final int priority = thread.getPriority();
+        thread.setPriority(Thread.MIN_PRIORITY);
+        try {
+            if (maxPages > 0) {
+                checkPages(nativeBroker);
+            }
+            if (maxDocuments > 0) {
+                checkDocuments(nativeBroker);
+            }
+        } finally {
+            thread.setPriority(priority);
+            synchronized (this) {
+                lastRun = new Date();
+            }
+        }
+    }
+
+    private void checkPages(final NativeBroker broker) {
+        final byte[] fileIds = broker.getStorageFileIds();
+        int budget = maxPages;
+        int filesDone = 0;
+        while (budget > 0 && filesDone <= fileIds.length) {
+            if (fileIdx >= fileIds.length) {
+                fileIdx = 0;
+                synchronized (this) {
+                    pageRounds++;
+                }
+            }
+            final BTree file = broker.getStorage(fileIds[fileIdx]);
+            final int checked = file == null ? 0 : checkPages(file, budget);
+            budget -= checked;
+            if (budget > 0) {
+                // reached the end of the file
+                fileIdx++;
+                nextPage = 0;
+                filesDone++;
+            }
+        }
+    }
+
+    /**
+     * Checks up to <code>budget</code> pages of the file, starting at
+     * <code>nextPage</code>. The lock is released every
+     * {@link #PAGES_PER_LOCK} pages.
+     *
+     * @return the number of pages checked
+     */
+    private int checkPages(final BTree file, final int budget) {
+        final Lock lock = file.getLock();
+        int checked = 0;
+        while (checked < budget) {
+            try {
+                if (lock != null) {
+                    lock.acquire(Lock.READ_LOCK);
+                }
+            } catch (final LockException e) {
+                LOG.warn("Failed to acquire lock on " + FileUtils.fileName(file.getFile()));
+                return checked;
+            }
+            int batch = 0;
+            try {
+                final long total = file.getTotalPageCount();
+                final int n = Math.min(PAGES_PER_LOCK, budget - checked);
+                for (; batch < n; batch++) {
+                    if (nextPage >= total) {
+                        return checked + batch;
+                    }
+                    final String problem = file.checkPage(nextPage);
+                    if (problem != null) {
+                        report(new ErrorReport(ErrorReport.PAGE_CORRUPTED,
+                                FileUtils.fileName(file.getFile()) + ": " + problem));
+                    }
+                    nextPage++;
+                }
+            } catch (final IOException e) {
+                report(new ErrorReport(ErrorReport.PAGE_CORRUPTED,
+                        FileUtils.fileName(file.getFile()) + ": failed to read page " + nextPage, e));
+                nextPage++;
+                batch++;
+            } finally {
+                if (lock != null) {
+                    lock.release(Lock.READ_LOCK);
+                }
+                synchronized (this) {
+                    checkedPages += batch;
+                }
+            }
+            checked += batch;
+        }
+        return checked;
+    }
+
+    private void checkDocuments(final NativeBroker broker) {
+        final List<DocumentImpl> docs = readDocuments(broker);
+        if (docs == null) {
+            return;
+        }
+        final ConsistencyCheck check = new ConsistencyCheck(broker, false, true);
+        for (final DocumentImpl doc : docs) {
+            ErrorReport error = check.checkPermissions(doc);
+            if (error == null && doc.getResourceType() == DocumentImpl.XML_FILE) {
+                if (doc.getMetadata().getPageCount() > maxDocumentPages) {
+                    // would hold the dom.dbx lock for too long
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Scrubber skips the tree of document " + doc.getDocId() + ": " +
+                                doc.getMetadata().getPageCount() + " pages");
+                    }
+                    synchronized (this) {
+                        skippedDocuments++;
+                    }
+                } else {
+                    error = check.checkXMLTree(doc);
+                }
+            }
+            if (error != null) {
+                if (error instanceof ErrorReport.ResourceError) {
+                    ((ErrorReport.ResourceError) error).setDocumentId(doc.getDocId());
+                }
+                report(error);
+            }
+            synchronized (this) {
+                checkedDocuments++;
+            }
+        }
+    }
+
+    /**
+     * Reads the metadata of the next <code>maxDocuments</code> documents
+     * following <code>nextDocument</code> from the collection store.
+     *
+     * @return the documents or null if the collection store could not be read
+     */
+    private List<DocumentImpl> readDocuments(final NativeBroker broker) {
+        final CollectionStore store = (CollectionStore) broker.getStorage(NativeBroker.COLLECTIONS_DBX_ID);
+        final List<DocumentImpl> docs = new ArrayList<>(maxDocuments);
+        final Value start = nextDocument == null ? new CollectionStore.DocumentKey() : nextDocument;
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, start,
+                new Value(new byte[] { CollectionStore.KEY_TYPE_DOCUMENT + 1 }));
+        final Lock lock = store.getLock();
+        try {
+            lock.acquire(Lock.READ_LOCK);
+            store.query(query, new DocumentCallback(store, start, docs));
+            // all documents read
+            nextDocument = null;
+            synchronized (this) {
+                documentRounds++;
+            }
+        } catch (final TerminatedException e) {
+            // read maxDocuments documents: continue after the last one next time
+        } catch (final LockException e) {
+            LOG.warn("Failed to acquire lock on " + FileUtils.fileName(store.getFile()));
+            return null;
+        } catch (final IOException | BTreeException e) {
+            report(new ErrorReport(ErrorReport.RESOURCE_ACCESS_FAILED,
+                    "Failed to read documents from " + FileUtils.fileName(store.getFile()), e));
+            nextDocument = null;
+        } finally {
+            lock.release(Lock.READ_LOCK);
+        }
+        return docs;
+    }
+
+    private void report(final ErrorReport error) {
+        LOG.error("Scrubber found a problem: " + error.toString());
+        synchronized (this) {
+            errorCount++;
+            if (errors.size() == MAX_ERRORS) {
+                errors.removeFirst();
+            }
+            errors.addLast(error);
+        }
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    public int getMaxDocumentPages() {
+        return maxDocumentPages;
+    }
+
+    public synchronized long getCheckedPages() {
+        return checkedPages;
+    }
+
+    public synchronized long getCheckedDocuments() {
+        return checkedDocuments;
+    }
+
+    /**
+     * @return the number of documents whose tree was not checked, because
+     * they have more than <code>document-pages</code> pages
+     */
+    public synchronized long getSkippedDocuments() {
+        return skippedDocuments;
+    }
+
+    /**
+     * @return the number of times all pages of the database files were checked
+     */
+    public synchronized long getPageRounds() {
+        return pageRounds;
+    }
+
+    /**
+     * @return the number of times all documents were checked
+     */
+    public synchronized long getDocumentRounds() {
+        return documentRounds;
+    }
+
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized Date getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * @return the last {@link #MAX_ERRORS} problems found
+     */
+    public synchronized List<ErrorReport> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @return the number of pages with a wrong checksum found by the scrubber
+     * or by normal reads since the database was started
+     */
+    public long getChecksumErrors() {
+        long count = 0;
+        for (final BTree file : files) {
+            count += file.getChecksumErrors();
+        }
+        return count;
+    }
+
+    private class DocumentCallback implements BTreeCallback {
+
+        private final CollectionStore store;
+        private final Value start;
+        private final List<DocumentImpl> docs;
+
+        private DocumentCallback(final CollectionStore store, final Value start, final List<DocumentImpl> docs) {
+            this.store = store;
+            this.start = start;
+            this.docs = docs;
+        }
+
+        @Override
+        public boolean indexInfo(final Value key, final long pointer) throws TerminatedException {
+            if (key.equals(start)) {
+                // checked by the last run
+                return true;
+            }
+            final byte type = key.data()[key.start() + CollectionStore.DocumentKey.OFFSET_DOCUMENT_TYPE];
+            final DocumentImpl doc = type == DocumentImpl.BINARY_FILE ?
+                    new BinaryDocument(pool) : new DocumentImpl(pool);
+            try {
+                final VariableByteInput istream = store.getAsStream(pointer);
+                if (type == DocumentImpl.BINARY_FILE) {
+                    doc.read(istream);
+                } else {
+                    doc.readWithMetadata(istream);
+                }
+                docs.add(doc);
+            } catch (final IOException e) {
+                final ErrorReport.ResourceError error = new ErrorReport.ResourceError(ErrorReport.RESOURCE_ACCESS_FAILED,
+                        "Failed to read document metadata", e);
+                error.setDocumentId(CollectionStore.DocumentKey.getDocumentId(key));
+                report(error);
+            }
+            nextDocument = new Value(key.getData());
+            if (docs.size() >= maxDocuments) {
+                throw new TerminatedException("scrubber: document limit reached");
+            }
+            return true;
+        }
+    }
+}
@@ -23,7 +23,11 @@
 package org.exist.storage;
 
 import java.text.NumberFormat;
-import java.util.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,7 +37,6 @@ import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.source.Source;
 import org.exist.util.Configuration;
-import org.exist.util.hashtable.Object2ObjectHashMap;
 import org.exist.xquery.*;
 
 /**
@@ -42,12 +45,17 @@ import org.exist.xquery.*;
  * objects from which they were created. For each XQuery, a maximum of
  * {@link #MAX_STACK_SIZE} compiled expressions are kept in the pool. An XQuery
  * expression will be removed from the pool if it has not been used for a
- * pre-defined timeout. These settings can be configured in conf.xml.
+ * pre-defined timeout. If the pool is full, the least recently used XQuery is
+ * removed. These settings can be configured in conf.xml.
+ *
+ * A compiled expression keeps state while it is evaluated, so it is only
+ * used by one thread at a time. The pool itself does not block: concurrent
+ * threads borrowing or returning expressions do not wait for each other.
  * 
  * @author wolf
  */
 @ConfigurationClass("query-pool")
-public class XQueryPool extends Object2ObjectHashMap {
+public class XQueryPool {
 
 	public final static int MAX_POOL_SIZE = 128;
 
@@ -59,8 +67,16 @@ public class XQueryPool extends Object2ObjectHashMap {
 
 	private final static Logger LOG = LogManager.getLogger(XQueryPool.class);
 
-	private long lastTimeOutCheck;
-	private long lastTimeOfCleanup;
+	private final Map<Source, Entry> entries = new ConcurrentHashMap<>(27);
+
+	private volatile long lastTimeOutCheck;
+	private volatile long lastTimeOfCleanup;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder compilations = new LongAdder();
+	private final LongAdder compileTime = new LongAdder();
 
 	@ConfigurationFieldAsAttribute("size")
 	private int maxPoolSize;
@@ -89,7 +105,6 @@ public class XQueryPool extends Object2ObjectHashMap {
 	 * @param conf
 	 */
 	public XQueryPool(Configuration conf) {
-		super(27);
 		lastTimeOutCheck = lastTimeOfCleanup = System.currentTimeMillis();
 
 		final Integer maxStSz = (Integer) conf.getProperty(PROPERTY_MAX_STACK_SIZE);
@@ -126,104 +141,87 @@ public class XQueryPool extends Object2ObjectHashMap {
 	}
 
 	public void returnCompiledXQuery(Source source, CompiledXQuery xquery) {
-		returnObject(source, xquery);
-	}
+		final long ts = source.getCacheTimestamp();
+		if (ts != 0 && ts <= lastTimeOfCleanup)
+			// compiled before the pool was cleared
+			return;
 
-	private synchronized void returnObject(Source source, Object o) {
-		long ts = source.getCacheTimestamp();
-		if (ts == 0 || ts > lastTimeOfCleanup) {
-			if (size() >= maxPoolSize)
+		Entry entry = entries.get(source);
+		if (entry == null) {
+			if (entries.size() >= maxPoolSize) {
 				timeoutCheck();
-
-			if (size() < maxPoolSize) {
-				Stack stack = (Stack) get(source);
-				if (stack == null) {
-					stack = new Stack();
-					source.setCacheTimestamp(System.currentTimeMillis());
-					put(source, stack);
-				}
-				if (stack.size() < maxStackSize) {
-					for (int i = 0; i < stack.size(); i++) {
-						if (stack.get(i) == o)
-							// query already in pool. may happen for modules.
-							// don't add it a second time.
-							return;
-					}
-					stack.push(o);
-				}
+				if (entries.size() >= maxPoolSize)
+					evictLeastRecentlyUsed();
+				if (entries.size() >= maxPoolSize)
+					return;
 			}
+			source.setCacheTimestamp(System.currentTimeMillis());
+			final Entry newEntry = new Entry(source);
+			entry = entries.putIfAbsent(source, newEntry);
+			if (entry == null)
+				entry = newEntry;
 		}
+		entry.push(xquery);
 	}
 
-	private Object borrowObject(DBBroker broker, Source source) {
-
-        CompiledXQuery query = null;
-        Source key = null;
-
-        synchronized (this) {
-            final int idx = getIndex(source);
-            if (idx < 0) {
-                return null;
-            }
-            key = (Source) keys[idx];
-            int validity = key.isValid(broker);
-            if (validity == Source.UNKNOWN)
-                validity = key.isValid(source);
-
-            if (validity == Source.INVALID || validity == Source.UNKNOWN) {
-                keys[idx] = REMOVED;
-                values[idx] = null;
-                LOG.debug(source.getKey() + " is invalid");
-                return null;
-            }
-            final Stack stack = (Stack) values[idx];
-            if (stack == null || stack.isEmpty())
-                return null;
-
-            // now check if the compiled expression is valid
-            // it might become invalid if an imported module has changed.
-            query = (CompiledXQuery) stack.pop();
-            final XQueryContext context = query.getContext();
-            //context.setBroker(broker);
-        }
-
-        // query.isValid() may open collections which in turn tries to acquire
-        // org.exist.storage.lock.ReentrantReadWriteLock. In order to avoid
-        // deadlocks with concurrent queries holding that lock while borrowing
-        // we must not hold onto the XQueryPool while calling isValid().
-
-		if (!query.isValid()) synchronized (this) {
-			// the compiled query is no longer valid: one of the imported
-			// modules may have changed
-			remove(key);
+	public CompiledXQuery borrowCompiledXQuery(DBBroker broker, Source source) throws PermissionDeniedException {
+		final CompiledXQuery query = borrowObject(broker, source);
+		if (query == null) {
+			misses.increment();
 			return null;
-		} else
-			return query;
+		}
+		hits.increment();
+		
+		//check execution permission
+		source.validate(broker.getCurrentSubject(), Permission.EXECUTE);
+		return query;
 	}
 
-	public synchronized CompiledXQuery borrowCompiledXQuery(DBBroker broker, Source source) throws PermissionDeniedException {
-		final CompiledXQuery query = (CompiledXQuery) borrowObject(broker, source);
+	private CompiledXQuery borrowObject(DBBroker broker, Source source) {
+		final Entry entry = entries.get(source);
+		if (entry == null)
+			return null;
+
+		int validity = entry.source.isValid(broker);
+		if (validity == Source.UNKNOWN)
+			validity = entry.source.isValid(source);
+
+		if (validity == Source.INVALID || validity == Source.UNKNOWN) {
+			entries.remove(source, entry);
+			LOG.debug(source.getKey() + " is invalid");
+			return null;
+		}
+
+		final CompiledXQuery query = entry.pop();
 		if (query == null)
 			return null;
-		
-		//check execution permission
-		source.validate(broker.getCurrentSubject(), Permission.EXECUTE);
-		
+
 		// now check if the compiled expression is valid
 		// it might become invalid if an imported module has changed.
-		//final XQueryContext context = query.getContext();
-		//context.setBroker(broker);
+		// query.isValid() may open collections which in turn tries to acquire
+		// org.exist.storage.lock.ReentrantReadWriteLock, so this must not be
+		// called while holding a lock on the pool.
+		if (!query.isValid()) {
+			entries.remove(source, entry);
+			return null;
+		}
 		return query;
 	}
 
-    public synchronized void clear() {
-    	lastTimeOfCleanup = System.currentTimeMillis();
-        
-        for (final Iterator i = iterator(); i.hasNext();) {
-            final Source next = (Source) i.next();
-            remove(next);
-        }
-    }
+	/**
+	 * Called by {@link XQuery} whenever a query has been compiled.
+	 *
+	 * @param millis time needed for compilation
+	 */
+	public void recordCompilation(long millis) {
+		compilations.increment();
+		compileTime.add(millis);
+	}
+
+	public void clear() {
+		lastTimeOfCleanup = System.currentTimeMillis();
+		entries.clear();
+	}
 
 	private void timeoutCheck() {
 		if (timeoutCheckInterval < 0L)
@@ -233,14 +231,106 @@ public class XQueryPool extends Object2ObjectHashMap {
 
 		if (currentTime - lastTimeOutCheck < timeoutCheckInterval)
 			return;
+		lastTimeOutCheck = currentTime;
 
-		for (final Iterator i = iterator(); i.hasNext();) {
-			final Source next = (Source) i.next();
-			if (currentTime - next.getCacheTimestamp() > timeout) {
-				remove(next);
+		for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+			if (currentTime - i.next().lastAccess > timeout) {
+				i.remove();
+				evictions.increment();
 			}
 		}
-		
-		lastTimeOutCheck = currentTime;
+	}
+
+	private void evictLeastRecentlyUsed() {
+		Entry oldest = null;
+		for (final Entry entry : entries.values()) {
+			if (oldest == null || entry.lastAccess < oldest.lastAccess)
+				oldest = entry;
+		}
+		if (oldest != null && entries.remove(oldest.source, oldest))
+			evictions.increment();
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public int getMaxStackSize() {
+		return maxStackSize;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return number of different queries in the pool
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of compiled expressions in the pool
+	 */
+	public int getCompiledCount() {
+		int count = 0;
+		for (final Entry entry : entries.values()) {
+			count += entry.queries.size();
+		}
+		return count;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getCompilations() {
+		return compilations.sum();
+	}
+
+	public long getCompileTime() {
+		return compileTime.sum();
+	}
+
+	/**
+	 * The compiled expressions available for one query.
+	 */
+	private class Entry {
+
+		/** The source the entry was created for, which is checked for modifications */
+		private final Source source;
+		private final ConcurrentLinkedDeque<CompiledXQuery> queries = new ConcurrentLinkedDeque<>();
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private Entry(Source source) {
+			this.source = source;
+		}
+
+		private void push(CompiledXQuery query) {
+			lastAccess = System.currentTimeMillis();
+			if (queries.size() >= maxStackSize)
+				return;
+			for (final CompiledXQuery next : queries) {
+				if (next == query)
+					// query already in pool. may happen for modules.
+					// don't add it a second time.
+					return;
+			}
+			queries.push(query);
+		}
+
+		private CompiledXQuery pop() {
+			lastAccess = System.currentTimeMillis();
+			return queries.pollFirst();
+		}
 	}
 }
@@ -233,7 +233,7 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        cache = new BTreeCache(cacheManager.getDefaultInitialSize(), 1.5,
+        cache = cacheManager.createBTreeCache(cacheManager.getDefaultInitialSize(), 1.5,
             0, CacheManager.BTREE_CACHE);
         cache.setFileName(FileUtils.fileName(getFile()));
         cacheManager.registerCache(cache);
@@ -531,6 +531,10 @@ public class BTree extends Paged implements Lockable {
      * @return <code>true</code> if something had to be cleaned
      */
     public boolean flush() throws DBException {
+        // pages may be flushed while other transactions are running:
+        // make sure their log records are written first
+        if (isTransactional)
+            {logManager.flushToLog(true);}
         boolean flushed = cache.flush();
         flushed = flushed | super.flush();
         return flushed;
@@ -0,0 +1,173 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A {@link PageStore} which serves page reads from read-only memory-mapped
+ * regions of the file instead of issuing a seek and read system call per page.
+ *
+ * The file is mapped in regions of {@link #REGION_SIZE} bytes. Writes go
+ * through the file channel; since the mappings are shared with the operating
+ * system's page cache, written data is visible to subsequent reads without
+ * remapping. Only when a read hits an offset beyond the mapped length, i.e.
+ * after the file has grown, the last region is remapped and new regions
+ * are added.
+ *
+ * The regions are unmapped when the store is closed. If the JVM does not
+ * allow that, they stay mapped until they are garbage collected.
+ */
+final class MappedPageStore implements PageStore {
+
+    private final static Logger LOG = LogManager.getLogger(MappedPageStore.class);
+
+    /** Size of a single mapped region: 64MB */
+    final static int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final static MappedByteBuffer[] NO_REGIONS = new MappedByteBuffer[0];
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int regionSize;
+
+    private MappedByteBuffer[] regions = NO_REGIONS;
+    private long mappedLength = 0;
+
+    MappedPageStore(final RandomAccessFile raf) throws IOException {
+        this(raf, REGION_SIZE);
+    }
+
+    MappedPageStore(final RandomAccessFile raf, final int regionSize) throws IOException {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.regionSize = regionSize;
+        remap(channel.size());
+    }
+
+    @Override
+    public void read(final long offset, final byte[] buf, final int off, final int len) throws IOException {
+        if (offset + len > mappedLength) {
+            final long fileLength = channel.size();
+            if (fileLength > mappedLength) {
+                remap(fileLength);
+            }
+        }
+        int read = 0;
+        while (read < len) {
+            final long pos = offset + read;
+            if (pos >= mappedLength) {
+                // end of file: the remaining bytes are empty
+                Arrays.fill(buf, off + read, off + len, (byte) 0);
+                break;
+            }
+            // duplicate to keep the position of the shared region untouched
+            final ByteBuffer region = regions[(int) (pos / regionSize)].duplicate();
+            final int regionOffset = (int) (pos % regionSize);
+            final int count = Math.min(len - read, region.limit() - regionOffset);
+            region.position(regionOffset);
+            region.get(buf, off + read, count);
+            read += count;
+        }
+    }
+
+    @Override
+    public void write(final long offset, final byte[] buf) throws IOException {
+        final ByteBuffer src = ByteBuffer.wrap(buf);
+        long pos = offset;
+        while (src.hasRemaining()) {
+            pos += channel.write(src, pos);
+        }
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        final MappedByteBuffer[] mapped = regions;
+        regions = NO_REGIONS;
+        mappedLength = 0;
+        for (final MappedByteBuffer region : mapped) {
+            unmap(region);
+        }
+        raf.close();
+    }
+
+    /**
+     * Releases the mapping of the buffer right away instead of waiting for
+     * it to be garbage collected. The buffer must not be used afterwards.
+     * Uses sun.misc.Unsafe#invokeCleaner on Java 9 and later and the
+     * buffer's cleaner on Java 8.
+     */
+    static void unmap(final MappedByteBuffer buffer) {
+        try {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (final NoSuchMethodException e) {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Unable to unmap file region, it is released once garbage collected: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Maps the file up to <code>fileLength</code>. Regions which are already
+     * fully mapped are kept, the last partially mapped region is replaced.
+     */
+    private void remap(final long fileLength) throws IOException {
+        final int regionCount = (int) ((fileLength + regionSize - 1) / regionSize);
+        final MappedByteBuffer[] newRegions = Arrays.copyOf(regions, regionCount);
+        final int first = (int) (mappedLength / regionSize);
+        final MappedByteBuffer replaced = first < regions.length ? regions[first] : null;
+        for (int i = first; i < regionCount; i++) {
+            final long start = (long) i * regionSize;
+            newRegions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, fileLength - start));
+        }
+        regions = newRegions;
+        mappedLength = fileLength;
+        if (replaced != null) {
+            // reads are serialized by the caller, nobody else uses the old region
+            unmap(replaced);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+
+/**
+ * Low-level page I/O backend used by {@link Paged} to read and write the
+ * raw bytes of a database file.
+ *
+ * Two implementations are available: {@link RandomAccessPageStore}, which
+ * seeks and reads through a {@link java.io.RandomAccessFile}, and
+ * {@link MappedPageStore}, which serves reads from memory-mapped regions of
+ * the file. The backend is selected per file through the <code>page-io</code>
+ * element in conf.xml.
+ *
+ * Like the <code>RandomAccessFile</code> it replaces, a page store is not
+ * thread-safe: callers are expected to hold the lock of the owning file.
+ */
+public interface PageStore {
+
+    String CONFIGURATION_ELEMENT_NAME = "page-io";
+    String DEFAULT_MODE_ATTRIBUTE = "default";
+    String CONFIGURATION_FILE_ELEMENT_NAME = "file";
+    String FILE_NAME_ATTRIBUTE = "name";
+    String FILE_MODE_ATTRIBUTE = "mode";
+    String CHECKSUMS_ATTRIBUTE = "checksums";
+
+    String PROPERTY_DEFAULT_MODE = "db-connection.page-io.default";
+    String PROPERTY_FILE_MODES = "db-connection.page-io.files";
+    String PROPERTY_CHECKSUMS = "db-connection.page-io.checksums";
+
+    /** Read and write pages through a RandomAccessFile */
+    String MODE_FILE = "file";
+
+    /** Read pages from memory-mapped regions of the file */
+    String MODE_MMAP = "mmap";
+
+    /**
+     * Reads <code>len</code> bytes starting at <code>offset</code> in the file into
+     * <code>buf</code>. Bytes beyond the current end of the file are returned as 0.
+     *
+     * @param offset the absolute offset in the file
+     * @param buf the buffer to read into
+     * @param off the start offset in <code>buf</code>
+     * @param len the number of bytes to read
+     */
+    void read(long offset, byte[] buf, int off, int len) throws IOException;
+
+    /**
+     * Writes the complete contents of <code>buf</code> at <code>offset</code>,
+     * growing the file if required.
+     *
+     * @param offset the absolute offset in the file
+     * @param buf the data to write
+     */
+    void write(long offset, byte[] buf) throws IOException;
+
+    /**
+     * @return the current length of the underlying file in bytes
+     */
+    long length() throws IOException;
+
+    /**
+     * Releases the underlying file handle and any mapped regions.
+     */
+    void close() throws IOException;
+}
@@ -76,6 +76,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
+import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
 
@@ -88,10 +89,19 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
  *  its subclasses.
+ *
+ *  If page checksums are enabled (see {@link PageStore#CHECKSUMS_ATTRIBUTE}),
+ *  a CRC32 checksum of every page is written into the last
+ *  {@link #LENGTH_PAGE_CHECKSUM} bytes of the page header area, which are not
+ *  used by any page header, and verified when the page is read. Pages written
+ *  without checksums store 0 there and are not verified.
  */
 
 public abstract class Paged {
@@ -119,6 +129,8 @@ public abstract class Paged {
     public static final int OFFSET_RECORD_COUNT = OFFSET_MAX_KEY_SIZE + LENGTH_MAX_KEY_SIZE; //43
     public static final int OFFSET_REMAINDER = OFFSET_RECORD_COUNT + LENGTH_RECORD_COUNT; //51
 
+    public static final int LENGTH_PAGE_CHECKSUM = 4; //sizeof int
+
     protected final static Logger LOG = LogManager.getLogger(Paged.class);
 
     protected final static byte DELETED = 127;
@@ -127,7 +139,7 @@ public abstract class Paged {
 
     protected static int PAGE_SIZE = 4096;
 
-    private RandomAccessFile raf;
+    private PageStore store;
     private Path file;
     private FileHeader fileHeader;
     private boolean readOnly = false;
@@ -135,11 +147,32 @@ public abstract class Paged {
 
     private byte[] tempPageData = null;
     private byte[] tempHeaderData = null;
+    private byte[] tempReadData = null;
+
+    private final boolean checksums;
+    private final AtomicLong checksumErrors = new AtomicLong();
+
+    private final String defaultPageIOMode;
+    private final Map<String, String> pageIOModes;
 	
+    @SuppressWarnings("unchecked")
     public Paged(BrokerPool pool) {
         fileHeader = createFileHeader(pool.getPageSize());
         tempPageData = new byte[fileHeader.pageSize];
         tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        final Configuration config = pool.getConfiguration();
+        if (config != null) {
+            defaultPageIOMode = (String) config.getProperty(PageStore.PROPERTY_DEFAULT_MODE, PageStore.MODE_FILE);
+            pageIOModes = (Map<String, String>) config.getProperty(PageStore.PROPERTY_FILE_MODES);
+            checksums = Boolean.TRUE.equals(config.getProperty(PageStore.PROPERTY_CHECKSUMS));
+        } else {
+            defaultPageIOMode = PageStore.MODE_FILE;
+            pageIOModes = null;
+            checksums = false;
+        }
+        if (checksums) {
+            tempReadData = new byte[fileHeader.pageSize];
+        }
     }
 
     public abstract short getFileVersion();
@@ -164,7 +197,7 @@ public abstract class Paged {
      */
     public boolean close() throws DBException {
         try {
-            raf.close();
+            store.close();
         } catch (final IOException e) {
             throw new DBException("an error occurred while closing database file: " + e.getMessage());
         }
@@ -227,14 +260,76 @@ public abstract class Paged {
      * @throws IOException
      */
     public void backupToStream(OutputStream os) throws IOException {
-        raf.seek(0);
         final byte[] buf = new byte[4096];
-        int len;
-        while ((len = raf.read(buf)) > 0) {
+        final long length = store.length();
+        for (long offset = 0; offset < length; offset += buf.length) {
+            final int len = (int) Math.min(buf.length, length - offset);
+            store.read(offset, buf, 0, len);
             os.write(buf, 0, len);
         }
     }
 
+    /**
+     * @return true if checksums are written for the pages of this file
+     */
+    public final boolean isChecksumEnabled() {
+        return checksums;
+    }
+
+    /**
+     * @return the number of pages of this file found with a wrong checksum
+     */
+    public final long getChecksumErrors() {
+        return checksumErrors.get();
+    }
+
+    /**
+     * @return the number of pages in the file, including free pages
+     */
+    public final long getTotalPageCount() {
+        return fileHeader.getTotalCount();
+    }
+
+    /**
+     * Reads a page directly from disk, bypassing the page cache, and checks
+     * its checksum and header. Changes to the page which are still in the
+     * cache are not seen. The caller has to hold the lock on the file.
+     *
+     * @param pageNum the page to check
+     * @return a description of the problem found, or null if the page is fine
+     * @throws IOException
+     */
+    public String checkPage(final long pageNum) throws IOException {
+        final Page page = getPage(pageNum);
+        final byte[] data = new byte[fileHeader.pageSize];
+        store.read(page.getOffset(), data, 0, data.length);
+        final int stored = ByteConversion.byteToInt(data, fileHeader.pageHeaderSize - LENGTH_PAGE_CHECKSUM);
+        if (stored != 0 && stored != checksum(data)) {
+            checksumErrors.incrementAndGet();
+            return "checksum mismatch on " + page.getPageInfo();
+        }
+        final PageHeader header = createPageHeader();
+        header.read(data, 0);
+        if (header.getDataLen() < 0 || header.getDataLen() > fileHeader.getWorkSize()) {
+            return "invalid data length " + header.getDataLen() + " on " + page.getPageInfo();
+        }
+        return null;
+    }
+
+    /**
+     * Computes the checksum of the page data, skipping the bytes the
+     * checksum is stored in. Never returns 0, which marks pages without
+     * checksum.
+     */
+    private int checksum(final byte[] data) {
+        final int checksumOffset = fileHeader.pageHeaderSize - LENGTH_PAGE_CHECKSUM;
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, checksumOffset);
+        crc.update(data, fileHeader.pageHeaderSize, data.length - fileHeader.pageHeaderSize);
+        final int checksum = (int) crc.getValue();
+        return checksum == 0 ? 1 : checksum;
+    }
+
     /**
      *  getFile returns the file object for this Paged.
      *
@@ -260,7 +355,7 @@ public abstract class Paged {
      */
     public void closeAndRemove() {
         try {
-            raf.close();
+            store.close();
         } catch (final IOException e) {
             //TODO : forward the exception ? -pb
             LOG.error("Failed to close data file: " + file.toAbsolutePath().toString());
@@ -384,6 +479,7 @@ public abstract class Paged {
     protected final void setFile(final Path file) throws DBException {
         this.file = file;
         fileIsNew = !Files.exists(file);
+        RandomAccessFile raf;
         try {
             if ((!Files.exists(file)) || Files.isWritable(file)) {
                 try {
@@ -404,12 +500,32 @@ public abstract class Paged {
                 readOnly = true;
                 raf = new RandomAccessFile(file.toFile(), "r");
             }
+            store = createPageStore(raf);
         } catch (final IOException e) {
             LOG.warn("An exception occurred while opening database file " +
                 file.toAbsolutePath().toString() + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Creates the {@link PageStore} for the opened file, using the page I/O
+     * mode configured for this file name in conf.xml, or the default mode.
+     */
+    private PageStore createPageStore(final RandomAccessFile raf) throws IOException {
+        final String fileName = FileUtils.fileName(file);
+        String mode = pageIOModes == null ? null : pageIOModes.get(fileName);
+        if (mode == null) {
+            mode = defaultPageIOMode;
+        }
+        if (PageStore.MODE_MMAP.equals(mode)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Using memory-mapped page I/O for " + fileName);
+            }
+            return new MappedPageStore(raf);
+        }
+        return new RandomAccessPageStore(raf);
+    }
+
     /**
      *  Unlinks a set of pages starting at the specified page.
      *
@@ -686,8 +802,7 @@ public abstract class Paged {
         }
 
         public final synchronized void read() throws IOException {
-            raf.seek(0);
-            raf.read(buf);
+            store.read(0, buf, 0, buf.length);
             read(buf);
             calculateWorkSize();
             dirty = false;
@@ -823,9 +938,8 @@ public abstract class Paged {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            store.write(0, buf);
             dirty = false;
         }
 
@@ -919,17 +1033,38 @@ public abstract class Paged {
         }
 
         public byte[] read() throws IOException {
+            if (checksums) {
+                return readVerified();
+            }
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
-                }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
+                store.read(offset, tempHeaderData, 0, tempHeaderData.length);
                 // Read in the header
                 header.read(tempHeaderData, 0);
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                store.read(offset + tempHeaderData.length, workData, 0, workData.length);
+                return workData;
+            } catch(final Exception e) {
+                LOG.warn("error while reading page: " + getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        /**
+         * Reads the entire page at once to verify its checksum.
+         */
+        private byte[] readVerified() throws IOException {
+            try {
+                store.read(offset, tempReadData, 0, tempReadData.length);
+                final int stored = ByteConversion.byteToInt(tempReadData, fileHeader.pageHeaderSize - LENGTH_PAGE_CHECKSUM);
+                if (stored != 0 && stored != checksum(tempReadData)) {
+                    checksumErrors.incrementAndGet();
+                    LOG.error("Page checksum mismatch: " + getPageInfo());
+                    throw new IOException("page checksum mismatch");
+                }
+                header.read(tempReadData, 0);
+                final byte[] workData = new byte[header.dataLen];
+                System.arraycopy(tempReadData, fileHeader.pageHeaderSize, workData, 0, workData.length);
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: " + getPageInfo(), e);
@@ -963,9 +1098,9 @@ public abstract class Paged {
                     System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
                 }
             }
-            if (raf.getFilePointer() != offset)
-                {raf.seek(offset);}
-            raf.write(tempPageData);
+            ByteConversion.intToByte(checksums ? checksum(tempPageData) : 0, tempPageData,
+                fileHeader.pageHeaderSize - LENGTH_PAGE_CHECKSUM);
+            store.write(offset, tempPageData);
         }
 
         /* (non-Javadoc)
@@ -988,10 +1123,8 @@ public abstract class Paged {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset)
-                {raf.seek(offset);}
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            store.read(offset, data, 0, data.length);
             LOG.debug("Contents of page " + pageNum + ": " + hexDump(data));
         }
     }
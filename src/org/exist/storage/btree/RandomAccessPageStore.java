@@ -0,0 +1,73 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * The default {@link PageStore}: every page access seeks the
+ * {@link RandomAccessFile} to the page offset and reads or writes
+ * through it.
+ */
+final class RandomAccessPageStore implements PageStore {
+
+    private final RandomAccessFile raf;
+
+    RandomAccessPageStore(final RandomAccessFile raf) {
+        this.raf = raf;
+    }
+
+    @Override
+    public void read(final long offset, final byte[] buf, final int off, final int len) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        int read = 0;
+        while (read < len) {
+            final int count = raf.read(buf, off + read, len - read);
+            if (count < 0) {
+                // end of file: the remaining bytes are empty
+                Arrays.fill(buf, off + read, off + len, (byte) 0);
+                break;
+            }
+            read += count;
+        }
+    }
+
+    @Override
+    public void write(final long offset, final byte[] buf) throws IOException {
+        if (raf.getFilePointer() != offset) {
+            raf.seek(offset);
+        }
+        raf.write(buf);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return raf.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
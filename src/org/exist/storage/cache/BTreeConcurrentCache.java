@@ -0,0 +1,42 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+/**
+ * Concurrent variant of {@link BTreeCache}: inner pages of the B+-tree
+ * are kept in cache in preference to leaf pages, which are replaced
+ * first.
+ */
+public class BTreeConcurrentCache extends ConcurrentClockCache {
+
+    public BTreeConcurrentCache(int size, double growthFactor, double growthThreshold, String type) {
+        super(size, growthFactor, growthThreshold, type);
+    }
+
+    public BTreeConcurrentCache(int size, double growthFactor, double growthThreshold, String type,
+            int concurrencyLevel) {
+        super(size, growthFactor, growthThreshold, type, concurrencyLevel);
+    }
+
+    @Override
+    protected boolean preferKeep(Cacheable item) {
+        return ((BTreeCacheable) item).isInnerPage();
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.exist.storage.CacheManager;
+import org.exist.util.hashtable.Long2ObjectHashMap;
+
+/**
+ * A thread-safe cache implementing a CLOCK (second chance) replacement
+ * policy. The cache is split into a number of independently locked shards,
+ * each holding its own clock ring, so concurrent lookups of different
+ * pages do not contend for a single monitor. A cache hit only sets the
+ * reference bit of the entry; the clock hand clears reference bits while
+ * scanning for a victim, so frequently accessed pages survive a sweep.
+ *
+ * Like the other {@link org.exist.storage.cache.Cache} implementations,
+ * items which do not {@link Cacheable#allowUnload() allow unloading} are
+ * never evicted and a replaced item is written back by calling
+ * {@link Cacheable#sync(boolean)}. The cache participates in the memory
+ * accounting of the {@link org.exist.storage.CacheManager}: if thrashing
+ * is detected and the growth factor is &gt; 1, the cache requests more
+ * memory and is resharded when its size changes.
+ */
+public class ConcurrentClockCache implements Cache {
+
+    /** the minimum number of pages each shard should be able to hold */
+    public final static int MIN_SHARD_SIZE = 16;
+
+    /** upper limit for the number of shards */
+    public final static int MAX_SHARDS = 64;
+
+    private final String type;
+
+    private final int concurrencyLevel;
+
+    protected final double growthFactor;
+
+    /** guarded by itself */
+    protected final Accounting accounting;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private volatile Shard[] shards;
+
+    private volatile int size;
+
+    private int hitsOld = -1;
+
+    protected String fileName;
+
+    protected CacheManager cacheManager = null;
+
+    public ConcurrentClockCache(int size, double growthFactor, double growthThreshold, String type) {
+        this(size, growthFactor, growthThreshold, type, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentClockCache(int size, double growthFactor, double growthThreshold, String type,
+            int concurrencyLevel) {
+        this.size = size;
+        this.growthFactor = growthFactor;
+        this.type = type;
+        this.concurrencyLevel = Math.max(1, concurrencyLevel);
+        this.accounting = new Accounting(growthThreshold);
+        accounting.setTotalSize(size);
+        this.shards = createShards(size);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void add(Cacheable item) {
+        add(item, 1);
+    }
+
+    public void add(Cacheable item, int initialRefCount) {
+        Cacheable replaced;
+        final Shard shard = lockShard(item.getKey());
+        try {
+            replaced = shard.put(item);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (replaced != null) {
+            pageReplaced(item);
+        }
+    }
+
+    public Cacheable get(Cacheable item) {
+        return get(item.getKey());
+    }
+
+    public Cacheable get(long key) {
+        final Cacheable item;
+        final Shard shard = lockShard(key);
+        try {
+            item = shard.get(key);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (item == null)
+            {misses.increment();}
+        else
+            {hits.increment();}
+        return item;
+    }
+
+    public void remove(Cacheable item) {
+        final Shard shard = lockShard(item.getKey());
+        try {
+            shard.remove(item.getKey());
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public boolean hasDirtyItems() {
+        for (final Shard shard : lockAll()) {
+            try {
+                for (int i = 0; i < shard.count; i++) {
+                    if (shard.ring[i].item.isDirty())
+                        {return true;}
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    public boolean flush() {
+        boolean flushed = false;
+        for (final Shard shard : lockAll()) {
+            try {
+                for (int i = 0; i < shard.count; i++) {
+                    final Cacheable item = shard.ring[i].item;
+                    if (item.isDirty())
+                        {flushed = flushed | item.sync(false);}
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return flushed;
+    }
+
+    public int getBuffers() {
+        return size;
+    }
+
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    /**
+     * Resize the cache. All shards are locked and their entries are
+     * redistributed over a new set of shards matching the new size.
+     * When shrinking, unloadable items are written back and dropped
+     * until the new capacity is reached.
+     */
+    public void resize(int newSize) {
+        final Shard[] current = shards;
+        for (final Shard shard : current) {
+            shard.lock.lock();
+        }
+        try {
+            final Shard[] resized = createShards(newSize);
+            for (final Shard shard : current) {
+                for (int i = 0; i < shard.count; i++) {
+                    final Cacheable item = shard.ring[i].item;
+                    resized[indexFor(item.getKey(), resized.length)].put(item);
+                }
+                shard.retired = true;
+            }
+            this.size = newSize;
+            this.shards = resized;
+        } finally {
+            for (final Shard shard : current) {
+                shard.lock.unlock();
+            }
+        }
+        synchronized (accounting) {
+            accounting.reset();
+            accounting.setTotalSize(newSize);
+        }
+    }
+
+    public void setCacheManager(CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    public int getUsedBuffers() {
+        int used = 0;
+        for (final Shard shard : lockAll()) {
+            used += shard.count;
+            shard.lock.unlock();
+        }
+        return used;
+    }
+
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    public int getFails() {
+        return misses.intValue();
+    }
+
+    public int getLoad() {
+        final int current = getHits();
+        if (hitsOld == 0) {
+            hitsOld = current;
+            return Integer.MAX_VALUE;
+        }
+        final int load = current - hitsOld;
+        hitsOld = current;
+        return load;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the number of shards the cache is currently split into.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Called while scanning for a victim. Subclasses may return true to
+     * protect an item from being evicted during the first sweeps of the
+     * clock hand. Protected items are only replaced if no other item
+     * can be unloaded.
+     *
+     * @param item the eviction candidate
+     * @return true if the item should be kept in preference to others
+     */
+    protected boolean preferKeep(Cacheable item) {
+        return false;
+    }
+
+    private void pageReplaced(Cacheable item) {
+        final boolean resize;
+        synchronized (accounting) {
+            accounting.replacedPage(item);
+            resize = growthFactor > 1.0 && accounting.resizeNeeded();
+        }
+        // no shard lock must be held here: the cache manager may call resize()
+        if (resize && cacheManager != null) {
+            cacheManager.requestMem(this);
+        }
+    }
+
+    private Shard[] createShards(int cacheSize) {
+        int count = 1;
+        while (count < concurrencyLevel && count < MAX_SHARDS && (count << 1) * MIN_SHARD_SIZE <= cacheSize) {
+            count <<= 1;
+        }
+        final int capacity = Math.max(1, (cacheSize + count - 1) / count);
+        final Shard[] newShards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            newShards[i] = new Shard(capacity);
+        }
+        return newShards;
+    }
+
+    /**
+     * Page numbers are mostly allocated sequentially, so the low bits of the
+     * key already spread consecutive pages evenly over the shards.
+     */
+    private static int indexFor(long key, int shardCount) {
+        int h = (int) (key ^ (key >>> 32));
+        h ^= (h >>> 16);
+        return h & (shardCount - 1);
+    }
+
+    /**
+     * Lock and return the shard responsible for the given key. If the
+     * cache was resized while waiting for the lock, retry with the new
+     * set of shards.
+     */
+    private Shard lockShard(long key) {
+        for (;;) {
+            final Shard[] current = shards;
+            final Shard shard = current[indexFor(key, current.length)];
+            shard.lock.lock();
+            if (!shard.retired)
+                {return shard;}
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current shards, each one locked in turn as the
+     * returned iterable is traversed. The caller must unlock every
+     * shard it receives.
+     */
+    private Iterable<Shard> lockAll() {
+        return () -> new Iterator<Shard>() {
+            private Shard[] current = shards;
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < current.length;
+            }
+
+            public Shard next() {
+                final Shard shard = current[next];
+                shard.lock.lock();
+                if (shard.retired) {
+                    // resized in between: restart with the new shards
+                    shard.lock.unlock();
+                    current = shards;
+                    next = 0;
+                    return next();
+                }
+                next++;
+                return shard;
+            }
+        };
+    }
+
+    private final static class Entry {
+
+        final Cacheable item;
+        int slot;
+        boolean referenced = false;
+
+        Entry(Cacheable item, int slot) {
+            this.item = item;
+            this.slot = slot;
+        }
+    }
+
+    private final class Shard {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        /** set when the shard has been replaced by a resize */
+        boolean retired = false;
+
+        final int capacity;
+        final Long2ObjectHashMap<Entry> map;
+        Entry[] ring;
+        int count = 0;
+        int hand = 0;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+            this.map = new Long2ObjectHashMap<Entry>(capacity * 2);
+            this.ring = new Entry[capacity];
+        }
+
+        Cacheable get(long key) {
+            final Entry entry = map.get(key);
+            if (entry == null)
+                {return null;}
+            entry.referenced = true;
+            return entry.item;
+        }
+
+        /**
+         * Add the item to the shard, returning the item which had to be
+         * replaced to make room for it or null.
+         */
+        Cacheable put(Cacheable item) {
+            final long key = item.getKey();
+            final Entry existing = map.get(key);
+            if (existing != null) {
+                if (existing.item == item) {
+                    existing.referenced = true;
+                    return null;
+                }
+                remove(key);
+            }
+            Cacheable replaced = null;
+            if (count >= capacity) {
+                replaced = evict(key);
+            }
+            if (count == ring.length) {
+                // nothing could be unloaded: temporarily exceed the capacity
+                final Entry[] grown = new Entry[ring.length + Math.max(1, ring.length / 2)];
+                System.arraycopy(ring, 0, grown, 0, count);
+                ring = grown;
+            }
+            final Entry entry = new Entry(item, count);
+            ring[count++] = entry;
+            map.put(key, entry);
+            // shrink back towards the capacity if earlier additions overflowed it
+            while (count > capacity && evict(key) != null) {
+                // continue
+            }
+            return replaced;
+        }
+
+        void remove(long key) {
+            final Entry entry = map.remove(key);
+            if (entry != null)
+                {removeSlot(entry.slot);}
+        }
+
+        /**
+         * Advance the clock hand to find an item which can be unloaded.
+         * The first two sweeps skip referenced items and items the cache
+         * prefers to keep, the third sweep takes any unloadable item.
+         */
+        private Cacheable evict(long incomingKey) {
+            final int limit = count * 3;
+            for (int scanned = 0; scanned < limit && count > 0; scanned++) {
+                if (hand >= count)
+                    {hand = 0;}
+                final Entry entry = ring[hand];
+                final boolean lastSweep = scanned >= count * 2;
+                if (entry.referenced && !lastSweep) {
+                    entry.referenced = false;
+                } else if (entry.item.getKey() != incomingKey && entry.item.allowUnload() &&
+                        (lastSweep || !preferKeep(entry.item))) {
+                    map.remove(entry.item.getKey());
+                    removeSlot(hand);
+                    entry.item.sync(true);
+                    return entry.item;
+                }
+                hand++;
+            }
+            return null;
+        }
+
+        private void removeSlot(int slot) {
+            final Entry last = ring[--count];
+            ring[slot] = last;
+            last.slot = slot;
+            ring[count] = null;
+            if (hand >= count)
+                {hand = 0;}
+        }
+    }
+}
@@ -24,11 +24,10 @@ import java.nio.ByteBuffer;
 
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
-import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
-public class AddValueLoggable extends AbstractLoggable {
+public class AddValueLoggable extends AbstractDOMLoggable {
     protected DOMFile domDb;
     protected long pageNum;
     protected short tid;
@@ -60,7 +60,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
 import org.exist.storage.journal.Lsn;
@@ -191,7 +190,7 @@ public class DOMFile extends BTree implements Lockable {
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
-        dataCache = new LRUCache(256, 0.0, 1.0, CacheManager.DATA_CACHE);
+        dataCache = cacheManager.createCache(256, 0.0, 1.0, CacheManager.DATA_CACHE);
         dataCache.setFileName(getFileName());
         cacheManager.registerCache(dataCache);
         final Path file = dataDir.resolve(getFileName());
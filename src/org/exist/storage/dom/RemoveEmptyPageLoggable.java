@@ -24,14 +24,13 @@ import java.nio.ByteBuffer;
 
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
-import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class RemoveEmptyPageLoggable extends AbstractLoggable {
+public class RemoveEmptyPageLoggable extends AbstractDOMLoggable {
     private DOMFile domDb;
     protected long pageNum;
     protected long prevPage;
@@ -24,7 +24,6 @@ import java.nio.ByteBuffer;
 
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
-import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.journal.Loggable;
 import org.exist.storage.txn.Txn;
@@ -32,7 +31,7 @@ import org.exist.storage.txn.Txn;
 /**
  * @author wolf
  */
-public class SplitPageLoggable extends AbstractLoggable implements Loggable {
+public class SplitPageLoggable extends AbstractDOMLoggable implements Loggable {
 
     protected long pageNum;
     protected int splitOffset;
@@ -24,11 +24,10 @@ import java.nio.ByteBuffer;
 
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
-import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
-public class UpdateLinkLoggable extends AbstractLoggable {
+public class UpdateLinkLoggable extends AbstractDOMLoggable {
     protected long pageNum;
     protected int offset;
     protected long link;
@@ -25,14 +25,13 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.btree.Value;
-import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class WriteOverflowPageLoggable extends AbstractLoggable {
+public class WriteOverflowPageLoggable extends AbstractDOMLoggable {
     protected long pageNum;
     protected long nextPage;
     protected Value value;
@@ -37,7 +37,6 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -152,7 +151,7 @@ public class BFile extends BTree {
             double cacheGrowth, double thresholdData) throws DBException {
         super(pool, fileId, transactional, cacheManager, file);
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache(64, cacheGrowth, thresholdData, CacheManager.DATA_CACHE);
+        dataCache = cacheManager.createCache(64, cacheGrowth, thresholdData, CacheManager.DATA_CACHE);
         dataCache.setFileName(FileUtils.fileName(file));
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
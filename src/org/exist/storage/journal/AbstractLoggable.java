@@ -50,6 +50,11 @@ public abstract class AbstractLoggable implements Loggable {
         return transactionId;
     }
 
+    @Override
+    public byte getFileId() {
+        return NO_FILE;
+    }
+
     @Override
     public void setLsn(long lsn) {
         this.lsn = lsn;
@@ -0,0 +1,242 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Implements group commit for the {@link Journal}: instead of flushing and
+ * syncing the journal once per transaction commit, committing threads register
+ * the LSN of their commit record and wait, while a single background thread
+ * flushes and forces the journal for all waiting commits at once.
+ *
+ * A batch is written as soon as {@link #getMaxBatchSize()} commits are waiting,
+ * or when the first waiting commit has been waiting for {@link #getMaxWait()}
+ * milliseconds, whichever comes first. A commit may also request an immediate
+ * flush, e.g. if there are no other active transactions which could join
+ * the batch.
+ */
+public class GroupCommitFlusher extends Thread {
+
+    private static final Logger LOG = LogManager.getLogger(GroupCommitFlusher.class);
+
+    public final static long DEFAULT_MAX_WAIT = 10;
+    public final static int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private final Journal journal;
+    private final long maxWait;
+    private final int maxBatchSize;
+
+    // all fields below are guarded by this
+
+    /** number of commits waiting for the next flush */
+    private int pending = 0;
+
+    /** set if a waiting commit asked not to wait for more commits */
+    private boolean flushRequested = false;
+
+    /** the highest LSN known to be synced to disk */
+    private long syncedLsn = Lsn.LSN_INVALID;
+
+    private boolean shutdown = false;
+
+    // statistics
+    private long batchCount = 0;
+    private long commitCount = 0;
+    private int lastBatchSize = 0;
+    private int largestBatchSize = 0;
+    private long totalSyncTime = 0;
+
+    /**
+     * @param journal the journal to flush
+     * @param maxWait the maximum time in milliseconds a commit waits for other commits to join its batch
+     * @param maxBatchSize the number of waiting commits which triggers an immediate flush
+     */
+    public GroupCommitFlusher(final Journal journal, final long maxWait, final int maxBatchSize) {
+        super("exist-journal-group-commit");
+        setDaemon(true);
+        this.journal = journal;
+        this.maxWait = maxWait < 0 ? 0 : maxWait;
+        this.maxBatchSize = maxBatchSize < 1 ? 1 : maxBatchSize;
+    }
+
+    /**
+     * Wait until the journal has been flushed and synced up to the given LSN.
+     * Called by a committing thread after it has written its commit record.
+     *
+     * @param lsn the LSN of the commit record
+     */
+    public void awaitFlush(final long lsn) {
+        awaitFlush(lsn, false);
+    }
+
+    /**
+     * Wait until the journal has been flushed and synced up to the given LSN.
+     * Called by a committing thread after it has written its commit record.
+     *
+     * @param lsn the LSN of the commit record
+     * @param flushNow if true, the batch is written without waiting for
+     *                 other commits to join
+     */
+    public synchronized void awaitFlush(final long lsn, final boolean flushNow) {
+        if (lsn <= syncedLsn || shutdown) {
+            return;
+        }
+        pending++;
+        if (flushNow) {
+            flushRequested = true;
+        }
+        notifyAll();
+        boolean interrupted = false;
+        while (lsn > syncedLsn && !shutdown) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flush any outstanding commits and stop the flusher thread.
+     * Threads still waiting are released.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (final InterruptedException e) {
+            //Nothing to do
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final int batchSize;
+            synchronized (this) {
+                while (pending == 0 && !shutdown) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        //Nothing to do
+                    }
+                }
+                if (shutdown) {
+                    break;
+                }
+                // give other commits the chance to join the batch
+                final long deadline = System.currentTimeMillis() + maxWait;
+                long remaining = maxWait;
+                while (pending < maxBatchSize && remaining > 0 && !flushRequested && !shutdown) {
+                    try {
+                        wait(remaining);
+                    } catch (final InterruptedException e) {
+                        //Nothing to do
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                batchSize = pending;
+                pending = 0;
+                flushRequested = false;
+            }
+            flush(batchSize);
+        }
+        // shutdown: make sure nothing is left behind
+        flush(0);
+    }
+
+    /**
+     * Flush and sync the journal outside of our own monitor, so committing
+     * threads can enqueue for the next batch while the sync is running.
+     */
+    private void flush(final int batchSize) {
+        final long start = System.currentTimeMillis();
+        final long lsn = journal.flushAndSync();
+        final long syncTime = System.currentTimeMillis() - start;
+        synchronized (this) {
+            if (lsn > syncedLsn) {
+                syncedLsn = lsn;
+            }
+            if (batchSize > 0) {
+                batchCount++;
+                commitCount += batchSize;
+                lastBatchSize = batchSize;
+                if (batchSize > largestBatchSize) {
+                    largestBatchSize = batchSize;
+                }
+                totalSyncTime += syncTime;
+            }
+            notifyAll();
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Group commit of " + batchSize + " transactions synced up to " + Lsn.dump(lsn) +
+                " in " + syncTime + "ms");
+        }
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return the number of batches written so far
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return the number of commits written in all batches so far
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    public synchronized int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public synchronized int getLargestBatchSize() {
+        return largestBatchSize;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return batchCount == 0 ? 0 : (double) commitCount / batchCount;
+    }
+
+    /**
+     * @return the average time in milliseconds spent flushing and syncing a batch
+     */
+    public synchronized double getAverageSyncTime() {
+        return batchCount == 0 ? 0 : (double) totalSyncTime / batchCount;
+    }
+}
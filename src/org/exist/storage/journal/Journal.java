@@ -239,6 +239,12 @@ public class Journal {
         if (currentBuffer == null)
             {throw new TransactionException("Database is shut down.");}
         SanityCheck.ASSERT(!inRecovery, "Write to log during recovery. Should not happen!");
+        if (!pool.getTransactionManager().isJournaled(loggable.getTransactionId())) {
+            // the transaction is not journaled: the page is stamped with the
+            // current LSN, so older records will not be redone on top of it
+            loggable.setLsn(currentLsn);
+            return;
+        }
         final int size = loggable.getLogSize();
         final int required = size + LOG_ENTRY_BASE_LEN;
         if (required > currentBuffer.remaining())
@@ -291,6 +297,42 @@ public class Journal {
             syncThread.triggerSync();
             lastSyncLsn = currentLsn;
         }
+        checkSizeLimit();
+    }
+
+    /**
+     * Flush the current buffer to disk and force the journal file to be
+     * synced, waiting for the sync to complete. This is used by the
+     * {@link GroupCommitFlusher}: the sync is done outside of the journal's
+     * monitor, so other threads can continue to write log entries meanwhile.
+     *
+     * @return the last LSN which has been written and synced
+     */
+    public long flushAndSync() {
+        final long lsn;
+        synchronized (this) {
+            if (inRecovery)
+                {return currentLsn;}
+            flushBuffer();
+            lsn = lastLsnWritten;
+            checkSizeLimit();
+        }
+        synchronized (latch) {
+            if (channel != null && channel.isOpen()) {
+                try {
+                    channel.force(false);
+                } catch (final IOException e) {
+                    LOG.warn("Failed to sync journal: " + e.getMessage(), e);
+                }
+            }
+        }
+        return lsn;
+    }
+
+    /**
+     * Trigger a checkpoint if the journal file exceeds its size limit.
+     */
+    private void checkSizeLimit() {
         try {
             if (channel != null && channel.size() >= journalSizeLimit)
                 {pool.triggerCheckpoint();}
@@ -360,6 +402,37 @@ public class Journal {
         }
     }
 
+    /**
+     * Returns the LSN the next log entry will be written to. All entries
+     * written so far have a lower LSN.
+     *
+     * @return the next LSN
+     */
+    public synchronized long nextLsn() {
+        return Lsn.create(currentFile, inFilePos + currentBuffer.position() + 1);
+    }
+
+    /**
+     * Write a fuzzy checkpoint record to the journal and sync it. The checkpoint is
+     * not written if the journal has been switched to a new file since redoLsn was
+     * taken: recovery only reads the last journal file, and the checkpoint which
+     * switched the files is more recent anyway.
+     *
+     * @param txnId
+     * @param redoLsn the LSN recovery has to start from, see {@link #nextLsn()}
+     * @return true if the checkpoint has been written
+     * @throws TransactionException
+     */
+    public synchronized boolean fuzzyCheckpoint(long txnId, long redoLsn) throws TransactionException {
+        if (Lsn.getFileNumber(redoLsn) != currentFile) {
+            return false;
+        }
+        LOG.debug("Fuzzy checkpoint reached. Redo LSN: " + Lsn.dump(redoLsn));
+        writeToLog(new Checkpoint(txnId, redoLsn));
+        flushToLog(true, true);
+        return true;
+    }
+
     /**
      * Set the file number of the last file used.
      * 
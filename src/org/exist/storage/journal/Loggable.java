@@ -30,6 +30,12 @@ import java.nio.ByteBuffer;
  * @author wolf
  */
 public interface Loggable {
+
+    /**
+     * File id returned by {@link #getFileId()} for entries
+     * which do not change a paged file.
+     */
+    public final static byte NO_FILE = -1;
     
 	/**
 	 * Returns the type id of the log entry. This is the type registered
@@ -48,6 +54,15 @@ public interface Loggable {
      * @return transaction id 
      */
     public long getTransactionId();
+
+    /**
+     * Returns the id of the paged file changed by this entry, or
+     * {@link #NO_FILE}. Entries for different files do not depend
+     * on each other and may be redone concurrently during recovery.
+     *
+     * @return file id
+     */
+    public byte getFileId();
     
     /**
      * Returns the {@link Lsn} of the entry.
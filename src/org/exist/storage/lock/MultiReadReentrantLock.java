@@ -44,12 +44,23 @@ import org.exist.util.LockException;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A reentrant read/write lock, which allows multiple readers to acquire a lock.
  * Waiting writers are preferred.
  * <p/>
+ * As long as no thread holds or waits for the write lock, read locks are acquired
+ * and released without entering the monitor of the lock: the reader registers
+ * itself in a concurrent list and then checks {@link #writeActive}. A writer sets
+ * writeActive before it inspects the list of readers, so at least one of the two
+ * sees the other. If the reader finds a writer, it backs out and takes the
+ * synchronized path.
+ * <p/>
  * This is an adapted and bug-fixed version of code taken from Apache's Turbine
  * JCS.
  */
@@ -57,6 +68,11 @@ public class MultiReadReentrantLock implements Lock {
 
     private final static Logger LOG = LogManager.getLogger(MultiReadReentrantLock.class);
 
+    // statistics over all instances, reported by the LockManager MBean
+    private final static LongAdder uncontendedReadLocks = new LongAdder();
+    private final static LongAdder contendedLocks = new LongAdder();
+    private final static LongAdder waitTime = new LongAdder();
+
     private Object id;
 
     /**
@@ -65,9 +81,16 @@ public class MultiReadReentrantLock implements Lock {
     private int waitingForReadLock = 0;
 
     /**
-     * Number of threads reading.
+     * Number of threads reading. Modified without synchronization by the
+     * read fast path.
+     */
+    private final Deque<LockOwner> outstandingReadLocks = new ConcurrentLinkedDeque<>();
+
+    /**
+     * True while a thread holds the write lock, waits for it or is about to
+     * check if it can be granted. Only written while synchronized on this lock.
      */
-    private List<LockOwner> outstandingReadLocks = new ArrayList<LockOwner>(4);
+    private volatile boolean writeActive = false;
 
     /**
      * The thread that has the write lock or null.
@@ -139,8 +162,27 @@ public class MultiReadReentrantLock implements Lock {
      * avoid synchronizing the calling code so as to avoid deadlock.
     * @param waitIfNecessary whether to wait if the lock is not available right away
      */
-    private synchronized boolean readLock(boolean waitIfNecessary) throws LockException {
+    private boolean readLock(boolean waitIfNecessary) throws LockException {
+        if (!writeActive) {
+            deadlockCheck();
+            final LockOwner owner = new LockOwner(Thread.currentThread());
+            outstandingReadLocks.add(owner);
+            if (!writeActive) {
+                uncontendedReadLocks.increment();
+                return true;
+            }
+            // a writer arrived in the meantime and may wait for us: back out
+            return readLockSlow(waitIfNecessary, owner);
+        }
+        return readLockSlow(waitIfNecessary, null);
+    }
+
+    private synchronized boolean readLockSlow(boolean waitIfNecessary, LockOwner revoked) throws LockException {
         final Thread thisThread = Thread.currentThread();
+        if (revoked != null) {
+            outstandingReadLocks.removeLastOccurrence(revoked);
+            grantWaitingWriter();
+        }
         if (writeLockedThread == thisThread) {
             // add acquired lock to the current list of read locks
             outstandingReadLocks.add(new LockOwner(thisThread));
@@ -151,6 +193,8 @@ public class MultiReadReentrantLock implements Lock {
         waitingForReadLock++;
         if (writeLockedThread != null) {
            if (!waitIfNecessary) {return false;}
+            contendedLocks.increment();
+            final long start = System.nanoTime();
             final WaitingThread waiter = new WaitingThread(thisThread, this, this, Lock.READ_LOCK);
             DeadlockDetection.addResourceWaiter(thisThread, waiter);
             while (writeLockedThread != null) {
@@ -159,6 +203,7 @@ public class MultiReadReentrantLock implements Lock {
                 //LOG.debug("wake up from readLock wait");
             }
             DeadlockDetection.clearResourceWaiter(thisThread);
+            waitTime.add(System.nanoTime() - start);
         }        waitingForReadLock--;
         //Add acquired lock to the current list of read locks
         outstandingReadLocks.add(new LockOwner(thisThread));
@@ -179,13 +224,18 @@ public class MultiReadReentrantLock implements Lock {
                 outstandingWriteLocks++;
                 return true;
             }
+            // keep readers on the fast path out before we look at the read locks
+            writeActive = true;
             if (writeLockedThread == null && grantWriteLock()) {
                 writeLockedThread = thisThread;
                 outstandingWriteLocks++;
                 return true;
             }
-            if (!waitIfNecessary)
-                {return false;}
+            if (!waitIfNecessary) {
+                updateWriteActive();
+                return false;
+            }
+            contendedLocks.increment();
             deadlockCheck();
             if (waitingForWriteLock == null)
                 {waitingForWriteLock = new ArrayList<WaitingThread>(3);}
@@ -195,6 +245,7 @@ public class MultiReadReentrantLock implements Lock {
         }
         List<WaitingThread> deadlockedThreads = null;
         LockException exceptionCaught = null;
+        final long start = System.nanoTime();
         synchronized (thisThread) {
             if (thisThread != writeLockedThread) {
                 while (thisThread != writeLockedThread && deadlockedThreads == null) {
@@ -222,9 +273,11 @@ public class MultiReadReentrantLock implements Lock {
             if (deadlockedThreads == null && exceptionCaught == null)
                 {outstandingWriteLocks++;}
         }
+        waitTime.add(System.nanoTime() - start);
         synchronized (this) {
             DeadlockDetection.clearResourceWaiter(thisThread);
             removeWaitingWrite(waiter);
+            updateWriteActive();
         }
         if (exceptionCaught != null)
             {throw exceptionCaught;}
@@ -303,6 +356,7 @@ public class MultiReadReentrantLock implements Lock {
                 }
             } else {
                 writeLockedThread = null;
+                updateWriteActive();
                 if (waitingForReadLock > 0) {
                     //Wake up pending read locks
                     notifyAll();
@@ -322,19 +376,25 @@ public class MultiReadReentrantLock implements Lock {
      * @throws IllegalStateException if called when there are no outstanding locks or there is a
      * write lock issued to a different thread.
      */
-    private synchronized void releaseRead(int count) {
-        if (!outstandingReadLocks.isEmpty()) {
+    private void releaseRead(int count) {
+        if (!writeActive && !outstandingReadLocks.isEmpty()) {
             removeReadLock(count);
-            if (writeLockedThread == null && grantWriteLockAfterRead()) {
-                final WaitingThread waiter = waitingForWriteLock.get(0);
-                removeWaitingWrite(waiter);
-                DeadlockDetection.clearResourceWaiter(waiter.getThread());
-                writeLockedThread = waiter.getThread();
-                synchronized (writeLockedThread) {
-                    writeLockedThread.notifyAll();
+            if (writeActive) {
+                // a writer arrived in the meantime and may wait for this read lock
+                synchronized (this) {
+                    grantWaitingWriter();
                 }
             }
             return;
+        }
+        releaseReadSlow(count);
+    }
+
+    private synchronized void releaseReadSlow(int count) {
+        if (!outstandingReadLocks.isEmpty()) {
+            removeReadLock(count);
+            grantWaitingWriter();
+            return;
         } else {
             LOG.warn("Possible lock problem: thread " + Thread.currentThread().getName() +
                     " released a read lock it didn't hold. Either the " +
@@ -355,26 +415,48 @@ public class MultiReadReentrantLock implements Lock {
         return !outstandingReadLocks.isEmpty() || isLockedForWrite();
     }
 
-    public synchronized boolean isLockedForRead(Thread owner) {
-        for (int i = outstandingReadLocks.size() - 1; i > -1; i--) {
-            if ((outstandingReadLocks.get(i)).getOwner() == owner)
-                {return true;}
-        }
-        return false;
+    public boolean isLockedForRead(Thread owner) {
+        return hasReadLock(owner);
     }
 
     private void removeReadLock(int count) {
         final Object owner = Thread.currentThread();
-        for (int i = outstandingReadLocks.size() - 1; i > -1 && count > 0; i--) {
-            final LockOwner current = outstandingReadLocks.get(i);
-            if (current.getOwner() == owner) {
-                outstandingReadLocks.remove(i);
+        for (final Iterator<LockOwner> i = outstandingReadLocks.descendingIterator(); i.hasNext() && count > 0; ) {
+            if (i.next().getOwner() == owner) {
+                i.remove();
                 --count;
             }
         }
     }
 
+    /**
+     * Hand the write lock over to the first waiting writer, if there is one and
+     * the remaining read locks allow it. Must be called while synchronized on this lock.
+     */
+    private void grantWaitingWriter() {
+        if (writeLockedThread == null && grantWriteLockAfterRead()) {
+            final WaitingThread waiter = waitingForWriteLock.get(0);
+            removeWaitingWrite(waiter);
+            DeadlockDetection.clearResourceWaiter(waiter.getThread());
+            writeLockedThread = waiter.getThread();
+            synchronized (writeLockedThread) {
+                writeLockedThread.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reset {@link #writeActive} once no thread holds or waits for the write lock.
+     * Must be called while synchronized on this lock.
+     */
+    private void updateWriteActive() {
+        writeActive = writeLockedThread != null || (waitingForWriteLock != null && !waitingForWriteLock.isEmpty());
+    }
+
     private void deadlockCheck() throws DeadlockException {
+        if (!DeadlockDetection.hasCollectionWaiters()) {
+            return;
+        }
         for (final LockOwner next : outstandingReadLocks) {
             final Lock lock = DeadlockDetection.isWaitingFor(next.getOwner());
             if (lock != null) {
@@ -439,8 +521,7 @@ public class MultiReadReentrantLock implements Lock {
         //Waiting write locks?
         if (waitingForWriteLock != null && waitingForWriteLock.size() > 0) {
             //Yes, check read locks
-            final int size = outstandingReadLocks.size();
-            if (size > 0) {
+            if (!outstandingReadLocks.isEmpty()) {
                 //Grant lock if all read locks are held by the write thread
                 final WaitingThread waiter = waitingForWriteLock.get(0);
                 return isCompatible(waiter.getThread());
@@ -512,14 +593,11 @@ public class MultiReadReentrantLock implements Lock {
 
     public synchronized LockInfo getLockInfo() {
         LockInfo info;
-        String[] readers = new String[0];
-        if (outstandingReadLocks != null) {
-            readers = new String[outstandingReadLocks.size()];
-            for (int i = 0; i < outstandingReadLocks.size(); i++) {
-                final LockOwner owner = outstandingReadLocks.get(i);
-                readers[i] = owner.getOwner().getName();
-            }
+        final List<String> readerNames = new ArrayList<>();
+        for (final LockOwner owner : outstandingReadLocks) {
+            readerNames.add(owner.getOwner().getName());
         }
+        final String[] readers = readerNames.toArray(new String[readerNames.size()]);
         if (writeLockedThread != null) {
             info = new LockInfo(LockInfo.RESOURCE_LOCK, LockInfo.WRITE_LOCK, getId(), 
                     new String[] {writeLockedThread.getName()});
@@ -543,6 +621,30 @@ public class MultiReadReentrantLock implements Lock {
         }
     }
 
+    /**
+     * Returns the number of read locks acquired without entering the monitor
+     * of the lock, summed over all resource locks.
+     */
+    public static long getUncontendedReadLocks() {
+        return uncontendedReadLocks.sum();
+    }
+
+    /**
+     * Returns the number of read or write lock requests which had to wait
+     * for another thread, summed over all resource locks.
+     */
+    public static long getContendedLocks() {
+        return contendedLocks.sum();
+    }
+
+    /**
+     * Returns the total time in milliseconds threads spent waiting for
+     * resource locks.
+     */
+    public static long getWaitTime() {
+        return waitTime.sum() / 1000000;
+    }
+
     @Override
     public void debug(PrintStream out) {
         getLockInfo().debug(out);
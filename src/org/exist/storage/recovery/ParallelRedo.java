@@ -0,0 +1,178 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.journal.Loggable;
+import org.exist.storage.txn.TxnAbort;
+
+/**
+ * Redoes journal entries on several threads during recovery.
+ *
+ * The entries are partitioned by the paged file they change: all entries for
+ * a file are redone by the same thread in the order of the journal, while the
+ * entries for different files are redone concurrently. Entries which do not
+ * change a paged file are redone on the calling thread. A finer partitioning,
+ * e.g. by page, would not be safe, as redoing a page split or a new page also
+ * changes other pages and the header of the file.
+ */
+class ParallelRedo {
+
+    private final static Logger LOG = LogManager.getLogger(ParallelRedo.class);
+
+    /** maximum number of entries waiting for a redo thread */
+    private final static int MAX_QUEUED = 1024;
+
+    /** tells a redo thread to stop */
+    private final static Loggable END = new TxnAbort(-1);
+
+    private final RedoThread[] threads;
+    private boolean stopped = false;
+
+    private volatile Loggable failedEntry = null;
+    private volatile Exception failure = null;
+
+    ParallelRedo(final int threadCount) {
+        threads = new RedoThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new RedoThread(i);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Redo the entry, or pass it on to the thread responsible for
+     * the file it changes.
+     *
+     * @param loggable the journal entry
+     * @throws RedoFailedException if a redo thread failed before
+     */
+    void redo(final Loggable loggable) throws Exception {
+        checkFailure();
+        final byte fileId = loggable.getFileId();
+        if (fileId == Loggable.NO_FILE) {
+            loggable.redo();
+        } else {
+            threads[(fileId & 0xFF) % threads.length].queue.put(loggable);
+        }
+    }
+
+    /**
+     * Wait until all entries passed to {@link #redo(Loggable)} have been redone.
+     *
+     * @throws RedoFailedException if redoing an entry failed
+     */
+    void finish() throws Exception {
+        shutdown();
+        checkFailure();
+        if (LOG.isDebugEnabled()) {
+            for (final RedoThread thread : threads) {
+                LOG.debug(thread.getName() + " redid " + thread.count + " entries");
+            }
+        }
+    }
+
+    /**
+     * Stop the redo threads after they processed the queued entries.
+     */
+    void shutdown() throws InterruptedException {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        for (final RedoThread thread : threads) {
+            thread.queue.put(END);
+        }
+        for (final RedoThread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void checkFailure() throws RedoFailedException {
+        if (failure != null) {
+            throw new RedoFailedException(failedEntry, failure);
+        }
+    }
+
+    private synchronized void failed(final Loggable loggable, final Exception e) {
+        if (failure == null) {
+            failedEntry = loggable;
+            failure = e;
+        }
+    }
+
+    private class RedoThread extends Thread {
+
+        private final BlockingQueue<Loggable> queue = new ArrayBlockingQueue<>(MAX_QUEUED);
+        private long count = 0;
+
+        RedoThread(final int id) {
+            super("exist-recovery-redo-" + id);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Loggable next;
+                while ((next = queue.take()) != END) {
+                    // after a failure, the remaining entries are skipped
+                    if (failure == null) {
+                        try {
+                            next.redo();
+                            count++;
+                        } catch (final Exception e) {
+                            failed(next, e);
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                failed(null, e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Thrown if redoing an entry failed on one of the redo threads.
+     */
+    static class RedoFailedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Loggable loggable;
+
+        RedoFailedException(final Loggable loggable, final Exception cause) {
+            super(cause.getMessage(), cause);
+            this.loggable = loggable;
+        }
+
+        /**
+         * @return the entry which could not be redone, or null if not known
+         */
+        Loggable getLoggable() {
+            return loggable;
+        }
+    }
+}
@@ -23,6 +23,8 @@ package org.exist.storage.recovery;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -42,7 +44,6 @@ import org.exist.storage.txn.Checkpoint;
 import org.exist.util.FileUtils;
 import org.exist.util.ProgressBar;
 import org.exist.util.hashtable.Long2ObjectHashMap;
-import org.exist.util.sanity.SanityCheck;
 
 /**
  * Database recovery. This class is used once during startup to check
@@ -58,11 +59,22 @@ public class RecoveryManager {
 	private Journal logManager;
 	private DBBroker broker;
     private boolean restartOnError;
+    private int redoThreads;
 
 	public RecoveryManager(DBBroker broker, Journal log, boolean restartOnError) {
+        this(broker, log, restartOnError, 1);
+	}
+
+    /**
+     * @param redoThreads number of threads used to redo the changes to the
+     *        data files. With more than one thread, the changes to different
+     *        files are redone concurrently.
+     */
+	public RecoveryManager(DBBroker broker, Journal log, boolean restartOnError, int redoThreads) {
         this.broker = broker;
 		this.logManager = log;
         this.restartOnError = restartOnError;
+        this.redoThreads = redoThreads;
 	}
 
 	/**
@@ -71,7 +83,8 @@ public class RecoveryManager {
 	 * The method scans the last log file and tries to find the last checkpoint
 	 * record. If the checkpoint record is the last record in the file,
 	 * the database was closed cleanly and is in a consistent state. If not, a
-	 * recovery run is started beginning at the last checkpoint found.
+	 * recovery run is started beginning at the last checkpoint found. For a
+	 * fuzzy checkpoint, the recovery run starts at the redo point stored in it.
 	 *  
 	 * @throws LogException
 	 */
@@ -99,7 +112,8 @@ public class RecoveryManager {
                     	final Checkpoint checkpoint = (Checkpoint) lastLog;
                     	// Found a checkpoint. To be sure it is indeed a valid checkpoint
                     	// record, we compare the LSN stored in it with the current LSN.
-                    	if (checkpoint.getStoredLsn() == checkpoint.getLsn()) {
+                    	// a fuzzy checkpoint does not guarantee that all changes are on disk
+                    	if (checkpoint.getStoredLsn() == checkpoint.getLsn() && !checkpoint.isFuzzy()) {
                     		checkpointFound = true;
                     		LOG.debug("Database is in clean state. Last checkpoint: " + 
                     				checkpoint.getDateString());
@@ -131,8 +145,14 @@ public class RecoveryManager {
 				            	// transaction aborted: remove it from the transactions table
 				            	txnsStarted.remove(next.getTransactionId());
 				            } else if (next.getLogType() == LogEntryTypes.CHECKPOINT) {
-				            	txnsStarted.clear();
 	        					lastCheckpoint = (Checkpoint) next;
+	        					if (lastCheckpoint.isFuzzy()) {
+	        						// transactions started after the redo point may have changes
+	        						// which were not written to disk by the checkpoint
+	        						removeStartedBefore(txnsStarted, lastCheckpoint.getRedoLsn());
+	        					} else {
+	        						txnsStarted.clear();
+	        					}
 				            }
 	        				lastLsn = next.getLsn();
 	        			}
@@ -144,13 +164,15 @@ public class RecoveryManager {
                     }
 
 	    			// if the last checkpoint record is not the last record in the file
-	    			// we need a recovery.
-	    			if ((lastCheckpoint == null || lastCheckpoint.getLsn() != lastLsn) &&
+	    			// or a fuzzy checkpoint, we need a recovery.
+	    			if ((lastCheckpoint == null || lastCheckpoint.getLsn() != lastLsn || lastCheckpoint.isFuzzy()) &&
 	    					txnsStarted.size() > 0) {
 	    				LOG.info("Dirty transactions: " + txnsStarted.size());
 	    				// starting recovery: reposition the log reader to the last checkpoint
 						if (lastCheckpoint == null)
 						    {reader.position(1);}
+						else if (lastCheckpoint.isFuzzy())
+						    {reader.position(lastCheckpoint.getRedoLsn());}
 						else {
 						    reader.position(lastCheckpoint.getLsn());
 						    next = reader.nextEntry();
@@ -216,14 +238,18 @@ public class RecoveryManager {
 
             // ------- REDO ---------
             if (LOG.isInfoEnabled())
-                {LOG.info("First pass: redoing " + txnCount + " transactions...");}
-            final ProgressBar progress = new ProgressBar("Redo ", FileUtils.sizeQuietly(last));
+                {LOG.info("First pass: redoing " + txnCount + " transactions" +
+                        (redoThreads > 1 ? " using " + redoThreads + " threads..." : "..."));}
+            final long journalSize = FileUtils.sizeQuietly(last);
+            final ProgressBar progress = new ProgressBar("Redo ", journalSize);
+            final ParallelRedo parallelRedo = redoThreads > 1 ? new ParallelRedo(redoThreads) : null;
             Loggable next = null;
             int redoCnt = 0;
+            int reported = 0;
             try {
                 while ((next = reader.nextEntry()) != null) {
-                    SanityCheck.ASSERT(next.getLogType() != LogEntryTypes.CHECKPOINT,
-                            "Found a checkpoint during recovery run! This should not ever happen.");
+                    // a redo run starting at the redo point of a fuzzy checkpoint passes
+                    // the checkpoint record itself, which has nothing to redo
                     if (next.getLogType() == LogEntryTypes.TXN_START) {
                         // new transaction starts: add it to the transactions table
                         runningTxns.put(next.getTransactionId(), next);
@@ -237,18 +263,39 @@ public class RecoveryManager {
                     }
         //            LOG.debug("Redo: " + next.dump());
                     // redo the log entry
-                    next.redo();
+                    if (parallelRedo == null)
+                        {next.redo();}
+                    else
+                        {parallelRedo.redo(next);}
                     progress.set(Lsn.getOffset(next.getLsn()));
+                    final int percent = journalSize > 0 ? (int) (Lsn.getOffset(next.getLsn()) * 100 / journalSize) : 100;
+                    if (percent / 10 > reported) {
+                        reported = percent / 10;
+                        broker.getBrokerPool().reportStatus("Running recovery: redo " + reported * 10 + "%");
+                        LOG.info("Redo: " + reported * 10 + "% of the journal processed");
+                    }
                     if (next.getLsn() == lastLsn)
                         {break;} // last readable entry reached. Stop here.
                 }
+                if (parallelRedo != null)
+                    {parallelRedo.finish();}
             } catch (final Exception e) {
+                final Throwable cause = e instanceof ParallelRedo.RedoFailedException ? e.getCause() : e;
                 LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
-                    "Before starting again, make sure to run a check via the emergency export tool.", e);
+                    "Before starting again, make sure to run a check via the emergency export tool.", cause);
+                if (e instanceof ParallelRedo.RedoFailedException)
+                    {next = ((ParallelRedo.RedoFailedException) e).getLoggable();}
                 if (next != null)
                     {LOG.info("Log entry that caused the exception: " + next.dump());}
                 throw new LogException("Recovery aborted. ");
             } finally {
+                if (parallelRedo != null) {
+                    try {
+                        parallelRedo.shutdown();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
                 LOG.info("Redo processed " + redoCnt + " out of " + txnCount + " transactions.");
             }
 
@@ -271,8 +318,10 @@ public class RecoveryManager {
                         } else if (next.getLogType() == LogEntryTypes.TXN_COMMIT) {
                             // ignore already committed transaction
                         } else if (next.getLogType() == LogEntryTypes.CHECKPOINT) {
-                            // found last checkpoint: undo is completed
-                            break;
+                            // found last checkpoint: undo is completed. Transactions may
+                            // span a fuzzy checkpoint, so continue to their start.
+                            if (!((Checkpoint) next).isFuzzy())
+                                {break;}
                         }
 
                         // undo the log entry if it belongs to an uncommitted transaction
@@ -296,6 +345,22 @@ public class RecoveryManager {
         }
     }
     
+    /**
+     * Remove the transactions which started before the given LSN.
+     */
+    private void removeStartedBefore(final Long2ObjectHashMap<Loggable> txnsStarted, final long lsn) {
+        final List<Long> before = new ArrayList<>();
+        for (final Iterator<Long> i = txnsStarted.iterator(); i.hasNext(); ) {
+            final long txnId = i.next();
+            if (txnsStarted.get(txnId).getLsn() < lsn) {
+                before.add(txnId);
+            }
+        }
+        for (final long txnId : before) {
+            txnsStarted.remove(txnId);
+        }
+    }
+
 	private void cleanDirectory(final Stream<Path> files) {
         files.forEach(FileUtils::deleteQuietly);
 	}
@@ -941,16 +941,39 @@ public abstract class Serializer implements XMLReader {
 	 * 
 	 */
     public void toSAX(Sequence seq) throws SAXException {
+        startSequence();
+        itemsToSAX(seq);
+        endSequence();
+    }
+
+    /**
+     * Start the serialization of a sequence whose items are passed in one or more
+     * calls to {@link #itemsToSAX(Sequence)}. Allows the items to be written while
+     * the rest of the sequence is still being computed. Must be followed by a call
+     * to {@link #endSequence()}.
+     *
+     * @throws SAXException
+     */
+    public void startSequence() throws SAXException {
         try {
             setStylesheetFromProperties(null);
         } catch (final TransformerConfigurationException e) {
             throw new SAXException(e.getMessage(), e);
         }
-        
+
         setXSLHandler(null, false);
 
         receiver.startDocument();
+    }
 
+    /**
+     * Serialize the items of the given sequence, which is part of a sequence
+     * started by {@link #startSequence()}.
+     *
+     * @param seq the items to serialize
+     * @throws SAXException
+     */
+    public void itemsToSAX(Sequence seq) throws SAXException {
         try {
             Item item;
             final SequenceIterator itSeq = seq.iterate();
@@ -961,7 +984,14 @@ public abstract class Serializer implements XMLReader {
         } catch(final XPathException xpe) {
             throw new SAXException(xpe.getMessage(), xpe);
         }
+    }
 
+    /**
+     * End a sequence started by {@link #startSequence()}.
+     *
+     * @throws SAXException
+     */
+    public void endSequence() throws SAXException {
         receiver.endDocument();
     }
         
@@ -88,7 +88,13 @@ public class SyncTask implements SystemTask {
         }
         if(System.currentTimeMillis() - pool.getLastMajorSync() >
                 pool.getMajorSyncPeriod()) {
-            pool.sync(broker, Sync.MAJOR_SYNC);
+            // with fuzzy checkpoints, the data files are flushed in the background
+            if(pool.triggerFuzzyCheckpoint()) {
+                pool.sync(broker, Sync.MINOR_SYNC);
+                pool.majorSyncTasks(broker);
+            } else {
+                pool.sync(broker, Sync.MAJOR_SYNC);
+            }
         } else {
             pool.sync(broker, Sync.MINOR_SYNC);
         }
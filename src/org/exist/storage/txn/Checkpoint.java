@@ -27,13 +27,22 @@ import java.util.Date;
 import org.exist.storage.DBBroker;
 import org.exist.storage.journal.AbstractLoggable;
 import org.exist.storage.journal.LogEntryTypes;
+import org.exist.storage.journal.Lsn;
 
 /**
+ * A checkpoint record. A regular checkpoint is written while no transaction is
+ * running and marks a state in which all changes have been written to the data files.
+ *
+ * A fuzzy checkpoint is written while other transactions continue: it only
+ * guarantees that all changes logged before its redo LSN are on disk, so recovery
+ * has to redo the journal starting at the redo LSN.
+ *
  * @author wolf
  */
 public class Checkpoint extends AbstractLoggable {
 	private long timestamp;
 	private long storedLsn;
+	private long redoLsn = Lsn.LSN_INVALID;
 	
 	private final DateFormat df =
 		DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
@@ -46,26 +55,57 @@ public class Checkpoint extends AbstractLoggable {
         super(LogEntryTypes.CHECKPOINT, transactionId);
 		timestamp = new Date().getTime();
     }
+
+    /**
+     * Create a fuzzy checkpoint.
+     *
+     * @param transactionId
+     * @param redoLsn the LSN recovery has to start from
+     */
+    public Checkpoint(final long transactionId, final long redoLsn) {
+        this(null, transactionId);
+        this.redoLsn = redoLsn;
+    }
     
     @Override
     public void write(final ByteBuffer out) {
     	out.putLong(lsn);
 		out.putLong(timestamp);
+		out.putLong(redoLsn);
     }
 
     @Override
     public void read(final ByteBuffer in) {
     	storedLsn = in.getLong();
 		timestamp = in.getLong();
+		// records written by older versions end here, followed by the back link
+		if (in.remaining() > 2) {
+			redoLsn = in.getLong();
+		}
     }
 
     public long getStoredLsn() {
     	return storedLsn;
     }
+
+    /**
+     * @return true if this is a fuzzy checkpoint
+     */
+    public boolean isFuzzy() {
+        return redoLsn != Lsn.LSN_INVALID;
+    }
+
+    /**
+     * @return the LSN recovery has to start from for a fuzzy checkpoint,
+     * {@link Lsn#LSN_INVALID} otherwise
+     */
+    public long getRedoLsn() {
+        return redoLsn;
+    }
     
     @Override
     public int getLogSize() {
-        return 16;
+        return 24;
     }
 
     public String getDateString() {
@@ -74,6 +114,7 @@ public class Checkpoint extends AbstractLoggable {
 
     @Override
 	public String dump() {
-		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp));
+		return super.dump() + " - checkpoint at " + df.format(new Date(timestamp)) +
+				(isFuzzy() ? "; redo from " + Lsn.dump(redoLsn) : "");
 	}
 }
@@ -0,0 +1,156 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.txn;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+
+import java.util.Optional;
+
+/**
+ * Writes fuzzy checkpoints in a background thread. A regular checkpoint flushes
+ * all data files while the database is blocked. A fuzzy checkpoint records a redo
+ * point instead, flushes the files one after the other while other transactions
+ * continue, and finally writes a checkpoint record pointing back to the redo point,
+ * see {@link TransactionManager#fuzzyCheckpoint(DBBroker, Runnable)}.
+ *
+ * To limit the I/O load, the writer pauses for {@link #getPause()} milliseconds
+ * after every file.
+ */
+public class CheckpointWriter extends Thread {
+
+    private static final Logger LOG = LogManager.getLogger(CheckpointWriter.class);
+
+    public final static long DEFAULT_PAUSE = 50;
+
+    private final BrokerPool pool;
+    private final TransactionManager transact;
+    private final long pause;
+
+    // all fields below are guarded by this
+
+    private boolean requested = false;
+    private boolean running = false;
+    private boolean shutdown = false;
+
+    /**
+     * @param pool the database instance
+     * @param transact the transaction manager writing the checkpoint records
+     * @param pause the time in milliseconds to pause after every file
+     */
+    public CheckpointWriter(final BrokerPool pool, final TransactionManager transact, final long pause) {
+        super("exist-checkpoint-writer");
+        setDaemon(true);
+        this.pool = pool;
+        this.transact = transact;
+        this.pause = pause < 0 ? 0 : pause;
+    }
+
+    /**
+     * Request a fuzzy checkpoint. The request is ignored if a checkpoint
+     * is being written at the moment.
+     */
+    public synchronized void trigger() {
+        if (!running && !shutdown) {
+            requested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop the writer thread. A checkpoint in progress is completed
+     * without further pauses.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (final InterruptedException e) {
+            //Nothing to do
+        }
+    }
+
+    public long getPause() {
+        return pause;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                while (!requested && !shutdown) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        //Nothing to do
+                    }
+                }
+                if (shutdown) {
+                    break;
+                }
+                requested = false;
+                running = true;
+            }
+            try {
+                if (!pool.isShuttingDown()) {
+                    writeCheckpoint();
+                }
+            } finally {
+                synchronized (this) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private void writeCheckpoint() {
+        final long start = System.currentTimeMillis();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            if (transact.fuzzyCheckpoint(broker, this::pause) && LOG.isDebugEnabled()) {
+                LOG.debug("Fuzzy checkpoint written in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (final EXistException e) {
+            LOG.warn("Failed to write fuzzy checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Called after every file. Returns immediately if the database
+     * is shutting down.
+     */
+    private synchronized void pause() {
+        final long deadline = System.currentTimeMillis() + pause;
+        long remaining = pause;
+        while (remaining > 0 && !shutdown && !pool.isShuttingDown()) {
+            try {
+                wait(remaining);
+            } catch (final InterruptedException e) {
+                //Nothing to do
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+}
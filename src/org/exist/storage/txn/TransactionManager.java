@@ -32,16 +32,18 @@ import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.SystemTask;
 import org.exist.storage.SystemTaskManager;
+import org.exist.storage.journal.GroupCommitFlusher;
 import org.exist.storage.journal.Journal;
+import org.exist.storage.journal.Lsn;
 import org.exist.storage.recovery.RecoveryManager;
 import org.exist.util.ReadOnlyException;
 import org.exist.xmldb.XmldbURI;
 
 import java.io.PrintStream;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -60,6 +62,16 @@ public class TransactionManager {
 	
 	public final static String RECOVERY_GROUP_COMMIT_ATTRIBUTE = "group-commit";
 	public final static String PROPERTY_RECOVERY_GROUP_COMMIT = "db-connection.recovery.group-commit";
+    public final static String RECOVERY_GROUP_COMMIT_MAX_WAIT_ATTRIBUTE = "group-commit-max-wait";
+    public final static String PROPERTY_RECOVERY_GROUP_COMMIT_MAX_WAIT = "db-connection.recovery.group-commit-max-wait";
+    public final static String RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE = "group-commit-max-batch";
+    public final static String PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH = "db-connection.recovery.group-commit-max-batch";
+    public final static String RECOVERY_FUZZY_CHECKPOINT_ATTRIBUTE = "fuzzy-checkpoint";
+    public final static String PROPERTY_RECOVERY_FUZZY_CHECKPOINT = "db-connection.recovery.fuzzy-checkpoint";
+    public final static String RECOVERY_FUZZY_CHECKPOINT_PAUSE_ATTRIBUTE = "fuzzy-checkpoint-pause";
+    public final static String PROPERTY_RECOVERY_FUZZY_CHECKPOINT_PAUSE = "db-connection.recovery.fuzzy-checkpoint-pause";
+    public final static String RECOVERY_REDO_THREADS_ATTRIBUTE = "redo-threads";
+    public final static String PROPERTY_RECOVERY_REDO_THREADS = "db-connection.recovery.redo-threads";
     public final static String RECOVERY_FORCE_RESTART_ATTRIBUTE = "force-restart";
     public final static String PROPERTY_RECOVERY_FORCE_RESTART = "db-connection.recovery.force-restart";
 
@@ -85,12 +97,33 @@ public class TransactionManager {
     @ConfigurationFieldAsAttribute("group-commit")
     private boolean groupCommit = false;
 
+    @ConfigurationFieldAsAttribute("group-commit-max-wait")
+    private long groupCommitMaxWait = GroupCommitFlusher.DEFAULT_MAX_WAIT;
+
+    @ConfigurationFieldAsAttribute("group-commit-max-batch")
+    private int groupCommitMaxBatch = GroupCommitFlusher.DEFAULT_MAX_BATCH_SIZE;
+
+    /** flushes the journal for batches of commits if group commit is enabled */
+    private GroupCommitFlusher groupCommitFlusher = null;
+
+    @ConfigurationFieldAsAttribute("fuzzy-checkpoint")
+    private boolean fuzzyCheckpoint = false;
+
+    @ConfigurationFieldAsAttribute("fuzzy-checkpoint-pause")
+    private long fuzzyCheckpointPause = CheckpointWriter.DEFAULT_PAUSE;
+
+    /** writes fuzzy checkpoints in the background if enabled */
+    private CheckpointWriter checkpointWriter = null;
+
+    @ConfigurationFieldAsAttribute("redo-threads")
+    private int redoThreads = 1;
+
     @ConfigurationFieldAsAttribute("force-restart")
     private boolean forceRestart = false;
 
     private SystemTaskManager taskManager;
 
-    private final Map<Long, TxnCounter> transactions = new HashMap<>();
+    private final Map<Long, TxnCounter> transactions = new ConcurrentHashMap<>();
 
     private final Lock lock = new ReentrantLock();
 
@@ -111,6 +144,16 @@ public class TransactionManager {
             Optional.ofNullable((boolean)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_FORCE_RESTART)).orElse(false),
             new SystemTaskManager(pool)
         );
+        this.groupCommitMaxWait = Optional.ofNullable((Long)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_WAIT))
+                .orElse(GroupCommitFlusher.DEFAULT_MAX_WAIT);
+        this.groupCommitMaxBatch = Optional.ofNullable((Integer)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH))
+                .orElse(GroupCommitFlusher.DEFAULT_MAX_BATCH_SIZE);
+        this.fuzzyCheckpoint = Optional.ofNullable((Boolean)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_FUZZY_CHECKPOINT))
+                .orElse(false);
+        this.fuzzyCheckpointPause = Optional.ofNullable((Long)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_FUZZY_CHECKPOINT_PAUSE))
+                .orElse(CheckpointWriter.DEFAULT_PAUSE);
+        this.redoThreads = Optional.ofNullable((Integer)pool.getConfiguration().getProperty(PROPERTY_RECOVERY_REDO_THREADS))
+                .orElse(1);
     }
 
     TransactionManager(final BrokerPool pool, final boolean transactionsEnabled, final Journal journal, final boolean groupCommit, final boolean forceRestart, final SystemTaskManager taskManager) {
@@ -128,8 +171,23 @@ public class TransactionManager {
     }
 
     public void initialize() throws EXistException, ReadOnlyException {
-        if (enabled)
-            {journal.initialize();}
+        if (enabled) {
+            journal.initialize();
+            if (groupCommit) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("GroupCommit max wait = " + groupCommitMaxWait + "ms; max batch = " + groupCommitMaxBatch);
+                }
+                groupCommitFlusher = new GroupCommitFlusher(journal, groupCommitMaxWait, groupCommitMaxBatch);
+                groupCommitFlusher.start();
+            }
+            if (fuzzyCheckpoint) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("FuzzyCheckpoint pause = " + fuzzyCheckpointPause + "ms");
+                }
+                checkpointWriter = new CheckpointWriter(pool, this, fuzzyCheckpointPause);
+                checkpointWriter.start();
+            }
+        }
         transactions.clear();
     }
     
@@ -145,7 +203,7 @@ public class TransactionManager {
      * @throws EXistException
      */
 	public boolean runRecovery(DBBroker broker) throws EXistException {
-		final RecoveryManager recovery = new RecoveryManager(broker, journal, forceRestart);
+		final RecoveryManager recovery = new RecoveryManager(broker, journal, forceRestart, redoThreads);
 		return recovery.recover();
 	}
 	
@@ -154,6 +212,19 @@ public class TransactionManager {
      * be logged to disk immediately. 
      */
     public Txn beginTransaction() {
+        return beginTransaction(true);
+    }
+
+    /**
+     * Create a new transaction. If journaled is false, none of the changes
+     * made within the transaction are written to the journal. This saves the
+     * journal I/O when loading large amounts of data, but the changes cannot be
+     * recovered after a crash: the caller has to flush all changes to disk
+     * after committing, see {@link org.exist.storage.BulkLoader}.
+     *
+     * @param journaled false to disable journaling for the transaction
+     */
+    public Txn beginTransaction(final boolean journaled) {
         if (!enabled)
             {return null;}
 
@@ -162,13 +233,18 @@ public class TransactionManager {
 			public Txn execute() {
 				final long txnId = nextTxnId++;
                 LOG.debug("Starting new transaction: " + txnId);
-                final Txn txn = new Txn(TransactionManager.this, txnId);
-	            try {
-	                journal.writeToLog(new TxnStart(txnId));
-	            } catch (final TransactionException e) {
-	                LOG.warn("Failed to create transaction. Error writing to log file.", e);
-	            }
-                transactions.put(txn.getId(), new TxnCounter());
+                final Txn txn = new Txn(TransactionManager.this, txnId, journaled);
+                long startLsn = Lsn.LSN_INVALID;
+                if (journaled) {
+	                try {
+	                    final TxnStart start = new TxnStart(txnId);
+	                    journal.writeToLog(start);
+	                    startLsn = start.getLsn();
+	                } catch (final TransactionException e) {
+	                    LOG.warn("Failed to create transaction. Error writing to log file.", e);
+	                }
+                }
+                transactions.put(txn.getId(), new TxnCounter(journaled, startLsn));
                 return txn;
 			}
         	
@@ -188,15 +264,16 @@ public class TransactionManager {
             return;
         }
 
-        new RunWithLock<Object>() {
-        	public Object execute() {
-                if (enabled) {
+        final TxnCommit commit = new TxnCommit(txn.getId());
+        final Boolean othersActive = new RunWithLock<Boolean>() {
+        	public Boolean execute() {
+                if (enabled && txn.isJournaled()) {
                     try {
-						journal.writeToLog(new TxnCommit(txn.getId()));
+						journal.writeToLog(commit);
 					} catch (final TransactionException e) {
 						LOG.error("transaction manager caught exception while committing", e);
 					}
-                    if (!groupCommit)
+                    if (groupCommitFlusher == null)
                         {journal.flushToLog(true);}
                 }
                 txn.signalCommit();
@@ -204,9 +281,17 @@ public class TransactionManager {
                 transactions.remove(txn.getId());
                 processSystemTasks();
                 LOG.debug("Committed transaction: " + txn.getId());
-                return null;
+                return !transactions.isEmpty();
         	}
         }.run();
+
+        // with group commit, the journal is flushed by the flusher thread for
+        // a whole batch of commits. We wait for it after releasing the
+        // transaction manager lock, so other transactions can proceed meanwhile.
+        // If no other transaction is active, there is nobody to wait for.
+        if (groupCommitFlusher != null && othersActive != null && txn.isJournaled()) {
+            groupCommitFlusher.awaitFlush(commit.getLsn(), !othersActive);
+        }
     }
 	
     public void abort(final Txn txn) {
@@ -219,13 +304,15 @@ public class TransactionManager {
         new RunWithLock<Object>() {
         	public Object execute() {
                 transactions.remove(txn.getId());
-                try {
-                    journal.writeToLog(new TxnAbort(txn.getId()));
-                } catch (final TransactionException e) {
-                    LOG.warn("Failed to write abort record to journal: " + e.getMessage());
+                if (txn.isJournaled()) {
+                    try {
+                        journal.writeToLog(new TxnAbort(txn.getId()));
+                    } catch (final TransactionException e) {
+                        LOG.warn("Failed to write abort record to journal: " + e.getMessage());
+                    }
+                    if (groupCommitFlusher == null)
+                        {journal.flushToLog(true);}
                 }
-                if (!groupCommit)
-                    {journal.flushToLog(true);}
                 txn.signalAbort();
                 txn.releaseAll();
                 processSystemTasks();
@@ -272,6 +359,17 @@ public class TransactionManager {
         }
     }
 
+    /**
+     * Returns false if the given transaction has been started with
+     * journaling disabled.
+     *
+     * @param txnId
+     */
+    public boolean isJournaled(long txnId) {
+        final TxnCounter count = transactions.get(txnId);
+        return count == null || count.journaled;
+    }
+
     public Lock getLock() {
         return lock;
     }
@@ -295,11 +393,76 @@ public class TransactionManager {
 	final long txnId = nextTxnId++;
 	journal.checkpoint(txnId, switchFiles);
     }
+
+    /**
+     * Create a fuzzy checkpoint. Other than {@link #checkpoint(boolean)}, this does not
+     * require the database to be idle: transactions continue while the data files
+     * are flushed.
+     *
+     * The redo point is the next LSN to be written or the start of the oldest running
+     * transaction, whichever is lower. All changes logged before it are on disk once the
+     * data files have been flushed, so the checkpoint record written afterwards tells
+     * recovery to redo the journal from there.
+     *
+     * @param broker the broker used to flush the data files
+     * @param throttle called after every file, see {@link DBBroker#syncFiles(Runnable)}
+     * @return true if a checkpoint record has been written
+     * @throws TransactionException
+     */
+    public boolean fuzzyCheckpoint(final DBBroker broker, final Runnable throttle) throws TransactionException {
+        if (!enabled) {
+            return false;
+        }
+        final long[] begin = new RunWithLock<long[]>() {
+            public long[] execute() {
+                long redoLsn = journal.nextLsn();
+                for (final TxnCounter count : transactions.values()) {
+                    if (count.startLsn != Lsn.LSN_INVALID && count.startLsn < redoLsn) {
+                        redoLsn = count.startLsn;
+                    }
+                }
+                return new long[] { nextTxnId++, redoLsn };
+            }
+        }.run();
+        if (begin == null) {
+            return false;
+        }
+        broker.syncFiles(throttle);
+        return journal.fuzzyCheckpoint(begin[0], begin[1]);
+    }
+
+    /**
+     * Returns the writer for fuzzy checkpoints.
+     *
+     * @return the writer or null if fuzzy checkpoints are disabled
+     */
+    public CheckpointWriter getCheckpointWriter() {
+        return checkpointWriter;
+    }
+
+    /**
+     * Stop writing fuzzy checkpoints. Waits for a checkpoint in progress.
+     */
+    public void shutdownCheckpointWriter() {
+        if (checkpointWriter != null) {
+            checkpointWriter.shutdown();
+            checkpointWriter = null;
+        }
+    }
 	
     public Journal getJournal() {
 	return journal;
     }
 
+    /**
+     * Returns the flusher used for group commits.
+     *
+     * @return the flusher or null if group commit is disabled
+     */
+    public GroupCommitFlusher getGroupCommitFlusher() {
+        return groupCommitFlusher;
+    }
+
     /**
      * @Deprecated This mixes concerns and should not be here.
      */
@@ -323,6 +486,11 @@ public class TransactionManager {
 
     public void shutdown(boolean checkpoint) {
         if (enabled) {
+            shutdownCheckpointWriter();
+            if (groupCommitFlusher != null) {
+                groupCommitFlusher.shutdown();
+                groupCommitFlusher = null;
+            }
                 final long txnId = nextTxnId++;
             journal.shutdown(txnId, checkpoint);
             transactions.clear();
@@ -406,6 +574,13 @@ public class TransactionManager {
      */
     protected final static class TxnCounter {
         int counter = 0;
+        final boolean journaled;
+        final long startLsn;
+
+        public TxnCounter(boolean journaled, long startLsn) {
+            this.journaled = journaled;
+            this.startLsn = startLsn;
+        }
 
         public void increment() {
             counter++;
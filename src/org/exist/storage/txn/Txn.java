@@ -46,10 +46,17 @@ public class Txn implements Transaction {
     
     private TransactionManager tm;
 
+    private final boolean journaled;
+
     public Txn(TransactionManager tm, long transactionId) {
+        this(tm, transactionId, true);
+    }
+
+    public Txn(TransactionManager tm, long transactionId, boolean journaled) {
         this.tm = tm;
         this.id = transactionId;
         this.state = State.STARTED;
+        this.journaled = journaled;
     }
 
     public State getState() {
@@ -63,6 +70,14 @@ public class Txn implements Transaction {
     public long getId() {
         return id;
     }
+
+    /**
+     * Returns false if the changes made within this transaction are not
+     * written to the journal, see {@link TransactionManager#beginTransaction(boolean)}.
+     */
+    public boolean isJournaled() {
+        return journaled;
+    }
     
     public void registerLock(Lock lock, int lockMode) {
         locksHeld.add(new LockInfo(lock, lockMode));
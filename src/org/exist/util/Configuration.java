@@ -51,6 +51,7 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.btree.PageStore;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -59,6 +60,8 @@ import org.exist.validation.GrammarPool;
 import org.exist.validation.resolver.eXistXMLCatalogResolver;
 import org.exist.xmldb.DatabaseImpl;
 import org.exist.xquery.FunctionFactory;
+import org.exist.xquery.GroupByClause;
+import org.exist.xquery.OrderByClause;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.XQueryWatchDog;
@@ -330,6 +333,32 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": " + config.get( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL ) );
 
+        final String spillThreshold = getConfigAttributeValue( xquery, GroupByClause.GROUPBY_SPILL_THRESHOLD_ATTRIBUTE );
+
+        if( ( spillThreshold != null ) && ( spillThreshold.length() > 0 ) ) {
+
+            try {
+                config.put( GroupByClause.PROPERTY_GROUPBY_SPILL_THRESHOLD, Long.valueOf(spillThreshold) );
+                LOG.debug( GroupByClause.PROPERTY_GROUPBY_SPILL_THRESHOLD + ": " + config.get( GroupByClause.PROPERTY_GROUPBY_SPILL_THRESHOLD ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw new DatabaseConfigurationException( "Invalid value for " + GroupByClause.GROUPBY_SPILL_THRESHOLD_ATTRIBUTE + ": " + spillThreshold );
+            }
+        }
+
+        final String orderBySpillThreshold = getConfigAttributeValue( xquery, OrderByClause.ORDERBY_SPILL_THRESHOLD_ATTRIBUTE );
+
+        if( ( orderBySpillThreshold != null ) && ( orderBySpillThreshold.length() > 0 ) ) {
+
+            try {
+                config.put( OrderByClause.PROPERTY_ORDERBY_SPILL_THRESHOLD, Long.valueOf(orderBySpillThreshold) );
+                LOG.debug( OrderByClause.PROPERTY_ORDERBY_SPILL_THRESHOLD + ": " + config.get( OrderByClause.PROPERTY_ORDERBY_SPILL_THRESHOLD ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw new DatabaseConfigurationException( "Invalid value for " + OrderByClause.ORDERBY_SPILL_THRESHOLD_ATTRIBUTE + ": " + orderBySpillThreshold );
+            }
+        }
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -806,6 +835,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        String cacheType = getConfigAttributeValue( con, DefaultCacheManager.CACHE_TYPE_ATTRIBUTE );
+
+        if( cacheType == null ) {
+            cacheType = DefaultCacheManager.DEFAULT_CACHE_TYPE;
+        }
+
+        if( !DefaultCacheManager.CACHE_TYPE_LRU.equals( cacheType ) && !DefaultCacheManager.CACHE_TYPE_CONCURRENT.equals( cacheType ) ) {
+            throw( new DatabaseConfigurationException( DefaultCacheManager.CACHE_TYPE_ATTRIBUTE + ": unknown cache type '" + cacheType + "', expected '" +
+                    DefaultCacheManager.CACHE_TYPE_LRU + "' or '" + DefaultCacheManager.CACHE_TYPE_CONCURRENT + "'" ) );
+        }
+        config.put( DefaultCacheManager.PROPERTY_CACHE_TYPE, cacheType );
+        LOG.debug( DefaultCacheManager.PROPERTY_CACHE_TYPE + ": " + config.get( DefaultCacheManager.PROPERTY_CACHE_TYPE ) );
+
         String collectionCache = getConfigAttributeValue( con, CollectionCacheManager.CACHE_SIZE_ATTRIBUTE );
 
         if( collectionCache != null ) {
@@ -1015,6 +1057,56 @@ public class Configuration implements ErrorHandler
         if( recoveries.getLength() > 0 ) {
             configureRecovery( dbHome, (Element)recoveries.item( 0 ) );
         }
+
+        final NodeList pageIOConf = con.getElementsByTagName( PageStore.CONFIGURATION_ELEMENT_NAME );
+
+        if( pageIOConf.getLength() > 0 ) {
+            configurePageIO( (Element)pageIOConf.item( 0 ) );
+        }
+    }
+
+    /**
+     * Reads the page I/O backend (see {@link PageStore}) to use for the paged
+     * database files: a default mode plus optional per file overrides.
+     *
+     * @param  pageIO  the page-io element
+     */
+    private void configurePageIO( Element pageIO ) throws DatabaseConfigurationException
+    {
+        final String defaultMode = getConfigAttributeValue( pageIO, PageStore.DEFAULT_MODE_ATTRIBUTE );
+
+        if( defaultMode != null && defaultMode.length() > 0 ) {
+            config.put( PageStore.PROPERTY_DEFAULT_MODE, checkPageIOMode( defaultMode ) );
+            LOG.debug( PageStore.PROPERTY_DEFAULT_MODE + ": " + config.get( PageStore.PROPERTY_DEFAULT_MODE ) );
+        }
+
+        final String checksums = getConfigAttributeValue( pageIO, PageStore.CHECKSUMS_ATTRIBUTE );
+        config.put( PageStore.PROPERTY_CHECKSUMS, parseBoolean( checksums, false ) );
+        LOG.debug( PageStore.PROPERTY_CHECKSUMS + ": " + config.get( PageStore.PROPERTY_CHECKSUMS ) );
+
+        final Map<String, String> fileModes = new HashMap<>();
+        final NodeList files = pageIO.getElementsByTagName( PageStore.CONFIGURATION_FILE_ELEMENT_NAME );
+
+        for( int i = 0; i < files.getLength(); i++ ) {
+            final Element file = (Element)files.item( i );
+            final String name = file.getAttribute( PageStore.FILE_NAME_ATTRIBUTE );
+
+            if( name == null || name.length() == 0 ) {
+                throw( new DatabaseConfigurationException( "page-io: file element needs a name attribute" ) );
+            }
+            fileModes.put( name, checkPageIOMode( file.getAttribute( PageStore.FILE_MODE_ATTRIBUTE ) ) );
+        }
+        config.put( PageStore.PROPERTY_FILE_MODES, fileModes );
+        LOG.debug( PageStore.PROPERTY_FILE_MODES + ": " + fileModes );
+    }
+
+    private String checkPageIOMode( String mode ) throws DatabaseConfigurationException
+    {
+        if( PageStore.MODE_FILE.equals( mode ) || PageStore.MODE_MMAP.equals( mode ) ) {
+            return( mode );
+        }
+        throw( new DatabaseConfigurationException( "page-io: unknown mode '" + mode + "', expected '" +
+                PageStore.MODE_FILE + "' or '" + PageStore.MODE_MMAP + "'" ) );
     }
 
 
@@ -1032,6 +1124,62 @@ public class Configuration implements ErrorHandler
         setProperty( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT ) );
 
+        option = getConfigAttributeValue( recovery, TransactionManager.RECOVERY_GROUP_COMMIT_MAX_WAIT_ATTRIBUTE );
+
+        if( option != null && option.length() > 0 ) {
+
+            try {
+                setProperty( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_WAIT, Long.valueOf( option ) );
+                LOG.debug( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_WAIT + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_WAIT ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "group-commit-max-wait attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, TransactionManager.RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE );
+
+        if( option != null && option.length() > 0 ) {
+
+            try {
+                setProperty( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Integer.valueOf( option ) );
+                LOG.debug( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "group-commit-max-batch attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, TransactionManager.RECOVERY_FUZZY_CHECKPOINT_ATTRIBUTE );
+        setProperty( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT, parseBoolean( option, false ) );
+        LOG.debug( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT ) );
+
+        option = getConfigAttributeValue( recovery, TransactionManager.RECOVERY_FUZZY_CHECKPOINT_PAUSE_ATTRIBUTE );
+
+        if( option != null && option.length() > 0 ) {
+
+            try {
+                setProperty( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT_PAUSE, Long.valueOf( option ) );
+                LOG.debug( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT_PAUSE + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT_PAUSE ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "fuzzy-checkpoint-pause attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, TransactionManager.RECOVERY_REDO_THREADS_ATTRIBUTE );
+
+        if( option != null && option.length() > 0 ) {
+
+            try {
+                setProperty( TransactionManager.PROPERTY_RECOVERY_REDO_THREADS, Integer.valueOf( option ) );
+                LOG.debug( TransactionManager.PROPERTY_RECOVERY_REDO_THREADS + ": " + config.get( TransactionManager.PROPERTY_RECOVERY_REDO_THREADS ) );
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "redo-threads attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1351,6 +1499,26 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String reindexThreads = getConfigAttributeValue( indexer, NativeBroker.REINDEX_THREADS_ATTRIBUTE );
+
+        if( reindexThreads != null ) {
+
+            try {
+                config.put( NativeBroker.PROPERTY_REINDEX_THREADS, Integer.valueOf( reindexThreads ) );
+                LOG.debug( NativeBroker.PROPERTY_REINDEX_THREADS + ": " + config.get( NativeBroker.PROPERTY_REINDEX_THREADS ) );
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String onlineReindex = getConfigAttributeValue( indexer, NativeBroker.ONLINE_REINDEX_ATTRIBUTE );
+
+        if( onlineReindex != null ) {
+            config.put( NativeBroker.PROPERTY_ONLINE_REINDEX, parseBoolean( onlineReindex, false ) );
+            LOG.debug( NativeBroker.PROPERTY_ONLINE_REINDEX + ": " + config.get( NativeBroker.PROPERTY_ONLINE_REINDEX ) );
+        }
+
         final String suppressWS = getConfigAttributeValue( indexer, Indexer.SUPPRESS_WHITESPACE_ATTRIBUTE );
 
         if( suppressWS != null ) {
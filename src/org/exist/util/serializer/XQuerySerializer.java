@@ -25,6 +25,9 @@ public class XQuerySerializer {
     private final DBBroker broker;
     private final Writer writer;
 
+    private Serializer streamSerializer = null;
+    private SAXSerializer streamHandler = null;
+
     public XQuerySerializer(DBBroker broker, Properties outputProperties, Writer writer) {
         super();
         this.broker = broker;
@@ -68,6 +71,61 @@ public class XQuerySerializer {
         }
     }
 
+    /**
+     * Start writing a sequence whose items are passed in one or more calls to
+     * {@link #serializeItems(Sequence)}, so output can be written while the query
+     * producing the items is still running. Must be followed by {@link #endStream()}.
+     * JSON output is not supported.
+     *
+     * @throws SAXException
+     */
+    public void startStream() throws SAXException {
+        // the query may use the broker's serializer while we are writing
+        streamSerializer = broker.newSerializer();
+        streamHandler = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
+        try {
+            streamHandler.setOutput(writer, outputProperties);
+            streamSerializer.setProperties(outputProperties);
+            streamSerializer.setSAXHandlers(streamHandler, streamHandler);
+            streamSerializer.startSequence();
+        } catch (SAXNotSupportedException | SAXNotRecognizedException e) {
+            endStream(false);
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the given items as part of the sequence started by {@link #startStream()}.
+     *
+     * @param sequence the next items of the sequence
+     * @throws SAXException
+     */
+    public void serializeItems(Sequence sequence) throws SAXException {
+        streamSerializer.itemsToSAX(sequence);
+    }
+
+    /**
+     * End the sequence started by {@link #startStream()}. Safe to call if the stream
+     * has already been closed.
+     *
+     * @param complete false if the sequence has been aborted and should not be terminated
+     * @throws SAXException
+     */
+    public void endStream(boolean complete) throws SAXException {
+        if (streamHandler == null) {
+            return;
+        }
+        try {
+            if (complete) {
+                streamSerializer.endSequence();
+            }
+        } finally {
+            SerializerPool.getInstance().returnObject(streamHandler);
+            streamHandler = null;
+            streamSerializer = null;
+        }
+    }
+
     private void serializeJSON(Sequence sequence) throws SAXException, XPathException {
         // backwards compatibility: if the sequence contains a single element, we assume
         // it should be transformed to JSON following the rules of the old JSON writer
@@ -560,6 +560,24 @@ public interface RpcAPI {
     public boolean parseLocalExt(String localFile, String docName, boolean replace, String mimeType, boolean treatAsXML, Date created, Date modified)
             throws EXistException, PermissionDeniedException, SAXException, URISyntaxException;
 
+    /**
+     * Store a batch of files previously uploaded with upload into a collection
+     * in bulk load mode: the changes are not written to the journal, but flushed
+     * to disk once after all files have been stored. Documents are stored as XML
+     * or binary depending on the mime type registered for their name. Requires
+     * the DBA role.
+     *
+     * @param collectionName the collection to store the documents into. Will be created if it does not exist.
+     * @param localFiles the files returned by upload
+     * @param docNames the names of the documents, in the same order as the files
+     * @return the number of documents stored
+     * @throws EXistException
+     * @throws PermissionDeniedException
+     * @throws URISyntaxException
+     */
+    public int bulkLoad(String collectionName, List<String> localFiles, List<String> docNames)
+            throws EXistException, PermissionDeniedException, URISyntaxException;
+
     /**
      * Store data as a binary resource.
      *
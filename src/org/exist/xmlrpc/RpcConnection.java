@@ -1412,33 +1412,7 @@ public class RpcConnection implements RpcAPI {
 
             VirtualTempFileInputSource source = null;
             try {
-                try {
-                    final int handle = Integer.parseInt(localFile);
-                    final SerializedResult sr = factory.resultSets.getSerializedResult(handle);
-                    if (sr == null) {
-                        throw new EXistException("Invalid handle specified");
-                    }
-
-                    source = new VirtualTempFileInputSource(sr.result);
-
-                    // Unlinking the VirtualTempFile from the SerializeResult
-                    sr.result = null;
-                    factory.resultSets.remove(handle);
-                } catch (final NumberFormatException nfe) {
-                    // As this file can be a non-temporal one, we should not
-                    // blindly erase it!
-                    final File file = new File(localFile);
-                    if (!file.canRead()) {
-                        throw new EXistException("unable to read file " + file.getAbsolutePath());
-                    }
-
-                    source = new VirtualTempFileInputSource(file);
-                } catch (final IOException ioe) {
-                    throw new EXistException("Error preparing virtual temp file for parsing");
-                }
-                finally {
-                    source.close();
-                }
+                source = openLocalFile(localFile);
 
                 final MimeType mime = Optional.ofNullable(MimeTable.getInstance().getContentType(mimeType)).orElse(MimeType.BINARY_TYPE);
                 final boolean treatAsXML = (isXML != null && isXML) || (isXML == null && mime.isXMLType());
@@ -1474,6 +1448,81 @@ public class RpcConnection implements RpcAPI {
         });
     }
 
+    /**
+     * Open a file previously uploaded with upload, or a file on the server.
+     */
+    private VirtualTempFileInputSource openLocalFile(final String localFile) throws EXistException {
+        VirtualTempFileInputSource source = null;
+        try {
+            final int handle = Integer.parseInt(localFile);
+            final SerializedResult sr = factory.resultSets.getSerializedResult(handle);
+            if (sr == null) {
+                throw new EXistException("Invalid handle specified");
+            }
+
+            source = new VirtualTempFileInputSource(sr.result);
+
+            // Unlinking the VirtualTempFile from the SerializeResult
+            sr.result = null;
+            factory.resultSets.remove(handle);
+        } catch (final NumberFormatException nfe) {
+            // As this file can be a non-temporal one, we should not
+            // blindly erase it!
+            final File file = new File(localFile);
+            if (!file.canRead()) {
+                throw new EXistException("unable to read file " + file.getAbsolutePath());
+            }
+
+            source = new VirtualTempFileInputSource(file);
+        } catch (final IOException ioe) {
+            throw new EXistException("Error preparing virtual temp file for parsing");
+        }
+        finally {
+            if (source != null) {
+                source.close();
+            }
+        }
+        return source;
+    }
+
+    @Override
+    public int bulkLoad(final String collectionName, final List<String> localFiles, final List<String> docNames)
+            throws EXistException, PermissionDeniedException, URISyntaxException {
+        if (localFiles.size() != docNames.size()) {
+            throw new EXistException("The number of files and document names differ");
+        }
+        final XmldbURI collUri = XmldbURI.xmldbUriFor(collectionName);
+        final List<XmldbURI> names = new ArrayList<>(docNames.size());
+        for (final String docName : docNames) {
+            names.add(XmldbURI.xmldbUriFor(docName));
+        }
+        // the loader runs its own, unjournaled transactions
+        try (final DBBroker broker = factory.getBrokerPool().get(Optional.of(user));
+             final BulkLoader loader = new BulkLoader(broker, collUri)) {
+            for (int i = 0; i < localFiles.size(); i++) {
+                final XmldbURI docName = names.get(i);
+                final MimeType mime = Optional.ofNullable(MimeTable.getInstance().getContentTypeFor(docName))
+                        .orElse(MimeType.BINARY_TYPE);
+                final VirtualTempFileInputSource source = openLocalFile(localFiles.get(i));
+                try {
+                    if (mime.isXMLType()) {
+                        loader.storeXML(docName, source);
+                    } else {
+                        try (final InputStream is = source.getByteStream()) {
+                            loader.storeBinary(docName, is, mime.getName(), source.getByteStreamLength());
+                        }
+                    }
+                } finally {
+                    source.free();
+                }
+            }
+            LOG.debug("Bulk loaded " + loader.getStored() + " documents into " + collUri);
+            return loader.getStored();
+        } catch (final LockException | IOException | SAXException e) {
+            throw new EXistException(e);
+        }
+    }
+
     public boolean storeBinary(final byte[] data, final String documentPath, final String mimeType,
             final int overwrite) throws EXistException, PermissionDeniedException, URISyntaxException {
         return storeBinary(data, documentPath, mimeType, overwrite, null, null);
@@ -0,0 +1,197 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Walks an expression tree, descending only into expression types whose
+ * sub-expressions are known. If anything else is found, e.g. an update, a dynamic
+ * function call or an extension function, the scan is marked as not complete and
+ * the unknown expression is not inspected.
+ *
+ * Subclasses intercept the expressions they are interested in by overriding
+ * {@link #scan(Expression, Set, Consumer)} and the hooks for variable references
+ * and calls to user-defined functions. Used by {@link GroupByClause} to find
+ * aggregates and by {@link org.exist.xquery.pragmas.ParallelPragma} to check if an
+ * expression can be evaluated by several threads.
+ */
+public abstract class ExpressionScanner {
+
+    protected final XQueryContext context;
+    private boolean complete = true;
+
+    protected ExpressionScanner(final XQueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return false if an expression of an unknown type was found
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    protected void markIncomplete() {
+        complete = false;
+    }
+
+    /**
+     * Scan an expression without variables bound by enclosing expressions.
+     */
+    public void scan(final Expression expr) throws XPathException {
+        scan(expr, Collections.<QName>emptySet(), null);
+    }
+
+    /**
+     * @param expr the expression to inspect
+     * @param bound variables bound by the enclosing expressions below the starting point of the scan
+     * @param replace used to replace expr within its parent, or null if it cannot be replaced
+     */
+    public void scan(final Expression expr, final Set<QName> bound, final Consumer<Expression> replace)
+            throws XPathException {
+        if (expr == null || expr instanceof LiteralValue) {
+            return;
+        }
+        if (expr instanceof VariableReference) {
+            variableReference((VariableReference) expr, bound);
+        } else if (expr instanceof Function) {
+            // built-in functions are wrapped, their arguments are kept by the wrapped function
+            final Function function = expr instanceof InternalFunctionCall ?
+                    ((InternalFunctionCall) expr).getFunction() : (Function) expr;
+            if (function instanceof FunctionCall) {
+                functionCall((FunctionCall) function);
+                scanSteps(function, bound);
+            } else if (isBuiltIn(function)) {
+                scanSteps(function, bound);
+            } else {
+                markIncomplete();
+            }
+        } else if (expr instanceof DebuggableExpression) {
+            final DebuggableExpression debuggable = (DebuggableExpression) expr;
+            final Expression inner = debuggable.getExpression();
+            scan(inner, bound, e -> debuggable.replace(inner, e));
+        } else if (expr instanceof Atomize || expr instanceof DynamicCardinalityCheck ||
+                expr instanceof DynamicTypeCheck || expr instanceof UntypedValueCheck) {
+            scan(expr.getSubExpression(0), bound, null);
+        } else if (expr instanceof CastExpression) {
+            scan(((CastExpression) expr).getInnerExpression(), bound, null);
+        } else if (expr instanceof RangeExpression) {
+            scan(((RangeExpression) expr).getStart(), bound, null);
+            scan(((RangeExpression) expr).getEnd(), bound, null);
+        } else if (expr instanceof LocationStep) {
+            for (final Predicate predicate : ((LocationStep) expr).getPredicates()) {
+                scan(predicate, bound, null);
+            }
+        } else if (expr instanceof FilteredExpression) {
+            final FilteredExpression filtered = (FilteredExpression) expr;
+            scan(filtered.getExpression(), bound, null);
+            for (final Predicate predicate : filtered.getPredicates()) {
+                scan(predicate, bound, null);
+            }
+        } else if (expr instanceof ElementConstructor) {
+            final ElementConstructor constructor = (ElementConstructor) expr;
+            scan(constructor.getNameExpr(), bound, null);
+            if (constructor.getAttributes() != null) {
+                for (final AttributeConstructor attr : constructor.getAttributes()) {
+                    scan(attr, bound, null);
+                }
+            }
+            scan(constructor.getContent(), bound, null);
+        } else if (expr instanceof AttributeConstructor) {
+            for (final Iterator<Object> i = ((AttributeConstructor) expr).contentIterator(); i.hasNext(); ) {
+                final Object next = i.next();
+                if (next instanceof Expression) {
+                    scan((Expression) next, bound, null);
+                }
+            }
+        } else if (expr instanceof ConditionalExpression) {
+            final ConditionalExpression conditional = (ConditionalExpression) expr;
+            final Expression testExpr = conditional.getTestExpr();
+            final Expression thenExpr = conditional.getThenExpr();
+            final Expression elseExpr = conditional.getElseExpr();
+            scan(testExpr, bound, e -> conditional.replace(testExpr, e));
+            scan(thenExpr, bound, e -> conditional.replace(thenExpr, e));
+            scan(elseExpr, bound, e -> conditional.replace(elseExpr, e));
+        } else if (expr instanceof BindingExpression) {
+            final BindingExpression binding = (BindingExpression) expr;
+            final Expression input = binding.getInputSequence();
+            scan(input, bound, e -> binding.replace(input, e));
+            final Set<QName> inner = new HashSet<>(bound);
+            inner.add(QName.parse(context, binding.getVariable(), null));
+            if (binding instanceof ForExpr && ((ForExpr) binding).getPositionalVariable() != null) {
+                inner.add(QName.parse(context, ((ForExpr) binding).getPositionalVariable(), null));
+            }
+            final Expression ret = binding.getReturnExpression();
+            scan(ret, inner, e -> binding.replace(ret, e));
+        } else if (expr instanceof WhereClause) {
+            final WhereClause where = (WhereClause) expr;
+            scan(where.getWhereExpr(), bound, null);
+            scan(where.getReturnExpression(), bound, where::setReturnExpression);
+        } else if (expr instanceof OrderByClause) {
+            final OrderByClause orderBy = (OrderByClause) expr;
+            for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+                scan(spec.getSortExpression(), bound, spec::setSortExpression);
+            }
+            scan(orderBy.getReturnExpression(), bound, orderBy::setReturnExpression);
+        } else if (expr.getClass() == PathExpr.class || expr instanceof EnclosedExpr ||
+                expr instanceof SequenceConstructor || expr instanceof ConcatExpr || expr instanceof BinaryOp ||
+                expr instanceof UnaryExpr || expr instanceof Predicate) {
+            scanSteps((PathExpr) expr, bound);
+        } else {
+            // updates, dynamic function calls, closures, a nested group by and
+            // anything else we do not know about
+            markIncomplete();
+        }
+    }
+
+    /**
+     * Called for every variable reference found.
+     */
+    protected void variableReference(final VariableReference ref, final Set<QName> bound) throws XPathException {
+    }
+
+    /**
+     * Called for every call to a user-defined function, before its arguments are scanned.
+     * The body of the function is not scanned by default.
+     */
+    protected void functionCall(final FunctionCall call) throws XPathException {
+    }
+
+    private void scanSteps(final PathExpr path, final Set<QName> bound) throws XPathException {
+        for (int i = 0; i < path.getLength(); i++) {
+            final Expression step = path.getExpression(i);
+            scan(step, bound, e -> path.replace(step, e));
+        }
+    }
+
+    private static boolean isBuiltIn(final Function function) {
+        final String namespaceURI = function.getName().getNamespaceURI();
+        return Function.BUILTIN_FUNCTION_NS.equals(namespaceURI) ||
+                Namespaces.XPATH_FUNCTIONS_MATH_NS.equals(namespaceURI);
+    }
+}
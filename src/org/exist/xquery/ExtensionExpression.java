@@ -50,6 +50,10 @@ public class ExtensionExpression extends AbstractExpression {
         this.innerExpression = inner;
     }
 
+    public Expression getExpression() {
+        return innerExpression;
+    }
+
     public void addPragma(Pragma pragma) {
         pragmas.add(pragma);
     }
@@ -97,9 +101,12 @@ public class ExtensionExpression extends AbstractExpression {
 
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         final AnalyzeContextInfo newContext = new AnalyzeContextInfo(contextInfo);
+        // pragmas see this expression as parent, the inner expression keeps the original parent
+        newContext.setParent(this);
         for (final Pragma pragma : pragmas) {
             pragma.analyze(newContext);
         }
+        newContext.setParent(contextInfo.getParent());
         innerExpression.analyze(newContext);
     }
 
@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.memtree.NodeImpl;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
@@ -44,6 +45,12 @@ public class FilteredExpression extends AbstractExpression {
     final protected List<Predicate> predicates = new ArrayList<Predicate>(2);
     private Expression parent;
 
+    // set by analyze if the first predicate only selects the first items of
+    // a FLWOR expression ordered by an "order by" clause, e.g. [position() le 10]
+    private OrderByClause orderBy = null;
+    private Expression limitExpr = null;
+    private int limitRelation;
+
     /**
      * @param context
      */
@@ -81,7 +88,51 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+            final OrderByClause clause = OrderByClause.getOrderByClause(expression);
+            orderBy = clause != null && analyzeLimit(predicates.get(0)) ? clause : null;
+        }
+    }
+
+    /**
+     * Check if the predicate selects items by position only, using a numeric
+     * literal, or a comparison of fn:position() with a literal or variable.
+     */
+    private boolean analyzeLimit(Predicate pred) {
+        if (pred.getLength() != 1) {
+            return false;
+        }
+        final Expression inner = pred.getExpression(0);
+        if (inner instanceof LiteralValue) {
+            limitExpr = inner;
+            limitRelation = Constants.EQ;
+            return Type.subTypeOf(inner.returnsType(), Type.NUMBER);
+        }
+        if (inner instanceof GeneralComparison) {
+            final GeneralComparison comparison = (GeneralComparison) inner;
+            limitExpr = comparison.getRight();
+            limitRelation = comparison.getRelation();
+            Expression left = comparison.getLeft();
+            if (left instanceof PathExpr && ((PathExpr) left).getLength() == 1) {
+                left = ((PathExpr) left).getExpression(0);
+            }
+            return (limitRelation == Constants.LT || limitRelation == Constants.LTEQ || limitRelation == Constants.EQ) &&
+                left instanceof InternalFunctionCall && ((InternalFunctionCall) left).getFunction() instanceof FunPosition &&
+                (limitExpr instanceof LiteralValue || limitExpr instanceof VariableReference);
+        }
+        return false;
+    }
+
+    /**
+     * Compute the number of items the first predicate may select at most, or 0 if unknown.
+     */
+    private int getLimit() throws XPathException {
+        final Sequence seq = limitExpr.eval(null);
+        if (!seq.hasOne() || !Type.subTypeOf(seq.getItemType(), Type.NUMBER)) {
+            return 0;
         }
+        final double value = ((NumericValue) seq.itemAt(0)).getDouble();
+        final double limit = limitRelation == Constants.LT ? Math.ceil(value) - 1 : Math.floor(value);
+        return limit >= 1 && limit < Integer.MAX_VALUE ? (int) limit : 0;
     }
 
     /* (non-Javadoc)
@@ -102,7 +153,17 @@ public class FilteredExpression extends AbstractExpression {
         if (contextItem != null)
             {contextSequence = contextItem.toSequence();}
         Sequence result;
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final Sequence seq;
+        if (orderBy != null) {
+            final int previous = orderBy.setLimit(getLimit());
+            try {
+                seq = expression.eval(contextSequence, contextItem);
+            } finally {
+                orderBy.setLimit(previous);
+            }
+        } else {
+            seq = expression.eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
         else {
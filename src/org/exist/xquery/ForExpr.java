@@ -35,8 +35,22 @@ import org.exist.xquery.value.*;
  */
 public class ForExpr extends BindingExpression {
 
+    /**
+     * Receives the result of each iteration of a "for" expression as soon as
+     * it has been computed, instead of having it added to the result sequence.
+     */
+    public interface ResultReceiver {
+
+        /**
+         * @param result the result of an iteration
+         * @return false to skip the remaining iterations
+         */
+        boolean receive(Sequence result) throws XPathException;
+    }
+
     private String positionalVariable = null;
     private boolean allowEmpty = false;
+    private ResultReceiver receiver = null;
 
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
@@ -58,6 +72,64 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    public String getPositionalVariable() {
+        return positionalVariable;
+    }
+
+    /**
+     * Pass the results of the iterations to the given receiver instead of
+     * collecting them. {@link #eval(Sequence, Item)} will return an empty
+     * sequence while a receiver is set. If the receiver returns false, the
+     * remaining iterations are skipped. Pass null to restore normal evaluation.
+     *
+     * @param receiver the receiver or null
+     */
+    public void setResultReceiver(ResultReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Returns the "for" clause starting the given FLWOR expression if the results of
+     * its iterations can be handed out one by one, i.e. if there's no clause which needs
+     * to see all tuples before returning anything and the result is not type checked
+     * as a whole. Returns null otherwise.
+     *
+     * @param expr the expression to check, usually the root expression of a query
+     * @return the "for" clause or null
+     */
+    public static ForExpr getStreamableFor(Expression expr) {
+        while (true) {
+            if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DebuggableExpression) {
+                expr = ((DebuggableExpression) expr).getExpression();
+            } else {
+                break;
+            }
+        }
+        if (!(expr instanceof ForExpr)) {
+            return null;
+        }
+        final ForExpr forExpr = (ForExpr) expr;
+        if (forExpr.getPreviousClause() != null || forExpr.sequenceType != null) {
+            return null;
+        }
+        while (expr instanceof FLWORClause) {
+            final FLWORClause clause = (FLWORClause) expr;
+            switch (clause.getType()) {
+                case ORDERBY:
+                case GROUPBY:
+                case SOME:
+                case EVERY:
+                    return null;
+                default:
+                    break;
+            }
+            expr = clause.getReturnExpression();
+        }
+        return forExpr;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -175,7 +247,9 @@ public class ForExpr extends BindingExpression {
                 processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
             } else {
                 for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
-                    processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    if (!processItem(var, i.nextItem(), in, resultSequence, at, p)) {
+                        break;
+                    }
                 }
             }
         } finally {
@@ -220,7 +294,10 @@ public class ForExpr extends BindingExpression {
         return resultSequence;
     }
 
-    private void processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
+    /**
+     * @return false if the result receiver does not need the results of further iterations
+     */
+    private boolean processItem(LocalVariable var, Item contextItem, Sequence in, Sequence resultSequence, LocalVariable
             at, int p) throws XPathException {
         context.proceed(this);
         context.setContextSequencePosition(p, in);
@@ -235,10 +312,17 @@ public class ForExpr extends BindingExpression {
         //Reset the context position
         context.setContextSequencePosition(0, null);
 
-        resultSequence.addAll(returnExpr.eval(null));
+        final Sequence result = returnExpr.eval(null);
+        boolean proceed = true;
+        if (receiver != null) {
+            proceed = receiver.receive(result);
+        } else {
+            resultSequence.addAll(result);
+        }
 
         // free resources
         var.destroy(context, resultSequence);
+        return proceed;
     }
 
     private boolean callPostEval() {
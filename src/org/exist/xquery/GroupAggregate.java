@@ -0,0 +1,322 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.xquery.functions.fn.FunCount;
+import org.exist.xquery.functions.fn.FunMax;
+import org.exist.xquery.functions.fn.FunMin;
+import org.exist.xquery.functions.fn.FunSum;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.ValueSequence;
+
+import java.util.Set;
+
+/**
+ * Replaces a call to fn:count, fn:sum, fn:min or fn:max on a non-grouping variable
+ * within the return expression of a {@link GroupByClause}. The result is computed
+ * incrementally while the group by collects its tuples.
+ *
+ * fn:sum and fn:min/fn:max are folded by calling the original function on the
+ * partial result and the items of the next tuple. For fn:min and fn:max, the
+ * argument may also be a path without predicates starting at the variable, as
+ * duplicates do not change the result.
+ *
+ * If the variable is not bound by the FLWOR expression after all, the original function
+ * is evaluated.
+ */
+final class GroupAggregate extends AbstractExpression {
+
+    private final Function call;
+    private final Feed feed;
+    private final QName variable;
+    private final boolean count;
+
+    private Sequence value = null;
+
+    private GroupAggregate(final XQueryContext context, final Function call, final Function function,
+            final QName variable) {
+        super(context);
+        this.call = call;
+        this.variable = variable;
+        this.count = function instanceof FunCount;
+        final Expression argument = function.getArgument(0);
+        this.feed = new Feed(context, argument);
+        function.replace(argument, feed);
+        setLocation(call.getLine(), call.getColumn());
+    }
+
+    /**
+     * Create an aggregate for the given function call if it can be computed
+     * incrementally.
+     *
+     * @param context the query context
+     * @param call the function call, usually an {@link InternalFunctionCall}
+     * @param shadowed names of variables which do not refer to a non-grouping variable
+     * @return the aggregate or null
+     */
+    static GroupAggregate create(final XQueryContext context, final Function call, final Set<QName> shadowed)
+            throws XPathException {
+        final Function function = call instanceof InternalFunctionCall ?
+                ((InternalFunctionCall) call).getFunction() : call;
+        if (function.getArgumentCount() != 1) {
+            return null;
+        }
+        final VariableReference ref;
+        if (function instanceof FunCount || function instanceof FunSum) {
+            ref = getVariableReference(function.getArgument(0), false);
+        } else if (function instanceof FunMin || function instanceof FunMax) {
+            ref = getVariableReference(function.getArgument(0), true);
+        } else {
+            return null;
+        }
+        if (ref == null) {
+            return null;
+        }
+        final QName qname = QName.parse(context, ref.getName(), null);
+        if (shadowed.contains(qname)) {
+            return null;
+        }
+        return new GroupAggregate(context, call, function, qname);
+    }
+
+    private static VariableReference getVariableReference(final Expression arg, final boolean allowPath) {
+        final Expression expr = unwrap(arg);
+        if (expr instanceof VariableReference) {
+            return (VariableReference) expr;
+        }
+        if (allowPath && expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() > 1) {
+            final PathExpr path = (PathExpr) expr;
+            final Expression first = unwrap(path.getExpression(0));
+            if (!(first instanceof VariableReference)) {
+                return null;
+            }
+            for (int i = 1; i < path.getLength(); i++) {
+                final Expression step = path.getExpression(i);
+                if (!(step instanceof LocationStep) || ((LocationStep) step).hasPredicates()) {
+                    return null;
+                }
+            }
+            return (VariableReference) first;
+        }
+        return null;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof Atomize || expr instanceof DynamicCardinalityCheck ||
+                    expr instanceof DynamicTypeCheck || expr instanceof UntypedValueCheck) {
+                expr = expr.getSubExpression(0);
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    QName getVariable() {
+        return variable;
+    }
+
+    void setValue(final Sequence value) {
+        this.value = value;
+    }
+
+    /**
+     * Add the items of the current tuple to a partial result.
+     *
+     * @param partial the partial result computed so far or null
+     * @return the new partial result
+     */
+    Sequence accumulate(final Sequence partial) throws XPathException {
+        final Sequence items = feed.argument.eval(null, null);
+        if (count) {
+            return combine(partial, new IntegerValue(items.getItemCount()));
+        }
+        if (items.isEmpty()) {
+            return partial;
+        }
+        return fold(partial, items);
+    }
+
+    /**
+     * Combine two partial results, e.g. after groups have been read back from disk.
+     */
+    Sequence combine(final Sequence partial1, final Sequence partial2) throws XPathException {
+        if (partial1 == null) {
+            return partial2;
+        } else if (partial2 == null) {
+            return partial1;
+        } else if (count) {
+            return new IntegerValue(((IntegerValue) partial1.itemAt(0)).getLong() +
+                    ((IntegerValue) partial2.itemAt(0)).getLong());
+        }
+        return fold(partial1, partial2);
+    }
+
+    /**
+     * Returns the value of the aggregate for a group.
+     */
+    Sequence getResult(final Sequence partial) throws XPathException {
+        if (partial != null) {
+            return partial;
+        }
+        if (count) {
+            return IntegerValue.ZERO;
+        }
+        // let the function determine the result for an empty sequence
+        return fold(null, Sequence.EMPTY_SEQUENCE);
+    }
+
+    private Sequence fold(final Sequence partial, final Sequence items) throws XPathException {
+        final Sequence input;
+        if (partial == null) {
+            input = items;
+        } else {
+            final ValueSequence seq = new ValueSequence(partial.getItemCount() + items.getItemCount());
+            seq.addAll(partial);
+            seq.addAll(items);
+            input = seq;
+        }
+        feed.items = input;
+        try {
+            return call.eval(null, null);
+        } finally {
+            feed.items = null;
+        }
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        call.analyze(contextInfo);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (value != null) {
+            return value;
+        }
+        return call.eval(contextSequence, contextItem);
+    }
+
+    @Override
+    public int returnsType() {
+        return call.returnsType();
+    }
+
+    @Override
+    public int getCardinality() {
+        return call.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return call.getDependencies();
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        call.resetState(postOptimization);
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        call.accept(visitor);
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        call.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return call.toString();
+    }
+
+    /**
+     * Takes the place of the function argument: returns the items to fold or,
+     * if there are none, evaluates the original argument.
+     */
+    private static final class Feed extends AbstractExpression {
+
+        private final Expression argument;
+        private Sequence items = null;
+
+        Feed(final XQueryContext context, final Expression argument) {
+            super(context);
+            this.argument = argument;
+        }
+
+        @Override
+        public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+            argument.analyze(contextInfo);
+        }
+
+        @Override
+        public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+            if (items != null) {
+                return items;
+            }
+            return argument.eval(contextSequence, contextItem);
+        }
+
+        @Override
+        public int returnsType() {
+            return argument.returnsType();
+        }
+
+        @Override
+        public int getCardinality() {
+            return argument.getCardinality();
+        }
+
+        @Override
+        public int getDependencies() {
+            return argument.getDependencies();
+        }
+
+        @Override
+        public void resetState(final boolean postOptimization) {
+            super.resetState(postOptimization);
+            argument.resetState(postOptimization);
+        }
+
+        @Override
+        public void accept(final ExpressionVisitor visitor) {
+            argument.accept(visitor);
+        }
+
+        @Override
+        public void dump(final ExpressionDumper dumper) {
+            argument.dump(dumper);
+        }
+
+        @Override
+        public String toString() {
+            return argument.toString();
+        }
+    }
+}
@@ -4,22 +4,53 @@ import org.exist.dom.QName;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import java.io.IOException;
 import java.text.Collator;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
  *
+ * Groups are hashed by a {@link GroupKey}. The values of the non-grouping variables
+ * are stored per group in an array indexed by the position of the variable.
+ *
+ * Calls to fn:count, fn:sum, fn:min or fn:max on a non-grouping variable in the
+ * return expression are replaced by a {@link GroupAggregate}, which is computed while
+ * tuples are collected. Variables which are only used by such aggregates are not kept
+ * in memory.
+ *
+ * If the number of items buffered exceeds the threshold configured by
+ * {@link #PROPERTY_GROUPBY_SPILL_THRESHOLD}, the groups are written to temporary
+ * files by {@link GroupSpill} and merged again, one partition at a time, before the
+ * return expression is evaluated.
+ *
  * @author wolf
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    public static final String GROUPBY_SPILL_THRESHOLD_ATTRIBUTE = "group-by-spill-threshold";
+    public static final String PROPERTY_GROUPBY_SPILL_THRESHOLD = "xquery.group-by-spill-threshold";
+
+    private static final GroupAggregate[] NO_AGGREGATES = new GroupAggregate[0];
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
-    private Map<List<AtomicValue>, Tuple> groupedMap = null;
-    private Map<QName, LocalVariable> variables = null;
+
+    // set by analyze: aggregates found in the return expression and the variables
+    // referenced outside of them. null if the return expression could not be fully analyzed.
+    private GroupAggregate[] aggregates = NO_AGGREGATES;
+    private Set<QName> referencedVars = null;
+
+    private Map<GroupKey, Tuple> groupedMap = null;
+    private LocalVariable[] variables = null;
+    private boolean[] materialized = null;
     private List<LocalVariable> groupingVars = null;
+    private GroupAggregate[] activeAggregates = NO_AGGREGATES;
+    private GroupSpill spill = null;
+    private long spillThreshold = 0;
+    private long bufferedItems = 0;
 
     public GroupByClause(XQueryContext context) {
         super(context);
@@ -37,18 +68,21 @@ public class GroupByClause extends AbstractFLWORClause {
             // check if we can use a hash map
             if (usesDefaultCollator()) {
                 groupedMap = new HashMap<>();
+                spillThreshold = getSpillThreshold();
             } else {
                 // non-default collation: must use tree map
                 groupedMap = new TreeMap<>(this::compareKeys);
+                spillThreshold = 0;
             }
-            variables = new HashMap<>();
             groupingVars = new ArrayList<>();
+            initVariables();
         }
 
         // Evaluate group spec to create grouping key sequence
-        final List<Sequence> groupingValues = new ArrayList<>();
-        final List<AtomicValue> groupingKeys = new ArrayList<>();
-        for (GroupSpec spec: groupSpecs) {
+        final Sequence[] groupingValues = new Sequence[groupSpecs.length];
+        final AtomicValue[] groupingKeys = new AtomicValue[groupSpecs.length];
+        for (int i = 0; i < groupSpecs.length; i++) {
+            final GroupSpec spec = groupSpecs[i];
             final Sequence groupingSeq = spec.getGroupExpression().eval(null);
             if (groupingSeq.getItemCount() > 1) {
                 throw new XPathException(this, ErrorCodes.XPTY0004, "Grouping variable " + spec.getKeyVarName() + " " +
@@ -63,32 +97,118 @@ public class GroupByClause extends AbstractFLWORClause {
                 groupingVar.setStaticType(groupingValue.getType());
                 groupingVars.add(groupingVar);
             }
-            groupingValues.add(groupingSeq);
-            groupingKeys.add(groupingValue);
+            groupingValues[i] = groupingSeq;
+            groupingKeys[i] = groupingValue;
         }
 
         // collect the current tuples into the grouping map
-        final Tuple tuple = groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
+        final GroupKey key = new GroupKey(groupingKeys);
+        Tuple tuple = groupedMap.get(key);
+        if (tuple == null) {
+            tuple = new Tuple(key, groupingValues, new ValueSequence[variables.length],
+                    new Sequence[activeAggregates.length]);
+            groupedMap.put(key, tuple);
+            bufferedItems += groupingValues.length;
+        }
 
         // scan in-scope variables to collect tuples
         LocalVariable nextVar = rootClause.getStartVariable();
         Objects.requireNonNull(nextVar);
-        while(nextVar != null) {
-            tuple.add(nextVar.getQName(), nextVar.getValue());
-            if (init) {
-                // on first call: initialize non-grouping variable for later use
-                final LocalVariable var = new LocalVariable(nextVar.getQName());
-                var.setSequenceType(nextVar.getSequenceType());
-                var.setStaticType(nextVar.getStaticType());
-                var.setContextDocs(nextVar.getContextDocs());
-                variables.put(var.getQName(), var);
+        for (int i = 0; nextVar != null; i++) {
+            final int slot = getSlot(nextVar, i);
+            if (materialized[slot]) {
+                final Sequence value = nextVar.getValue();
+                tuple.add(slot, value);
+                bufferedItems += value.getItemCount();
             }
             nextVar = nextVar.after;
         }
 
+        // update the aggregates computed for the group
+        for (int i = 0; i < activeAggregates.length; i++) {
+            tuple.partials[i] = activeAggregates[i].accumulate(tuple.partials[i]);
+        }
+
+        if (spillThreshold > 0 && bufferedItems > spillThreshold) {
+            spill();
+        }
         return contextSequence;
     }
 
+    /**
+     * On first call: initialize the non-grouping variables for later use and
+     * determine which of them need to be kept.
+     */
+    private void initVariables() throws XPathException {
+        final List<LocalVariable> vars = new ArrayList<>();
+        LocalVariable nextVar = rootClause.getStartVariable();
+        Objects.requireNonNull(nextVar);
+        while (nextVar != null) {
+            final LocalVariable var = new LocalVariable(nextVar.getQName());
+            var.setSequenceType(nextVar.getSequenceType());
+            var.setStaticType(nextVar.getStaticType());
+            var.setContextDocs(nextVar.getContextDocs());
+            vars.add(var);
+            nextVar = nextVar.after;
+        }
+        variables = vars.toArray(new LocalVariable[vars.size()]);
+
+        final List<GroupAggregate> active = new ArrayList<>(aggregates.length);
+        for (final GroupAggregate aggregate : aggregates) {
+            // the aggregated variable may also be bound outside the FLWOR
+            if (vars.stream().anyMatch(var -> var.getQName().equals(aggregate.getVariable()))) {
+                active.add(aggregate);
+            }
+        }
+        activeAggregates = active.toArray(new GroupAggregate[active.size()]);
+
+        materialized = new boolean[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            materialized[i] = referencedVars == null || referencedVars.contains(variables[i].getQName());
+        }
+    }
+
+    private int getSlot(final LocalVariable var, final int position) throws XPathException {
+        if (position < variables.length && variables[position].getQName().equals(var.getQName())) {
+            return position;
+        }
+        for (int i = variables.length - 1; i >= 0; i--) {
+            if (variables[i].getQName().equals(var.getQName())) {
+                return i;
+            }
+        }
+        throw new XPathException(this, ErrorCodes.ERROR, "Internal error: unknown variable " + var.getQName());
+    }
+
+    private long getSpillThreshold() {
+        final Object threshold = context.getBroker().getConfiguration().getProperty(PROPERTY_GROUPBY_SPILL_THRESHOLD);
+        return threshold == null ? 0 : ((Number) threshold).longValue();
+    }
+
+    /**
+     * Write the groups collected so far to the temporary partition files. Groups which
+     * cannot be written remain in memory and spilling is disabled for the rest of the
+     * evaluation.
+     */
+    private void spill() throws XPathException {
+        if (spill == null) {
+            spill = new GroupSpill(context, groupSpecs.length, variables.length, activeAggregates.length);
+        }
+        try {
+            for (final Iterator<Tuple> i = groupedMap.values().iterator(); i.hasNext(); ) {
+                context.proceed(this);
+                if (!spill.write(i.next())) {
+                    spillThreshold = 0;
+                    break;
+                }
+                i.remove();
+            }
+        } catch (final IOException e) {
+            throw new XPathException(this, ErrorCodes.ERROR, "Failed to write groups to temporary file: " + e.getMessage(), null, e);
+        }
+        bufferedItems = 0;
+    }
+
     @Override
     public Sequence postEval(final Sequence seq) throws XPathException {
         if (groupedMap != null) {
@@ -96,40 +216,45 @@ public class GroupByClause extends AbstractFLWORClause {
             final LocalVariable mark = context.markLocalVariables(false);
             try {
                 // declare non-grouping variables
-                for (LocalVariable var: variables.values()) {
+                for (LocalVariable var: variables) {
                     context.declareVariableBinding(var);
                 }
                 // declare grouping variables
                 for (LocalVariable var: groupingVars) {
                     context.declareVariableBinding(var);
                 }
-                // iterate over each group
-                for (Tuple tuple: groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
-                        }
+                if (spill == null) {
+                    // iterate over each group
+                    for (Tuple tuple: groupedMap.values()) {
+                        evalGroup(tuple, result);
+                    }
+                } else {
+                    // merge spilled groups with the ones still in memory, one partition at a time
+                    final List<List<Tuple>> remaining = new ArrayList<>(GroupSpill.PARTITIONS);
+                    for (int i = 0; i < GroupSpill.PARTITIONS; i++) {
+                        remaining.add(new ArrayList<>());
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
+                    for (Map.Entry<GroupKey, Tuple> entry : groupedMap.entrySet()) {
+                        remaining.get(GroupSpill.getPartition(entry.getKey())).add(entry.getValue());
+                    }
+                    groupedMap.clear();
+                    for (int i = 0; i < GroupSpill.PARTITIONS; i++) {
+                        final Map<GroupKey, Tuple> partition = spill.read(i, activeAggregates);
+                        for (Tuple tuple : remaining.get(i)) {
+                            GroupSpill.merge(partition, tuple, activeAggregates);
+                        }
+                        remaining.set(i, null);
+                        for (Tuple tuple : partition.values()) {
+                            evalGroup(tuple, result);
+                        }
                     }
-                    result.addAll(returnExpr.eval(null));
                 }
+            } catch (final IOException e) {
+                throw new XPathException(this, ErrorCodes.ERROR, "Failed to read groups from temporary file: " + e.getMessage(), null, e);
             } finally {
                 context.popLocalVariables(mark, result);
+                clearGroups();
             }
-            groupedMap = null;
-            groupingVars = null;
-            variables = null;
             if (returnExpr instanceof FLWORClause) {
                 result = ((FLWORClause) returnExpr).postEval(result);
             }
@@ -139,6 +264,40 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    private void evalGroup(final Tuple tuple, final Sequence result) throws XPathException {
+        context.proceed();
+
+        // set grouping variable values
+        for (int i = 0; i < tuple.groupingValues.length; i++) {
+            groupingVars.get(i).setValue(tuple.groupingValues[i]);
+        }
+        // set values of non-grouping variables
+        for (int i = 0; i < variables.length; i++) {
+            final Sequence value = tuple.values[i];
+            variables[i].setValue(value == null ? Sequence.EMPTY_SEQUENCE : value);
+        }
+        for (int i = 0; i < activeAggregates.length; i++) {
+            activeAggregates[i].setValue(activeAggregates[i].getResult(tuple.partials[i]));
+        }
+        result.addAll(returnExpr.eval(null));
+    }
+
+    private void clearGroups() {
+        groupedMap = null;
+        groupingVars = null;
+        variables = null;
+        materialized = null;
+        for (final GroupAggregate aggregate : activeAggregates) {
+            aggregate.setValue(null);
+        }
+        activeAggregates = NO_AGGREGATES;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        bufferedItems = 0;
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -169,6 +328,15 @@ public class GroupByClause extends AbstractFLWORClause {
             rootClause = prevClause;
             prevClause = prevClause.getPreviousClause();
         }
+
+        final Set<QName> keys = new HashSet<>();
+        for (final GroupSpec spec : groupSpecs) {
+            keys.add(QName.parse(context, spec.getKeyVarName(), null));
+        }
+        final AggregateScanner scanner = new AggregateScanner();
+        scanner.scan(returnExpr, keys, this::setReturnExpression);
+        aggregates = scanner.aggregates.toArray(new GroupAggregate[scanner.aggregates.size()]);
+        referencedVars = scanner.isComplete() ? scanner.referenced : null;
     }
 
     public void setGroupSpecs(final GroupSpec specs[]) {
@@ -210,9 +378,7 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
-        groupedMap = null;
-        groupingVars = null;
-        variables = null;
+        clearGroups();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
             spec.resetState(postOptimization);
@@ -228,14 +394,16 @@ public class GroupByClause extends AbstractFLWORClause {
      * Compare keys using the collator given in the group spec. Used to
      * sort keys into the grouping map.
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
+    private int compareKeys(GroupKey k1, GroupKey k2) {
+        final AtomicValue[] s1 = k1.values;
+        final AtomicValue[] s2 = k2.values;
+        final int c1 = s1.length;
+        final int c2 = s2.length;
         if (c1 == c2) {
             try {
                 for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
+                    final AtomicValue v1 = s1[i];
+                    final AtomicValue v2 = s2[i];
                     final Collator collator = groupSpecs[i].getCollator();
                     final int r = v1.compareTo(collator, v2);
                     if (r != Constants.EQUAL) {
@@ -254,24 +422,99 @@ public class GroupByClause extends AbstractFLWORClause {
         return Stream.of(groupSpecs).allMatch(spec -> spec.getCollator() == null);
     }
 
-    static class Tuple extends HashMap<QName, Sequence> {
+    /**
+     * The atomized grouping keys of a group.
+     */
+    static final class GroupKey {
+
+        final AtomicValue[] values;
+        private final int hashCode;
+
+        GroupKey(final AtomicValue[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof GroupKey && ((GroupKey) obj).hashCode == hashCode &&
+                    Arrays.equals(values, ((GroupKey) obj).values);
+        }
+    }
+
+    /**
+     * The collected values of a group: the grouping values, the values of
+     * each non-grouping variable (null if not kept) and the partial results
+     * of the aggregates.
+     */
+    static class Tuple {
 
-        private final List<Sequence> groupingValues;
+        final GroupKey key;
+        final Sequence[] groupingValues;
+        final ValueSequence[] values;
+        final Sequence[] partials;
 
-        public Tuple(final List<Sequence> groupingValues) {
-            super();
+        Tuple(final GroupKey key, final Sequence[] groupingValues, final ValueSequence[] values,
+              final Sequence[] partials) {
+            this.key = key;
             this.groupingValues = groupingValues;
+            this.values = values;
+            this.partials = partials;
         }
 
-        public void add(QName name, Sequence val) throws XPathException {
-            Sequence seq = get(name);
+        void add(final int slot, final Sequence val) throws XPathException {
+            final ValueSequence seq = values[slot];
             if (seq == null) {
                 final ValueSequence temp = new ValueSequence(val.getItemCount());
                 temp.addAll(val);
-                put(name, temp);
+                values[slot] = temp;
             } else {
                 seq.addAll(val);
             }
         }
     }
+
+    /**
+     * Finds aggregates in the return expression which can be computed while
+     * tuples are collected and records all other references to variables.
+     * If the scan is not complete, other references may have been missed.
+     */
+    private class AggregateScanner extends ExpressionScanner {
+
+        private final List<GroupAggregate> aggregates = new ArrayList<>();
+        private final Set<QName> referenced = new HashSet<>();
+
+        AggregateScanner() {
+            super(GroupByClause.this.context);
+        }
+
+        @Override
+        public void scan(final Expression expr, final Set<QName> bound, final Consumer<Expression> replace)
+                throws XPathException {
+            if (expr instanceof GroupAggregate) {
+                // already replaced by a previous analysis
+                aggregates.add((GroupAggregate) expr);
+                return;
+            }
+            if (expr instanceof Function && replace != null) {
+                final GroupAggregate aggregate = GroupAggregate.create(context, (Function) expr, bound);
+                if (aggregate != null) {
+                    replace.accept(aggregate);
+                    aggregates.add(aggregate);
+                    return;
+                }
+            }
+            super.scan(expr, bound, replace);
+        }
+
+        @Override
+        protected void variableReference(final VariableReference ref, final Set<QName> bound) throws XPathException {
+            referenced.add(QName.parse(context, ref.getName(), null));
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.io.VariableByteInputStream;
+import org.exist.storage.io.VariableByteOutputStream;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.GroupByClause.GroupKey;
+import org.exist.xquery.GroupByClause.Tuple;
+import org.exist.xquery.value.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Temporary storage for the groups of a {@link GroupByClause} which do not fit
+ * into memory. Groups are hash partitioned by their key and appended to one
+ * temporary file per partition. A partition is read back in one go, merging
+ * the records written for the same group in the order they were written.
+ *
+ * Only items supported by {@link SpillSerializer} can be written. {@link #write(Tuple)}
+ * returns false if a group contains anything else.
+ */
+final class GroupSpill {
+
+    private final static Logger LOG = LogManager.getLogger(GroupSpill.class);
+
+    static final int PARTITIONS = 16;
+
+    private final XQueryContext context;
+    private final SpillSerializer serializer;
+    private final int keyCount;
+    private final int variableCount;
+    private final int aggregateCount;
+
+    private final Path[] files = new Path[PARTITIONS];
+    private final OutputStream[] outputs = new OutputStream[PARTITIONS];
+    private final int[] records = new int[PARTITIONS];
+    private final VariableByteOutputStream buffer = new VariableByteOutputStream(256);
+
+    GroupSpill(final XQueryContext context, final int keyCount, final int variableCount, final int aggregateCount) {
+        this.context = context;
+        this.serializer = new SpillSerializer(context);
+        this.keyCount = keyCount;
+        this.variableCount = variableCount;
+        this.aggregateCount = aggregateCount;
+    }
+
+    static int getPartition(final GroupKey key) {
+        final int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % PARTITIONS;
+    }
+
+    /**
+     * Merge a group into the groups of a partition.
+     */
+    static void merge(final Map<GroupKey, Tuple> groups, final Tuple tuple, final GroupAggregate[] aggregates)
+            throws XPathException {
+        final Tuple existing = groups.get(tuple.key);
+        if (existing == null) {
+            groups.put(tuple.key, tuple);
+            return;
+        }
+        for (int i = 0; i < existing.values.length; i++) {
+            final ValueSequence values = tuple.values[i];
+            if (values != null) {
+                if (existing.values[i] == null) {
+                    existing.values[i] = values;
+                } else {
+                    existing.values[i].addAll(values);
+                }
+            }
+        }
+        for (int i = 0; i < aggregates.length; i++) {
+            existing.partials[i] = aggregates[i].combine(existing.partials[i], tuple.partials[i]);
+        }
+    }
+
+    /**
+     * Append a group to the file of its partition.
+     *
+     * @return false if the group contains items which cannot be written
+     */
+    boolean write(final Tuple tuple) throws IOException, XPathException {
+        buffer.clear();
+        for (final AtomicValue key : tuple.key.values) {
+            if (!serializer.writeAtomic(buffer, key)) {
+                return false;
+            }
+        }
+        for (final Sequence seq : tuple.groupingValues) {
+            if (!writeSequence(seq)) {
+                return false;
+            }
+        }
+        for (final Sequence seq : tuple.values) {
+            if (!writeSequence(seq)) {
+                return false;
+            }
+        }
+        for (final Sequence seq : tuple.partials) {
+            if (!writeSequence(seq)) {
+                return false;
+            }
+        }
+
+        final int partition = getPartition(tuple.key);
+        if (outputs[partition] == null) {
+            files[partition] = TemporaryFileManager.getInstance().getTemporaryFile();
+            outputs[partition] = new BufferedOutputStream(Files.newOutputStream(files[partition]));
+        }
+        outputs[partition].write(buffer.toByteArray());
+        records[partition]++;
+        return true;
+    }
+
+    /**
+     * Read the groups of a partition. The partition file is released afterwards.
+     */
+    Map<GroupKey, Tuple> read(final int partition, final GroupAggregate[] aggregates)
+            throws IOException, XPathException {
+        final Map<GroupKey, Tuple> groups = new HashMap<>();
+        if (outputs[partition] == null) {
+            return groups;
+        }
+        outputs[partition].close();
+        outputs[partition] = null;
+        try (final InputStream is = new BufferedInputStream(Files.newInputStream(files[partition]))) {
+            final VariableByteInputStream in = new VariableByteInputStream(is);
+            for (int i = 0; i < records[partition]; i++) {
+                context.proceed();
+                merge(groups, readTuple(in), aggregates);
+            }
+        } finally {
+            TemporaryFileManager.getInstance().returnTemporaryFile(files[partition]);
+            files[partition] = null;
+            records[partition] = 0;
+        }
+        return groups;
+    }
+
+    /**
+     * Close and release all partition files.
+     */
+    void close() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (final IOException e) {
+                    LOG.warn("Failed to close temporary file: " + e.getMessage(), e);
+                }
+                outputs[i] = null;
+            }
+            if (files[i] != null) {
+                TemporaryFileManager.getInstance().returnTemporaryFile(files[i]);
+                files[i] = null;
+            }
+        }
+        serializer.clear();
+    }
+
+    private Tuple readTuple(final VariableByteInput in) throws IOException, XPathException {
+        final AtomicValue[] keys = new AtomicValue[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = serializer.readAtomic(in);
+        }
+        final Sequence[] groupingValues = new Sequence[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            groupingValues[i] = readSequence(in);
+        }
+        final ValueSequence[] values = new ValueSequence[variableCount];
+        for (int i = 0; i < variableCount; i++) {
+            values[i] = readSequence(in);
+        }
+        final Sequence[] partials = new Sequence[aggregateCount];
+        for (int i = 0; i < aggregateCount; i++) {
+            partials[i] = readSequence(in);
+        }
+        return new Tuple(new GroupKey(keys), groupingValues, values, partials);
+    }
+
+    private boolean writeSequence(final Sequence seq) throws IOException, XPathException {
+        if (seq == null) {
+            buffer.writeInt(-1);
+            return true;
+        }
+        buffer.writeInt(seq.getItemCount());
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            if (!serializer.writeItem(buffer, i.nextItem())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ValueSequence readSequence(final VariableByteInput in) throws IOException, XPathException {
+        final int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        final ValueSequence seq = new ValueSequence(count);
+        for (int i = 0; i < count; i++) {
+            seq.add(serializer.readItem(in));
+        }
+        return seq;
+    }
+}
@@ -38,4 +38,17 @@ public interface Optimizable extends Expression {
     NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException;
 
     int getOptimizeAxis();
+
+    /**
+     * Estimate the number of nodes {@link #preSelect(Sequence, boolean)} will return
+     * for the given context. Used to order the pre-selections of several optimizable
+     * expressions, so the most selective one is evaluated first.
+     *
+     * @param contextSequence the context sequence
+     * @return the estimated number of nodes or -1 if no estimate is available
+     * @throws XPathException if the estimate cannot be computed
+     */
+    default long estimateCount(Sequence contextSequence) throws XPathException {
+        return -1;
+    }
 }
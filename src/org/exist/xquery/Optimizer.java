@@ -181,6 +181,11 @@ public class Optimizer extends DefaultExpressionVisitor {
     public void visitFilteredExpr(FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
 
+        // a FLWOR expression in parentheses, e.g. (for ... order by ... return ...)[position() le 10]
+        if (filtered.getExpression() instanceof FLWORClause) {
+            filtered.getExpression().accept(this);
+        }
+
         // check if filtered expression can be simplified:
         // handles expressions like //foo/(baz)[...]
         if (filtered.getExpression() instanceof LocationStep) {
@@ -312,6 +317,43 @@ public class Optimizer extends DefaultExpressionVisitor {
         comparison.getRight().accept(this);
     }
 
+    @Override
+    public void visitOrderByClause(OrderByClause orderBy) {
+        super.visitOrderByClause(orderBy);
+
+        // for $x in ... order by ... return ...: check if the input of the for clause
+        // can return the first items in the requested order by itself
+        final FLWORClause previous = orderBy.getPreviousClause();
+        if (!(previous instanceof ForExpr) || previous.getPreviousClause() != null ||
+                orderBy.getReturnExpression() instanceof FLWORClause) {
+            return;
+        }
+        Expression returnExpr = orderBy.getReturnExpression();
+        if (returnExpr instanceof DebuggableExpression) {
+            returnExpr = ((DebuggableExpression) returnExpr).getExpression();
+        }
+        if (!(returnExpr instanceof Function)) {
+            returnExpr = simplifyPath(returnExpr);
+        }
+        final boolean returnsVariable = returnExpr instanceof VariableReference &&
+                ((VariableReference) returnExpr).getName().equals(((ForExpr) previous).getVariable());
+        if (!returnsVariable && !Cardinality.checkCardinality(Cardinality.ONE_OR_MORE, returnExpr.getCardinality())) {
+            // items dropped by the return expression would have to be replaced by items ranking lower
+            return;
+        }
+        for (final QueryRewriter rewriter : rewriters) {
+            try {
+                final RankedExpression input = rewriter.rewriteOrderBy((ForExpr) previous, orderBy);
+                if (input != null) {
+                    orderBy.setRankedInput(input);
+                    break;
+                }
+            } catch (final XPathException e) {
+                LOG.warn("Exception called while rewriting order by: " + e.getMessage(), e);
+            }
+        }
+    }
+
     public void visitPredicate(Predicate predicate) {
         ++predicates;
         super.visitPredicate(predicate);
@@ -4,16 +4,37 @@ import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.OrderedValueSequence;
 import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Represents an "order by" clause within a FLWOR expression.
+ *
+ * If the caller only needs the first items of the result, e.g. for
+ * <code>subsequence(for ... order by ... return ..., 1, 10)</code>, it can set
+ * a limit with {@link #setLimit(int)} before the FLWOR expression is evaluated.
+ * Only the top items are then kept while sorting. The caller restores the previous
+ * limit afterwards.
+ *
+ * Without a limit, items are written to temporary files in sorted runs by
+ * {@link OrderBySpill} once more than {@link #PROPERTY_ORDERBY_SPILL_THRESHOLD}
+ * items have been collected. The runs are merged in {@link #postEval(Sequence)}.
  */
 public class OrderByClause extends AbstractFLWORClause {
 
+    public static final String ORDERBY_SPILL_THRESHOLD_ATTRIBUTE = "order-by-spill-threshold";
+    public static final String PROPERTY_ORDERBY_SPILL_THRESHOLD = "xquery.order-by-spill-threshold";
+
     protected OrderSpec[] orderSpecs = null;
     protected OrderedValueSequence orderedResult = null;
+    private int limit = 0;
+    private RankedExpression rankedInput = null;
+    private OrderBySpill spill = null;
+    private long spillThreshold = 0;
+    // false if a preceding for clause checks the type of the items returned to it
+    private boolean deferResult = true;
 
     public OrderByClause(XQueryContext context, List<OrderSpec> orderSpecs) {
         super(context);
@@ -24,6 +45,76 @@ public class OrderByClause extends AbstractFLWORClause {
         return orderSpecs;
     }
 
+    /**
+     * Only keep the first items of the ordered result during the next evaluation.
+     * The clause is shared by all evaluations of the compiled expression: the caller
+     * has to restore the previous limit once the FLWOR expression has been evaluated,
+     * so nested or recursive evaluations do not see each other's limit.
+     *
+     * @param limit the number of items required by the caller or 0 to keep all items
+     * @return the previous limit
+     */
+    public int setLimit(int limit) {
+        final int previous = this.limit;
+        this.limit = limit;
+        if (rankedInput != null) {
+            rankedInput.setRankLimit(limit);
+        }
+        return previous;
+    }
+
+    /**
+     * Pass the limit set by {@link #setLimit(int)} on to the input sequence of the
+     * preceding for clause, which is able to return the first items in the order
+     * of this clause itself.
+     *
+     * @param input the input sequence of the for clause
+     */
+    public void setRankedInput(RankedExpression input) {
+        this.rankedInput = input;
+    }
+
+    /**
+     * Returns the order by clause which determines the order of the result of the
+     * given FLWOR expression, or null if there is none. There must be no other clause
+     * following the order by which changes the order or number of items.
+     *
+     * @param expr the expression to check
+     * @return the order by clause or null
+     */
+    public static OrderByClause getOrderByClause(Expression expr) {
+        while (true) {
+            if (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof DebuggableExpression) {
+                expr = ((DebuggableExpression) expr).getExpression();
+            } else {
+                break;
+            }
+        }
+        if (!(expr instanceof FLWORClause) || ((FLWORClause) expr).getPreviousClause() != null) {
+            return null;
+        }
+        OrderByClause orderBy = null;
+        while (expr instanceof FLWORClause) {
+            final FLWORClause clause = (FLWORClause) expr;
+            switch (clause.getType()) {
+                case ORDERBY:
+                    orderBy = (OrderByClause) clause;
+                    break;
+                case GROUPBY:
+                case SOME:
+                case EVERY:
+                    orderBy = null;
+                    break;
+                default:
+                    break;
+            }
+            expr = clause.getReturnExpression();
+        }
+        return orderBy;
+    }
+
     @Override
     public ClauseType getType() {
         return ClauseType.ORDERBY;
@@ -41,27 +132,87 @@ public class OrderByClause extends AbstractFLWORClause {
             }
         }
         returnExpr.analyze(newContextInfo);
+
+        deferResult = true;
+        for (FLWORClause prev = getPreviousClause(); prev != null; prev = prev.getPreviousClause()) {
+            if (prev instanceof ForExpr && ((ForExpr) prev).sequenceType != null) {
+                deferResult = false;
+            }
+        }
     }
 
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         if (orderedResult == null) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, limit > 0 && limit < 100 ? limit : 100);
+            orderedResult.setLimit(limit);
+            spillThreshold = limit > 0 ? 0 : getSpillThreshold();
         }
         final Sequence result = getReturnExpression().eval(contextSequence, contextItem);
         if (result != null) {
             orderedResult.addAll(result);
+            if (spillThreshold > 0 && deferResult) {
+                for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                    if (!SpillSerializer.isSupported(i.nextItem())) {
+                        spillThreshold = 0;
+                        return result;
+                    }
+                }
+                if (orderedResult.getItemCount() >= spillThreshold) {
+                    spill();
+                }
+                // the result is only needed by postEval: don't let the calling clauses
+                // keep another copy in memory
+                return Sequence.EMPTY_SEQUENCE;
+            }
         }
         return result;
     }
 
+    private long getSpillThreshold() {
+        final Object threshold = context.getBroker().getConfiguration().getProperty(PROPERTY_ORDERBY_SPILL_THRESHOLD);
+        return threshold == null ? 0 : ((Number) threshold).longValue();
+    }
+
+    /**
+     * Write the items collected so far as a sorted run. If the items cannot be
+     * written, they remain in memory and spilling is disabled for the rest of
+     * the evaluation.
+     */
+    private void spill() throws XPathException {
+        if (spill == null) {
+            spill = new OrderBySpill(context, orderSpecs);
+        }
+        try {
+            if (spill.write(orderedResult)) {
+                orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            } else {
+                spillThreshold = 0;
+            }
+        } catch (final IOException e) {
+            throw new XPathException(this, ErrorCodes.ERROR, "Failed to write sorted run to temporary file: " + e.getMessage(), null, e);
+        }
+    }
+
     @Override
     public Sequence postEval(Sequence seq) throws XPathException {
         if (orderedResult == null) {
             return seq;
         }
-        orderedResult.sort();
-        Sequence result = orderedResult;
+        Sequence result;
+        if (spill == null) {
+            orderedResult.sort();
+            result = orderedResult;
+        } else {
+            try {
+                result = spill.merge(orderedResult);
+            } catch (final IOException e) {
+                throw new XPathException(this, ErrorCodes.ERROR, "Failed to read sorted run from temporary file: " + e.getMessage(), null, e);
+            } finally {
+                spill.close();
+                spill = null;
+            }
+        }
         // reset to prepare for next iteration of outer loop
         orderedResult = null;
 
@@ -91,5 +242,10 @@ public class OrderByClause extends AbstractFLWORClause {
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
         orderedResult = null;
+        limit = 0;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
     }
 }
@@ -0,0 +1,232 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.io.VariableByteInputStream;
+import org.exist.storage.io.VariableByteOutputStream;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.OrderedValueSequence;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.ValueSequence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort for an {@link OrderByClause} whose result does not fit into
+ * memory. Each run of items collected by the clause is sorted and written to a
+ * temporary file. The runs are merged again when the clause completes.
+ *
+ * Only items supported by {@link SpillSerializer} can be written. {@link #write(OrderedValueSequence)}
+ * returns false if a run contains anything else.
+ */
+final class OrderBySpill {
+
+    private final static Logger LOG = LogManager.getLogger(OrderBySpill.class);
+
+    private final XQueryContext context;
+    private final OrderSpec[] orderSpecs;
+    private final SpillSerializer serializer;
+    private final VariableByteOutputStream buffer = new VariableByteOutputStream(256);
+
+    private final List<Path> files = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private final List<InputStream> inputs = new ArrayList<>();
+
+    OrderBySpill(final XQueryContext context, final OrderSpec[] orderSpecs) {
+        this.context = context;
+        this.orderSpecs = orderSpecs;
+        this.serializer = new SpillSerializer(context);
+    }
+
+    /**
+     * Sort a run and write it to a new temporary file.
+     *
+     * @return false if the run contains items which cannot be written. The run
+     * is not changed in this case.
+     */
+    boolean write(final OrderedValueSequence run) throws IOException, XPathException {
+        final Path file = TemporaryFileManager.getInstance().getTemporaryFile();
+        boolean written = false;
+        try (final OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            written = run.writeSorted((item, values) -> {
+                buffer.clear();
+                for (final AtomicValue value : values) {
+                    if (!serializer.writeAtomic(buffer, value)) {
+                        return false;
+                    }
+                }
+                if (!serializer.writeItem(buffer, item)) {
+                    return false;
+                }
+                os.write(buffer.toByteArray());
+                return true;
+            });
+        } finally {
+            if (written) {
+                files.add(file);
+                lengths.add(run.getItemCount());
+            } else {
+                TemporaryFileManager.getInstance().returnTemporaryFile(file);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Merge the runs written so far with the last run, which is still in memory.
+     */
+    Sequence merge(final OrderedValueSequence last) throws IOException, XPathException {
+        final PriorityQueue<Run> queue = new PriorityQueue<>(files.size() + 1, (r1, r2) -> {
+            final int cmp = OrderedValueSequence.compareKeys(orderSpecs, r1.values, r2.values);
+            // items from earlier runs come first if the keys are equal
+            return cmp == Constants.EQUAL ? Integer.compare(r1.index, r2.index) : cmp;
+        });
+        int total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            final InputStream is = new BufferedInputStream(Files.newInputStream(files.get(i)));
+            inputs.add(is);
+            final Run run = new FileRun(i, new VariableByteInputStream(is), lengths.get(i));
+            if (run.next()) {
+                queue.add(run);
+            }
+            total += lengths.get(i);
+        }
+        if (last != null) {
+            final MemoryRun run = new MemoryRun(files.size(), last.getItemCount());
+            last.writeSorted(run::add);
+            if (run.next()) {
+                queue.add(run);
+            }
+            total += last.getItemCount();
+        }
+
+        final ValueSequence result = new ValueSequence(total);
+        while (!queue.isEmpty()) {
+            context.proceed();
+            final Run run = queue.poll();
+            result.add(run.item);
+            if (run.next()) {
+                queue.add(run);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Close and release all temporary files.
+     */
+    void close() {
+        for (final InputStream is : inputs) {
+            try {
+                is.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close temporary file: " + e.getMessage(), e);
+            }
+        }
+        inputs.clear();
+        for (final Path file : files) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(file);
+        }
+        files.clear();
+        lengths.clear();
+        serializer.clear();
+    }
+
+    private abstract static class Run {
+
+        final int index;
+        Item item;
+        AtomicValue[] values;
+
+        Run(final int index) {
+            this.index = index;
+        }
+
+        abstract boolean next() throws IOException, XPathException;
+    }
+
+    private class FileRun extends Run {
+
+        private final VariableByteInputStream in;
+        private int remaining;
+
+        FileRun(final int index, final VariableByteInputStream in, final int length) {
+            super(index);
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        boolean next() throws IOException, XPathException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            values = new AtomicValue[orderSpecs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = serializer.readAtomic(in);
+            }
+            item = serializer.readItem(in);
+            return true;
+        }
+    }
+
+    private static class MemoryRun extends Run {
+
+        private final List<Item> items;
+        private final List<AtomicValue[]> keys;
+        private int next = 0;
+
+        MemoryRun(final int index, final int length) {
+            super(index);
+            this.items = new ArrayList<>(length);
+            this.keys = new ArrayList<>(length);
+        }
+
+        boolean add(final Item item, final AtomicValue[] values) {
+            items.add(item);
+            keys.add(values);
+            return true;
+        }
+
+        @Override
+        boolean next() {
+            if (next == items.size()) {
+                return false;
+            }
+            item = items.get(next);
+            values = keys.get(next++);
+            return true;
+        }
+    }
+}
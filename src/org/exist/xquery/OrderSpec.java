@@ -66,6 +66,10 @@ public class OrderSpec {
 	public Expression getSortExpression() {
 		return expression;
 	}
+
+	public void setSortExpression(Expression sortExpr) {
+		this.expression = sortExpr;
+	}
 	
 	public int getModifiers() {
 		return modifiers;
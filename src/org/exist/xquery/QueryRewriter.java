@@ -48,6 +48,21 @@ public class QueryRewriter {
         return null;
     }
 
+    /**
+     * Check if the input sequence of a "for" clause can be restricted to the items ranking
+     * highest in the order given by the "order by" clause following it. The optimizer
+     * only asks if there are no other clauses and the return expression returns at least
+     * one item for every item bound by the for clause.
+     *
+     * @param forExpr the for clause
+     * @param orderBy the order by clause following the for clause
+     * @return the expression which should receive the number of items required, or null
+     * @throws XPathException
+     */
+    public RankedExpression rewriteOrderBy(ForExpr forExpr, OrderByClause orderBy) throws XPathException {
+        return null;
+    }
+
     protected XQueryContext getContext() {
         return context;
     }
@@ -55,6 +55,14 @@ public class RangeExpression extends PathExpr {
 		start = arguments.get(0);
 		end = arguments.get(1);        
 	}
+
+	public Expression getStart() {
+		return start;
+	}
+
+	public Expression getEnd() {
+		return end;
+	}
 	
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
     	//TODO : static checks ?
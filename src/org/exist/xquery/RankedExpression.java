@@ -0,0 +1,40 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+/**
+ * Implemented by expressions which are able to return just the items ranking
+ * highest in the order of an "order by" clause, e.g. the best matches of a full
+ * text query if the matches are ordered by score.
+ *
+ * A {@link QueryRewriter} may register such an expression with the {@link OrderByClause}
+ * ordering the items it returns. If the caller of the FLWOR expression only needs
+ * the first items, the order by clause passes the limit on before the expression
+ * is evaluated.
+ */
+public interface RankedExpression extends Expression {
+
+    /**
+     * Only return the items ranking highest during the next evaluation.
+     *
+     * @param limit the number of items required or 0 to return all items
+     */
+    void setRankLimit(int limit);
+}
@@ -0,0 +1,173 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.io.VariableByteOutputStream;
+import org.exist.xquery.value.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes items to and reads them from the temporary files used by clauses which
+ * do not keep all their data in memory, like {@link GroupSpill} and {@link OrderBySpill}.
+ *
+ * Only atomic values and persistent nodes are supported. A node is written as a
+ * reference to its document, which must be kept available by the serializer until
+ * the items have been read back.
+ */
+final class SpillSerializer {
+
+    private static final byte EMPTY = 0;
+    private static final byte NODE = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte UNTYPED = 5;
+    private static final byte LEXICAL = 6;
+
+    private final XQueryContext context;
+    private final Map<Integer, DocumentImpl> documents = new HashMap<>();
+
+    SpillSerializer(final XQueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Check if the item can be written to a temporary file.
+     */
+    static boolean isSupported(final Item item) {
+        if (item instanceof NodeProxy) {
+            return true;
+        }
+        if (!(item instanceof AtomicValue)) {
+            return false;
+        }
+        final int type = item.getType();
+        return item == AtomicValue.EMPTY_VALUE || type == Type.BOOLEAN || type == Type.DOUBLE || type == Type.FLOAT ||
+                type == Type.UNTYPED_ATOMIC || isLexical((AtomicValue) item);
+    }
+
+    /**
+     * Types which can be restored from their string value.
+     */
+    private static boolean isLexical(final AtomicValue value) {
+        final int type = value.getType();
+        return Type.subTypeOf(type, Type.STRING) || type == Type.ANY_URI || Type.subTypeOf(type, Type.DECIMAL) ||
+                value instanceof AbstractDateTimeValue || value instanceof DurationValue;
+    }
+
+    /**
+     * @return false if the item cannot be written
+     */
+    boolean writeItem(final VariableByteOutputStream out, final Item item) throws IOException, XPathException {
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            final DocumentImpl doc = node.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            out.writeByte(NODE);
+            out.writeInt(doc.getDocId());
+            out.writeShort(node.getNodeType());
+            out.writeLong(node.getInternalAddress());
+            node.getNodeId().write(out);
+            return true;
+        }
+        return item instanceof AtomicValue && writeAtomic(out, (AtomicValue) item);
+    }
+
+    /**
+     * @return false if the value cannot be written
+     */
+    boolean writeAtomic(final VariableByteOutputStream out, final AtomicValue value) throws IOException, XPathException {
+        if (value == AtomicValue.EMPTY_VALUE) {
+            out.writeByte(EMPTY);
+            return true;
+        }
+        final int type = value.getType();
+        if (type == Type.BOOLEAN) {
+            out.writeByte(BOOLEAN);
+            out.writeByte((byte) (((BooleanValue) value).getValue() ? 1 : 0));
+        } else if (type == Type.DOUBLE) {
+            out.writeByte(DOUBLE);
+            out.writeUTF(Double.toString(((DoubleValue) value).getValue()));
+        } else if (type == Type.FLOAT) {
+            out.writeByte(FLOAT);
+            out.writeUTF(Float.toString(((FloatValue) value).getValue()));
+        } else if (type == Type.UNTYPED_ATOMIC) {
+            out.writeByte(UNTYPED);
+            out.writeUTF(value.getStringValue());
+        } else if (isLexical(value)) {
+            out.writeByte(LEXICAL);
+            out.writeInt(type);
+            out.writeUTF(value.getStringValue());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    Item readItem(final VariableByteInput in) throws IOException, XPathException {
+        final byte type = in.readByte();
+        if (type == NODE) {
+            final DocumentImpl doc = documents.get(in.readInt());
+            final short nodeType = in.readShort();
+            final long address = in.readLong();
+            final NodeId nodeId = context.getBroker().getBrokerPool().getNodeFactory().createFromStream(in);
+            return new NodeProxy(doc, nodeId, nodeType, address);
+        }
+        return readAtomic(in, type);
+    }
+
+    AtomicValue readAtomic(final VariableByteInput in) throws IOException, XPathException {
+        return readAtomic(in, in.readByte());
+    }
+
+    private AtomicValue readAtomic(final VariableByteInput in, final byte type) throws IOException, XPathException {
+        switch (type) {
+            case EMPTY:
+                return AtomicValue.EMPTY_VALUE;
+            case BOOLEAN:
+                return in.readByte() == 1 ? BooleanValue.TRUE : BooleanValue.FALSE;
+            case DOUBLE:
+                return new DoubleValue(Double.parseDouble(in.readUTF()));
+            case FLOAT:
+                return new FloatValue(Float.parseFloat(in.readUTF()));
+            case UNTYPED:
+                return new UntypedAtomicValue(in.readUTF());
+            case LEXICAL:
+                final int xsType = in.readInt();
+                return new StringValue(in.readUTF()).convertTo(xsType);
+            default:
+                throw new IOException("Unknown item type in temporary file: " + type);
+        }
+    }
+
+    /**
+     * Release the documents referenced by the nodes written.
+     */
+    void clear() {
+        documents.clear();
+    }
+}
@@ -46,6 +46,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryPool;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -160,9 +161,14 @@ public class XQuery {
                 }
             }
             
+            final long elapsed = System.currentTimeMillis() - start;
             if (LOG.isDebugEnabled()) {
             	final NumberFormat nf = NumberFormat.getNumberInstance();
-            	LOG.debug("Compilation took "  +  nf.format(System.currentTimeMillis() - start) + " ms");
+            	LOG.debug("Compilation took "  +  nf.format(elapsed) + " ms");
+            }
+            final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
+            if (pool != null) {
+                pool.recordCompilation(elapsed);
             }
             
             return expr;
@@ -42,6 +42,9 @@ import org.exist.xquery.value.ValueSequence;
  */
 public class FunSubSequence extends Function {
 
+    // set by analyze if the source sequence is a FLWOR expression with an "order by" clause
+    private OrderByClause orderBy = null;
+
     public final static FunctionSignature signatures[] = {
             new FunctionSignature(
                     new QName("subsequence", Function.BUILTIN_FUNCTION_NS),
@@ -87,6 +90,28 @@ public class FunSubSequence extends Function {
             if (i == 0)
                 {contextInfo.setStaticReturnType(argContextInfo.getStaticReturnType());}
         }
+        // $source is item()*: any checks wrapped around it cannot fail
+        Expression source = getArgument(0);
+        if (source instanceof DynamicCardinalityCheck || source instanceof DynamicTypeCheck) {
+            source = source.getSubExpression(0);
+        }
+        orderBy = OrderByClause.getOrderByClause(source);
+        if (orderBy != null) {
+            // the bounds are evaluated before $sourceSeq if a limit is passed to the
+            // order by clause: only do so if they have no side effects
+            final ExpressionScanner scanner = new ExpressionScanner(context) {
+                @Override
+                protected void functionCall(final FunctionCall call) {
+                    markIncomplete();
+                }
+            };
+            for (int i = 1; i < getArgumentCount(); i++) {
+                scanner.scan(getArgument(i));
+            }
+            if (!scanner.isComplete()) {
+                orderBy = null;
+            }
+        }
     }
 
     /*
@@ -110,30 +135,37 @@ public class FunSubSequence extends Function {
         }
 
         Sequence result;
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+        Sequence seq = null;
+        int[] bounds = null;
+        if (orderBy != null) {
+            // if the source is ordered by an "order by" clause, compute the bounds first,
+            // so only the items up to the end of the subsequence are sorted
+            try {
+                bounds = getBounds(contextSequence, contextItem);
+            } catch (final XPathException e) {
+                // evaluate $sourceSeq first, so its errors are reported as without a limit;
+                // the bounds are evaluated again below
+            }
+            if (bounds != null) {
+                final long end = (long) Math.max(bounds[0], 0) + bounds[1];
+                final int previous = orderBy.setLimit(bounds[1] > 0 && end < Integer.MAX_VALUE ? (int) end : 0);
+                try {
+                    seq = getArgument(0).eval(contextSequence, contextItem);
+                } finally {
+                    orderBy.setLimit(previous);
+                }
+            }
+        }
+        if (seq == null)
+            {seq = getArgument(0).eval(contextSequence, contextItem);}
         if (seq.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
         else {
-            int start = ((DoubleValue) getArgument(1).eval(contextSequence,
-                    contextItem).convertTo(Type.DOUBLE)).getInt();
-
-            int length = Integer.MAX_VALUE;
-            if (getSignature().getArgumentCount() == 3) {
-                length = ((DoubleValue) getArgument(2).eval(
-                        contextSequence, contextItem)
-                        .convertTo(Type.DOUBLE)).getInt();
-            }
+            if (bounds == null)
+                {bounds = getBounds(contextSequence, contextItem);}
+            final int start = bounds[0];
+            final int length = bounds[1];
 
-            // TODO : exception? -pb
-            if (start < 0) {
-                length = length + start - 1;
-                start = 0;
-            } else if (start == 0) {
-            	--length;
-                --start;
-            } else
-            	{--start;}
-                        
             Sequence tmp;
             if (seq instanceof NodeSet) {
                 tmp = new ExtArrayNodeSet();
@@ -165,4 +197,31 @@ public class FunSubSequence extends Function {
 
     }
 
+    /**
+     * Evaluate $startingLoc and $length.
+     *
+     * @return the zero-based start position and the number of items to return
+     */
+    private int[] getBounds(Sequence contextSequence, Item contextItem) throws XPathException {
+        int start = ((DoubleValue) getArgument(1).eval(contextSequence,
+                contextItem).convertTo(Type.DOUBLE)).getInt();
+
+        int length = Integer.MAX_VALUE;
+        if (getSignature().getArgumentCount() == 3) {
+            length = ((DoubleValue) getArgument(2).eval(
+                    contextSequence, contextItem)
+                    .convertTo(Type.DOUBLE)).getInt();
+        }
+
+        // TODO : exception? -pb
+        if (start < 0) {
+            length = length + start - 1;
+            start = 0;
+        } else if (start == 0) {
+        	--length;
+            --start;
+        } else
+        	{--start;}
+        return new int[] { start, length };
+    }
 }
@@ -33,6 +33,8 @@ import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.Type;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -50,6 +52,12 @@ public class Optimize extends Pragma {
     private VariableReference contextVar = null;
     private int contextId = Expression.NO_CONTEXT_ID;
 
+    /**
+     * True if the optimizables may be pre-selected in any order: they all belong to
+     * predicates of the same step and none of the predicates is positional.
+     */
+    private boolean reorderable = true;
+
     private NodeSet cachedContext = null;
     private int cachedTimestamp;
     private boolean cachedOptimize;
@@ -112,6 +120,7 @@ public class Optimize extends Pragma {
             cachedOptimize = true;
             NodeSet ancestors;
             NodeSet result = null;
+            final Optimizable[] optimizables = orderBySelectivity(contextSequence);
             for (int current = 0; current < optimizables.length; current++) {
                 NodeSet selection = optimizables[current].preSelect(contextSequence, current > 0);
                 if (LOG.isTraceEnabled())
@@ -179,6 +188,9 @@ public class Optimize extends Pragma {
             {return;}
         innerExpr.accept(new BasicExpressionVisitor() {
 
+            private Expression currentStep = null;
+            private Expression optimizableStep = null;
+
             public void visitPathExpr(PathExpr expression) {
                 for (int i = 0; i < expression.getLength(); i++) {
                     final Expression next = expression.getExpression(i);
@@ -187,10 +199,7 @@ public class Optimize extends Pragma {
             }
 
             public void visitLocationStep(LocationStep locationStep) {
-                final List<Predicate> predicates = locationStep.getPredicates();
-                for (final Predicate pred : predicates) {
-                    pred.accept(this);
-                }
+                visitPredicates(locationStep, locationStep.getPredicates());
             }
 
             public void visitFilteredExpr(FilteredExpression filtered) {
@@ -198,10 +207,27 @@ public class Optimize extends Pragma {
                 if (filteredExpr instanceof VariableReference)
                     {contextVar = (VariableReference) filteredExpr;}
 
-                final List<Predicate> predicates = filtered.getPredicates();
+                visitPredicates(filtered, filtered.getPredicates());
+            }
+
+            private void visitPredicates(Expression step, List<Predicate> predicates) {
+                final Expression outerStep = currentStep;
+                currentStep = step;
                 for (final Predicate pred : predicates) {
+                    if (pred.getExecutionMode() == Predicate.POSITIONAL ||
+                            Dependency.dependsOn(pred, Dependency.CONTEXT_POSITION))
+                        {reorderable = false;}
                     pred.accept(this);
                 }
+                currentStep = outerStep;
+            }
+
+            private void addOptimizable(Optimizable optimizable) {
+                if (optimizableStep == null)
+                    {optimizableStep = currentStep;}
+                else if (optimizableStep != currentStep)
+                    {reorderable = false;}
+                Optimize.this.addOptimizable(optimizable);
             }
 
             public void visit(Expression expression) {
@@ -239,6 +265,40 @@ public class Optimize extends Pragma {
     public void after(XQueryContext context, Expression expression) throws XPathException {
     }
 
+    /**
+     * Order the optimizables by the number of nodes they are estimated to select, most selective
+     * first. Each pre-selection restricts the context of the following ones, so starting with the
+     * most selective reduces the work done by the others. Optimizables which cannot provide an
+     * estimate keep their relative order after the others.
+     *
+     * @param contextSequence the context sequence
+     * @return the optimizables in the order in which they should be pre-selected
+     * @throws XPathException if an estimate fails
+     */
+    private Optimizable[] orderBySelectivity(Sequence contextSequence) throws XPathException {
+        if (!reorderable || optimizables.length < 2)
+            {return optimizables;}
+        final long[] estimates = new long[optimizables.length];
+        final Integer[] order = new Integer[optimizables.length];
+        boolean estimated = false;
+        for (int i = 0; i < optimizables.length; i++) {
+            estimates[i] = optimizables[i].estimateCount(contextSequence);
+            order[i] = i;
+            if (estimates[i] > -1)
+                {estimated = true;}
+        }
+        if (!estimated)
+            {return optimizables;}
+        Arrays.sort(order, Comparator.comparingLong(i -> estimates[i] < 0 ? Long.MAX_VALUE : estimates[i]));
+        final Optimizable[] ordered = new Optimizable[optimizables.length];
+        for (int i = 0; i < order.length; i++) {
+            ordered[i] = optimizables[order[i]];
+        }
+        if (LOG.isTraceEnabled())
+            {LOG.trace("exist:optimize: estimated counts: " + Arrays.toString(estimates) + "; order: " + Arrays.toString(order));}
+        return ordered;
+    }
+
     private void addOptimizable(Optimizable optimizable) {final int axis = optimizable.getOptimizeAxis();
         if (!(axis == Constants.CHILD_AXIS || axis == Constants.SELF_AXIS || axis == Constants.DESCENDANT_AXIS ||
                 axis == Constants.DESCENDANT_SELF_AXIS || axis == Constants.ATTRIBUTE_AXIS ||
@@ -0,0 +1,546 @@
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2001-2015 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.source.Source;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.*;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Evaluates the iterations of a FLWOR expression in parallel:
+ *
+ * <pre>(# exist:parallel workers=4 #) { for $x in $input return local:f($x) }</pre>
+ *
+ * The input sequence of the first "for" clause is evaluated as usual, then split into
+ * contiguous chunks which are processed on a shared fork-join pool. Every worker uses a
+ * separately compiled copy of the query and its own broker; the results are concatenated
+ * in input order. Workers do not wait for a broker: if none is free, the chunk is
+ * evaluated by the calling thread instead. Node sets and nodes are not thread-safe, so
+ * every chunk gets its own copy of the nodes in its input, the context and the variables
+ * in scope.
+ *
+ * The pragma only has an effect if the FLWOR consists of "for", "let" and "where" clauses
+ * (no positional variable, "order by" or "group by"), and its body calls nothing but
+ * built-in functions from the fn and math namespaces and user-defined functions satisfying
+ * the same condition. Otherwise, or if the input has less than two items, the expression
+ * is evaluated sequentially.
+ */
+public class ParallelPragma extends Pragma {
+
+    public  final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    private final static Logger LOG = LogManager.getLogger(ParallelPragma.class);
+
+    /** Context attribute holding the parallel pragmas of a query in parse order */
+    private final static String PRAGMAS_ATTRIBUTE = "_eXist_parallel_pragmas";
+
+    private final static ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("exist-parallel-flwor-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+
+    private final XQueryContext context;
+    private final int index;
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    private ExtensionExpression extension = null;
+    private ForExpr forExpr = null;
+    private Chunk input = null;
+    private Boolean parallel = null;
+
+    /** Set on pragmas of the compiled copies used by the workers, which always evaluate sequentially */
+    private boolean forked = false;
+
+    /** Compiled copies of the query, reused by later evaluations */
+    private final Deque<WorkerQuery> copies = new ArrayDeque<>();
+
+    @SuppressWarnings("unchecked")
+    public ParallelPragma(XQueryContext context, QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        this.context = context;
+        if (contents != null && contents.length() > 0) {
+            final String options[] = Option.tokenize(contents);
+            for (int i = 0; i < options.length; i++) {
+                final String param[] = Option.parseKeyValuePair(options[i]);
+                if (param == null || !"workers".equals(param[0]))
+                    {throw new XPathException(ErrorCodes.ERROR, "Invalid content found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                        ": " + contents);}
+                try {
+                    workers = Integer.parseInt(param[1]);
+                } catch (final NumberFormatException e) {
+                    throw new XPathException(ErrorCodes.ERROR, "Invalid number of workers for pragma " +
+                        PARALLEL_PRAGMA.getStringValue() + ": " + param[1]);
+                }
+            }
+        }
+        final XQueryContext root = context.getRootContext();
+        List<ParallelPragma> pragmas = (List<ParallelPragma>) root.getAttribute(PRAGMAS_ATTRIBUTE);
+        if (pragmas == null) {
+            pragmas = new ArrayList<>();
+            root.setAttribute(PRAGMAS_ATTRIBUTE, pragmas);
+        }
+        this.index = pragmas.size();
+        pragmas.add(this);
+    }
+
+    public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        if (contextInfo.getParent() instanceof ExtensionExpression)
+            {extension = (ExtensionExpression) contextInfo.getParent();}
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+    }
+
+    public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        if (forked || !isParallel())
+            {return null;}
+        final Sequence in = input.evalInput(contextSequence);
+        final int chunks = Math.min(workers, in.getItemCount());
+        if (chunks < 2)
+            {return evalSequential(in, contextSequence, contextItem);}
+
+        final List<WorkerQuery> borrowed = new ArrayList<>(chunks);
+        final List<ForkJoinTask<Sequence>> tasks = new ArrayList<>(chunks);
+        try {
+            for (int i = 0; i < chunks; i++) {
+                final WorkerQuery copy = borrow();
+                if (copy == null) {
+                    parallel = false;
+                    return evalSequential(in, contextSequence, contextItem);
+                }
+                borrowed.add(copy);
+            }
+
+            final BrokerPool pool = context.getBroker().getBrokerPool();
+            final Subject subject = context.getSubject();
+            final Map<QName, Variable> globals = context.getRootContext().getGlobalVariables();
+            final List<Variable> stack = context.getLocalStack();
+            final List<Sequence> chunkItems = new ArrayList<>(chunks);
+            final List<List<Variable>> chunkStacks = new ArrayList<>(chunks);
+            final int count = in.getItemCount();
+            for (int i = 0; i < chunks; i++) {
+                final int start = (int) ((long) count * i / chunks);
+                final int end = (int) ((long) count * (i + 1) / chunks);
+                final ValueSequence chunk = new ValueSequence(end - start);
+                for (int j = start; j < end; j++) {
+                    chunk.add(snapshot(in.itemAt(j)));
+                }
+                chunkItems.add(chunk);
+                final List<Variable> chunkStack = snapshot(stack);
+                chunkStacks.add(chunkStack);
+                final Sequence chunkContext = snapshot(contextSequence);
+                final Item chunkContextItem = snapshot(contextItem);
+                final WorkerQuery copy = borrowed.get(i);
+                copy.prepare(context, globals);
+                tasks.add(POOL.submit(() -> {
+                    // never wait for a broker: the brokers may all be held by threads which
+                    // wait for their own workers, like the calling thread does
+                    final DBBroker broker = pool.tryGet(Optional.ofNullable(subject), 0);
+                    if (broker == null) {
+                        return null;
+                    }
+                    try {
+                        final Sequence seq = copy.eval(chunk, chunkStack, chunkContext, chunkContextItem);
+                        if (LOG.isDebugEnabled())
+                            {LOG.debug("exist:parallel: evaluated " + chunk.getItemCount() + " items in a worker");}
+                        return seq;
+                    } finally {
+                        broker.close();
+                    }
+                }));
+            }
+
+            final ValueSequence result = new ValueSequence();
+            XPathException error = null;
+            for (int i = 0; i < chunks; i++) {
+                try {
+                    Sequence seq = tasks.get(i).get();
+                    if (seq == null && error == null) {
+                        // no broker was available to the worker: evaluate the chunk on this thread
+                        seq = borrowed.get(i).eval(chunkItems.get(i), chunkStacks.get(i), contextSequence, contextItem);
+                    }
+                    if (error == null)
+                        {result.addAll(seq);}
+                } catch (final XPathException e) {
+                    if (error == null)
+                        {error = e;}
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (error == null)
+                        {error = new XPathException(extension, ErrorCodes.ERROR,
+                            "Interrupted while waiting for parallel evaluation", null, e);}
+                } catch (final ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof XPathException ? (XPathException) e.getCause() :
+                            new XPathException(extension, ErrorCodes.ERROR,
+                                "Parallel evaluation failed: " + e.getCause().getMessage(), null, e.getCause());
+                    }
+                }
+            }
+            if (error != null)
+                {throw error;}
+            return result;
+        } finally {
+            // copies may only be reused once all workers are done with them
+            for (final ForkJoinTask<Sequence> task : tasks) {
+                task.quietlyJoin();
+            }
+            copies.addAll(borrowed);
+        }
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+    }
+
+    /**
+     * Copy the local variables for a single chunk, see {@link #snapshot(Sequence)}.
+     */
+    private static List<Variable> snapshot(List<Variable> stack) throws XPathException {
+        final List<Variable> copy = new ArrayList<>(stack.size());
+        for (final Variable var : stack) {
+            final LocalVariable local = new LocalVariable((LocalVariable) var, true);
+            local.setValue(snapshot(var.getValue()));
+            copy.add(local);
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a sequence for a single chunk. Node sets sort and remove duplicates lazily and
+     * node proxies collect context nodes and matches during evaluation, so they cannot
+     * be shared between threads. The nodes are copied into a new node set, which is
+     * materialized and sorted by the calling thread. Atomic values and in-memory nodes
+     * are not modified by queries and are shared.
+     */
+    private static Sequence snapshot(Sequence seq) throws XPathException {
+        if (seq == null || seq.isEmpty() || Type.subTypeOf(seq.getItemType(), Type.ATOMIC))
+            {return seq;}
+        if (seq instanceof NodeSet) {
+            final NewArrayNodeSet copy = new NewArrayNodeSet();
+            for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+                copy.add((NodeProxy) snapshot(i.nextItem()));
+            }
+            copy.sort();
+            return copy;
+        }
+        final ValueSequence copy = new ValueSequence(seq.getItemCount());
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            copy.add(snapshot(i.nextItem()));
+        }
+        return copy;
+    }
+
+    private static Item snapshot(Item item) {
+        if (!(item instanceof NodeProxy))
+            {return item;}
+        final NodeProxy node = (NodeProxy) item;
+        final NodeProxy copy = new NodeProxy(node.getOwnerDocument(), node.getNodeId(), node.getNodeType(),
+            node.getInternalAddress());
+        copy.deepCopyContext(node);
+        copy.addMatches(node);
+        return copy;
+    }
+
+    private Sequence evalSequential(Sequence in, Sequence contextSequence, Item contextItem) throws XPathException {
+        input.setItems(in);
+        try {
+            return forExpr.eval(contextSequence, contextItem);
+        } finally {
+            input.setItems(null);
+        }
+    }
+
+    /**
+     * Check once if the wrapped expression can be evaluated in parallel. If yes, the input
+     * sequence of the "for" clause is replaced by a {@link Chunk}.
+     */
+    private boolean isParallel() throws XPathException {
+        if (parallel == null) {
+            forExpr = getForExpr(extension == null ? null : extension.getExpression());
+            parallel = forExpr != null && context.getRootContext().getSource() != null;
+            if (parallel) {
+                // the clauses following the first "for" must not need to see all tuples at once
+                Expression clause = forExpr.getReturnExpression();
+                while (clause instanceof FLWORClause) {
+                    if (clause instanceof OrderByClause || clause instanceof GroupByClause ||
+                            (clause instanceof ForExpr && ((ForExpr) clause).getPositionalVariable() != null)) {
+                        parallel = false;
+                        break;
+                    }
+                    clause = ((FLWORClause) clause).getReturnExpression();
+                }
+            }
+            if (parallel) {
+                final PurityScanner scanner = new PurityScanner(context);
+                scanner.scan(forExpr.getReturnExpression());
+                parallel = scanner.isComplete();
+            }
+            if (parallel) {
+                input = new Chunk(context, forExpr.getInputSequence());
+                forExpr.setInputSequence(input);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("exist:parallel: expression at line " + (extension == null ? -1 : extension.getLine()) +
+                    " will be evaluated sequentially");
+            }
+        }
+        return parallel;
+    }
+
+    private static ForExpr getForExpr(Expression expr) {
+        while (expr != null) {
+            if (expr instanceof DebuggableExpression)
+                {expr = ((DebuggableExpression) expr).getExpression();}
+            else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1)
+                {expr = ((PathExpr) expr).getExpression(0);}
+            else
+                {break;}
+        }
+        if (!(expr instanceof ForExpr))
+            {return null;}
+        final ForExpr forExpr = (ForExpr) expr;
+        if (forExpr.getPreviousClause() != null || forExpr.getPositionalVariable() != null)
+            {return null;}
+        return forExpr;
+    }
+
+    /**
+     * Get a compiled copy of the query from the cache or compile a new one.
+     *
+     * @return the copy or null if the matching pragma cannot be found in the copy
+     */
+    @SuppressWarnings("unchecked")
+    private WorkerQuery borrow() throws XPathException {
+        final WorkerQuery cached = copies.poll();
+        if (cached != null)
+            {return cached;}
+        final Source source = context.getRootContext().getSource();
+        final XQueryContext workerContext = new XQueryContext(context.getDatabase(), context.getAccessContext());
+        workerContext.setModuleLoadPath(context.getModuleLoadPath());
+        final DBBroker broker = context.getBroker();
+        final CompiledXQuery compiled;
+        try {
+            compiled = broker.getBrokerPool().getXQueryService().compile(broker, workerContext, source);
+        } catch (final IOException | PermissionDeniedException e) {
+            throw new XPathException(extension, ErrorCodes.ERROR,
+                "Failed to compile query for parallel evaluation: " + e.getMessage(), null, e);
+        }
+        final List<ParallelPragma> pragmas = (List<ParallelPragma>) workerContext.getAttribute(PRAGMAS_ATTRIBUTE);
+        if (pragmas == null || pragmas.size() <= index)
+            {return null;}
+        for (final ParallelPragma pragma : pragmas) {
+            pragma.forked = true;
+        }
+        final ParallelPragma pragma = pragmas.get(index);
+        pragma.forExpr = getForExpr(pragma.extension == null ? null : pragma.extension.getExpression());
+        if (pragma.forExpr == null || pragma.extension.getLine() != extension.getLine() ||
+                pragma.extension.getColumn() != extension.getColumn()) {
+            LOG.warn("exist:parallel: query " + source.getKey() + " changed, evaluating sequentially");
+            return null;
+        }
+        pragma.input = new Chunk(workerContext, pragma.forExpr.getInputSequence());
+        pragma.forExpr.setInputSequence(pragma.input);
+        return new WorkerQuery(compiled, pragma);
+    }
+
+    /**
+     * A compiled copy of the query and the copy of this pragma within it.
+     */
+    private static class WorkerQuery {
+
+        private final CompiledXQuery query;
+        private final ParallelPragma pragma;
+        private final XQueryWatchDog watchdog;
+
+        private WorkerQuery(CompiledXQuery query, ParallelPragma pragma) {
+            this.query = query;
+            this.pragma = pragma;
+            this.watchdog = query.getContext().getWatchDog();
+        }
+
+        /**
+         * Take the dynamic context and the global variables from the calling query.
+         * Called by the calling thread before the copy is handed to a worker.
+         */
+        private void prepare(XQueryContext caller, Map<QName, Variable> globals) throws XPathException {
+            final XQueryContext workerContext = query.getContext();
+            workerContext.setCalendar(caller.getCalendar());
+            workerContext.setTimeZone(caller.getImplicitTimeZone());
+            if (caller.getStaticDocs() != null)
+                {workerContext.setStaticallyKnownDocuments(caller.getStaticDocs());}
+            workerContext.setWatchDog(caller.getWatchDog());
+            for (final Variable var : globals.values()) {
+                if (var instanceof VariableImpl) {
+                    final VariableImpl copy = new VariableImpl((VariableImpl) var);
+                    copy.setValue(snapshot(var.getValue()));
+                    workerContext.declareGlobalVariable(copy);
+                } else
+                    {workerContext.declareGlobalVariable(var);}
+            }
+        }
+
+        /**
+         * Evaluate the FLWOR of the copy for the items in the chunk, with the local
+         * variables visible to the pragma in the calling query.
+         */
+        private Sequence eval(Sequence chunk, List<Variable> stack, Sequence contextSequence, Item contextItem)
+                throws XPathException {
+            final XQueryContext workerContext = query.getContext();
+            final LocalVariable mark = workerContext.markLocalVariables(false);
+            try {
+                workerContext.restoreStack(stack);
+                return pragma.evalSequential(chunk, contextSequence, contextItem);
+            } finally {
+                workerContext.popLocalVariables(mark);
+                workerContext.setWatchDog(watchdog);
+                query.reset();
+                workerContext.reset();
+            }
+        }
+    }
+
+    /**
+     * Replaces the input sequence of the "for" clause, so it can be evaluated
+     * by the pragma before the sequence is split into chunks.
+     */
+    private static final class Chunk extends AbstractExpression {
+
+        private final Expression argument;
+        private Sequence items = null;
+
+        Chunk(final XQueryContext context, final Expression argument) {
+            super(context);
+            this.argument = argument;
+        }
+
+        void setItems(final Sequence items) {
+            this.items = items;
+        }
+
+        Sequence evalInput(final Sequence contextSequence) throws XPathException {
+            return argument.eval(contextSequence, null);
+        }
+
+        @Override
+        public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+            argument.analyze(contextInfo);
+        }
+
+        @Override
+        public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+            if (items != null)
+                {return items;}
+            return argument.eval(contextSequence, contextItem);
+        }
+
+        @Override
+        public int returnsType() {
+            return argument.returnsType();
+        }
+
+        @Override
+        public int getCardinality() {
+            return argument.getCardinality();
+        }
+
+        @Override
+        public int getDependencies() {
+            return argument.getDependencies();
+        }
+
+        @Override
+        public void resetState(final boolean postOptimization) {
+            super.resetState(postOptimization);
+            argument.resetState(postOptimization);
+        }
+
+        @Override
+        public void accept(final ExpressionVisitor visitor) {
+            argument.accept(visitor);
+        }
+
+        @Override
+        public void dump(final ExpressionDumper dumper) {
+            argument.dump(dumper);
+        }
+
+        @Override
+        public String toString() {
+            return argument.toString();
+        }
+    }
+
+    /**
+     * Checks if an expression can be evaluated by several threads at once, i.e. it has no
+     * side effects and does not depend on the state of the calling thread. The bodies of
+     * user-defined functions are checked as well. The expression is pure if the scan
+     * is complete.
+     */
+    private static class PurityScanner extends ExpressionScanner {
+
+        private final Set<UserDefinedFunction> visited = new HashSet<>();
+
+        PurityScanner(final XQueryContext context) {
+            super(context);
+        }
+
+        @Override
+        protected void functionCall(final FunctionCall call) throws XPathException {
+            final UserDefinedFunction udf = call.getFunction();
+            if (udf == null) {
+                markIncomplete();
+            } else if (visited.add(udf)) {
+                scan(udf.getFunctionBody());
+            }
+        }
+    }
+}
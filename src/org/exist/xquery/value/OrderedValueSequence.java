@@ -34,7 +34,9 @@ import org.exist.xquery.XPathException;
 import org.exist.xquery.util.ExpressionDumper;
 import org.w3c.dom.Node;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.stream.Stream;
 
 /**
@@ -44,6 +46,10 @@ import java.util.stream.Stream;
  * Contrary to class {@link org.exist.xquery.value.PreorderedValueSequence},
  * all order expressions are evaluated once for each item in the sequence 
  * <b>while</b> items are added.
+ *
+ * If a limit is set with {@link #setLimit(int)}, only the first items in sort order
+ * up to the limit are kept. The entries are then maintained as a bounded max-heap,
+ * so the sequence never holds more than limit entries.
  * 
  * @author wolf
  */
@@ -52,6 +58,8 @@ public class OrderedValueSequence extends AbstractSequence {
     private OrderSpec orderSpecs[];
 	private Entry[] items = null;
 	private int count = 0;
+	private int added = 0;
+	private int limit = 0;
 	private int state = 0;
 
     // used to keep track of the type of added items.
@@ -64,6 +72,21 @@ public class OrderedValueSequence extends AbstractSequence {
 		this.items = new Entry[size];
 	}
 
+	/**
+	 * Keep only the first items in sort order. Must be called before items are added.
+	 *
+	 * @param limit the maximum number of items to keep, or 0 to keep all items
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+		if (limit > 0 && items.length > limit)
+			{items = new Entry[limit];}
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.exist.xquery.value.Sequence#iterate()
 	 */
@@ -97,23 +120,50 @@ public class OrderedValueSequence extends AbstractSequence {
 	 * @see org.exist.xquery.value.Sequence#add(org.exist.xquery.value.Item)
 	 */
 	public void add(Item item) throws XPathException {
-		if (hasOne)
-			{hasOne = false;}
-		if (isEmpty)
-			{hasOne = true;}
-        isEmpty = false;
-		if(count == 0 && items.length == 1) {
-			items = new Entry[2];
-		} else if (count == items.length) {
-			Entry newItems[] = new Entry[count * 2];
-			System.arraycopy(items, 0, newItems, 0, count);
-			items = newItems;
+		final Entry entry = new Entry(item, added++);
+		if (limit > 0 && count == limit) {
+			// heap is full: replace the greatest entry if the new one sorts before it
+			if (entry.compareTo(items[0]) < 0) {
+				items[0] = entry;
+				siftDown(0);
+			}
+		} else {
+			if(count == 0 && items.length == 1) {
+				items = new Entry[2];
+			} else if (count == items.length) {
+				Entry newItems[] = new Entry[count * 2];
+				System.arraycopy(items, 0, newItems, 0, count);
+				items = newItems;
+			}
+			items[count++] = entry;
+			if (count == limit) {
+				for (int i = count / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+			}
 		}
-		items[count] = new Entry(item, count++);
+		isEmpty = false;
+		hasOne = count == 1;
 		checkItemType(item.getType());
         setHasChanged();
     }
 
+	private void siftDown(int i) {
+		final Entry entry = items[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= count)
+				{break;}
+			if (child + 1 < count && items[child + 1].compareTo(items[child]) > 0)
+				{child++;}
+			if (items[child].compareTo(entry) <= 0)
+				{break;}
+			items[i] = items[child];
+			i = child;
+		}
+		items[i] = entry;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.exist.xquery.value.AbstractSequence#addAll(org.exist.xquery.value.Sequence)
 	 */
@@ -138,6 +188,22 @@ public class OrderedValueSequence extends AbstractSequence {
 					.map(entry -> { entry.clear(); return entry; })
 					.toArray(Entry[]::new);
 	}
+
+	/**
+	 * Sort the items and pass them to the writer in sort order, together with the
+	 * values of their order expressions. The values are kept, so the sequence can
+	 * still be used if the writer rejects an item.
+	 *
+	 * @return false if the writer rejected an item
+	 */
+	public boolean writeSorted(SortedItemWriter writer) throws IOException, XPathException {
+		items = Stream.of(items).filter(Objects::nonNull).parallel().sorted().toArray(Entry[]::new);
+		for (int i = 0; i < count; i++) {
+			if (!writer.write(items[i].item, items[i].values))
+				{return false;}
+		}
+		return true;
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.exist.xquery.value.Sequence#itemAt(int)
@@ -298,6 +364,67 @@ public class OrderedValueSequence extends AbstractSequence {
         return true;
     }
 
+    /**
+     * Compare the values of the order expressions of two items.
+     */
+    public static int compareKeys(OrderSpec orderSpecs[], AtomicValue values[], AtomicValue otherValues[]) {
+		int cmp = 0;
+		AtomicValue a, b;
+		for(int i = 0; i < values.length; i++) {
+			try {
+				a = values[i];
+				b = otherValues[i];
+                final boolean aIsEmpty = (a.isEmpty() || (Type.subTypeOf(a.getType(), Type.NUMBER) && ((NumericValue) a).isNaN()));
+                final boolean bIsEmpty = (b.isEmpty() || (Type.subTypeOf(b.getType(), Type.NUMBER) && ((NumericValue) b).isNaN()));
+                if (aIsEmpty) {
+                    if (bIsEmpty)
+                        // both values are empty
+                        {return Constants.EQUAL;}
+                    else if ((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
+						{cmp = Constants.INFERIOR;}
+                    else
+                        {cmp = Constants.SUPERIOR;}
+                } else if (bIsEmpty) {
+                    // we don't need to check for equality since we know a is not empty
+                    if ((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
+						{cmp = Constants.SUPERIOR;}
+					else
+						{cmp = Constants.INFERIOR;}
+                } else if (a == AtomicValue.EMPTY_VALUE && b != AtomicValue.EMPTY_VALUE) {
+					if((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
+						{cmp = Constants.INFERIOR;}
+					else
+						{cmp = Constants.SUPERIOR;}
+				} else if (b == AtomicValue.EMPTY_VALUE && a != AtomicValue.EMPTY_VALUE) {
+					if((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
+						{cmp = Constants.SUPERIOR;}
+					else
+						{cmp = Constants.INFERIOR;}
+				} else
+					{cmp = a.compareTo(orderSpecs[i].getCollator(), b);}
+				if((orderSpecs[i].getModifiers() & OrderSpec.DESCENDING_ORDER) != 0)
+					{cmp = cmp * -1;}
+				if(cmp != Constants.EQUAL)
+					{break;}
+			} catch (final XPathException e) {
+			}
+		}
+		return cmp;
+    }
+
+    /**
+     * Receives the items of the sequence in sort order, see {@link #writeSorted(SortedItemWriter)}.
+     */
+    public interface SortedItemWriter {
+
+        /**
+         * @param item the item
+         * @param values the values of the order expressions for the item
+         * @return false if the item could not be written
+         */
+        boolean write(Item item, AtomicValue values[]) throws IOException, XPathException;
+    }
+
     private class Entry implements Comparable<Entry> {
 		
 		Item item;
@@ -329,47 +456,7 @@ public class OrderedValueSequence extends AbstractSequence {
 		 * @see java.lang.Comparable#compareTo(java.lang.Object)
 		 */
 		public int compareTo(Entry other) {
-			int cmp = 0;
-			AtomicValue a, b;
-			for(int i = 0; i < values.length; i++) {
-				try {
-					a = values[i];
-					b = other.values[i];
-                    final boolean aIsEmpty = (a.isEmpty() || (Type.subTypeOf(a.getType(), Type.NUMBER) && ((NumericValue) a).isNaN()));
-                    final boolean bIsEmpty = (b.isEmpty() || (Type.subTypeOf(b.getType(), Type.NUMBER) && ((NumericValue) b).isNaN()));
-                    if (aIsEmpty) {
-                        if (bIsEmpty)
-                            // both values are empty
-                            {return Constants.EQUAL;}
-                        else if ((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
-							{cmp = Constants.INFERIOR;}
-                        else
-                            {cmp = Constants.SUPERIOR;}
-                    } else if (bIsEmpty) {
-                        // we don't need to check for equality since we know a is not empty
-                        if ((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
-							{cmp = Constants.SUPERIOR;}
-						else
-							{cmp = Constants.INFERIOR;}
-                    } else if (a == AtomicValue.EMPTY_VALUE && b != AtomicValue.EMPTY_VALUE) {
-						if((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
-							{cmp = Constants.INFERIOR;}
-						else
-							{cmp = Constants.SUPERIOR;}
-					} else if (b == AtomicValue.EMPTY_VALUE && a != AtomicValue.EMPTY_VALUE) {
-						if((orderSpecs[i].getModifiers() & OrderSpec.EMPTY_LEAST) != 0)
-							{cmp = Constants.SUPERIOR;}
-						else
-							{cmp = Constants.INFERIOR;}
-					} else
-						{cmp = a.compareTo(orderSpecs[i].getCollator(), b);}
-					if((orderSpecs[i].getModifiers() & OrderSpec.DESCENDING_ORDER) != 0)
-						{cmp = cmp * -1;}
-					if(cmp != Constants.EQUAL)
-						{break;}
-				} catch (final XPathException e) {
-				}
-			}
+			int cmp = compareKeys(orderSpecs, values, other.values);
 			// if the sort keys are equal, we need to order by the original position in the result sequence
 			if (cmp == Constants.EQUAL)
 				{cmp = (pos > other.pos ? Constants.SUPERIOR : (pos == other.pos ? Constants.EQUAL : Constants.INFERIOR));}
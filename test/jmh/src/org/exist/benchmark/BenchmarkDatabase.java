@@ -0,0 +1,56 @@
+package org.exist.benchmark;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.journal.Journal;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Starts and stops a database instance for a benchmark run. Every run uses
+ * a fresh, temporary data directory so results do not depend on data left
+ * behind by earlier runs and the configured data directory is not touched.
+ */
+public final class BenchmarkDatabase {
+
+    private final Path dataDir;
+    private final BrokerPool pool;
+
+    private BenchmarkDatabase(final Path dataDir, final BrokerPool pool) {
+        this.dataDir = dataDir;
+        this.pool = pool;
+    }
+
+    /**
+     * Start a database using conf.xml from exist.home, but with data files
+     * and journal redirected to a new temporary directory.
+     *
+     * @param maxBrokers the maximum number of concurrent brokers
+     */
+    public static BenchmarkDatabase start(final int maxBrokers) throws IOException, DatabaseConfigurationException, EXistException {
+        final Path dataDir = Files.createTempDirectory("exist-jmh");
+        final Configuration config = new Configuration();
+        config.setProperty(BrokerPool.PROPERTY_DATA_DIR, dataDir);
+        config.setProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR, dataDir);
+        BrokerPool.configure(1, maxBrokers, config);
+        return new BenchmarkDatabase(dataDir, BrokerPool.getInstance());
+    }
+
+    public BrokerPool getPool() {
+        return pool;
+    }
+
+    public Path getDataDir() {
+        return dataDir;
+    }
+
+    public void stop() {
+        BrokerPool.stopAll(false);
+        FileUtils.deleteQuietly(dataDir);
+    }
+}
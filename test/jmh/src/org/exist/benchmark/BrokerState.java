@@ -0,0 +1,40 @@
+package org.exist.benchmark;
+
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.XQueryWatchDog;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Optional;
+
+/**
+ * A broker held by a benchmark thread for the duration of an iteration.
+ * Brokers are bound to the thread which acquired them, so each benchmark
+ * thread gets its own. The broker is released after every iteration, as
+ * the database in {@link CorpusState} is shut down when the trial ends and
+ * would otherwise wait for active brokers.
+ */
+@State(Scope.Thread)
+public class BrokerState {
+
+    public DBBroker broker;
+
+    /** watch dog for index lookups which expect to run inside a query */
+    public XQueryWatchDog watchDog;
+
+    @Setup(Level.Iteration)
+    public void acquire(final CorpusState corpus) throws Exception {
+        broker = corpus.pool.get(Optional.of(corpus.pool.getSecurityManager().getSystemSubject()));
+        watchDog = new XQueryContext(corpus.pool, AccessContext.TEST).getWatchDog();
+    }
+
+    @TearDown(Level.Iteration)
+    public void release() {
+        broker.close();
+    }
+}
@@ -0,0 +1,149 @@
+package org.exist.benchmark;
+
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * A database loaded with a generated corpus of catalog documents. The
+ * corpus is deterministic for a given set of parameters, so results of
+ * different runs can be compared.
+ *
+ * <pre>
+ * &lt;catalog n="3"&gt;
+ *   &lt;item id="3-0" category="c0"&gt;
+ *     &lt;name&gt;Item 3-0&lt;/name&gt;
+ *     &lt;price&gt;17.5&lt;/price&gt;
+ *     &lt;description&gt;...&lt;/description&gt;
+ *     &lt;tags&gt;&lt;tag&gt;t1&lt;/tag&gt;...&lt;/tags&gt;
+ *   &lt;/item&gt;
+ *   ...
+ * &lt;/catalog&gt;
+ * </pre>
+ *
+ * A range index is defined on price and on the category attribute.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+    public final static XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("jmh");
+
+    public final static int CATEGORIES = 20;
+
+    public final static int MAX_PRICE = 1000;
+
+    private final static String COLLECTION_CONFIG =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "   <index>" +
+        "       <create qname=\"price\" type=\"xs:double\"/>" +
+        "       <create qname=\"@category\" type=\"xs:string\"/>" +
+        "   </index>" +
+        "</collection>";
+
+    private final static String[] WORDS = {
+        "storage", "index", "query", "node", "page", "cache", "journal", "lock",
+        "tree", "value", "range", "text", "element", "attribute", "document", "collection"
+    };
+
+    @Param({"50"})
+    public int documents;
+
+    @Param({"200"})
+    public int itemsPerDocument;
+
+    public BenchmarkDatabase database;
+
+    public BrokerPool pool;
+
+    public DocumentSet docs;
+
+    public DocumentImpl[] documentArray;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        database = BenchmarkDatabase.start(Runtime.getRuntime().availableProcessors() + 2);
+        pool = database.getPool();
+
+        final MutableDocumentSet loaded = new DefaultDocumentSet();
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+
+            for (int i = 0; i < documents; i++) {
+                final String xml = generate(i, itemsPerDocument);
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("catalog-" + i + ".xml"), xml);
+                collection.store(transaction, broker, info, xml, false);
+                loaded.add(info.getDocument());
+            }
+            transact.commit(transaction);
+        }
+        docs = loaded;
+        documentArray = new DocumentImpl[loaded.getDocumentCount()];
+        int i = 0;
+        for (final Iterator<DocumentImpl> iter = loaded.getDocumentIterator(); iter.hasNext(); ) {
+            documentArray[i++] = iter.next();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        database.stop();
+    }
+
+    /**
+     * Generate the catalog document with the given number.
+     */
+    public static String generate(final int n, final int items) {
+        final Random random = new Random(n);
+        final StringBuilder builder = new StringBuilder(items * 256);
+        builder.append("<catalog n=\"").append(n).append("\">");
+        for (int i = 0; i < items; i++) {
+            builder.append("<item id=\"").append(n).append('-').append(i)
+                .append("\" category=\"c").append(random.nextInt(CATEGORIES)).append("\">");
+            builder.append("<name>Item ").append(n).append('-').append(i).append("</name>");
+            builder.append("<price>").append(random.nextInt(MAX_PRICE * 10) / 10.0).append("</price>");
+            builder.append("<description>");
+            final int words = 8 + random.nextInt(16);
+            for (int j = 0; j < words; j++) {
+                if (j > 0) {
+                    builder.append(' ');
+                }
+                builder.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            builder.append("</description>");
+            builder.append("<tags>");
+            final int tags = 1 + random.nextInt(4);
+            for (int j = 0; j < tags; j++) {
+                builder.append("<tag>t").append(random.nextInt(32)).append("</tag>");
+            }
+            builder.append("</tags>");
+            builder.append("</item>");
+        }
+        builder.append("</catalog>");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package org.exist.storage;
+
+import org.exist.benchmark.BrokerState;
+import org.exist.benchmark.CorpusState;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.Constants;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.StringValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups on the range index maintained by {@link NativeValueIndex}: equality
+ * on a string attribute and a range comparison on a double element.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeValueIndexBenchmark {
+
+    private final static QName PRICE = new QName("price", "");
+    private final static QName CATEGORY = new QName("category", "", ElementValue.ATTRIBUTE);
+
+    @State(Scope.Thread)
+    public static class Keys {
+        int next = 0;
+    }
+
+    @Benchmark
+    public NodeSet findEquals(final CorpusState corpus, final BrokerState state, final Keys keys) throws Exception {
+        final StringValue category = new StringValue("c" + (keys.next++ % CorpusState.CATEGORIES));
+        return state.broker.getValueIndex().find(state.watchDog, Constants.EQ, corpus.docs, null, -1, CATEGORY, category);
+    }
+
+    @Benchmark
+    public NodeSet findRange(final CorpusState corpus, final BrokerState state, final Keys keys) throws Exception {
+        // selects between one and ten percent of the items
+        final DoubleValue price = new DoubleValue(CorpusState.MAX_PRICE - 10 - (keys.next++ % 100));
+        return state.broker.getValueIndex().find(state.watchDog, Constants.GT, corpus.docs, null, -1, PRICE, price);
+    }
+}
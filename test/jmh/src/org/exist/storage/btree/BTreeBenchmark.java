@@ -0,0 +1,87 @@
+package org.exist.storage.btree;
+
+import org.exist.benchmark.BenchmarkDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts into and point lookups on a plain {@link BTree} with string keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BTreeBenchmark {
+
+    @Param({"100000"})
+    public int keys;
+
+    private BenchmarkDatabase database;
+    private BTree btree;
+    private Value[] lookupKeys;
+    private int next = 0;
+    private long inserted = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.start(2);
+        final Path file = database.getDataDir().resolve("jmh-btree.dbx");
+        btree = new BTree(database.getPool(), (byte) 0, false, database.getPool().getCacheManager(), file);
+        btree.create((short) -1);
+
+        lookupKeys = new Value[keys];
+        for (int i = 0; i < keys; i++) {
+            lookupKeys[i] = key(i);
+            btree.addValue(lookupKeys[i], i);
+        }
+        // visit keys in a scattered but reproducible order
+        final Random random = new Random(keys);
+        for (int i = keys - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final Value tmp = lookupKeys[i];
+            lookupKeys[i] = lookupKeys[j];
+            lookupKeys[j] = tmp;
+        }
+        inserted = keys;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        btree.close();
+        database.stop();
+    }
+
+    @Benchmark
+    public long lookup() throws Exception {
+        final Value key = lookupKeys[next];
+        next = (next + 1) % lookupKeys.length;
+        return btree.findValue(key);
+    }
+
+    @Benchmark
+    public long insert() throws Exception {
+        final long pointer = inserted++;
+        return btree.addValue(key(pointer), pointer);
+    }
+
+    private static Value key(final long i) {
+        return new Value("key-" + i);
+    }
+}
@@ -0,0 +1,101 @@
+package org.exist.storage.dom;
+
+import org.exist.benchmark.BrokerState;
+import org.exist.benchmark.CorpusState;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.IStoredNode;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.xquery.NodeSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node retrieval from the {@link DOMFile}: single node lookups by node id
+ * (B+-tree lookup followed by a data page read) and by storage address, and
+ * sequential scans of whole documents with the {@link NodeIterator}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMFileBenchmark {
+
+    @State(Scope.Thread)
+    public static class Nodes {
+
+        /** proxies without a storage address: resolved through the B+-tree */
+        NodeProxy[] byNodeId;
+
+        /** proxies with a known storage address */
+        NodeProxy[] byAddress;
+
+        int next = 0;
+        int nextDocument = 0;
+
+        @Setup(Level.Trial)
+        public void collect(final CorpusState corpus) throws Exception {
+            try (final DBBroker broker = corpus.pool.get(Optional.of(corpus.pool.getSecurityManager().getSystemSubject()))) {
+                final NodeSet items = broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT,
+                    corpus.docs, new QName("item", ""), (NodeSelector) null);
+                byNodeId = new NodeProxy[items.getLength()];
+                byAddress = new NodeProxy[items.getLength()];
+                int i = 0;
+                for (final NodeProxy item : items) {
+                    byNodeId[i] = new NodeProxy(item.getOwnerDocument(), item.getNodeId());
+                    final IStoredNode<?> node = broker.objectWith(byNodeId[i]);
+                    byAddress[i] = new NodeProxy(item.getOwnerDocument(), item.getNodeId(), node.getInternalAddress());
+                    i++;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public IStoredNode<?> getByNodeId(final BrokerState state, final Nodes nodes) {
+        final NodeProxy proxy = nodes.byNodeId[nodes.next];
+        nodes.next = (nodes.next + 1) % nodes.byNodeId.length;
+        return state.broker.objectWith(proxy.getOwnerDocument(), proxy.getNodeId());
+    }
+
+    @Benchmark
+    public IStoredNode<?> getByAddress(final BrokerState state, final Nodes nodes) {
+        final NodeProxy proxy = nodes.byAddress[nodes.next];
+        nodes.next = (nodes.next + 1) % nodes.byAddress.length;
+        return state.broker.objectWith(proxy);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int scanDocument(final CorpusState corpus, final BrokerState state, final Nodes nodes) throws Exception {
+        final DocumentImpl doc = corpus.documentArray[nodes.nextDocument];
+        nodes.nextDocument = (nodes.nextDocument + 1) % corpus.documentArray.length;
+        int count = 0;
+        try (final INodeIterator iterator = state.broker.getNodeIterator((NodeHandle) doc.getDocumentElement())) {
+            while (iterator.hasNext()) {
+                if (iterator.next() == null) {
+                    break;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
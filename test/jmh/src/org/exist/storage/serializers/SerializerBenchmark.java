@@ -0,0 +1,76 @@
+package org.exist.storage.serializers;
+
+import org.exist.benchmark.BrokerState;
+import org.exist.benchmark.CorpusState;
+import org.exist.dom.persistent.DocumentImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization throughput of stored documents. The output is written to a
+ * writer which only counts characters, so the numbers reflect the cost of
+ * reading and serializing the document rather than of buffering the result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Output {
+        final CountingWriter writer = new CountingWriter();
+        int nextDocument = 0;
+    }
+
+    @Benchmark
+    public long serializeDocument(final CorpusState corpus, final BrokerState state, final Output output) throws Exception {
+        final DocumentImpl doc = corpus.documentArray[output.nextDocument];
+        output.nextDocument = (output.nextDocument + 1) % corpus.documentArray.length;
+
+        final Serializer serializer = state.broker.getSerializer();
+        serializer.reset();
+        output.writer.count = 0;
+        serializer.serialize(doc, output.writer);
+        return output.writer.count;
+    }
+
+    private final static class CountingWriter extends Writer {
+
+        long count = 0;
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(final int c) {
+            count++;
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.exist.storage.structural;
+
+import org.exist.benchmark.BrokerState;
+import org.exist.benchmark.CorpusState;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.indexing.StructuralIndex;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.xquery.Constants;
+import org.exist.xquery.NodeSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Descendant lookups on the structural index, as used by path steps like
+ * <code>$items/tags/tag</code> and <code>$docs//item</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructuralIndexBenchmark {
+
+    private final static QName ITEM = new QName("item", "");
+    private final static QName TAG = new QName("tag", "");
+
+    @State(Scope.Thread)
+    public static class Context {
+
+        /** all item elements: one index range scan per item */
+        NodeSet items;
+
+        /** the root elements: one index range scan per document */
+        NodeSet roots;
+
+        @Setup(Level.Trial)
+        public void collect(final CorpusState corpus) throws Exception {
+            try (final DBBroker broker = corpus.pool.get(Optional.of(corpus.pool.getSecurityManager().getSystemSubject()))) {
+                final StructuralIndex index = broker.getStructuralIndex();
+                items = index.findElementsByTagName(ElementValue.ELEMENT, corpus.docs, ITEM, (NodeSelector) null);
+                roots = index.findElementsByTagName(ElementValue.ELEMENT, corpus.docs, new QName("catalog", ""), (NodeSelector) null);
+            }
+        }
+    }
+
+    @Benchmark
+    public NodeSet descendantsOfRoots(final CorpusState corpus, final BrokerState state, final Context context) {
+        return state.broker.getStructuralIndex().findDescendantsByTagName(ElementValue.ELEMENT, ITEM,
+            Constants.DESCENDANT_AXIS, corpus.docs, context.roots, -1);
+    }
+
+    @Benchmark
+    public NodeSet descendantsOfItems(final CorpusState corpus, final BrokerState state, final Context context) {
+        return state.broker.getStructuralIndex().findDescendantsByTagName(ElementValue.ELEMENT, TAG,
+            Constants.DESCENDANT_AXIS, corpus.docs, context.items, -1);
+    }
+}
@@ -0,0 +1,80 @@
+package org.exist.xquery;
+
+import org.exist.benchmark.BrokerState;
+import org.exist.benchmark.CorpusState;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.DBBroker;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end execution of representative queries against the generated
+ * corpus. Queries are compiled once per thread, so the numbers cover
+ * {@link XQuery#execute(org.exist.storage.DBBroker, CompiledXQuery, Sequence)}
+ * only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XQueryBenchmark {
+
+    private final static String COLLECTION = "collection('" + CorpusState.COLLECTION_URI + "')";
+
+    private final static Map<String, String> QUERIES = new HashMap<>();
+    static {
+        // path expression with an indexed attribute comparison
+        QUERIES.put("path", COLLECTION + "//item[@category = 'c7']/name");
+        // range comparison on an indexed element
+        QUERIES.put("range", COLLECTION + "//item[price > 990]");
+        // unindexed full scan of the text content
+        QUERIES.put("contains", "count(" + COLLECTION + "//item[contains(description, 'journal cache')])");
+        // FLWOR with a filter and sorting
+        QUERIES.put("flwor", "for $i in " + COLLECTION + "//item where $i/price < 50 order by $i/price descending return $i/name/string()");
+        // grouping and aggregation
+        QUERIES.put("groupBy", "for $i in " + COLLECTION + "//item group by $c := $i/@category/string() " +
+            "return <category name='{$c}' count='{count($i)}'>{sum($i/price)}</category>");
+    }
+
+    @State(Scope.Thread)
+    public static class Query {
+
+        @Param({"path", "range", "contains", "flwor", "groupBy"})
+        public String query;
+
+        XQuery service;
+        CompiledXQuery compiled;
+
+        @Setup(Level.Trial)
+        public void compile(final CorpusState corpus) throws Exception {
+            try (final DBBroker broker = corpus.pool.get(Optional.of(corpus.pool.getSecurityManager().getSystemSubject()))) {
+                service = corpus.pool.getXQueryService();
+                final XQueryContext context = new XQueryContext(corpus.pool, AccessContext.TEST);
+                compiled = service.compile(broker, context, QUERIES.get(query));
+            }
+        }
+    }
+
+    @Benchmark
+    public int execute(final BrokerState state, final Query query) throws Exception {
+        final Sequence result = query.service.execute(state.broker, query.compiled, null);
+        return result.getItemCount();
+    }
+}
@@ -72,8 +72,9 @@ public class SystemExportImportTest {
     @Parameters(name = "{0}")
     public static java.util.Collection<Object[]> data() {
         return Arrays.asList(new Object[][]{
-                {"direct", true},
-                {"non-direct", false}
+                {"direct", true, 1},
+                {"non-direct", false, 1},
+                {"parallel", false, 4}
         });
     }
 
@@ -83,6 +84,9 @@ public class SystemExportImportTest {
     @Parameter(value = 1)
     public boolean direct;
 
+    @Parameter(value = 2)
+    public int threads;
+
     private static String COLLECTION_CONFIG =
             "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
         	"	<index>" +
@@ -122,6 +126,7 @@ public class SystemExportImportTest {
             assertNotNull(test);
 
             final SystemExport sysexport = new SystemExport(broker, null, null, direct);
+            sysexport.setThreads(threads);
             file = sysexport.export("backup", false, false, null);
         }
 
@@ -281,6 +281,18 @@ public class BasicNodeSetTest {
         assertEquals(1, result.getLength());
     }
 	
+    @Test
+    public void selectAncestorDescendant_nested() throws XPathException, SAXException, PermissionDeniedException {
+        NodeSet sections = broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT, docs, new QName("section", ""), null);
+        NodeSet paras = broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT, docs, new QName("para", ""), null);
+
+        // every para is found once, although it is a descendant of several sections
+        assertEquals(5, paras.selectAncestorDescendant(sections, NodeSet.DESCENDANT, false, -1, true).getLength());
+        assertEquals(5, paras.selectAncestorDescendant(sections, NodeSet.ANCESTOR, false, -1, true).getLength());
+        assertEquals(5, paras.selectParentChild(sections, NodeSet.DESCENDANT).getLength());
+        assertEquals(3, paras.selectParentChild(sections, NodeSet.ANCESTOR).getLength());
+    }
+
     @Test
     public void testOptimizations() throws XPathException, SAXException, PermissionDeniedException {
             
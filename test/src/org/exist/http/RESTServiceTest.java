@@ -52,6 +52,7 @@ import javax.xml.parsers.SAXParser;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -510,6 +511,57 @@ public class RESTServiceTest {
         readResponse(connect.getInputStream());
     }
 
+    @Test
+    public void queryGetStreamed() throws IOException {
+        final String query = "for $i in 1 to 5000 return <i n='{$i}'>{$i * $i}</i>";
+        final String uri = COLLECTION_URI + "?_query=" + URLEncoder.encode(query, "UTF-8") + "&_wrap=no";
+
+        final String expected = doGetQuery(uri + "&_howmany=0", false);
+        assertEquals(expected, doGetQuery(uri + "&_howmany=0&_stream=yes", true));
+
+        // a range of the results
+        assertEquals(doGetQuery(uri + "&_start=100&_howmany=20", false),
+                doGetQuery(uri + "&_start=100&_howmany=20&_stream=yes", true));
+
+        // not streamable: falls back to the normal serialization
+        final String ordered = COLLECTION_URI + "?_query="
+                + URLEncoder.encode("for $i in 1 to 10 order by -$i return $i", "UTF-8") + "&_wrap=no&_stream=yes";
+        assertEquals(doGetQuery(ordered.replace("&_stream=yes", ""), false), doGetQuery(ordered, false));
+    }
+
+    @Test
+    public void queryGetStreamedStopsAfterHowmany() throws IOException {
+        // the iteration raising the error is never reached
+        final String query = "for $i in 1 to 100 return if ($i = 50) then error(xs:QName('local:late'), 'late') else $i";
+        final String uri = COLLECTION_URI + "?_query=" + URLEncoder.encode(query, "UTF-8")
+                + "&_wrap=no&_stream=yes&_howmany=10";
+        assertEquals("12345678910", doGetQuery(uri, true).replaceAll("\\s", ""));
+    }
+
+    @Test
+    public void queryGetStreamedErrorAfterCommit() throws IOException {
+        final String query = "for $i in 1 to 20000 return if ($i = 19000) then error(xs:QName('local:late'), 'late') "
+                + "else <i n='{$i}'/>";
+        final String uri = COLLECTION_URI + "?_query=" + URLEncoder.encode(query, "UTF-8")
+                + "&_wrap=no&_stream=yes&_howmany=0";
+        final String response = doGetQuery(uri, true);
+        // the output ends with the last item written, no error report is appended
+        assertTrue(response.trim().endsWith("<i n=\"18999\"/>"));
+        assertFalse(response.contains("late"));
+    }
+
+    private String doGetQuery(String uri, boolean chunked) throws IOException {
+        HttpURLConnection connect = getConnection(uri);
+        connect.setRequestMethod("GET");
+        connect.connect();
+
+        int r = connect.getResponseCode();
+        assertEquals("Server returned response code " + r, 200, r);
+        assertEquals(chunked, "chunked".equals(connect.getHeaderField("Transfer-Encoding")));
+
+        return readResponse(connect.getInputStream());
+    }
+
     @Test
     public void requestModule() throws IOException {
         String uri = COLLECTION_URI + "?_query=request:get-uri()&_wrap=no";
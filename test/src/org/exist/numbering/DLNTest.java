@@ -244,6 +244,30 @@ public class DLNTest {
         assertTrue(id0.isSiblingOf(id3));
     }
 
+    @Test
+    public void levelCountAfterUpdate() {
+        DLN dln = new DLN("1.3.1");
+        assertEquals(3, dln.getTreeLevel());
+        dln.addLevelId(1, false);
+        assertEquals(4, dln.getTreeLevel());
+        dln.addLevelId(2, true);
+        assertEquals("1.3.1.1/2", dln.toString());
+        assertEquals(4, dln.getTreeLevel());
+        dln.incrementLevelId();
+        assertEquals(4, dln.getTreeLevel());
+
+        DLN copy = new DLN(dln);
+        assertEquals(4, copy.getTreeLevel());
+        copy.setLevelId(0, 2);
+        assertEquals(1, copy.getTreeLevel());
+        assertEquals(4, dln.getTreeLevel());
+
+        DLN parent = new DLN("1.3.1/1");
+        DLN child = (DLN) parent.newChild();
+        assertEquals(3, parent.getTreeLevel());
+        assertEquals(4, child.getTreeLevel());
+    }
+
     @Test
     public void insertion() {
         DLN left = new DLN("1.1"); 
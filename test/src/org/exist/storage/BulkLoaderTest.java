@@ -0,0 +1,149 @@
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests storing documents with the {@link BulkLoader} and that they survive a restart.
+ */
+public class BulkLoaderTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("bulk-test");
+
+    @Test
+    public void storeAndRestart() throws Exception {
+        BrokerPool pool = startDB();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final BulkLoader loader = new BulkLoader(broker, COLLECTION, 7)) {
+            for (int i = 0; i < 60; i++) {
+                loader.storeXML(XmldbURI.create("doc" + i + ".xml"),
+                        new InputSource(new StringReader("<item n='" + i + "'><v>" + (i % 5) + "</v></item>")));
+                if (i == 30) {
+                    try {
+                        loader.storeXML(XmldbURI.create("broken.xml"), new InputSource(new StringReader("<item>")));
+                        fail("expected a parse error");
+                    } catch (final SAXException e) {
+                        // expected, other documents are not affected
+                    }
+                }
+            }
+            final byte[] data = "binary".getBytes(StandardCharsets.UTF_8);
+            loader.storeBinary(XmldbURI.create("data.bin"), new ByteArrayInputStream(data), "application/octet-stream", data.length);
+            assertEquals(61, loader.getStored());
+        }
+
+        BrokerPool.stopAll(false);
+        pool = startDB();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertEquals("60", query(broker, "count(collection('" + COLLECTION + "')/item)"));
+            assertEquals("12", query(broker, "count(collection('" + COLLECTION + "')/item[v = 3])"));
+            assertEquals("binary", query(broker, "util:binary-to-string(util:binary-doc('" + COLLECTION + "/data.bin'))"));
+        }
+    }
+
+    @Test
+    public void exclusiveWhileLoading() throws Exception {
+        final BrokerPool pool = startDB();
+        final Subject system = pool.getSecurityManager().getSystemSubject();
+        try (final DBBroker broker = pool.get(Optional.of(system))) {
+            try (final BulkLoader loader = new BulkLoader(broker, COLLECTION)) {
+                loader.storeXML(XmldbURI.create("doc.xml"), new InputSource(new StringReader("<item/>")));
+                // other threads have to wait, even if they run as the same user
+                assertNull(tryGetBroker(pool, Optional.of(pool.getSecurityManager().getGuestSubject())));
+                assertNull(tryGetBroker(pool, Optional.of(system)));
+                assertNull(tryGetBroker(pool, Optional.empty()));
+            }
+            assertNotNull(tryGetBroker(pool, Optional.of(pool.getSecurityManager().getGuestSubject())));
+        }
+    }
+
+    @Test
+    public void sharedServiceMode() throws Exception {
+        final BrokerPool pool = startDB();
+        final Subject system = pool.getSecurityManager().getSystemSubject();
+        try (final DBBroker broker = pool.get(Optional.of(system))) {
+            pool.enterServiceMode(system);
+            try {
+                // the service mode user may work from other threads
+                assertNotNull(tryGetBroker(pool, Optional.of(system)));
+                assertNull(tryGetBroker(pool, Optional.of(pool.getSecurityManager().getGuestSubject())));
+                assertNull(tryGetBroker(pool, Optional.empty()));
+            } finally {
+                pool.exitServiceMode(system);
+            }
+        }
+    }
+
+    /**
+     * Try to get a broker from another thread and release it.
+     */
+    private DBBroker tryGetBroker(final BrokerPool pool, final Optional<Subject> subject) throws Exception {
+        final DBBroker[] result = new DBBroker[1];
+        final Thread thread = new Thread(() -> {
+            try (final DBBroker other = pool.tryGet(subject, 500)) {
+                result[0] = other;
+            } catch (final EXistException e) {
+                // ignore, the test fails
+            }
+        });
+        thread.start();
+        thread.join();
+        return result[0];
+    }
+
+    @Test(expected = PermissionDeniedException.class)
+    public void requiresDba() throws Exception {
+        final BrokerPool pool = startDB();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getGuestSubject()))) {
+            new BulkLoader(broker, COLLECTION);
+        }
+    }
+
+    private String query(final DBBroker broker, final String query) throws Exception {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+        return result.getStringValue();
+    }
+
+    private BrokerPool startDB() throws Exception {
+        final Configuration config = new Configuration();
+        BrokerPool.configure(1, 5, config);
+        return BrokerPool.getInstance();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final BrokerPool pool = BrokerPool.getInstance();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getCollection(COLLECTION);
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+            transaction.commit();
+        }
+        BrokerPool.stopAll(false);
+    }
+}
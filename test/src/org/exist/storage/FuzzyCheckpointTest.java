@@ -0,0 +1,102 @@
+package org.exist.storage;
+
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests recovery after a crash following a fuzzy checkpoint, which was written
+ * while a transaction was still running.
+ */
+public class FuzzyCheckpointTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("fuzzy-checkpoint-test");
+
+    @Test
+    public void recoverAfterFuzzyCheckpoint() throws Exception {
+        BrokerPool pool = startDB();
+        assertNotNull(pool.getTransactionManager().getCheckpointWriter());
+
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION);
+                broker.saveCollection(transaction, collection);
+                for (int i = 0; i < 10; i++) {
+                    store(broker, transaction, collection, "doc" + i + ".xml", i);
+                }
+                transact.commit(transaction);
+            }
+
+            // not committed: has to be rolled back although its changes are
+            // written to disk by the checkpoint
+            final Txn uncommitted = transact.beginTransaction();
+            final Collection collection = broker.getCollection(COLLECTION);
+            collection.removeXMLResource(uncommitted, broker, XmldbURI.create("doc0.xml"));
+            store(broker, uncommitted, collection, "doc10.xml", 10);
+
+            assertTrue(transact.fuzzyCheckpoint(broker, () -> {}));
+
+            // committed after the checkpoint: has to be redone
+            try (final Txn transaction = transact.beginTransaction()) {
+                store(broker, transaction, collection, "doc11.xml", 11);
+                transact.commit(transaction);
+            }
+            transact.getJournal().flushToLog(true);
+        }
+
+        BrokerPool.FORCE_CORRUPTION = true;
+        BrokerPool.stopAll(false);
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        pool = startDB();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertEquals("11", query(pool, broker, "count(collection('" + COLLECTION + "')/item)"));
+            assertEquals("1", query(pool, broker, "count(doc('" + COLLECTION + "/doc0.xml'))"));
+            assertEquals("0", query(pool, broker, "count(doc-available('" + COLLECTION + "/doc10.xml')[.])"));
+            assertEquals("item 11", query(pool, broker, "doc('" + COLLECTION + "/doc11.xml')/item/name/string()"));
+        }
+
+        // the background writer is stopped on shutdown
+        assertTrue(pool.triggerFuzzyCheckpoint());
+    }
+
+    private void store(final DBBroker broker, final Txn transaction, final Collection collection, final String name, final int n) throws Exception {
+        final String xml = "<item n='" + n + "'><name>item " + n + "</name></item>";
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml);
+        collection.store(transaction, broker, info, xml, false);
+    }
+
+    private String query(final BrokerPool pool, final DBBroker broker, final String query) throws Exception {
+        final XQuery xquery = pool.getXQueryService();
+        final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+        return result.getStringValue();
+    }
+
+    private BrokerPool startDB() throws Exception {
+        final Configuration config = new Configuration();
+        config.setProperty(TransactionManager.PROPERTY_RECOVERY_FUZZY_CHECKPOINT, Boolean.TRUE);
+        BrokerPool.configure(1, 5, config);
+        return BrokerPool.getInstance();
+    }
+
+    @After
+    public void closeDB() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        BrokerPool.stopAll(false);
+    }
+}
@@ -0,0 +1,167 @@
+package org.exist.storage;
+
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that queries keep finding the documents of a collection while it is
+ * reindexed in online mode. Only the documents being reindexed at the moment,
+ * at most one per reindex thread, may be missing. Documents which are replaced
+ * while the collection is reindexed must keep the index of their new content.
+ */
+public class OnlineReindexTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("online-reindex-test");
+
+    private final static String XCONF =
+            "<collection xmlns='http://exist-db.org/collection-config/1.0'>" +
+            "   <index><create qname='v' type='xs:integer'/></index>" +
+            "</collection>";
+
+    private final static int THREADS = 2;
+
+    private BrokerPool pool;
+
+    @Test
+    public void queryWhileReindexing() throws Exception {
+        pool = startDB(THREADS);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            storeDocuments(broker);
+            assertQueries(broker);
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> reindex = executor.submit(() -> {
+                try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                    for (int i = 0; i < 3; i++) {
+                        broker.reindexCollection(COLLECTION);
+                    }
+                }
+                return null;
+            });
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                do {
+                    assertAtLeast(50 - THREADS, query(broker, "count(collection('" + COLLECTION + "')//item/name)"));
+                    assertAtLeast(10 - THREADS, query(broker, "count(collection('" + COLLECTION + "')//item[v = 3])"));
+                } while (!reindex.isDone());
+                reindex.get(60, TimeUnit.SECONDS);
+                assertQueries(broker);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void replaceWhileReindexing() throws Exception {
+        pool = startDB(THREADS);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            storeDocuments(broker);
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> reindex = executor.submit(() -> {
+                try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                    for (int i = 0; i < 10; i++) {
+                        broker.reindexCollection(COLLECTION);
+                    }
+                }
+                return null;
+            });
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                // removed or replaced documents must not be indexed again
+                int round = 0;
+                do {
+                    replaceDocuments(broker, round++);
+                } while (!reindex.isDone());
+                reindex.get(60, TimeUnit.SECONDS);
+                assertEquals("50", query(broker, "count(collection('" + COLLECTION + "')//item/name)"));
+                assertEquals("25", query(broker, "count(collection('" + COLLECTION + "')//item[v = 7])"));
+                assertEquals("5", query(broker, "count(collection('" + COLLECTION + "')//item[v = 3])"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void replaceDocuments(final DBBroker broker, final int round) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getCollection(COLLECTION);
+            for (int i = 0; i < 25; i++) {
+                final XmldbURI docName = XmldbURI.create("doc" + i + ".xml");
+                final String xml = "<item n='" + i + "' round='" + round + "'><v>7</v><name>item " + i + "</name></item>";
+                collection.removeXMLResource(transaction, broker, docName);
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, docName, xml);
+                collection.store(transaction, broker, info, xml, false);
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    private void storeDocuments(final DBBroker broker) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+        try (final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION);
+            broker.saveCollection(transaction, collection);
+            mgr.addConfiguration(transaction, broker, collection, XCONF);
+            for (int i = 0; i < 50; i++) {
+                final String xml = "<item n='" + i + "'><v>" + (i % 5) + "</v><name>item " + i + "</name></item>";
+                final XmldbURI docName = XmldbURI.create("doc" + i + ".xml");
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, docName, xml);
+                collection.store(transaction, broker, info, xml, false);
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    private void assertQueries(final DBBroker broker) throws Exception {
+        assertEquals("50", query(broker, "count(collection('" + COLLECTION + "')//item/name)"));
+        assertEquals("10", query(broker, "count(collection('" + COLLECTION + "')//item[v = 3])"));
+    }
+
+    private void assertAtLeast(final int expected, final String count) {
+        assertTrue("expected at least " + expected + " but was " + count, Integer.parseInt(count) >= expected);
+    }
+
+    private String query(final DBBroker broker, final String query) throws Exception {
+        final XQuery xquery = pool.getXQueryService();
+        final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+        return result.getStringValue();
+    }
+
+    private BrokerPool startDB(final int threads) throws Exception {
+        final Configuration config = new Configuration();
+        config.setProperty(NativeBroker.PROPERTY_ONLINE_REINDEX, Boolean.TRUE);
+        config.setProperty(NativeBroker.PROPERTY_REINDEX_THREADS, threads);
+        BrokerPool.configure(1, 5, config);
+        return BrokerPool.getInstance();
+    }
+
+    @After
+    public void closeDB() {
+        BrokerPool.stopAll(false);
+    }
+}
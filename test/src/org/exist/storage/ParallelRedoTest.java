@@ -0,0 +1,97 @@
+package org.exist.storage;
+
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests crash recovery with several redo threads. The journal contains
+ * changes to the DOM file, the collection store and the range index.
+ */
+public class ParallelRedoTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("parallel-redo-test");
+
+    private final static String XCONF =
+            "<collection xmlns='http://exist-db.org/collection-config/1.0'>" +
+            "   <index><create qname='v' type='xs:integer'/></index>" +
+            "</collection>";
+
+    @Test
+    public void recover() throws Exception {
+        BrokerPool pool = startDB();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            try (final Txn transaction = transact.beginTransaction()) {
+                for (int c = 0; c < 3; c++) {
+                    final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION.append("c" + c));
+                    broker.saveCollection(transaction, collection);
+                    mgr.addConfiguration(transaction, broker, collection, XCONF);
+                    for (int i = 0; i < 50; i++) {
+                        store(broker, transaction, collection, "doc" + i + ".xml", i);
+                    }
+                }
+                transact.commit(transaction);
+            }
+
+            // not committed: has to be rolled back
+            final Txn uncommitted = transact.beginTransaction();
+            final Collection collection = broker.getCollection(COLLECTION.append("c0"));
+            collection.removeXMLResource(uncommitted, broker, XmldbURI.create("doc0.xml"));
+            store(broker, uncommitted, collection, "doc50.xml", 50);
+            transact.getJournal().flushToLog(true);
+        }
+
+        BrokerPool.FORCE_CORRUPTION = true;
+        BrokerPool.stopAll(false);
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        pool = startDB();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertEquals("150", query(pool, broker, "count(collection('" + COLLECTION + "')//item/name)"));
+            assertEquals("30", query(pool, broker, "count(collection('" + COLLECTION + "')//item[v = 3])"));
+            assertEquals("1", query(pool, broker, "count(doc('" + COLLECTION + "/c0/doc0.xml'))"));
+            assertEquals("0", query(pool, broker, "count(doc-available('" + COLLECTION + "/c0/doc50.xml')[.])"));
+            assertEquals("item 49", query(pool, broker, "doc('" + COLLECTION + "/c2/doc49.xml')/item/name/string()"));
+        }
+    }
+
+    private void store(final DBBroker broker, final Txn transaction, final Collection collection, final String name, final int n) throws Exception {
+        final String xml = "<item n='" + n + "'><v>" + (n % 5) + "</v><name>item " + n + "</name></item>";
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml);
+        collection.store(transaction, broker, info, xml, false);
+    }
+
+    private String query(final BrokerPool pool, final DBBroker broker, final String query) throws Exception {
+        final XQuery xquery = pool.getXQueryService();
+        final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+        return result.getStringValue();
+    }
+
+    private BrokerPool startDB() throws Exception {
+        final Configuration config = new Configuration();
+        config.setProperty(TransactionManager.PROPERTY_RECOVERY_REDO_THREADS, 4);
+        BrokerPool.configure(1, 5, config);
+        return BrokerPool.getInstance();
+    }
+
+    @After
+    public void closeDB() {
+        BrokerPool.FORCE_CORRUPTION = false;
+        BrokerPool.stopAll(false);
+    }
+}
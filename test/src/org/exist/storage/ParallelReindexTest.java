@@ -0,0 +1,101 @@
+package org.exist.storage;
+
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.security.xacml.AccessContext;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that reindexing a collection tree with several threads rebuilds
+ * the structural and range indexes of all documents.
+ */
+public class ParallelReindexTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("reindex-test");
+
+    private final static String XCONF =
+            "<collection xmlns='http://exist-db.org/collection-config/1.0'>" +
+            "   <index><create qname='v' type='xs:integer'/></index>" +
+            "</collection>";
+
+    private BrokerPool pool;
+
+    @Test
+    public void reindex() throws Exception {
+        pool = startDB(4);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            storeDocuments(broker);
+            assertQueries(broker);
+
+            broker.reindexCollection(COLLECTION);
+            assertQueries(broker);
+            assertEquals(0, pool.getProcessMonitor().runningJobs().length);
+        }
+
+        // the configuration documents are reindexed as well
+        BrokerPool.stopAll(false);
+        pool = startDB(4);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            broker.reindexCollection(XmldbURI.ROOT_COLLECTION_URI);
+            assertQueries(broker);
+        }
+    }
+
+    private void storeDocuments(final DBBroker broker) throws Exception {
+        final TransactionManager transact = pool.getTransactionManager();
+        final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+        try (final Txn transaction = transact.beginTransaction()) {
+            for (int c = 0; c < 3; c++) {
+                final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION.append("c" + c));
+                broker.saveCollection(transaction, collection);
+                mgr.addConfiguration(transaction, broker, collection, XCONF);
+                for (int i = 0; i < 20; i++) {
+                    final String xml = "<item n='" + i + "'><v>" + (i % 5) + "</v><name>item " + i + "</name></item>";
+                    final XmldbURI docName = XmldbURI.create("doc" + i + ".xml");
+                    final IndexInfo info = collection.validateXMLResource(transaction, broker, docName, xml);
+                    collection.store(transaction, broker, info, xml, false);
+                }
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    private void assertQueries(final DBBroker broker) throws Exception {
+        assertEquals("60", query(broker, "count(collection('" + COLLECTION + "')//item/name)"));
+        assertEquals("12", query(broker, "count(collection('" + COLLECTION + "')//item[v = 3])"));
+        assertEquals("4", query(broker, "count(collection('" + COLLECTION + "/c1')//item[v = 3])"));
+        assertEquals("24", query(broker, "count(collection('" + COLLECTION + "')//item[@n < 8])"));
+    }
+
+    private String query(final DBBroker broker, final String query) throws Exception {
+        final XQuery xquery = pool.getXQueryService();
+        final Sequence result = xquery.execute(broker, query, null, AccessContext.TEST);
+        return result.getStringValue();
+    }
+
+    private BrokerPool startDB(final int threads) throws Exception {
+        final Configuration config = new Configuration();
+        config.setProperty(NativeBroker.PROPERTY_REINDEX_THREADS, threads);
+        BrokerPool.configure(1, 5, config);
+        return BrokerPool.getInstance();
+    }
+
+    @After
+    public void closeDB() {
+        BrokerPool.stopAll(false);
+    }
+}
@@ -0,0 +1,142 @@
+package org.exist.storage;
+
+import org.exist.backup.ErrorReport;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.storage.btree.PageStore;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.dom.DOMFile;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.util.ByteConversion;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the scrubber on a database with page checksums enabled.
+ */
+public class ScrubberTaskTest {
+
+    private final static XmldbURI COLLECTION = XmldbURI.ROOT_COLLECTION_URI.append("scrubber-test");
+
+    private BrokerPool pool;
+
+    @Test
+    public void checkAll() throws Exception {
+        final ScrubberTask task = createTask(100000, 10);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final long documents = task.getCheckedDocuments();
+            while (task.getDocumentRounds() == 0) {
+                task.execute(broker);
+            }
+            assertTrue(task.getCheckedDocuments() - documents >= 30);
+            assertTrue(task.getPageRounds() > 0);
+            assertTrue(task.getCheckedPages() > 0);
+            assertEquals(0, task.getErrorCount());
+            assertEquals(0, task.getChecksumErrors());
+        }
+    }
+
+    @Test
+    public void skipLargeDocuments() throws Exception {
+        final ScrubberTask task = createTask(0, 100);
+        final ScrubberTask skipping = createTask(0, 100);
+        final Properties properties = new Properties();
+        properties.setProperty(ScrubberTask.DOCUMENT_PAGES_PROP_NAME, "0");
+        skipping.configure(pool.getConfiguration(), properties);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            task.execute(broker);
+            assertEquals(0, task.getSkippedDocuments());
+
+            skipping.execute(broker);
+            assertTrue(skipping.getSkippedDocuments() >= 30);
+            assertEquals(0, skipping.getErrorCount());
+        }
+    }
+
+    @Test
+    public void detectCorruptedPage() throws Exception {
+        final ScrubberTask task = createTask(100000, 0);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            pool.sync(broker, Sync.MAJOR_SYNC);
+
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            final int pageSize = domDb.getFileHeader().getPageSize();
+            try (final RandomAccessFile raf = new RandomAccessFile(domDb.getFile().toFile(), "rw")) {
+                // find a page written with checksum
+                long offset = 0;
+                for (long page = domDb.getTotalPageCount() - 1; page >= 0; page--) {
+                    final byte[] header = new byte[Paged.LENGTH_PAGE_CHECKSUM];
+                    raf.seek(pageSize * (page + 1) + domDb.getFileHeader().getPageHeaderSize() - Paged.LENGTH_PAGE_CHECKSUM);
+                    raf.readFully(header);
+                    if (ByteConversion.byteToInt(header, 0) != 0) {
+                        offset = pageSize * (page + 2) - 1;
+                        break;
+                    }
+                }
+                assertTrue(offset > 0);
+
+                raf.seek(offset);
+                final int original = raf.read();
+                raf.seek(offset);
+                raf.write(original ^ 0xFF);
+                try {
+                    task.execute(broker);
+                } finally {
+                    raf.seek(offset);
+                    raf.write(original);
+                }
+            }
+            assertEquals(1, task.getErrorCount());
+            assertEquals(ErrorReport.PAGE_CORRUPTED, task.getErrors().get(0).getErrcode());
+            assertEquals(1, task.getChecksumErrors());
+        }
+    }
+
+    private ScrubberTask createTask(final int pages, final int documents) throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(ScrubberTask.PAGES_PROP_NAME, Integer.toString(pages));
+        properties.setProperty(ScrubberTask.DOCUMENTS_PROP_NAME, Integer.toString(documents));
+        final ScrubberTask task = new ScrubberTask();
+        task.configure(pool.getConfiguration(), properties);
+        return task;
+    }
+
+    @Before
+    public void startDB() throws Exception {
+        final Configuration config = new Configuration();
+        config.setProperty(PageStore.PROPERTY_CHECKSUMS, Boolean.TRUE);
+        BrokerPool.configure(1, 5, config);
+        pool = BrokerPool.getInstance();
+
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION);
+            broker.saveCollection(transaction, collection);
+            for (int i = 0; i < 30; i++) {
+                final String xml = "<item n='" + i + "'><name>item " + i + "</name></item>";
+                final XmldbURI docName = XmldbURI.create("doc" + i + ".xml");
+                final IndexInfo info = collection.validateXMLResource(transaction, broker, docName, xml);
+                collection.store(transaction, broker, info, xml, false);
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    @After
+    public void closeDB() {
+        BrokerPool.stopAll(false);
+    }
+}
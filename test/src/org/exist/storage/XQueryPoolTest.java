@@ -0,0 +1,153 @@
+package org.exist.storage;
+
+import org.exist.security.xacml.AccessContext;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.util.Configuration;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests eviction, statistics and concurrent use of the {@link XQueryPool}.
+ */
+public class XQueryPoolTest {
+
+    private BrokerPool brokerPool;
+    private DBBroker broker;
+
+    @Before
+    public void setUp() throws Exception {
+        final Configuration configuration = new Configuration();
+        BrokerPool.configure("exist", 1, 1, configuration);
+        brokerPool = BrokerPool.getInstance("exist");
+        broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+    }
+
+    @After
+    public void tearDown() {
+        if (broker != null) {
+            broker.close();
+        }
+        BrokerPool.stopAll(false);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        final XQueryPool pool = createPool(2, 5);
+        final Source first = new StringSource("1");
+        final Source second = new StringSource("2");
+        final Source third = new StringSource("3");
+        final CompiledXQuery compiledFirst = compile(first);
+        pool.returnCompiledXQuery(first, compiledFirst);
+        Thread.sleep(5);
+        pool.returnCompiledXQuery(second, compile(second));
+        Thread.sleep(5);
+        // use the first query again, so the second one becomes the oldest
+        assertSame(compiledFirst, pool.borrowCompiledXQuery(broker, first));
+        pool.returnCompiledXQuery(first, compiledFirst);
+        Thread.sleep(5);
+
+        pool.returnCompiledXQuery(third, compile(third));
+        assertEquals(2, pool.getSize());
+        assertEquals(1, pool.getEvictions());
+        assertNull(pool.borrowCompiledXQuery(broker, new StringSource("2")));
+        assertNotNull(pool.borrowCompiledXQuery(broker, new StringSource("1")));
+        assertNotNull(pool.borrowCompiledXQuery(broker, new StringSource("3")));
+    }
+
+    @Test
+    public void statistics() throws Exception {
+        final XQueryPool pool = createPool(10, 2);
+        final Source source = new StringSource("1 + 1");
+        assertNull(pool.borrowCompiledXQuery(broker, source));
+        pool.returnCompiledXQuery(source, compile(source));
+        pool.returnCompiledXQuery(source, compile(source));
+        // exceeds the stack size
+        pool.returnCompiledXQuery(source, compile(source));
+        assertEquals(1, pool.getSize());
+        assertEquals(2, pool.getCompiledCount());
+
+        assertNotNull(pool.borrowCompiledXQuery(broker, source));
+        assertNotNull(pool.borrowCompiledXQuery(broker, source));
+        assertNull(pool.borrowCompiledXQuery(broker, source));
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getMisses());
+
+        // compilations are reported to the pool of the database
+        final long compilations = brokerPool.getXQueryPool().getCompilations();
+        compile(source);
+        assertEquals(compilations + 1, brokerPool.getXQueryPool().getCompilations());
+    }
+
+    @Test
+    public void concurrentBorrow() throws Exception {
+        final XQueryPool pool = createPool(10, 4);
+        final Source source = new StringSource("1 to 10");
+        for (int i = 0; i < 4; i++) {
+            pool.returnCompiledXQuery(source, compile(source));
+        }
+        final Set<CompiledXQuery> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        final CompiledXQuery query = pool.borrowCompiledXQuery(broker, source);
+                        if (query != null) {
+                            synchronized (inUse) {
+                                assertTrue("query borrowed twice", inUse.add(query));
+                            }
+                            synchronized (inUse) {
+                                inUse.remove(query);
+                            }
+                            pool.returnCompiledXQuery(source, query);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(4, pool.getCompiledCount());
+        assertEquals(16000, pool.getHits() + pool.getMisses());
+    }
+
+    private XQueryPool createPool(final int size, final int stackSize) throws Exception {
+        final Configuration configuration = new Configuration();
+        configuration.setProperty(XQueryPool.PROPERTY_POOL_SIZE, size);
+        configuration.setProperty(XQueryPool.PROPERTY_MAX_STACK_SIZE, stackSize);
+        return new XQueryPool(configuration);
+    }
+
+    private CompiledXQuery compile(final Source source) throws Exception {
+        final XQuery xquery = brokerPool.getXQueryService();
+        final XQueryContext context = new XQueryContext(brokerPool, AccessContext.TEST);
+        return xquery.compile(broker, context, source);
+    }
+}
@@ -0,0 +1,144 @@
+package org.exist.storage.btree;
+
+import org.exist.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@link MappedPageStore} against files which grow while mapped.
+ */
+public class MappedPageStoreTest {
+
+    private static final int REGION_SIZE = 1024;
+    private static final int PAGE_SIZE = 100;
+
+    private Path file;
+
+    @Test
+    public void readAfterGrow() throws IOException {
+        final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), REGION_SIZE);
+        try {
+            // pages are not aligned to region boundaries, so some span two regions
+            for (int i = 0; i < 50; i++) {
+                store.write((long) i * PAGE_SIZE, page(i));
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(page(i), buf);
+            }
+            for (int i = 0; i < 50; i++) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(page(i), buf);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void overwriteIsVisible() throws IOException {
+        final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), REGION_SIZE);
+        try {
+            store.write(0, page(1));
+            final byte[] buf = new byte[PAGE_SIZE];
+            store.read(0, buf, 0, PAGE_SIZE);
+            assertArrayEquals(page(1), buf);
+
+            store.write(0, page(2));
+            store.read(0, buf, 0, PAGE_SIZE);
+            assertArrayEquals(page(2), buf);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void readBeyondEndOfFile() throws IOException {
+        final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), REGION_SIZE);
+        try {
+            store.write(0, page(7));
+            final byte[] buf = new byte[PAGE_SIZE * 2];
+            Arrays.fill(buf, (byte) 0xff);
+            store.read(0, buf, 0, buf.length);
+
+            final byte[] expected = new byte[PAGE_SIZE * 2];
+            System.arraycopy(page(7), 0, expected, 0, PAGE_SIZE);
+            assertArrayEquals(expected, buf);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sameContentsAsRandomAccess() throws IOException {
+        final RandomAccessPageStore raStore = new RandomAccessPageStore(new RandomAccessFile(file.toFile(), "rw"));
+        try {
+            for (int i = 0; i < 30; i++) {
+                raStore.write((long) i * PAGE_SIZE, page(i));
+            }
+        } finally {
+            raStore.close();
+        }
+
+        final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "r"), REGION_SIZE);
+        try {
+            for (int i = 29; i >= 0; i--) {
+                final byte[] buf = new byte[PAGE_SIZE];
+                store.read((long) i * PAGE_SIZE, buf, 0, PAGE_SIZE);
+                assertArrayEquals(page(i), buf);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void closeUnmapsRegions() throws IOException {
+        final Path maps = Paths.get("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps));
+
+        final MappedPageStore store = new MappedPageStore(new RandomAccessFile(file.toFile(), "rw"), REGION_SIZE);
+        // grow the file while mapped, so partial regions are replaced
+        for (int i = 0; i < 30; i++) {
+            store.write((long) i * PAGE_SIZE, page(i));
+            store.read((long) i * PAGE_SIZE, new byte[PAGE_SIZE], 0, PAGE_SIZE);
+        }
+        final String fileName = file.toRealPath().toString();
+        assertTrue(new String(Files.readAllBytes(maps), UTF_8).contains(fileName));
+
+        store.close();
+        assertFalse(new String(Files.readAllBytes(maps), UTF_8).contains(fileName));
+    }
+
+    private static byte[] page(final int pageNum) {
+        final byte[] data = new byte[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            data[i] = (byte) (pageNum * 31 + i);
+        }
+        return data;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("paged", ".dbx");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+}
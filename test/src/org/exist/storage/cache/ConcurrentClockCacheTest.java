@@ -0,0 +1,208 @@
+package org.exist.storage.cache;
+
+import org.exist.storage.CacheManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link ConcurrentClockCache} and {@link BTreeConcurrentCache}.
+ */
+public class ConcurrentClockCacheTest {
+
+    @Test
+    public void addAndGet() {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(64, 0.0, 1.0, CacheManager.DATA_CACHE, 4);
+        final Page page = new Page(1, false);
+        cache.add(page);
+        assertSame(page, cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getFails());
+
+        cache.remove(page);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void evictionSyncsReplacedPages() {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(32, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        final List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Page page = new Page(i, false);
+            page.dirty = true;
+            pages.add(page);
+            cache.add(page);
+        }
+        assertEquals(32, cache.getUsedBuffers());
+        int synced = 0;
+        for (final Page page : pages) {
+            if (cache.get(page.getKey()) == null) {
+                assertFalse("evicted page must be written", page.dirty);
+                synced++;
+            }
+        }
+        assertEquals(68, synced);
+    }
+
+    @Test
+    public void referencedPagesSurvive() {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(16, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        final Page hot = new Page(0, false);
+        cache.add(hot);
+        for (int i = 1; i < 200; i++) {
+            assertNotNull(cache.get(hot.getKey()));
+            cache.add(new Page(i, false));
+        }
+        assertSame(hot, cache.get(hot.getKey()));
+    }
+
+    @Test
+    public void pinnedPagesAreNotEvicted() {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(16, 0.0, 1.0, CacheManager.DATA_CACHE, 1);
+        final Page pinned = new Page(0, false);
+        pinned.unloadable = false;
+        cache.add(pinned);
+        for (int i = 1; i < 100; i++) {
+            cache.add(new Page(i, false));
+        }
+        assertSame(pinned, cache.get(0));
+    }
+
+    @Test
+    public void innerPagesArePreferred() {
+        final BTreeConcurrentCache cache = new BTreeConcurrentCache(16, 0.0, 1.0, CacheManager.BTREE_CACHE, 1);
+        for (int i = 0; i < 4; i++) {
+            cache.add(new Page(i, true));
+        }
+        for (int i = 4; i < 100; i++) {
+            cache.add(new Page(i, false));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertNotNull("inner page " + i + " was evicted", cache.get(i));
+        }
+    }
+
+    @Test
+    public void resizeKeepsPages() {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(32, 1.5, 0.0, CacheManager.DATA_CACHE, 8);
+        for (int i = 0; i < 32; i++) {
+            cache.add(new Page(i, false));
+        }
+        final int shards = cache.getShardCount();
+        cache.resize(1024);
+        assertEquals(1024, cache.getBuffers());
+        assertTrue(cache.getShardCount() > shards);
+        for (int i = 0; i < 32; i++) {
+            assertNotNull(cache.get(i));
+        }
+
+        cache.resize(16);
+        assertTrue(cache.getUsedBuffers() <= 16);
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final ConcurrentClockCache cache = new ConcurrentClockCache(256, 0.0, 1.0, CacheManager.DATA_CACHE, 8);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20000; i++) {
+                        final long key = random.nextInt(1024);
+                        final Cacheable cached = cache.get(key);
+                        if (cached == null) {
+                            cache.add(new Page(key, false));
+                        } else {
+                            assertEquals(key, cached.getKey());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.getUsedBuffers() <= 256);
+    }
+
+    private static class Page implements BTreeCacheable {
+
+        private final long key;
+        private final boolean inner;
+        private int refCount = 0;
+        private int timestamp = 0;
+        volatile boolean dirty = false;
+        volatile boolean unloadable = true;
+
+        Page(long key, boolean inner) {
+            this.key = key;
+            this.inner = inner;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        public int decReferenceCount() {
+            return refCount > 0 ? --refCount : 0;
+        }
+
+        public void setReferenceCount(int count) {
+            refCount = count;
+        }
+
+        public void setTimestamp(int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean sync(boolean syncJournal) {
+            final boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        public boolean allowUnload() {
+            return unloadable;
+        }
+
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        public boolean isInnerPage() {
+            return inner;
+        }
+    }
+}
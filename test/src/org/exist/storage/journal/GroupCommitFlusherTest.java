@@ -0,0 +1,77 @@
+package org.exist.storage.journal;
+
+import org.easymock.EasyMockSupport;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupCommitFlusherTest extends EasyMockSupport {
+
+    @Test
+    public void concurrentCommitsShareSyncs() throws InterruptedException {
+        final int COMMITS = 50;
+
+        final AtomicLong writtenLsn = new AtomicLong(0);
+        final AtomicInteger syncs = new AtomicInteger(0);
+        final Journal mockJournal = createMock(Journal.class);
+        expect(mockJournal.flushAndSync()).andAnswer(() -> {
+            syncs.incrementAndGet();
+            return writtenLsn.get();
+        }).anyTimes();
+        replay(mockJournal);
+
+        final GroupCommitFlusher flusher = new GroupCommitFlusher(mockJournal, 50, COMMITS);
+        flusher.start();
+
+        final CountDownLatch done = new CountDownLatch(COMMITS);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < COMMITS; i++) {
+            final Thread thread = new Thread(() -> {
+                flusher.awaitFlush(writtenLsn.incrementAndGet());
+                done.countDown();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        assertTrue("all commits should have been flushed", done.await(10, TimeUnit.SECONDS));
+        assertTrue("commits should have been grouped", syncs.get() < COMMITS);
+        assertEquals(COMMITS, flusher.getCommitCount());
+        assertTrue(flusher.getLargestBatchSize() > 1);
+
+        flusher.shutdown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        verify(mockJournal);
+    }
+
+    @Test
+    public void alreadySyncedDoesNotWait() throws InterruptedException {
+        final Journal mockJournal = createMock(Journal.class);
+        expect(mockJournal.flushAndSync()).andReturn(10L).anyTimes();
+        replay(mockJournal);
+
+        final GroupCommitFlusher flusher = new GroupCommitFlusher(mockJournal, 0, 1);
+        flusher.start();
+
+        flusher.awaitFlush(5);
+        flusher.awaitFlush(10);
+        assertEquals(1, flusher.getBatchCount());
+
+        flusher.awaitFlush(3);
+        assertEquals(1, flusher.getBatchCount());
+
+        flusher.shutdown();
+        verify(mockJournal);
+    }
+}
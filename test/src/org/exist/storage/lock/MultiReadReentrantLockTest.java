@@ -0,0 +1,160 @@
+package org.exist.storage.lock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests mutual exclusion and reentrancy of {@link MultiReadReentrantLock},
+ * in particular the interaction of the unsynchronized read path with writers.
+ */
+public class MultiReadReentrantLockTest {
+
+    @Test
+    public void reentrant() throws Exception {
+        final MultiReadReentrantLock lock = new MultiReadReentrantLock("test");
+        final Thread self = Thread.currentThread();
+
+        assertTrue(lock.acquire(Lock.READ_LOCK));
+        assertTrue(lock.acquire(Lock.READ_LOCK));
+        assertTrue(lock.isLockedForRead(self));
+        // upgrade: the only reader may acquire the write lock
+        assertTrue(lock.acquire(Lock.WRITE_LOCK));
+        assertTrue(lock.acquire(Lock.READ_LOCK));
+        assertTrue(lock.isLockedForWrite());
+
+        lock.release(Lock.READ_LOCK);
+        lock.release(Lock.WRITE_LOCK);
+        assertFalse(lock.isLockedForWrite());
+        lock.release(Lock.READ_LOCK, 2);
+        assertFalse(lock.isLockedForRead(self));
+        assertFalse(lock.hasLock());
+    }
+
+    @Test
+    public void attemptWriteWhileRead() throws Exception {
+        final MultiReadReentrantLock lock = new MultiReadReentrantLock("test");
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread reader = new Thread(() -> {
+            try {
+                lock.acquire(Lock.READ_LOCK);
+                locked.countDown();
+                done.await();
+                lock.release(Lock.READ_LOCK);
+            } catch (final Exception e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+        locked.await();
+
+        assertFalse(lock.attempt(Lock.WRITE_LOCK));
+        // a failed attempt must not block further readers
+        assertTrue(lock.attempt(Lock.READ_LOCK));
+        lock.release(Lock.READ_LOCK);
+
+        done.countDown();
+        reader.join();
+        assertTrue(lock.attempt(Lock.WRITE_LOCK));
+        lock.release(Lock.WRITE_LOCK);
+        assertFalse(lock.hasLock());
+    }
+
+    @Test
+    public void readersAndWriters() throws Exception {
+        final MultiReadReentrantLock lock = new MultiReadReentrantLock("test");
+        final AtomicInteger readers = new AtomicInteger();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final int[] counter = new int[1];
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final boolean writer = t < 2;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        if (writer) {
+                            lock.acquire(Lock.WRITE_LOCK);
+                            try {
+                                if (writers.incrementAndGet() != 1 || readers.get() != 0) {
+                                    violations.incrementAndGet();
+                                }
+                                counter[0]++;
+                                writers.decrementAndGet();
+                            } finally {
+                                lock.release(Lock.WRITE_LOCK);
+                            }
+                        } else {
+                            lock.acquire(Lock.READ_LOCK);
+                            try {
+                                readers.incrementAndGet();
+                                if (writers.get() != 0) {
+                                    violations.incrementAndGet();
+                                }
+                                readers.decrementAndGet();
+                            } finally {
+                                lock.release(Lock.READ_LOCK);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(120, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, violations.get());
+        assertEquals(4000, counter[0]);
+        assertFalse(lock.hasLock());
+    }
+
+    @Test(timeout = 60000)
+    public void contendedReadLock() throws Exception {
+        final MultiReadReentrantLock lock = new MultiReadReentrantLock("test");
+        final long contended = MultiReadReentrantLock.getContendedLocks();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger acquired = new AtomicInteger();
+
+        assertTrue(lock.acquire(Lock.WRITE_LOCK));
+        final Thread reader = new Thread(() -> {
+            try {
+                started.countDown();
+                lock.acquire(Lock.READ_LOCK);
+                acquired.incrementAndGet();
+                lock.release(Lock.READ_LOCK);
+            } catch (final Exception e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+        started.await();
+        // the reader blocks until the write lock is released
+        while (reader.getState() != Thread.State.WAITING && reader.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, acquired.get());
+        assertTrue(MultiReadReentrantLock.getContendedLocks() > contended);
+
+        lock.release(Lock.WRITE_LOCK);
+        reader.join();
+        assertEquals(1, acquired.get());
+        assertFalse(lock.hasLock());
+    }
+}
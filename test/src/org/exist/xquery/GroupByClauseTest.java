@@ -0,0 +1,171 @@
+package org.exist.xquery;
+
+import org.exist.storage.BrokerPool;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceIterator;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XPathQueryService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests aggregates computed by the group by clause and grouping with
+ * groups written to temporary files.
+ */
+public class GroupByClauseTest {
+
+    private final static String URI = XmldbURI.LOCAL_DB;
+    private final static String DRIVER = "org.exist.xmldb.DatabaseImpl";
+
+    private final static String ITEMS = "doc('/db/groupby-test/items.xml')//item";
+
+    private static Collection testCollection;
+    private static XPathQueryService service;
+
+    @Test
+    public void countMinMax() throws Exception {
+        assertSameResult(
+                "for $i in " + ITEMS + " group by $c := $i/@cat order by $c " +
+                "return <g c='{$c}' n='{count($i)}' min='{min($i/@price)}' max='{max($i/@price)}'/>",
+                "for $c in distinct-values(" + ITEMS + "/@cat) order by $c " +
+                "let $i := " + ITEMS + "[@cat = $c] " +
+                "return <g c='{$c}' n='{count($i)}' min='{min($i/@price)}' max='{max($i/@price)}'/>");
+    }
+
+    @Test
+    public void sumInOrderBy() throws Exception {
+        assertSameResult(
+                "for $i in " + ITEMS + " let $p := xs:integer($i/@price) group by $c := $i/@cat " +
+                "order by sum($p) descending return concat($c, ':', sum($p), ':', count($p))",
+                "for $c in distinct-values(" + ITEMS + "/@cat) " +
+                "let $p := for $i in " + ITEMS + "[@cat = $c] return xs:integer($i/@price) " +
+                "order by sum($p) descending return concat($c, ':', sum($p), ':', count($p))");
+    }
+
+    @Test
+    public void variableUsedOutsideAggregate() throws Exception {
+        assertSameResult(
+                "for $i in " + ITEMS + " group by $c := $i/@cat order by $c " +
+                "return concat($c, ':', count($i), ':', string-join($i/@price, ','))",
+                "for $c in distinct-values(" + ITEMS + "/@cat) order by $c " +
+                "let $i := " + ITEMS + "[@cat = $c] " +
+                "return concat($c, ':', count($i), ':', string-join($i/@price, ','))");
+    }
+
+    @Test
+    public void shadowedVariable() throws Exception {
+        assertSameResult(
+                "for $i in " + ITEMS + " group by $c := $i/@cat order by $c " +
+                "return (string($c), for $i in (1, 2) return count($i), count($i))",
+                "for $c in distinct-values(" + ITEMS + "/@cat) order by $c " +
+                "return ($c, 1, 1, count(" + ITEMS + "[@cat = $c]))");
+    }
+
+    @Test
+    public void emptyAggregates() throws Exception {
+        assertSameResult(
+                "for $i in " + ITEMS + " let $m := $i/@missing group by $c := $i/@cat order by $c " +
+                "return concat($c, ':', count($m), ':', sum($m), ':', empty(min($m)))",
+                "for $c in distinct-values(" + ITEMS + "/@cat) order by $c return concat($c, ':0:0:true')");
+    }
+
+    @Test
+    public void atomicValues() throws Exception {
+        assertSameResult(
+                "for $x in 1 to 500 let $d := $x div 4 let $s := 'v' || $x " +
+                "group by $k := $x mod 13, $t := xs:date('2015-01-01') + xs:dayTimeDuration('P' || ($x mod 2) || 'D') " +
+                "order by $k, $t " +
+                "return string-join(($k, $t, sum($d), min($d), max($d), count($d), string-join($s, ' ')), '|')",
+                "for $k in 0 to 12 for $m in (0, 1) " +
+                "let $x := (1 to 500)[. mod 13 = $k][. mod 2 = $m] " +
+                "let $d := for $y in $x return $y div 4 " +
+                "let $t := xs:date('2015-01-01') + xs:dayTimeDuration('P' || $m || 'D') " +
+                "return string-join(($k, $t, sum($d), min($d), max($d), count($d), " +
+                "string-join(for $y in $x return 'v' || $y, ' ')), '|')");
+    }
+
+    @Test
+    public void constructedNodes() throws Exception {
+        assertSameResult(
+                "for $x in 1 to 300 let $e := <e>{$x}</e> group by $k := $x mod 7 order by $k " +
+                "return ($k, count($e), string-join($e, ','))",
+                "for $k in 0 to 6 let $e := (1 to 300)[. mod 7 = $k] " +
+                "return ($k, count($e), string-join(for $y in $e return string($y), ','))");
+    }
+
+    private void assertSameResult(final String query, final String expectedQuery) throws Exception {
+        final String expected = execute(expectedQuery);
+        assertTrue(expected.length() > 0);
+        assertEquals(expected, execute(query));
+
+        // force the groups to be written to disk
+        setSpillThreshold(20L);
+        assertEquals(expected, execute(query));
+    }
+
+    private String execute(final String query) throws Exception {
+        final ResourceSet result = service.query(query);
+        final StringBuilder builder = new StringBuilder();
+        for (final ResourceIterator i = result.getIterator(); i.hasMoreResources(); ) {
+            builder.append(i.nextResource().getContent()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void setSpillThreshold(final Long threshold) throws Exception {
+        BrokerPool.getInstance().getConfiguration().setProperty(GroupByClause.PROPERTY_GROUPBY_SPILL_THRESHOLD, threshold);
+    }
+
+    @After
+    public void resetSpillThreshold() throws Exception {
+        setSpillThreshold(0L);
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final Database database = (Database) Class.forName(DRIVER).newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+        final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = cms.createCollection("groupby-test");
+        assertNotNull(testCollection);
+
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 500; i++) {
+            xml.append("<item cat='c").append(i % 7).append("' price='").append((i * 37) % 101).append("'/>");
+        }
+        xml.append("</items>");
+        final XMLResource doc = (XMLResource) testCollection.createResource("items.xml", "XMLResource");
+        doc.setContent(xml.toString());
+        testCollection.storeResource(doc);
+
+        service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        if (testCollection != null) {
+            final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+            final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+            cms.removeCollection("groupby-test");
+            final DatabaseInstanceManager dim = (DatabaseInstanceManager) root.getService("DatabaseInstanceManager", "1.0");
+            dim.shutdown();
+        }
+        testCollection = null;
+        service = null;
+    }
+}
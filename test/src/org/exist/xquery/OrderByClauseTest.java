@@ -0,0 +1,178 @@
+package org.exist.xquery;
+
+import org.exist.storage.BrokerPool;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceIterator;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XPathQueryService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests "order by" clauses which only keep the first items of the result and
+ * sorting with runs written to temporary files.
+ */
+public class OrderByClauseTest {
+
+    private final static String URI = XmldbURI.LOCAL_DB;
+    private final static String DRIVER = "org.exist.xmldb.DatabaseImpl";
+
+    private final static String ITEMS = "doc('/db/orderby-test/items.xml')//item";
+    private final static String ORDERED =
+            "for $i in " + ITEMS + " order by $i/@cat descending, number($i/@price) empty least return $i";
+
+    private static Collection testCollection;
+    private static XPathQueryService service;
+
+    @Test
+    public void subsequence() throws Exception {
+        assertSameResult("subsequence(" + ORDERED + ", 1, 10)", "let $r := " + ORDERED + " return subsequence($r, 1, 10)");
+        assertSameResult("subsequence(" + ORDERED + ", 17, 5)", "let $r := " + ORDERED + " return subsequence($r, 17, 5)");
+        assertSameResult("subsequence(" + ORDERED + ", 0, 3)", "let $r := " + ORDERED + " return subsequence($r, 0, 3)");
+        assertSameResult("subsequence(" + ORDERED + ", 495)", "let $r := " + ORDERED + " return subsequence($r, 495)");
+        assertSameResult("subsequence(" + ORDERED + ", 1, 0)", "()");
+    }
+
+    @Test
+    public void positionalPredicate() throws Exception {
+        assertSameResult("(" + ORDERED + ")[position() le 10]", "let $r := " + ORDERED + " return $r[position() le 10]");
+        assertSameResult("(" + ORDERED + ")[position() < 4]", "let $r := " + ORDERED + " return $r[position() < 4]");
+        assertSameResult("(" + ORDERED + ")[7]", "let $r := " + ORDERED + " return $r[7]");
+        assertSameResult("let $n := 12 return (" + ORDERED + ")[position() = $n]",
+                "let $r := " + ORDERED + " return $r[12]");
+    }
+
+    @Test
+    public void multipleItemsPerTuple() throws Exception {
+        final String flwor = "for $i in " + ITEMS + " let $p := number($i/@price) order by $p descending " +
+                "return ($p, string($i/@cat))";
+        assertSameResult("subsequence(" + flwor + ", 3, 9)", "let $r := " + flwor + " return subsequence($r, 3, 9)");
+    }
+
+    @Test
+    public void recursiveSubsequence() throws Exception {
+        // the innermost call leaves its limit behind if it does not restore the previous one
+        final String function = "declare function local:f($n) { subsequence(for $x in " +
+                "(if ($n > 0) then (local:f($n - 1), 5, 4, 3, 2, 1) else ()) order by $x return $x, 1, $n + 1) }; ";
+        assertEquals("1\n2\n", execute(function + "local:f(1)"));
+        assertEquals("1\n1\n2\n", execute(function + "local:f(2)"));
+    }
+
+    @Test
+    public void subsequenceErrorPrecedence() throws Exception {
+        try {
+            execute("subsequence(for $x in (3, 1, 2) order by $x return error(xs:QName('local:source')), " +
+                    "1 idiv (count((3, 1, 2)) - 3))");
+            fail("error expected");
+        } catch (final XMLDBException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("local:source"));
+        }
+    }
+
+    @Test
+    public void spill() throws Exception {
+        setSpillThreshold(0L);
+        final String expected = execute(ORDERED);
+        setSpillThreshold(20L);
+        assertEquals(expected, execute(ORDERED));
+
+        final String atomic = "for $x in 1 to 300 let $k := $x mod 7 order by $k, $x div 2 descending " +
+                "return ($k, 'v' || $x, xs:date('2015-01-01') + xs:dayTimeDuration('P' || $k || 'D'))";
+        setSpillThreshold(0L);
+        final String expectedAtomic = execute(atomic);
+        setSpillThreshold(20L);
+        assertEquals(expectedAtomic, execute(atomic));
+    }
+
+    @Test
+    public void spillConstructedNodes() throws Exception {
+        final String query = "for $x in 1 to 300 order by $x mod 10 return <e>{$x}</e>";
+        setSpillThreshold(0L);
+        final String expected = execute(query);
+        setSpillThreshold(20L);
+        assertEquals(expected, execute(query));
+    }
+
+    @Test
+    public void spillTypedVariable() throws Exception {
+        setSpillThreshold(2L);
+        assertEquals("3\n2\n1\n", execute("for $x as xs:integer in (1, 2, 3) order by $x descending return $x"));
+    }
+
+    private void assertSameResult(final String query, final String expectedQuery) throws Exception {
+        final String expected = execute(expectedQuery);
+        assertEquals(expected, execute(query));
+    }
+
+    private String execute(final String query) throws Exception {
+        final ResourceSet result = service.query(query);
+        final StringBuilder builder = new StringBuilder();
+        for (final ResourceIterator i = result.getIterator(); i.hasMoreResources(); ) {
+            builder.append(i.nextResource().getContent()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void setSpillThreshold(final Long threshold) throws Exception {
+        BrokerPool.getInstance().getConfiguration().setProperty(OrderByClause.PROPERTY_ORDERBY_SPILL_THRESHOLD, threshold);
+    }
+
+    @After
+    public void resetSpillThreshold() throws Exception {
+        setSpillThreshold(0L);
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        final Database database = (Database) Class.forName(DRIVER).newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+        final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = cms.createCollection("orderby-test");
+        assertNotNull(testCollection);
+
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 500; i++) {
+            xml.append("<item n='").append(i).append("' cat='c").append(i % 7).append('\'');
+            if (i % 11 != 0) {
+                xml.append(" price='").append((i * 37) % 101).append('\'');
+            }
+            xml.append("/>");
+        }
+        xml.append("</items>");
+        final XMLResource doc = (XMLResource) testCollection.createResource("items.xml", "XMLResource");
+        doc.setContent(xml.toString());
+        testCollection.storeResource(doc);
+
+        service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        if (testCollection != null) {
+            final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+            final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+            cms.removeCollection("orderby-test");
+            final DatabaseInstanceManager dim = (DatabaseInstanceManager) root.getService("DatabaseInstanceManager", "1.0");
+            dim.shutdown();
+        }
+        testCollection = null;
+        service = null;
+    }
+}
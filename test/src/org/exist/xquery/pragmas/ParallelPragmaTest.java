@@ -0,0 +1,240 @@
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.xmldb.DatabaseInstanceManager;
+import org.exist.xmldb.XmldbURI;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xmldb.api.DatabaseManager;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.Database;
+import org.xmldb.api.base.ResourceIterator;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+import org.xmldb.api.modules.XMLResource;
+import org.xmldb.api.modules.XPathQueryService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that FLWOR expressions wrapped in exist:parallel return the same
+ * results, in the same order, as their sequential evaluation.
+ */
+public class ParallelPragmaTest {
+
+    private final static String URI = XmldbURI.LOCAL_DB;
+    private final static String DRIVER = "org.exist.xmldb.DatabaseImpl";
+
+    private final static String PARALLEL = "(# exist:parallel workers=4 #) ";
+
+    private static Collection testCollection;
+    private static XPathQueryService service;
+
+    /** Counts the chunks reported by the threads of the fork-join pool */
+    private final static WorkerAppender workers = new WorkerAppender();
+
+    @Test
+    public void atomicValues() throws Exception {
+        assertSameResult("", "for $x in 1 to 1000 let $y := $x * $x where $y mod 3 = 1 return $y - 1");
+    }
+
+    @Test
+    public void storedNodes() throws Exception {
+        assertSameResult("",
+                "for $i in doc('/db/parallel-test/items.xml')//item " +
+                "return <r>{$i/@cat/string(), count(doc('/db/parallel-test/items.xml')//item[@cat = $i/@cat])}</r>");
+    }
+
+    @Test
+    public void nodeVariables() throws Exception {
+        // every worker filters the same node sets bound outside of the FLWOR
+        final String let = "let $items := doc('/db/parallel-test/items.xml')//item return ";
+        final String flwor = "for $x in 1 to 200 let $c := concat('c', $x mod 7) " +
+                "return count($items[@cat = $c]/@cat) + count($local:items[. is $items[$x]])";
+        final String prolog = "declare variable $local:items := doc('/db/parallel-test/items.xml')//item; ";
+        final String expected = execute(prolog + let + "(" + flwor + ")");
+        final long forked = workers.getChunks();
+        assertEquals(expected, execute(prolog + let + PARALLEL + "{ " + flwor + " }"));
+        assertTrue("no chunk was evaluated by a worker", workers.getChunks() > forked);
+    }
+
+    @Test
+    public void functionsAndVariables() throws Exception {
+        assertSameResult(
+                "declare variable $local:offset := 100; " +
+                "declare function local:f($x) { if ($x mod 2 = 0) then local:f($x div 2) else $x + $local:offset }; ",
+                "for $x in 1 to 500 return local:f($x) * $factor");
+    }
+
+    @Test
+    public void nestedFLWOR() throws Exception {
+        assertSameResult("",
+                "for $x in 1 to 50 return string-join(for $y in 1 to $x order by $y descending return string($y), ',')");
+    }
+
+    @Test
+    public void notParallel() throws Exception {
+        // order by needs to see all tuples: evaluated sequentially
+        assertSequential("", "for $x in 1 to 100 order by $x mod 7, $x return $x");
+        // positional variable
+        assertSequential("", "for $x at $p in 1 to 100 return $x * $p");
+        // extension functions may have side effects
+        assertSequential("", "for $x in 1 to 100 return util:log('debug', $x)");
+    }
+
+    @Test(timeout = 60000)
+    public void noBrokerAvailable() throws Exception {
+        // hold all brokers but the one of the query: the chunks are evaluated by the calling thread
+        final BrokerPool pool = BrokerPool.getInstance();
+        final CountDownLatch acquired = new CountDownLatch(pool.getMax() - 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pool.getMax() - 1; i++) {
+            final Thread thread = new Thread(() -> {
+                try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getGuestSubject()))) {
+                    acquired.countDown();
+                    done.await();
+                } catch (final Exception e) {
+                    // the test fails by timeout
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            acquired.await();
+            final long forked = workers.getChunks();
+            final String flwor = "for $x in 1 to 100 return $x * 2";
+            assertEquals(execute("(" + flwor + ")"), execute(PARALLEL + "{ " + flwor + " }"));
+            assertEquals(forked, workers.getChunks());
+        } finally {
+            done.countDown();
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    public void error() throws Exception {
+        try {
+            execute(PARALLEL + "{ for $x in 1 to 100 return if ($x = 77) then error(xs:QName('local:e'), 'failed') else $x }");
+            fail("expected an error");
+        } catch (final XMLDBException e) {
+            assertTrue(e.getMessage().contains("failed"));
+        }
+    }
+
+    /**
+     * Compare the results with and without the pragma. The local variable $factor
+     * is visible to the FLWOR.
+     */
+    private void assertSameResult(final String prolog, final String flwor) throws Exception {
+        final String expected = execute(prolog + "let $factor := 3 return (" + flwor + ")");
+        assertTrue(expected.length() > 0);
+        final long forked = workers.getChunks();
+        assertEquals(expected, execute(prolog + "let $factor := 3 return " + PARALLEL + "{ " + flwor + " }"));
+        assertTrue("no chunk was evaluated by a worker", workers.getChunks() > forked);
+    }
+
+    private void assertSequential(final String prolog, final String flwor) throws Exception {
+        final String expected = execute(prolog + "(" + flwor + ")");
+        final long forked = workers.getChunks();
+        assertEquals(expected, execute(prolog + PARALLEL + "{ " + flwor + " }"));
+        assertEquals(forked, workers.getChunks());
+    }
+
+    private String execute(final String query) throws Exception {
+        final ResourceSet result = service.query(query);
+        final StringBuilder builder = new StringBuilder();
+        for (final ResourceIterator i = result.getIterator(); i.hasMoreResources(); ) {
+            builder.append(i.nextResource().getContent()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        workers.start();
+        final LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
+        final LoggerConfig loggerConfig = new LoggerConfig(ParallelPragma.class.getName(), Level.DEBUG, false);
+        loggerConfig.addAppender(workers, Level.DEBUG, null);
+        loggerContext.getConfiguration().addLogger(ParallelPragma.class.getName(), loggerConfig);
+        loggerContext.updateLoggers();
+
+        final Database database = (Database) Class.forName(DRIVER).newInstance();
+        database.setProperty("create-database", "true");
+        DatabaseManager.registerDatabase(database);
+
+        final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+        final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+        testCollection = cms.createCollection("parallel-test");
+        assertNotNull(testCollection);
+
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 200; i++) {
+            xml.append("<item cat='c").append(i % 7).append("'/>");
+        }
+        xml.append("</items>");
+        final XMLResource doc = (XMLResource) testCollection.createResource("items.xml", "XMLResource");
+        doc.setContent(xml.toString());
+        testCollection.storeResource(doc);
+
+        service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        if (testCollection != null) {
+            final Collection root = DatabaseManager.getCollection(URI, "admin", "");
+            final CollectionManagementService cms = (CollectionManagementService) root.getService("CollectionManagementService", "1.0");
+            cms.removeCollection("parallel-test");
+            final DatabaseInstanceManager dim = (DatabaseInstanceManager) root.getService("DatabaseInstanceManager", "1.0");
+            dim.shutdown();
+        }
+        testCollection = null;
+        service = null;
+
+        final LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
+        loggerContext.getConfiguration().removeLogger(ParallelPragma.class.getName());
+        loggerContext.updateLoggers();
+        workers.stop();
+    }
+
+    private static class WorkerAppender extends AbstractAppender {
+
+        private final AtomicLong chunks = new AtomicLong();
+
+        WorkerAppender() {
+            super("parallel-pragma-test", null, null);
+        }
+
+        @Override
+        public void append(final LogEvent event) {
+            if (event.getThreadName().startsWith("exist-parallel-flwor-"))
+                {chunks.incrementAndGet();}
+        }
+
+        long getChunks() {
+            return chunks.get();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package xquery.modules.cache;
+
+/*
+ *  eXist Open Source Native XML Database
+ *  Copyright (C) 2016 The eXist Project
+ *  http://exist-db.org
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ *  $Id$
+ */
+import org.exist.management.AgentFactory;
+import org.exist.xquery.modules.cache.Cache;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the statistics MBean of a cache is unregistered when the cache is dropped.
+ */
+public class CacheMBeanTest {
+
+    @Test
+    public void unregisterOnClearGlobal() throws Exception {
+        AgentFactory.getInstance();
+        final MBeanServer server = MBeanServerFactory.findMBeanServer(null).get(0);
+        final ObjectName name1 = new ObjectName("org.exist.management:type=Cache,name=" + ObjectName.quote("mbean-test-1"));
+        final ObjectName name2 = new ObjectName("org.exist.management:type=Cache,name=" + ObjectName.quote("mbean-test-2"));
+
+        Cache.getInstance("mbean-test-1");
+        Cache.getInstance("mbean-test-2");
+        assertTrue(server.isRegistered(name1));
+        assertTrue(server.isRegistered(name2));
+
+        Cache.destroy("mbean-test-1");
+        assertFalse(server.isRegistered(name1));
+        assertTrue(server.isRegistered(name2));
+
+        Cache.clearGlobal();
+        assertFalse(server.isRegistered(name2));
+
+        // a cache used again gets a new bean
+        Cache.getInstance("mbean-test-1");
+        assertTrue(server.isRegistered(name1));
+        Cache.clearGlobal();
+        assertFalse(server.isRegistered(name1));
+    }
+}